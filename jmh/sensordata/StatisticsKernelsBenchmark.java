@@ -0,0 +1,125 @@
+package sensordata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.ZonedDateTime;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the statistics kernels with the stream based averages used by PredictiveMaintenanceAlertGenerator,
+ * over a 30 day window of minute readings and a column of 1000 sensors.
+ * <p>
+ * Kept in the jmh/ source root so JMH is not needed to build src/. Build benchmarks.jar from jmh/, src/ and vector/
+ * then run with {@code java --add-modules jdk.incubator.vector -jar benchmarks.jar StatisticsKernelsBenchmark},
+ * and with {@code -Dsensor.statistics.vector=false} for the scalar kernel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class StatisticsKernelsBenchmark {
+
+    @Param({"43200"})
+    public int readings;
+
+    @Param({"1000"})
+    public int sensors;
+
+    private TreeMap<ZonedDateTime, Double> window;
+    private double[] values;
+    private double[] column;
+    private double[] references;
+    private double[] lower;
+    private double[] upper;
+    private boolean[] out;
+    private final StatisticsKernel scalar = StatisticsKernels.scalar();
+    private final StatisticsKernel kernel = StatisticsKernels.get();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        ZonedDateTime start = ZonedDateTime.now().minusDays(30L);
+        window = new TreeMap<>();
+        values = new double[readings];
+        for (int i = 0; i < readings; i++) {
+            values[i] = 20 + random.nextGaussian() * 5;
+            window.put(start.plusMinutes(i), values[i]);
+        }
+        column = new double[sensors];
+        references = new double[sensors];
+        lower = new double[sensors];
+        upper = new double[sensors];
+        out = new boolean[sensors];
+        for (int i = 0; i < sensors; i++) {
+            column[i] = 20 + random.nextGaussian();
+            references[i] = 20 + random.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public void streamAverageAndStandardDeviation(Blackhole blackhole) {
+        double average = window.values().stream().mapToDouble(Number::doubleValue).average().orElse(0);
+        double variance = window.values().stream().mapToDouble(value -> (value - average) * (value - average))
+                .average().orElse(0);
+        blackhole.consume(average);
+        blackhole.consume(Math.sqrt(variance));
+    }
+
+    @Benchmark
+    public void scalarAverageAndStandardDeviation(Blackhole blackhole) {
+        blackhole.consume(scalar.average(values, 0, readings));
+        blackhole.consume(scalar.standardDeviation(values, 0, readings));
+    }
+
+    @Benchmark
+    public void kernelAverageAndStandardDeviation(Blackhole blackhole) {
+        blackhole.consume(kernel.average(values, 0, readings));
+        blackhole.consume(kernel.standardDeviation(values, 0, readings));
+    }
+
+    @Benchmark
+    public void kernelMinMaxAndControlLimits(Blackhole blackhole) {
+        blackhole.consume(kernel.min(values, 0, readings));
+        blackhole.consume(kernel.max(values, 0, readings));
+        blackhole.consume(kernel.countOutside(values, 0, readings, 5, 35));
+    }
+
+    /**
+     * The per sensor isOutsideOfPercentage check, one sensor at a time.
+     */
+    @Benchmark
+    public int scalarOutsideOfPercentage() {
+        int count = 0;
+        for (int i = 0; i < sensors; i++) {
+            if (column[i] > references[i] * 1.05 || column[i] < references[i] * 0.95) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int kernelOutsideOfPercentage() {
+        for (int i = 0; i < sensors; i++) {
+            lower[i] = references[i] * 0.95;
+            upper[i] = references[i] * 1.05;
+        }
+        return kernel.markOutside(column, lower, upper, out);
+    }
+}
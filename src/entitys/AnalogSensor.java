@@ -24,10 +24,12 @@ public class AnalogSensor extends Sensor {
     private static final Logger log = Logger.getLogger(AnalogSensor.class.getSimpleName());
 
     /**
-     * A List of all alerts this sensor has detected.
+     * A List of all alerts this sensor has detected, the alerts are saved through the AlertService. Saving a sensor
+     * does not merge its alerts, a sensor loaded before the AlertArchiver ran would otherwise insert the alerts
+     * that have since been archived back into the alert table.
      */
     @Setter
-    @OneToMany(fetch = FetchType.EAGER, mappedBy = "sensor", cascade = CascadeType.ALL)
+    @OneToMany(fetch = FetchType.EAGER, mappedBy = "sensor", cascade = CascadeType.REMOVE)
     private List<Alert> alerts;
 
     /**
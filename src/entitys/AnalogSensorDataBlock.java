@@ -0,0 +1,74 @@
+package entitys;
+
+import lombok.*;
+import uk.co.dhl.smas.backend.AbstractEntity;
+
+import javax.persistence.*;
+import java.time.ZonedDateTime;
+
+/**
+ * A compressed block of hourly or daily {@link uk.co.dhl.smas.backend.condition.AnalogSensorDataEntry} averages for
+ * a single sensor, see GorillaBlockCodec. Hourly entries are stored one block per day and daily entries one block
+ * per week, so long range charts read a handful of small rows instead of one row per entry.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "analog_sensor_id, type, blockStart"))
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnalogSensorDataBlock extends AbstractEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * The sensor the entries in this block belong to.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "analog_sensor_id")
+    @Getter
+    @Setter
+    private AnalogSensor analogSensor;
+
+    /**
+     * The type of entry in this block, either AnalogSensorDataEntry.HOURLY or AnalogSensorDataEntry.DAILY.
+     */
+    @Getter
+    @Setter
+    private int type;
+
+    /**
+     * The start of the day or week this block covers.
+     */
+    @Getter
+    @Setter
+    @Column(columnDefinition = "timestamp with time zone")
+    private ZonedDateTime blockStart;
+
+    /**
+     * The end of the day or week this block covers, exclusive.
+     */
+    @Getter
+    @Setter
+    @Column(columnDefinition = "timestamp with time zone")
+    private ZonedDateTime blockEnd;
+
+    /**
+     * The number of entries in this block.
+     */
+    @Getter
+    @Setter
+    private int entryCount;
+
+    /**
+     * The entries encoded by GorillaBlockCodec.
+     */
+    @Getter
+    @Setter
+    @Column(columnDefinition = "bytea")
+    private byte[] data;
+
+    @Override
+    public Long getId() { return id; }
+}
@@ -3,6 +3,8 @@ package entitys;
 import org.junit.Test;
 import uk.co.dhl.smas.backend.alert.Alert;
 
+import javax.persistence.CascadeType;
+import javax.persistence.OneToMany;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.List;
@@ -128,6 +130,13 @@ public class AnalogSensorTest {
         assertTrue(analogSensor.hasDetectedAlertType(100));
     }
 
+    @Test
+    public void testAlertsAreOnlyRemovedWithTheSensor() throws NoSuchFieldException {
+        // Alerts are saved through the AlertService, saving a held sensor must not merge archived alerts back.
+        OneToMany alerts = AnalogSensor.class.getDeclaredField("alerts").getAnnotation(OneToMany.class);
+        assertArrayEquals(new CascadeType[]{CascadeType.REMOVE}, alerts.cascade());
+    }
+
     List<Alert> getAlerts() {
         Alert a1 = Alert.builder().type(100).closed(null).build();
         Alert a2 = Alert.builder().type(101).closed(null).build();
@@ -2,6 +2,8 @@ package entitys;
 
 import lombok.Getter;
 import lombok.Setter;
+import springhibernate.UserAlertWindowListener;
+import springhibernate.UserPermissionListener;
 import uk.co.dhl.smas.backend.AbstractEntity;
 import uk.co.dhl.smas.backend.authority.Authority;
 import uk.co.dhl.smas.backend.team.Team;
@@ -15,6 +17,7 @@ import java.util.Set;
 
 @Entity
 @Table(name = "users")
+@EntityListeners({UserAlertWindowListener.class, UserPermissionListener.class})
 public class User extends AbstractEntity {
 
     @Id
@@ -0,0 +1,108 @@
+package entitys;
+
+import uk.co.dhl.smas.backend.authority.Authority;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable snapshot of what a user is permitted to do, taken from the permission flags and authorities of a
+ * {@link User}. The flags and authorities are held as bits so a check is a single mask, with no database access
+ * and no walk of the authorities collection.
+ * <p>
+ * Authority names are given a bit the first time they are seen, the bits are shared by every snapshot.
+ */
+public final class UserPermissions {
+
+    public enum Permission {
+        ADMIN,
+        ENGINEER,
+        DASHBOARDS,
+        INDIRECT_IN_PROGRESS
+    }
+
+    private static final Map<String, Integer> AUTHORITY_BITS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_AUTHORITY_BIT = new AtomicInteger();
+
+    /**
+     * Held by users that have not been found, e.g. before anyone has logged in.
+     */
+    public static final UserPermissions NONE = new UserPermissions(null, null, 0L, new long[0]);
+
+    private final Long userId;
+    private final String username;
+    private final long permissions;
+    private final long[] authorities;
+
+    private UserPermissions(Long userId, String username, long permissions, long[] authorities) {
+        this.userId = userId;
+        this.username = username;
+        this.permissions = permissions;
+        this.authorities = authorities;
+    }
+
+    /**
+     * @param user The user, the authorities must already be loaded.
+     * @return The permissions of the user at this moment.
+     */
+    public static UserPermissions of(User user) {
+        long permissions = 0L;
+        permissions |= bit(Permission.ADMIN, user.isAdmin());
+        permissions |= bit(Permission.ENGINEER, user.isEngineer());
+        permissions |= bit(Permission.DASHBOARDS, user.isDashboards());
+        permissions |= bit(Permission.INDIRECT_IN_PROGRESS, user.isIndirectInProgress());
+        long[] authorities = new long[0];
+        for (Authority authority : user.getAuthorities()) {
+            int index = getAuthorityBit(authority.getAuthority());
+            if (index / 64 >= authorities.length) {
+                authorities = Arrays.copyOf(authorities, index / 64 + 1);
+            }
+            authorities[index / 64] |= 1L << (index % 64);
+        }
+        return new UserPermissions(user.getId(), user.getUsername(), permissions, authorities);
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean has(Permission permission) {
+        return (permissions & (1L << permission.ordinal())) != 0;
+    }
+
+    public boolean isAdmin() {
+        return has(Permission.ADMIN);
+    }
+
+    public boolean isEngineer() {
+        return has(Permission.ENGINEER);
+    }
+
+    public boolean isDashboards() {
+        return has(Permission.DASHBOARDS);
+    }
+
+    /**
+     * @param authority The name of the authority e.g. ROLE_ADMIN.
+     * @return True if the user held the authority when the snapshot was taken.
+     */
+    public boolean hasAuthority(String authority) {
+        Integer index = AUTHORITY_BITS.get(authority);
+        return index != null && index / 64 < authorities.length
+                && (authorities[index / 64] & (1L << (index % 64))) != 0;
+    }
+
+    private static long bit(Permission permission, boolean granted) {
+        return granted ? 1L << permission.ordinal() : 0L;
+    }
+
+    private static int getAuthorityBit(String authority) {
+        return AUTHORITY_BITS.computeIfAbsent(authority, name -> NEXT_AUTHORITY_BIT.getAndIncrement());
+    }
+}
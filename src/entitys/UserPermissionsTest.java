@@ -0,0 +1,50 @@
+package entitys;
+
+import org.junit.jupiter.api.Test;
+import uk.co.dhl.smas.backend.authority.Authority;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserPermissionsTest {
+
+    @Test
+    void testOf() {
+        User user = new User();
+        user.setUsername("engineer");
+        user.setEngineer(true);
+        user.setNumbers(true);
+        user.getAuthorities().add(getAuthority("ROLE_USER"));
+        user.getAuthorities().add(getAuthority("ROLE_ENGINEER"));
+
+        UserPermissions underTest = UserPermissions.of(user);
+
+        assertEquals("engineer", underTest.getUsername());
+        assertFalse(underTest.isAdmin());
+        assertTrue(underTest.isEngineer());
+        assertTrue(underTest.isDashboards());
+        assertFalse(underTest.has(UserPermissions.Permission.INDIRECT_IN_PROGRESS));
+        assertTrue(underTest.hasAuthority("ROLE_USER"));
+        assertTrue(underTest.hasAuthority("ROLE_ENGINEER"));
+        assertFalse(underTest.hasAuthority("ROLE_ADMIN"));
+        assertFalse(underTest.hasAuthority("ROLE_NEVER_SEEN"));
+
+        // The snapshot does not change when the user does.
+        user.setAdmin(true);
+        assertFalse(underTest.isAdmin());
+    }
+
+    @Test
+    void testNone() {
+        assertFalse(UserPermissions.NONE.isAdmin());
+        assertFalse(UserPermissions.NONE.isDashboards());
+        assertFalse(UserPermissions.NONE.hasAuthority("ROLE_USER"));
+    }
+
+    private Authority getAuthority(String name) {
+        Authority authority = mock(Authority.class);
+        when(authority.getAuthority()).thenReturn(name);
+        return authority;
+    }
+}
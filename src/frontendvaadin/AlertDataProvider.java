@@ -0,0 +1,54 @@
+package frontendvaadin;
+
+import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import springhibernate.AlertHistoryService;
+import springhibernate.KeysetCursor;
+import uk.co.dhl.smas.backend.alert.Alert;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Feeds the alert grid of a sensor a page at a time from the alert table and the archive, most recently opened
+ * first, rather than loading every alert the sensor has raised through AnalogSensor.getAlerts(). The order is
+ * fixed so the grid columns should not be sortable.
+ */
+public class AlertDataProvider extends AbstractBackEndDataProvider<Alert, Void> {
+
+    private final AlertHistoryService alertHistoryService;
+    private final Long sensorId;
+    private final KeysetCursor<Alert> cursor = new KeysetCursor<>();
+
+    public AlertDataProvider(AlertHistoryService alertHistoryService, Long sensorId) {
+        this.alertHistoryService = alertHistoryService;
+        this.sensorId = sensorId;
+    }
+
+    @Override
+    protected Stream<Alert> fetchFromBackEnd(Query<Alert, Void> query) {
+        List<Alert> page = alertHistoryService.findPageForSensor(sensorId, cursor.getKeyBefore(query.getOffset()),
+                query.getOffset(), query.getLimit());
+        if (!page.isEmpty()) {
+            cursor.put(query.getOffset(), page.size(), page.get(page.size() - 1));
+        }
+        return page.stream();
+    }
+
+    @Override
+    protected int sizeInBackEnd(Query<Alert, Void> query) {
+        return (int) alertHistoryService.countForSensor(sensorId);
+    }
+
+    @Override
+    public Object getId(Alert item) {
+        return item.getId();
+    }
+
+    @Override
+    public void refreshAll() {
+        // New alerts are added at the top and shift every page down.
+        cursor.clear();
+        super.refreshAll();
+    }
+}
@@ -0,0 +1,67 @@
+package frontendvaadin;
+
+import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.SortDirection;
+import springhibernate.AnalogSensorService;
+import springhibernate.KeysetCursor;
+import springhibernate.SensorFilter;
+import springhibernate.SensorSummary;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Feeds a sensor grid a page at a time, so a session only holds the rows that are visible rather than every
+ * sensor, and only the columns of {@link SensorSummary} rather than each sensor and its alerts. Pages are read by
+ * keyset on the sensor name, so only the name column should be sortable. A machine or text filter is applied with
+ * {@code withConfigurableFilter()}, see {@link SensorAlertGridView}.
+ */
+public class AnalogSensorDataProvider extends AbstractBackEndDataProvider<SensorSummary, SensorFilter> {
+
+    private final AnalogSensorService analogSensorService;
+    private final KeysetCursor<String> cursor = new KeysetCursor<>();
+    private SensorFilter lastFilter = SensorFilter.ALL;
+    private boolean lastDescending = false;
+
+    public AnalogSensorDataProvider(AnalogSensorService analogSensorService) {
+        this.analogSensorService = analogSensorService;
+    }
+
+    @Override
+    protected Stream<SensorSummary> fetchFromBackEnd(Query<SensorSummary, SensorFilter> query) {
+        SensorFilter filter = query.getFilter().orElse(SensorFilter.ALL);
+        boolean descending = !query.getSortOrders().isEmpty()
+                && query.getSortOrders().get(0).getDirection() == SortDirection.DESCENDING;
+        synchronized (cursor) {
+            if (!filter.equals(lastFilter) || descending != lastDescending) {
+                cursor.clear();
+                lastFilter = filter;
+                lastDescending = descending;
+            }
+        }
+        List<SensorSummary> page = analogSensorService.findPage(filter, descending,
+                cursor.getKeyBefore(query.getOffset()), query.getOffset(), query.getLimit());
+        if (!page.isEmpty()) {
+            cursor.put(query.getOffset(), page.size(), page.get(page.size() - 1).getName());
+        }
+        return page.stream();
+    }
+
+    @Override
+    protected int sizeInBackEnd(Query<SensorSummary, SensorFilter> query) {
+        return (int) analogSensorService.count(query.getFilter().orElse(SensorFilter.ALL));
+    }
+
+    @Override
+    public Object getId(SensorSummary item) {
+        return item.getId();
+    }
+
+    @Override
+    public void refreshAll() {
+        // Sensors may have been added or renamed.
+        cursor.clear();
+        super.refreshAll();
+    }
+}
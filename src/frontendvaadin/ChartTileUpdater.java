@@ -0,0 +1,45 @@
+package frontendvaadin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Compares each new series for a chart tile with the last one sent, so a refresh where nothing has changed, e.g.
+ * the machines have been stopped, does not send every category label and value to the browser again. Any change to
+ * the series, the average, the time period or machine sends the whole series.
+ */
+public class ChartTileUpdater {
+
+    private final BiConsumer<LinkedHashMap<String, Double>, Double> update;
+
+    private LinkedHashMap<String, Double> lastData;
+    private double lastAverage;
+    private Object lastSelection;
+
+    ChartTileUpdater(BiConsumer<LinkedHashMap<String, Double>, Double> update) {
+        this.update = update;
+    }
+
+    public static ChartTileUpdater forTile(AggregatedDataChartTile tile) {
+        return new ChartTileUpdater(tile::updateLayout);
+    }
+
+    /**
+     * @param data      The series for the chart, by category in display order.
+     * @param average   The value of the average label.
+     * @param selection The time period and machine the series is for.
+     */
+    public void update(LinkedHashMap<String, Double> data, double average, Object selection) {
+        boolean unchanged = lastData != null && Objects.equals(selection, lastSelection)
+                && Double.compare(average, lastAverage) == 0
+                && new ArrayList<>(data.entrySet()).equals(new ArrayList<>(lastData.entrySet()));
+        if (!unchanged) {
+            update.accept(data, average);
+        }
+        lastData = new LinkedHashMap<>(data);
+        lastAverage = average;
+        lastSelection = selection;
+    }
+}
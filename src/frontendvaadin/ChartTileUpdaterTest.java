@@ -0,0 +1,61 @@
+package frontendvaadin;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChartTileUpdaterTest {
+
+    List<Map<String, Double>> updates;
+    ChartTileUpdater underTest;
+
+    @BeforeEach
+    void setUp() {
+        updates = new ArrayList<>();
+        underTest = new ChartTileUpdater((data, average) -> updates.add(data));
+    }
+
+    @Test
+    void testNothingIsSentWhenNothingChanged() {
+        underTest.update(series(80.0, 70.0, 10.0), 53.3, "Day");
+        underTest.update(series(80.0, 70.0, 10.0), 53.3, "Day");
+        assertEquals(1, updates.size());
+
+        // Only the current hour has changed.
+        underTest.update(series(80.0, 70.0, 25.0), 58.3, "Day");
+        assertEquals(2, updates.size());
+        assertEquals(series(80.0, 70.0, 25.0), updates.get(1));
+    }
+
+    @Test
+    void testTheSeriesIsSentWhenTheSelectionOrCategoriesChange() {
+        underTest.update(series(80.0, 70.0, 10.0), 53.3, "Day");
+        underTest.update(series(80.0, 70.0, 10.0), 53.3, "Week");
+        assertEquals(2, updates.size());
+
+        // A new hour has started.
+        LinkedHashMap<String, Double> nextHour = series(80.0, 70.0, 10.0);
+        nextHour.remove("10:00");
+        nextHour.put("13:00", 0.0);
+        underTest.update(nextHour, 53.3, "Week");
+        assertEquals(3, updates.size());
+
+        // Only the average has moved.
+        underTest.update(nextHour, 53.4, "Week");
+        assertEquals(4, updates.size());
+    }
+
+    private static LinkedHashMap<String, Double> series(double ten, double eleven, double twelve) {
+        LinkedHashMap<String, Double> series = new LinkedHashMap<>();
+        series.put("10:00", ten);
+        series.put("11:00", eleven);
+        series.put("12:00", twelve);
+        return series;
+    }
+}
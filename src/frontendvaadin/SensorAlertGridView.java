@@ -0,0 +1,107 @@
+package frontendvaadin;
+
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.data.provider.ConfigurableFilterDataProvider;
+import com.vaadin.flow.data.value.ValueChangeMode;
+import com.vaadin.flow.router.PageTitle;
+import com.vaadin.flow.router.Route;
+import com.vaadin.flow.shared.Registration;
+import sensordata.SensorHistoryCache;
+import springasyncthreads.SensorStateDelta;
+import springhibernate.AlertHistoryService;
+import springhibernate.AnalogSensorService;
+import springhibernate.SensorFilter;
+import springhibernate.SensorSummary;
+import uk.co.dhl.smas.backend.alert.Alert;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * A grid of every sensor with the alert history of the selected sensor below it. Both grids are lazy, the sensors
+ * are read a page at a time by {@link AnalogSensorDataProvider} and the alerts, including the archived alerts, by
+ * {@link AlertDataProvider}, so the view never holds every sensor or every alert. The last day of readings of
+ * the selected sensor is drawn by a {@link SensorTrendChart} from the history cache. The sensor colours are pushed
+ * by the {@link SensorStateBroadcaster} after each sweep rather than read again on a timer.
+ */
+@Route("sensor-alerts")
+@PageTitle("Sensor Alerts")
+public class SensorAlertGridView extends VerticalLayout {
+
+    private final AlertHistoryService alertHistoryService;
+    private final SensorHistoryCache historyCache;
+    private final TextField filterText = new TextField();
+    private final Grid<SensorSummary> sensorGrid = new Grid<>();
+    private final Grid<Alert> alertGrid = new Grid<>();
+    private final SensorTrendChart trendChart = new SensorTrendChart();
+    private final ConfigurableFilterDataProvider<SensorSummary, Void, SensorFilter> sensors;
+    private Registration sensorStateRegistration;
+
+    public SensorAlertGridView(AnalogSensorService analogSensorService, AlertHistoryService alertHistoryService,
+                               SensorStateBroadcaster sensorStateBroadcaster, SensorHistoryCache historyCache) {
+        this.alertHistoryService = alertHistoryService;
+        this.historyCache = historyCache;
+        sensors = new AnalogSensorDataProvider(analogSensorService).withConfigurableFilter();
+        setSizeFull();
+        configureFilter();
+        configureSensorGrid();
+        configureAlertGrid();
+        trendChart.setVisible(false);
+        add(filterText, sensorGrid, trendChart, alertGrid);
+        addAttachListener(e -> sensorStateRegistration = sensorStateBroadcaster.register(e.getUI(),
+                this::applyDeltas));
+        addDetachListener(e -> sensorStateRegistration.remove());
+    }
+
+    /**
+     * Reads the visible page of sensors again if a sweep changed the colour of any sensor, a sweep that only
+     * moved the current values leaves the grid alone as the grid doesn't show them.
+     *
+     * @param deltas The changes from a single sweep.
+     */
+    void applyDeltas(List<SensorStateDelta> deltas) {
+        if (deltas.stream().anyMatch(delta -> delta.getBlobColour() != null
+                || delta.getPredictiveMaintenance() != null)) {
+            sensors.refreshAll();
+        }
+    }
+
+    private void configureFilter() {
+        filterText.setPlaceholder("Filter by name");
+        filterText.setClearButtonVisible(true);
+        filterText.setValueChangeMode(ValueChangeMode.LAZY);
+        filterText.addValueChangeListener(text -> sensors.setFilter(new SensorFilter(null, text.getValue())));
+    }
+
+    private void configureSensorGrid() {
+        // Only the name can be sorted, the pages are read by keyset on the name.
+        sensorGrid.addColumn(SensorSummary::getName).setHeader("Sensor").setKey("name").setSortable(true);
+        sensorGrid.addColumn(SensorSummary::getBlobColour).setHeader("Status").setSortable(false);
+        sensorGrid.addColumn(SensorSummary::getPredictiveMaintenance).setHeader("Maintenance").setSortable(false);
+        sensorGrid.setItems(sensors);
+        sensorGrid.asSingleSelect().addValueChangeListener(selected -> showAlerts(selected.getValue()));
+    }
+
+    private void configureAlertGrid() {
+        // The alerts are always most recently opened first.
+        alertGrid.addColumn(Alert::getOpened).setHeader("Opened").setSortable(false);
+        alertGrid.addColumn(Alert::getCategoryString).setHeader("Category").setSortable(false);
+        alertGrid.addColumn(Alert::getAlertMetricValue).setHeader("Value").setSortable(false);
+        alertGrid.addColumn(Alert::getClosed).setHeader("Closed").setSortable(false);
+        alertGrid.setVisible(false);
+    }
+
+    private void showAlerts(SensorSummary sensor) {
+        alertGrid.setVisible(sensor != null);
+        trendChart.setVisible(sensor != null);
+        if (sensor != null) {
+            alertGrid.setItems(new AlertDataProvider(alertHistoryService, sensor.getId()));
+            ZonedDateTime to = ZonedDateTime.now();
+            ZonedDateTime from = to.minusDays(1);
+            trendChart.show(from, to, readings -> historyCache.read(sensor.getId(),
+                    from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli(), readings));
+        }
+    }
+}
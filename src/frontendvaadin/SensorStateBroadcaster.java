@@ -0,0 +1,73 @@
+package frontendvaadin;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.shared.Registration;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import springasyncthreads.SensorStateDelta;
+import springasyncthreads.SensorStateDeltaEvent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Pushes the sensor changes from each sweep to every open dashboard, so the dashboards no longer poll the database.
+ * Requires server push to be enabled on the application shell with {@code @Push}.
+ * <p>
+ * A view registers in its attach listener and removes the returned registration in its detach listener, e.g.
+ * <pre>
+ *     addAttachListener(e -> registration = broadcaster.register(e.getUI(), this::applyDeltas));
+ *     addDetachListener(e -> registration.remove());
+ * </pre>
+ */
+@Component
+public class SensorStateBroadcaster {
+
+    private static final Logger log = Logger.getLogger(SensorStateBroadcaster.class.getSimpleName());
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a UI to receive the sensor changes from each sweep.
+     *
+     * @param ui       The UI the listener updates, the listener is always called with the UI locked.
+     * @param listener Applies the changes to the components in the view.
+     * @return The registration to remove when the view is detached.
+     */
+    public Registration register(UI ui, Consumer<List<SensorStateDelta>> listener) {
+        Subscriber subscriber = new Subscriber(ui, listener);
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    /**
+     * Queues the changes on every registered UI, any UI that has since been closed is removed.
+     *
+     * @param event The changes from a single sweep.
+     */
+    @EventListener
+    public void onSensorStateDelta(SensorStateDeltaEvent event) {
+        List<SensorStateDelta> deltas = event.getDeltas();
+        subscribers.forEach(subscriber -> {
+            try {
+                subscriber.ui.access(() -> subscriber.listener.accept(deltas));
+            } catch (UIDetachedException e) {
+                log.info("Removing sensor state subscriber for a detached UI");
+                subscribers.remove(subscriber);
+            }
+        });
+    }
+
+    private static final class Subscriber {
+        private final UI ui;
+        private final Consumer<List<SensorStateDelta>> listener;
+
+        private Subscriber(UI ui, Consumer<List<SensorStateDelta>> listener) {
+            this.ui = ui;
+            this.listener = listener;
+        }
+    }
+}
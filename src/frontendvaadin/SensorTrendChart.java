@@ -0,0 +1,81 @@
+package frontendvaadin;
+
+import com.vaadin.flow.component.html.Div;
+import sensordata.ReadingConsumer;
+import sensordata.SensorSeries;
+import sensordata.TrendDownsampler;
+
+import java.time.ZonedDateTime;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * A line chart of the readings of a sensor, drawn as an SVG polyline. The readings pass through a
+ * {@link TrendDownsampler} as they are read, so however long the window no more points than the chart is wide are
+ * held or sent to the browser, and the peaks and troughs are kept.
+ */
+public class SensorTrendChart extends Div {
+
+    static final int WIDTH = 600;
+    static final int HEIGHT = 120;
+
+    public SensorTrendChart() {
+        setWidth(WIDTH + "px");
+        setHeight(HEIGHT + "px");
+    }
+
+    /**
+     * Draws the readings between from and to.
+     *
+     * @param from     The start of the chart.
+     * @param to       The end of the chart.
+     * @param readings Passes the readings between from and to in date order to the consumer it is given.
+     */
+    public void show(ZonedDateTime from, ZonedDateTime to, Consumer<ReadingConsumer> readings) {
+        SensorSeries points = new SensorSeries(WIDTH);
+        TrendDownsampler downsampler = new TrendDownsampler(from, to, WIDTH, true, points::add);
+        readings.accept(downsampler);
+        downsampler.finish();
+        // Set as markup so the browser creates the elements in the SVG namespace, the points are only numbers.
+        getElement().setProperty("innerHTML", "<svg width=\"" + WIDTH + "\" height=\"" + HEIGHT + "\">" +
+                "<polyline fill=\"none\" stroke=\"currentColor\" points=\"" +
+                toPoints(points, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli()) + "\"/></svg>");
+    }
+
+    /**
+     * Scales the points to the chart, time across from from to to and the value up from the lowest to the highest.
+     * Points without a value are left out.
+     *
+     * @return The points attribute of the polyline, empty if there are no values.
+     */
+    static String toPoints(SensorSeries points, long from, long to) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < points.size(); i++) {
+            if (!Double.isNaN(points.getValue(i))) {
+                min = Math.min(min, points.getValue(i));
+                max = Math.max(max, points.getValue(i));
+            }
+        }
+        if (min > max) {
+            return "";
+        }
+        StringBuilder scaled = new StringBuilder();
+        double span = Math.max(1L, to - from);
+        // A flat line is drawn along the middle rather than dividing by zero.
+        double range = max > min ? max - min : 0;
+        for (int i = 0; i < points.size(); i++) {
+            double value = points.getValue(i);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            double x = (points.getTime(i) - from) * (WIDTH - 1) / span;
+            double y = range == 0 ? HEIGHT / 2.0 : (HEIGHT - 1) - (value - min) * (HEIGHT - 1) / range;
+            if (scaled.length() > 0) {
+                scaled.append(' ');
+            }
+            scaled.append(String.format(Locale.ROOT, "%.1f,%.1f", x, y));
+        }
+        return scaled.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package frontendvaadin;
+
+import org.junit.jupiter.api.Test;
+import sensordata.SensorSeries;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorTrendChartTest {
+
+    @Test
+    void testToPoints() {
+        SensorSeries points = new SensorSeries();
+        points.add(0, 10.0);
+        points.add(500, Double.NaN);
+        points.add(1000, 20.0);
+
+        // The lowest value is at the bottom, the highest at the top and the missing value is left out.
+        assertEquals("0.0,119.0 599.0,0.0", SensorTrendChart.toPoints(points, 0, 1000));
+    }
+
+    @Test
+    void testFlatLineAndNoValues() {
+        SensorSeries points = new SensorSeries();
+        points.add(0, 5.0);
+        points.add(1000, 5.0);
+        assertEquals("0.0,60.0 599.0,60.0", SensorTrendChart.toPoints(points, 0, 1000));
+
+        assertEquals("", SensorTrendChart.toPoints(new SensorSeries(), 0, 1000));
+    }
+}
@@ -2,6 +2,7 @@ package frontendvaadin;
 
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import org.springframework.transaction.support.TransactionOperations;
 import uk.co.dhl.smas.backend.event.EventDescriptionService;
 import uk.co.dhl.smas.backend.event.EventService;
 import uk.co.dhl.smas.backend.machine.Machine;
@@ -41,13 +42,35 @@ public class ThreeChartEfficiencyLayout extends CenteredRowItemLayout implements
     private final EventDescriptionService eventDescriptionService;
     private final PerformanceMetricService performanceMetricService;
     private final CurrentUptimeGenerator cug;
+    // Runs the order and performance metric queries read only, so they can be routed to the read replica.
+    private final TransactionOperations readOnlyReads;
     private AggregatedDataChartTile setUpEfficiency;
     private AggregatedDataChartTile productionEfficiency;
     private AggregatedDataChartTile utilisation;
+    private ChartTileUpdater setUpEfficiencyUpdater;
+    private ChartTileUpdater productionEfficiencyUpdater;
+    private ChartTileUpdater utilisationUpdater;
 
+    /**
+     * @deprecated The reads run outside a read only transaction, so always go to the primary. Create the layout with
+     * {@link ThreeChartEfficiencyLayoutFactory} instead.
+     */
+    @Deprecated
     public ThreeChartEfficiencyLayout(String title, String stylingClassName, boolean homeButton,
                                       OrderService orderService, MachineService machineService,
                                       ShiftService shiftService, EventService eventService, EventDescriptionService eventDescriptionService, PerformanceMetricService performanceMetricService) {
+        this(title, stylingClassName, homeButton, orderService, machineService, shiftService, eventService,
+                eventDescriptionService, performanceMetricService, TransactionOperations.withoutTransaction());
+    }
+
+    /**
+     * @param readOnlyReads The readOnlyTransactionTemplate, see ReplicaDataSourceConfiguration. Passed in by
+     *                      {@link ThreeChartEfficiencyLayoutFactory}.
+     */
+    public ThreeChartEfficiencyLayout(String title, String stylingClassName, boolean homeButton,
+                                      OrderService orderService, MachineService machineService,
+                                      ShiftService shiftService, EventService eventService, EventDescriptionService eventDescriptionService, PerformanceMetricService performanceMetricService,
+                                      TransactionOperations readOnlyReads) {
         super(title, stylingClassName, homeButton);
         super.setPadding(false);
         this.orderService = orderService;
@@ -56,6 +79,7 @@ public class ThreeChartEfficiencyLayout extends CenteredRowItemLayout implements
         this.eventService = eventService;
         this.eventDescriptionService = eventDescriptionService;
         this.performanceMetricService = performanceMetricService;
+        this.readOnlyReads = readOnlyReads;
         cug = new CurrentUptimeGenerator();
         addClassName("thin-white-border-right");
         configureHeader();
@@ -114,6 +138,9 @@ public class ThreeChartEfficiencyLayout extends CenteredRowItemLayout implements
         utilisation = new AggregatedDataChartTile("Utilisation", true);
         utilisation.setWidthFull();
         utilisation.setHeight(ONE_THIRD);
+        setUpEfficiencyUpdater = ChartTileUpdater.forTile(setUpEfficiency);
+        productionEfficiencyUpdater = ChartTileUpdater.forTile(productionEfficiency);
+        utilisationUpdater = ChartTileUpdater.forTile(utilisation);
 
         VerticalLayout noSpacingContainer = new VerticalLayout(setUpEfficiency, productionEfficiency, utilisation);
         noSpacingContainer.setSizeFull();
@@ -135,6 +162,8 @@ public class ThreeChartEfficiencyLayout extends CenteredRowItemLayout implements
         ZonedDateTime from = getRollingDateForTimePeriod(timeComboBoxValue, machines, shiftService);
         //The finish zoned date time is always to the current time.
         ZonedDateTime to = now();
+        //A chart is only sent its series again when the series, the time period or machine has changed.
+        List<String> selection = List.of(timeComboBoxValue, dropDownMachines.getValue().toString());
 
 
         //SET-UP EFFICIENCY
@@ -142,8 +171,9 @@ public class ThreeChartEfficiencyLayout extends CenteredRowItemLayout implements
         Get all the orders for the selected machine in the drop down box, if "All Machines"
         is selected then machine = null and so get all the orders between from and to but after the 1st June 2022.
          */
-        List<Order> orders = machine == null ? orderService.findAllBetweenFromAndTo(from, to) :
-                orderService.findByMachineBetweenFromAndTo(machine, from, to);
+        List<Order> orders = readOnlyReads.execute(status -> machine == null ?
+                orderService.findAllBetweenFromAndTo(from, to) :
+                orderService.findByMachineBetweenFromAndTo(machine, from, to));
         //Todo: June 2023 remove this.
         ZonedDateTime firstOfJune2022 = ZonedDateTime.of(2022, 6, 1, 0, 0, 0, 0, TimeZone.getDefault().toZoneId());
         orders = orders.stream().filter(order -> order.getStartDateTime().isAfter(firstOfJune2022)).collect(Collectors.toList());
@@ -162,26 +192,28 @@ public class ThreeChartEfficiencyLayout extends CenteredRowItemLayout implements
         //Format chart data for the time period
         LinkedHashMap<String, Double> formattedSetUpChartData = formatForTimePeriod(setUpChartData, timeComboBoxValue, machineService);
         //Update the chart with chart data and the average label
-        setUpEfficiency.updateLayout(formattedSetUpChartData, consolidateToOneValue(ordersForSetUp, true));
+        setUpEfficiencyUpdater.update(formattedSetUpChartData, consolidateToOneValue(ordersForSetUp, true), selection);
         log.info("Successfully completed updating the set up chart");
 
 
         //PRODUCTION EFFICIENCY
-        List<PerformanceMetric> prodPms = machine == null ? performanceMetricService.findByTypeBetweenFromAndTo(from, to, THROUGHPUT) :
-                performanceMetricService.findByMachineAndTypeBetweenFromAndTo(machine, from, to, THROUGHPUT);
+        List<PerformanceMetric> prodPms = readOnlyReads.execute(status -> machine == null ?
+                performanceMetricService.findByTypeBetweenFromAndTo(from, to, THROUGHPUT) :
+                performanceMetricService.findByMachineAndTypeBetweenFromAndTo(machine, from, to, THROUGHPUT));
 
         //Update the chart
-        productionEfficiency.updateLayout(getChartData(prodPms, THROUGHPUT),
-                getConsolidatedValue(prodPms, THROUGHPUT, machines, timeComboBoxValue));
+        productionEfficiencyUpdater.update(getChartData(prodPms, THROUGHPUT),
+                getConsolidatedValue(prodPms, THROUGHPUT, machines, timeComboBoxValue), selection);
         log.info("Successfully completed updating the production eff chart");
 
 
         //UTILISATION
-        List<PerformanceMetric> utilPms = machine == null ? performanceMetricService.findByTypeBetweenFromAndTo(from, to, UPTIME) :
-                performanceMetricService.findByMachineAndTypeBetweenFromAndTo(machine, from, to, UPTIME);
+        List<PerformanceMetric> utilPms = readOnlyReads.execute(status -> machine == null ?
+                performanceMetricService.findByTypeBetweenFromAndTo(from, to, UPTIME) :
+                performanceMetricService.findByMachineAndTypeBetweenFromAndTo(machine, from, to, UPTIME));
         //Update the chart
-        utilisation.updateLayout(getChartData(utilPms, UPTIME, machines),
-                getConsolidatedValue(utilPms, UPTIME, machines, timeComboBoxValue));
+        utilisationUpdater.update(getChartData(utilPms, UPTIME, machines),
+                getConsolidatedValue(utilPms, UPTIME, machines, timeComboBoxValue), selection);
         
         log.info("Successfully completed updating the utilisation chart");
     }
@@ -0,0 +1,56 @@
+package frontendvaadin;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import uk.co.dhl.smas.backend.event.EventDescriptionService;
+import uk.co.dhl.smas.backend.event.EventService;
+import uk.co.dhl.smas.backend.machine.MachineService;
+import uk.co.dhl.smas.backend.order.OrderService;
+import uk.co.dhl.smas.backend.perfomance.PerformanceMetricService;
+import uk.co.dhl.smas.backend.shift.ShiftService;
+
+/**
+ * Creates {@link ThreeChartEfficiencyLayout}s with the services and the readOnlyTransactionTemplate from the
+ * application context, so the order and performance metric reads of every layout are read only and can be routed
+ * to the read replica. A view injects the factory in place of the individual services, e.g.
+ * <pre>
+ *     add(efficiencyLayoutFactory.create("Efficiency", "efficiency-layout", false));
+ * </pre>
+ */
+@Component
+public class ThreeChartEfficiencyLayoutFactory {
+
+    private final OrderService orderService;
+    private final MachineService machineService;
+    private final ShiftService shiftService;
+    private final EventService eventService;
+    private final EventDescriptionService eventDescriptionService;
+    private final PerformanceMetricService performanceMetricService;
+    private final TransactionOperations readOnlyReads;
+
+    public ThreeChartEfficiencyLayoutFactory(OrderService orderService, MachineService machineService,
+                                             ShiftService shiftService, EventService eventService,
+                                             EventDescriptionService eventDescriptionService,
+                                             PerformanceMetricService performanceMetricService,
+                                             @Qualifier("readOnlyTransactionTemplate") TransactionOperations readOnlyReads) {
+        this.orderService = orderService;
+        this.machineService = machineService;
+        this.shiftService = shiftService;
+        this.eventService = eventService;
+        this.eventDescriptionService = eventDescriptionService;
+        this.performanceMetricService = performanceMetricService;
+        this.readOnlyReads = readOnlyReads;
+    }
+
+    /**
+     * @param title            The title of the layout.
+     * @param stylingClassName The class name used to style the layout.
+     * @param homeButton       Whether the layout shows a home button.
+     * @return A new layout, a layout is a component so one is needed per view.
+     */
+    public ThreeChartEfficiencyLayout create(String title, String stylingClassName, boolean homeButton) {
+        return new ThreeChartEfficiencyLayout(title, stylingClassName, homeButton, orderService, machineService,
+                shiftService, eventService, eventDescriptionService, performanceMetricService, readOnlyReads);
+    }
+}
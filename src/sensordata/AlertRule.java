@@ -0,0 +1,86 @@
+package sensordata;
+
+import lombok.Getter;
+import lombok.Setter;
+import uk.co.dhl.smas.backend.alert.Alert;
+
+/**
+ * A predictive maintenance alert condition held as data, so new conditions can be added per client in the rules
+ * file without a code change, see {@link AlertRuleEngine}. For example the MEAN_FIVE_PERCENT check is
+ * <pre>
+ * {"name": "mean 5%", "alertType": "MEAN_FIVE_PERCENT",
+ *  "value": "MONTH_TO_DATE.AVERAGE", "reference": "LAST_MONTH.AVERAGE",
+ *  "comparison": "OUTSIDE", "threshold": 0.05, "reportPercentageDifference": true,
+ *  "group": "mean", "severity": 3, "alertsAfter": "START_OF_MONTH"}
+ * </pre>
+ * A value or reference is either a window and aggregate e.g. ROLLING_ONE_DAY.MAX, see {@link AlertRulePlan.Window}
+ * and {@link AlertRulePlan.Aggregate}, a percentile of the sensor's quantile sketches e.g. HOUR.P99 or
+ * THIRTY_DAYS.P1, see {@link SensorQuantileSketches.Window}, or a field of the sensor, see
+ * {@link AlertRulePlan.SensorField}. For example a spike in the last hour beyond the usual range is
+ * <pre>
+ * {"name": "p99 spike", "alertType": "PEAK_ANOMALY",
+ *  "value": "HOUR.P99", "reference": "THIRTY_DAYS.P99",
+ *  "comparison": "ABOVE", "threshold": 0.1, "alertsAfter": "TWENTY_FOUR_HOURS"}
+ * </pre>
+ */
+@Getter
+@Setter
+public class AlertRule {
+
+    public enum Comparison {
+        /**
+         * The value is above the reference plus the threshold as a fraction, or above the threshold.
+         */
+        ABOVE,
+        /**
+         * The value is below the reference minus the threshold as a fraction, or below the threshold.
+         */
+        BELOW,
+        /**
+         * Either ABOVE or BELOW.
+         */
+        OUTSIDE,
+        /**
+         * The value is at least the threshold, multiplied by the reference if there is one.
+         */
+        AT_LEAST
+    }
+
+    public enum Trigger {
+        ALWAYS,
+        /**
+         * Only when the sensor has a new peak since the last check.
+         */
+        NEW_PEAK,
+        /**
+         * Only when the sensor has a new trough since the last check.
+         */
+        NEW_TROUGH
+    }
+
+    /**
+     * How long before another alert of the same type can be raised for the sensor.
+     */
+    public enum AlertsAfter {
+        NOW,
+        TWENTY_FOUR_HOURS,
+        START_OF_MONTH
+    }
+
+    private String name;
+    private Alert.TypeOfAlert alertType;
+    private String value;
+    private String reference;
+    private Comparison comparison;
+    private double threshold;
+    private boolean reportPercentageDifference = false;
+    private Trigger trigger = Trigger.ALWAYS;
+
+    /**
+     * Only the rule with the highest severity that matches in a group is raised, the same as the else ifs in
+     * checkMean. Rules without a group are always raised when they match.
+     */
+    private String group;
+    private int severity = 0;
+    private AlertsAfter alertsAfter = AlertsAfter.NOW;
+}
@@ -0,0 +1,82 @@
+package sensordata;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.ui.view.utils.FormattedZoneDateTimes;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Evaluates the client specific alert rules held in the JSON file at {@code alert.rules.location}, in addition to
+ * the built in checks of {@link PredictiveMaintenanceAlertGenerator}. See {@link AlertRule} for the format.
+ * The rules are compiled once into an {@link AlertRulePlan} and evaluated for every maintenance sensor at once.
+ */
+@Component
+public class AlertRuleEngine {
+
+    private static final Logger log = Logger.getLogger(AlertRuleEngine.class.getSimpleName());
+
+    private final String location;
+    private final SensorQuantileSketches quantileSketches;
+    private volatile AlertRulePlan plan = AlertRulePlan.compile(List.of());
+
+    public AlertRuleEngine(@Value("${alert.rules.location:}") String location,
+                           SensorQuantileSketches quantileSketches) {
+        this.location = location;
+        this.quantileSketches = quantileSketches;
+    }
+
+    /**
+     * Loads and compiles the rules file, if there is no file no rules are evaluated.
+     */
+    @PostConstruct
+    public void load() throws IOException {
+        if (location == null || location.isBlank()) {
+            return;
+        }
+        Path path = Paths.get(location);
+        if (!Files.exists(path)) {
+            log.warning("Alert rules file " + path + " does not exist, no alert rules will be evaluated");
+            return;
+        }
+        List<AlertRule> rules = new ObjectMapper().readValue(path.toFile(), new TypeReference<List<AlertRule>>() {
+        });
+        setRules(rules);
+    }
+
+    /**
+     * Replaces the rules being evaluated.
+     *
+     * @param rules The new rules.
+     * @throws IllegalArgumentException If any rule is invalid, the current rules are kept.
+     */
+    public void setRules(List<AlertRule> rules) {
+        AlertRulePlan compiled = AlertRulePlan.compile(rules);
+        plan = compiled;
+        log.info("Compiled " + rules.size() + " alert rules into " + compiled.getColumnCount() + " columns");
+    }
+
+    public boolean hasRules() {
+        return !plan.isEmpty();
+    }
+
+    /**
+     * @param sensors The maintenance sensors to evaluate.
+     * @param clock   Gives the bounds of the windows, normally the alert generator.
+     * @param source  Where the readings are read from, the percentiles are read from the quantile sketches.
+     * @return The rules each sensor matched.
+     */
+    public List<AlertRuleMatch> evaluate(List<AnalogSensor> sensors, FormattedZoneDateTimes clock,
+                                         StreamingSensorDataSource source) {
+        return plan.evaluate(sensors, clock, source, quantileSketches);
+    }
+}
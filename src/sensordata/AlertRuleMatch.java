@@ -0,0 +1,21 @@
+package sensordata;
+
+import lombok.Getter;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+
+/**
+ * A sensor that matched an {@link AlertRule} during an evaluation.
+ */
+@Getter
+public class AlertRuleMatch {
+
+    private final AnalogSensor sensor;
+    private final AlertRule rule;
+    private final double alertValue;
+
+    AlertRuleMatch(AnalogSensor sensor, AlertRule rule, double alertValue) {
+        this.sensor = sensor;
+        this.rule = rule;
+        this.alertValue = alertValue;
+    }
+}
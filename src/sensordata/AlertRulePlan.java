@@ -0,0 +1,388 @@
+package sensordata;
+
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.ui.view.SmasMaths;
+import uk.co.dhl.smas.ui.view.utils.FormattedZoneDateTimes;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A set of {@link AlertRule}s compiled for evaluation across every sensor at once. Compiling finds the distinct
+ * windows and aggregates the rules use, so each sensor's readings are streamed once however many rules there are,
+ * and each aggregate is calculated once however many rules share it. The aggregates are held as one column per
+ * aggregate with a row per sensor, and each rule is compared down its columns with the {@link StatisticsKernel}.
+ */
+public class AlertRulePlan {
+
+    /**
+     * The windows a rule can aggregate, the bounds are the same as those used by
+     * {@link PredictiveMaintenanceAlertGenerator}.
+     */
+    public enum Window {
+        MONTH_TO_DATE {
+            @Override
+            ZonedDateTime from(FormattedZoneDateTimes clock) {
+                return clock.startOfMtd();
+            }
+        },
+        LAST_MONTH {
+            @Override
+            ZonedDateTime from(FormattedZoneDateTimes clock) {
+                return clock.startOfLastMonth();
+            }
+
+            @Override
+            ZonedDateTime to(FormattedZoneDateTimes clock) {
+                return clock.endOfLastMonth();
+            }
+        },
+        ROLLING_ONE_DAY {
+            @Override
+            ZonedDateTime from(FormattedZoneDateTimes clock) {
+                return clock.startOfTwentyFourHoursAgo();
+            }
+
+            @Override
+            ZonedDateTime to(FormattedZoneDateTimes clock) {
+                return clock.lastCheckedForMaintenanceAlerts();
+            }
+        },
+        ROLLING_ONE_HOUR {
+            @Override
+            ZonedDateTime from(FormattedZoneDateTimes clock) {
+                return clock.now().minusHours(1L);
+            }
+        },
+        ROLLING_SEVEN_DAYS {
+            @Override
+            ZonedDateTime from(FormattedZoneDateTimes clock) {
+                return clock.now().minusDays(7L);
+            }
+        };
+
+        abstract ZonedDateTime from(FormattedZoneDateTimes clock);
+
+        ZonedDateTime to(FormattedZoneDateTimes clock) {
+            return clock.now();
+        }
+    }
+
+    /**
+     * An empty window gives NaN, apart from COUNT, and a rule is never matched on NaN.
+     */
+    public enum Aggregate {
+        AVERAGE,
+        MIN,
+        MAX,
+        COUNT,
+        STANDARD_DEVIATION;
+
+        double of(RunningStatistics statistics) {
+            switch (this) {
+                case AVERAGE:
+                    return statistics.getAverage(Double.NaN);
+                case MIN:
+                    return statistics.getMin();
+                case MAX:
+                    return statistics.getMax();
+                case COUNT:
+                    return statistics.getCount();
+                default:
+                    return statistics.getCount() == 0 ? Double.NaN : statistics.getStandardDeviation();
+            }
+        }
+    }
+
+    public enum SensorField {
+        CURRENT,
+        HIGHEST_VALUE,
+        LOWEST_VALUE,
+        PEAK_COUNTER,
+        TROUGH_COUNTER;
+
+        double of(AnalogSensor sensor) {
+            switch (this) {
+                case CURRENT:
+                    return sensor.getCurrent();
+                case HIGHEST_VALUE:
+                    return sensor.getHighestValue();
+                case LOWEST_VALUE:
+                    return sensor.getLowestValue();
+                case PEAK_COUNTER:
+                    return sensor.getPeakCounter() == null ? Double.NaN : sensor.getPeakCounter();
+                default:
+                    return sensor.getTroughCounter() == null ? Double.NaN : sensor.getTroughCounter();
+            }
+        }
+    }
+
+    private static final Pattern PERCENTILE = Pattern.compile("P(\\d{1,2}(\\.\\d+)?)");
+
+    private final StatisticsKernel kernel = StatisticsKernels.get();
+    private final List<Window> windows = new ArrayList<>();
+    private final List<Column> columns = new ArrayList<>();
+    private final List<CompiledRule> rules = new ArrayList<>();
+    private int groupCount = 0;
+
+    private AlertRulePlan() {
+    }
+
+    /**
+     * @param alertRules The rules to compile.
+     * @return The plan to evaluate the rules with.
+     * @throws IllegalArgumentException If a rule is incomplete or refers to an unknown window, aggregate or field.
+     */
+    public static AlertRulePlan compile(List<AlertRule> alertRules) {
+        AlertRulePlan plan = new AlertRulePlan();
+        Map<String, Integer> columnIndexes = new LinkedHashMap<>();
+        Map<String, Integer> groupIndexes = new LinkedHashMap<>();
+        for (AlertRule rule : alertRules) {
+            if (rule.getName() == null || rule.getAlertType() == null || rule.getValue() == null
+                    || rule.getComparison() == null) {
+                throw new IllegalArgumentException("Alert rule " + rule.getName()
+                        + " must have a name, alertType, value and comparison");
+            }
+            int value = plan.getColumn(rule, rule.getValue(), columnIndexes);
+            int reference = rule.getReference() == null ? -1 : plan.getColumn(rule, rule.getReference(), columnIndexes);
+            int group = rule.getGroup() == null ? -1 :
+                    groupIndexes.computeIfAbsent(rule.getGroup(), key -> groupIndexes.size());
+            plan.rules.add(new CompiledRule(rule, value, reference, group));
+        }
+        plan.groupCount = groupIndexes.size();
+        // Within a group the most severe rule is evaluated first so it takes the sensor from the others.
+        plan.rules.sort(Comparator.comparingInt((CompiledRule compiled) -> compiled.group)
+                .thenComparing(compiled -> -compiled.rule.getSeverity()));
+        return plan;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @return The number of distinct aggregates the rules share.
+     */
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    /**
+     * The same as evaluate without the quantile sketches, any percentile operand is NaN so never matches.
+     */
+    public List<AlertRuleMatch> evaluate(List<AnalogSensor> sensors, FormattedZoneDateTimes clock,
+                                         StreamingSensorDataSource source) {
+        return evaluate(sensors, clock, source, null);
+    }
+
+    /**
+     * Calculates every column for every sensor then evaluates every rule down the columns.
+     *
+     * @param sensors  The sensors to evaluate.
+     * @param clock    Gives the bounds of the windows, normally the alert generator.
+     * @param source   Where the readings for the windows are read from.
+     * @param sketches Where the percentile operands are read from, may be null.
+     * @return The matching rules, only the most severe match in each group is returned for a sensor.
+     */
+    public List<AlertRuleMatch> evaluate(List<AnalogSensor> sensors, FormattedZoneDateTimes clock,
+                                         StreamingSensorDataSource source, SensorQuantileSketches sketches) {
+        int sensorCount = sensors.size();
+        double[][] values = new double[columns.size()][sensorCount];
+        boolean[] newPeaks = new boolean[sensorCount];
+        boolean[] newTroughs = new boolean[sensorCount];
+        fillColumns(sensors, clock, source, sketches, values, newPeaks, newTroughs);
+
+        List<AlertRuleMatch> matches = new ArrayList<>();
+        boolean[][] taken = new boolean[groupCount][sensorCount];
+        double[] lower = new double[sensorCount];
+        double[] upper = new double[sensorCount];
+        boolean[] outside = new boolean[sensorCount];
+        for (CompiledRule compiled : rules) {
+            AlertRule rule = compiled.rule;
+            double[] value = values[compiled.value];
+            double[] reference = compiled.reference < 0 ? null : values[compiled.reference];
+            for (int i = 0; i < sensorCount; i++) {
+                double ref = reference == null ? Double.NaN : reference[i];
+                lower[i] = lowerBound(rule, ref, reference != null);
+                upper[i] = upperBound(rule, ref, reference != null);
+            }
+            if (kernel.markOutside(value, lower, upper, outside) == 0) {
+                continue;
+            }
+            boolean[] groupTaken = compiled.group < 0 ? null : taken[compiled.group];
+            boolean[] trigger = rule.getTrigger() == AlertRule.Trigger.NEW_PEAK ? newPeaks :
+                    rule.getTrigger() == AlertRule.Trigger.NEW_TROUGH ? newTroughs : null;
+            for (int i = 0; i < sensorCount; i++) {
+                if (!outside[i] || (groupTaken != null && groupTaken[i]) || (trigger != null && !trigger[i])) {
+                    continue;
+                }
+                if (groupTaken != null) {
+                    groupTaken[i] = true;
+                }
+                double alertValue = rule.isReportPercentageDifference() && reference != null ?
+                        SmasMaths.round(((value[i] - reference[i]) / reference[i]) * 100, 1) : value[i];
+                matches.add(new AlertRuleMatch(sensors.get(i), rule, alertValue));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Streams each sensor's readings once into a running statistic per window, then reads every column from them.
+     * The percentiles are read from the sensor's quantile sketches rather than the readings.
+     */
+    private void fillColumns(List<AnalogSensor> sensors, FormattedZoneDateTimes clock,
+                             StreamingSensorDataSource source, SensorQuantileSketches sketches, double[][] values,
+                             boolean[] newPeaks, boolean[] newTroughs) {
+        int windowCount = windows.size();
+        long[] from = new long[windowCount];
+        long[] to = new long[windowCount];
+        ZonedDateTime readFrom = null;
+        ZonedDateTime readTo = null;
+        for (int w = 0; w < windowCount; w++) {
+            ZonedDateTime windowFrom = windows.get(w).from(clock);
+            ZonedDateTime windowTo = windows.get(w).to(clock);
+            from[w] = windowFrom.toInstant().toEpochMilli();
+            to[w] = windowTo.toInstant().toEpochMilli();
+            readFrom = readFrom == null || windowFrom.isBefore(readFrom) ? windowFrom : readFrom;
+            readTo = readTo == null || windowTo.isAfter(readTo) ? windowTo : readTo;
+        }
+        ZonedDateTime lastChecked = clock.lastCheckedForMaintenanceAlerts();
+
+        for (int i = 0; i < sensors.size(); i++) {
+            AnalogSensor sensor = sensors.get(i);
+            RunningStatistics[] statistics = new RunningStatistics[windowCount];
+            for (int w = 0; w < windowCount; w++) {
+                statistics[w] = new RunningStatistics();
+            }
+            if (windowCount > 0) {
+                source.streamValuesBetweenFromAndTo(sensor, readFrom, readTo, (epochMillis, value) -> {
+                    for (int w = 0; w < windowCount; w++) {
+                        if (epochMillis >= from[w] && epochMillis <= to[w]) {
+                            statistics[w].add(value);
+                        }
+                    }
+                });
+            }
+            for (int c = 0; c < columns.size(); c++) {
+                Column column = columns.get(c);
+                if (column.field != null) {
+                    values[c][i] = column.field.of(sensor);
+                } else if (column.sketchWindow != null) {
+                    values[c][i] = sketches == null ? Double.NaN :
+                            sketches.quantile(sensor.getId(), column.sketchWindow, column.quantile);
+                } else {
+                    values[c][i] = column.aggregate.of(statistics[column.window]);
+                }
+            }
+            newPeaks[i] = sensor.getTimeDateHigh() != null && sensor.getTimeDateHigh().isAfter(lastChecked);
+            newTroughs[i] = sensor.getTimeDateLow() != null && sensor.getTimeDateLow().isAfter(lastChecked);
+        }
+    }
+
+    /**
+     * Every comparison is a value below the lower bound or above the upper bound, so they can all be evaluated by
+     * the same kernel. A NaN reference gives NaN bounds which never match.
+     */
+    static boolean matches(AlertRule rule, double value, double reference, boolean hasReference) {
+        return value < lowerBound(rule, reference, hasReference) || value > upperBound(rule, reference, hasReference);
+    }
+
+    private static double lowerBound(AlertRule rule, double reference, boolean hasReference) {
+        double threshold = rule.getThreshold();
+        switch (rule.getComparison()) {
+            case BELOW:
+                return hasReference ? reference * (1.0 - threshold) : threshold;
+            case OUTSIDE:
+                return hasReference ? reference * (1.0 - threshold) : -threshold;
+            default:
+                return Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    private static double upperBound(AlertRule rule, double reference, boolean hasReference) {
+        double threshold = rule.getThreshold();
+        switch (rule.getComparison()) {
+            case ABOVE:
+            case OUTSIDE:
+                return hasReference ? reference * (1.0 + threshold) : threshold;
+            case AT_LEAST:
+                // Greater than the next double down is at least the bound.
+                return Math.nextDown(hasReference ? reference * threshold : threshold);
+            default:
+                return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private int getColumn(AlertRule rule, String operand, Map<String, Integer> columnIndexes) {
+        Integer existing = columnIndexes.get(operand);
+        if (existing != null) {
+            return existing;
+        }
+        Column column;
+        try {
+            int dot = operand.indexOf('.');
+            if (dot < 0) {
+                column = new Column(SensorField.valueOf(operand), -1, null);
+            } else if (PERCENTILE.matcher(operand.substring(dot + 1)).matches()) {
+                double percentile = Double.parseDouble(operand.substring(dot + 2));
+                column = new Column(SensorQuantileSketches.Window.valueOf(operand.substring(0, dot)),
+                        percentile / 100);
+            } else {
+                Window window = Window.valueOf(operand.substring(0, dot));
+                if (!windows.contains(window)) {
+                    windows.add(window);
+                }
+                column = new Column(null, windows.indexOf(window), Aggregate.valueOf(operand.substring(dot + 1)));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Alert rule " + rule.getName() + " has an unknown operand " + operand, e);
+        }
+        columns.add(column);
+        columnIndexes.put(operand, columns.size() - 1);
+        return columns.size() - 1;
+    }
+
+    private static final class Column {
+        private final SensorField field;
+        private final int window;
+        private final Aggregate aggregate;
+        private final SensorQuantileSketches.Window sketchWindow;
+        private final double quantile;
+
+        private Column(SensorField field, int window, Aggregate aggregate) {
+            this.field = field;
+            this.window = window;
+            this.aggregate = aggregate;
+            this.sketchWindow = null;
+            this.quantile = Double.NaN;
+        }
+
+        private Column(SensorQuantileSketches.Window sketchWindow, double quantile) {
+            this.field = null;
+            this.window = -1;
+            this.aggregate = null;
+            this.sketchWindow = sketchWindow;
+            this.quantile = quantile;
+        }
+    }
+
+    private static final class CompiledRule {
+        private final AlertRule rule;
+        private final int value;
+        private final int reference;
+        private final int group;
+
+        private CompiledRule(AlertRule rule, int value, int reference, int group) {
+            this.rule = rule;
+            this.value = value;
+            this.reference = reference;
+            this.group = group;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package sensordata;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.dhl.smas.backend.alert.Alert;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.ui.view.utils.FormattedZoneDateTimes;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlertRulePlanTest implements FormattedZoneDateTimes {
+
+    private final FormattedZoneDateTimes clock = this;
+    private AnalogSensor steady;
+    private AnalogSensor rising;
+    private AnalogSensor peaking;
+    private AtomicInteger streams;
+    private StreamingSensorDataSource source;
+
+    @BeforeEach
+    void setUp() {
+        steady = getSensor(1L);
+        rising = getSensor(2L);
+        peaking = getSensor(3L);
+        peaking.setHighestValue(20);
+        peaking.setTimeDateHigh(clock.now());
+        streams = new AtomicInteger();
+        // Readings of 10 last month, this month the steady sensor stays at 10, the others rise to 10.4 and 11.
+        source = (sensor, from, to, consumer) -> {
+            streams.incrementAndGet();
+            double thisMonth = sensor.getId() == 1L ? 10 : sensor.getId() == 2L ? 10.4 : 11;
+            for (ZonedDateTime time = from; !time.isAfter(to); time = time.plusHours(1L)) {
+                consumer.accept(time.toInstant().toEpochMilli(), time.isBefore(startOfMtd()) ? 10 : thisMonth);
+            }
+        };
+    }
+
+    @Test
+    void testMeanRulesInAGroup() {
+        AlertRulePlan plan = AlertRulePlan.compile(List.of(
+                meanRule(Alert.TypeOfAlert.MEAN_ONE_PERCENT, 0.01, 1),
+                meanRule(Alert.TypeOfAlert.MEAN_FIVE_PERCENT, 0.05, 3),
+                meanRule(Alert.TypeOfAlert.MEAN_THREE_PERCENT, 0.03, 2)));
+
+        // The three rules share the same two aggregates.
+        assertEquals(2, plan.getColumnCount());
+
+        List<AlertRuleMatch> matches = plan.evaluate(List.of(steady, rising, peaking), clock, source);
+
+        // Only the most severe rule in the group is matched for each sensor.
+        assertEquals(List.of("2 MEAN_THREE_PERCENT 4.0", "3 MEAN_FIVE_PERCENT 10.0"), describe(matches));
+        // Each sensor was only read once for all the rules.
+        assertEquals(3, streams.get());
+    }
+
+    @Test
+    void testTriggeredRule() {
+        AlertRule anomaly = new AlertRule();
+        anomaly.setName("peak anomaly");
+        anomaly.setAlertType(Alert.TypeOfAlert.PEAK_ANOMALY);
+        anomaly.setValue("HIGHEST_VALUE");
+        anomaly.setReference("MONTH_TO_DATE.AVERAGE");
+        anomaly.setComparison(AlertRule.Comparison.ABOVE);
+        anomaly.setThreshold(0.2);
+        anomaly.setTrigger(AlertRule.Trigger.NEW_PEAK);
+
+        List<AlertRuleMatch> matches = AlertRulePlan.compile(List.of(anomaly))
+                .evaluate(List.of(steady, rising, peaking), clock, source);
+
+        // The steady sensor has a high value but no new peak since the last check.
+        assertEquals(List.of("3 PEAK_ANOMALY 20.0"), describe(matches));
+    }
+
+    @Test
+    void testPercentileRule() {
+        AlertRule spike = new AlertRule();
+        spike.setName("p99 spike");
+        spike.setAlertType(Alert.TypeOfAlert.PEAK_ANOMALY);
+        spike.setValue("HOUR.P99");
+        spike.setReference("THIRTY_DAYS.P50");
+        spike.setComparison(AlertRule.Comparison.ABOVE);
+        spike.setThreshold(0.5);
+        AlertRulePlan plan = AlertRulePlan.compile(List.of(spike));
+        // The percentiles come from the sketches so no window is streamed.
+        assertEquals(2, plan.getColumnCount());
+
+        // Two days of a reading every minute at 10, in the last hour the rising sensor reads 20.
+        SensorQuantileSketches sketches = new SensorQuantileSketches(null);
+        long start = clock.startOfYesterday().minusDays(1L).toInstant().toEpochMilli();
+        for (int minute = 0; minute < 48 * 60; minute++) {
+            long time = start + minute * 60_000L;
+            sketches.accept(1L, time, 10);
+            sketches.accept(2L, time, minute >= 47 * 60 ? 20 : 10);
+        }
+
+        List<AlertRuleMatch> matches = plan.evaluate(List.of(steady, rising), clock, source, sketches);
+
+        assertEquals(List.of("2 PEAK_ANOMALY 20.0"), describe(matches));
+        assertEquals(0, streams.get());
+        // Without the sketches a percentile is NaN so never matches.
+        assertTrue(plan.evaluate(List.of(steady, rising), clock, source).isEmpty());
+    }
+
+    @Test
+    void testInvalidRules() {
+        AlertRule unknown = meanRule(Alert.TypeOfAlert.MEAN_ONE_PERCENT, 0.01, 1);
+        unknown.setValue("FORTNIGHT.AVERAGE");
+        assertThrows(IllegalArgumentException.class, () -> AlertRulePlan.compile(List.of(unknown)));
+        unknown.setValue("FORTNIGHT.P99");
+        assertThrows(IllegalArgumentException.class, () -> AlertRulePlan.compile(List.of(unknown)));
+
+        AlertRule incomplete = new AlertRule();
+        incomplete.setName("incomplete");
+        assertThrows(IllegalArgumentException.class, () -> AlertRulePlan.compile(List.of(incomplete)));
+    }
+
+    @Test
+    void testMatches() {
+        AlertRule rule = meanRule(Alert.TypeOfAlert.MEAN_ONE_PERCENT, 0.05, 1);
+        assertTrue(AlertRulePlan.matches(rule, 10, 11, true));
+        assertFalse(AlertRulePlan.matches(rule, 10.6, 11, true));
+        assertFalse(AlertRulePlan.matches(rule, Double.NaN, 11, true));
+
+        rule.setComparison(AlertRule.Comparison.AT_LEAST);
+        rule.setThreshold(4);
+        assertTrue(AlertRulePlan.matches(rule, 4, Double.NaN, false));
+        assertFalse(AlertRulePlan.matches(rule, 3, Double.NaN, false));
+    }
+
+    private AlertRule meanRule(Alert.TypeOfAlert type, double threshold, int severity) {
+        AlertRule rule = new AlertRule();
+        rule.setName(type.name());
+        rule.setAlertType(type);
+        rule.setValue("MONTH_TO_DATE.AVERAGE");
+        rule.setReference("LAST_MONTH.AVERAGE");
+        rule.setComparison(AlertRule.Comparison.OUTSIDE);
+        rule.setThreshold(threshold);
+        rule.setReportPercentageDifference(true);
+        rule.setGroup("mean");
+        rule.setSeverity(severity);
+        rule.setAlertsAfter(AlertRule.AlertsAfter.START_OF_MONTH);
+        return rule;
+    }
+
+    private AnalogSensor getSensor(Long id) {
+        AnalogSensor sensor = AnalogSensor.builder()
+                .highestValue(20)
+                .lowestValue(0)
+                .timeDateHigh(startOfYesterday())
+                .timeDateLow(startOfYesterday())
+                .peakCounter(0)
+                .troughCounter(0)
+                .build();
+        sensor.setId(id);
+        return sensor;
+    }
+
+    private List<String> describe(List<AlertRuleMatch> matches) {
+        List<String> described = new ArrayList<>();
+        matches.forEach(match -> described.add(match.getSensor().getId() + " " + match.getRule().getAlertType()
+                + " " + match.getAlertValue()));
+        return described.stream().sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,49 @@
+package sensordata;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * The thresholds {@link PredictiveMaintenanceAlertGenerator} raises its alerts with. The live alerts always use
+ * {@link PredictiveMaintenanceAlertGenerator#DEFAULT_THRESHOLDS}, other sets are only used to backtest changes
+ * e.g. {@code DEFAULT_THRESHOLDS.toBuilder().name("mean 7%").meanFive(0.07).build()}.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class AlertThresholds {
+
+    /**
+     * Identifies the set of thresholds in a backtest report.
+     */
+    private final String name;
+
+    /**
+     * The deviation of the month to date mean from last month which raises MEAN_FIVE_PERCENT.
+     */
+    private final double meanFive;
+
+    /**
+     * The deviation of the month to date mean from last month which raises MEAN_THREE_PERCENT.
+     */
+    private final double meanThree;
+
+    /**
+     * The deviation of the month to date mean from last month which raises MEAN_ONE_PERCENT.
+     */
+    private final double meanOne;
+
+    /**
+     * The deviation of a new peak or trough from the rolling one day mean which raises PEAK_ANOMALY or TROUGH_ANOMALY.
+     */
+    private final double anomaly;
+
+    /**
+     * The number of new peaks or troughs which raises FOUR_PEAKS or FOUR_TROUGHS and resets the counter.
+     */
+    private final double fourPeaks;
+
+    /**
+     * The number of new peaks or troughs which raises TWO_PEAKS or TWO_TROUGHS.
+     */
+    private final double twoPeaks;
+}
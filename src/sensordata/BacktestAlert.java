@@ -0,0 +1,33 @@
+package sensordata;
+
+import lombok.Getter;
+import uk.co.dhl.smas.backend.alert.Alert;
+
+import java.time.ZonedDateTime;
+
+/**
+ * An alert that would have been raised during a backtest, it is never saved or emailed.
+ */
+@Getter
+public class BacktestAlert {
+
+    private final String ruleSet;
+    private final Long sensorId;
+    private final Alert.TypeOfAlert type;
+    private final ZonedDateTime opened;
+    private final String alertMetricValue;
+
+    BacktestAlert(String ruleSet, Long sensorId, Alert.TypeOfAlert type, ZonedDateTime opened,
+                  String alertMetricValue) {
+        this.ruleSet = ruleSet;
+        this.sensorId = sensorId;
+        this.type = type;
+        this.opened = opened;
+        this.alertMetricValue = alertMetricValue;
+    }
+
+    @Override
+    public String toString() {
+        return ruleSet + " " + sensorId + " " + type + " " + opened + " " + alertMetricValue;
+    }
+}
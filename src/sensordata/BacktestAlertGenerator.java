@@ -0,0 +1,210 @@
+package sensordata;
+
+import uk.co.dhl.smas.backend.alert.Alert;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays the stored readings of a single sensor through the alert rules on a simulated clock. The sensor's
+ * peaks, troughs and counters are simulated on a copy of the sensor, and the alerts are recorded instead of being
+ * saved, emailed or posted, so nothing outside the generator is touched.
+ * <p>
+ * The readings are held as primitives with running sums, so the averages for each check are found by binary
+ * search rather than by walking the month of readings again.
+ */
+class BacktestAlertGenerator extends PredictiveMaintenanceAlertGenerator {
+
+    private static final ZonedDateTime NEVER = ZonedDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private final String ruleSet;
+    private final AnalogSensor source;
+    private final AnalogSensor simulated;
+    private final long[] times;
+    private final double[] values;
+    private final double[] sums;
+    private final Map<Alert.TypeOfAlert, ZonedDateTime> lastAlerts = new EnumMap<>(Alert.TypeOfAlert.class);
+    private final List<BacktestAlert> alerts = new ArrayList<>();
+    private ZonedDateTime clock;
+    private ZonedDateTime lastChecked;
+    private int next = 0;
+
+    /**
+     * @param thresholds The thresholds to raise the alerts with.
+     * @param source     The sensor, only read and never changed.
+     * @param series     The readings of the sensor in date order, from at least the start of the month before the
+     *                   backtest starts.
+     */
+    BacktestAlertGenerator(AlertThresholds thresholds, AnalogSensor source, SensorSeries series) {
+        super(null, null, null, null, null, thresholds);
+        this.ruleSet = thresholds.getName();
+        this.source = source;
+        this.times = series.getTimes();
+        this.values = series.getValues();
+        this.sums = new double[values.length + 1];
+        for (int i = 0; i < values.length; i++) {
+            sums[i + 1] = sums[i] + values[i];
+        }
+        simulated = AnalogSensor.builder()
+                .machine(source.getMachine())
+                .unitOfMeasure(source.getUnitOfMeasure())
+                .peakCounter(0)
+                .troughCounter(0)
+                .highestValue(Double.NaN)
+                .lowestValue(Double.NaN)
+                .build();
+        simulated.setId(source.getId());
+    }
+
+    /**
+     * Runs the maintenance check at from and every step after it up to to, the same as the scheduled check does
+     * live.
+     *
+     * @param from The start of the backtest.
+     * @param to   The end of the backtest.
+     * @param step The time between checks.
+     * @return The alerts that would have been raised in date order.
+     */
+    List<BacktestAlert> replay(ZonedDateTime from, ZonedDateTime to, Duration step) {
+        // The readings up to the check before the start set the highest and lowest values, as if the sensor had
+        // been reset then.
+        lastChecked = from.minus(step);
+        clock = lastChecked;
+        applyReadingsUpTo(lastChecked);
+        for (clock = from; !clock.isAfter(to); clock = clock.plus(step)) {
+            applyReadingsUpTo(clock);
+            if (count(startOfLastMonth(), now()) > 0) {
+                applyAveragesAndCreateAlarms(average(startOfMtd(), now()),
+                        average(startOfLastMonth(), endOfLastMonth()),
+                        average(startOfTwentyFourHoursAgo(), lastCheckedForMaintenanceAlerts()), simulated);
+            }
+            lastChecked = clock;
+        }
+        return alerts;
+    }
+
+    /**
+     * Moves the highest and lowest values of the simulated sensor on, the same as the sweep does live.
+     */
+    private void applyReadingsUpTo(ZonedDateTime time) {
+        long millis = time.toInstant().toEpochMilli();
+        for (; next < times.length && times[next] <= millis; next++) {
+            double value = values[next];
+            if (Double.isNaN(simulated.getHighestValue())) {
+                // The first reading is where the sensor starts from rather than a new peak or trough.
+                simulated.setHighestValue(value);
+                simulated.setTimeDateHigh(lastChecked);
+                simulated.setLowestValue(value);
+                simulated.setTimeDateLow(lastChecked);
+                continue;
+            }
+            ZonedDateTime readingTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(times[next]), time.getZone());
+            if (value > simulated.getHighestValue()) {
+                simulated.setHighestValue(value);
+                simulated.setTimeDateHigh(readingTime);
+            }
+            if (value < simulated.getLowestValue()) {
+                simulated.setLowestValue(value);
+                simulated.setTimeDateLow(readingTime);
+            }
+        }
+    }
+
+    private int count(ZonedDateTime from, ZonedDateTime to) {
+        return indexAfter(to.toInstant().toEpochMilli()) - indexAtOrAfter(from.toInstant().toEpochMilli());
+    }
+
+    /**
+     * The average of the readings between from and to inclusive, or 0 if there are none.
+     */
+    private double average(ZonedDateTime from, ZonedDateTime to) {
+        int first = indexAtOrAfter(from.toInstant().toEpochMilli());
+        int last = indexAfter(to.toInstant().toEpochMilli());
+        return last <= first ? 0 : (sums[last] - sums[first]) / (last - first);
+    }
+
+    private int indexAtOrAfter(long millis) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] < millis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int indexAfter(long millis) {
+        return millis == Long.MAX_VALUE ? times.length : indexAtOrAfter(millis + 1);
+    }
+
+    @Override
+    public ZonedDateTime now() {
+        return clock;
+    }
+
+    @Override
+    public ZonedDateTime startOfMtd() {
+        return clock.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+    }
+
+    @Override
+    public ZonedDateTime startOfLastMonth() {
+        return startOfMtd().minusMonths(1L);
+    }
+
+    @Override
+    public ZonedDateTime endOfLastMonth() {
+        return startOfMtd().minusNanos(1L);
+    }
+
+    @Override
+    public ZonedDateTime startOfTwentyFourHoursAgo() {
+        return clock.minusHours(24L);
+    }
+
+    @Override
+    public ZonedDateTime lastCheckedForMaintenanceAlerts() {
+        return lastChecked;
+    }
+
+    @Override
+    public ZonedDateTime getLastAlertForThisType(AnalogSensor sensor, Alert.TypeOfAlert alertType) {
+        return lastAlerts.getOrDefault(alertType, NEVER);
+    }
+
+    /**
+     * The running status of the machine at the time is not stored, so the machine is taken to have been running.
+     */
+    @Override
+    protected boolean isAlertable(AnalogSensor sensor) {
+        return source.isAlertsEnabled();
+    }
+
+    @Override
+    protected void createAlert(AnalogSensor sensor, Alert.TypeOfAlert alertType, String alertMetricValue) {
+        lastAlerts.put(alertType, clock);
+        alerts.add(new BacktestAlert(ruleSet, source.getId(), alertType, clock, alertMetricValue));
+    }
+
+    @Override
+    protected void updatePeakCounter(AnalogSensor sensor, int peakCounter) {
+        simulated.setPeakCounter(peakCounter);
+    }
+
+    @Override
+    protected void updateTroughCounter(AnalogSensor sensor, int troughCounter) {
+        simulated.setTroughCounter(troughCounter);
+    }
+}
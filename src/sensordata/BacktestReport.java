@@ -0,0 +1,61 @@
+package sensordata;
+
+import uk.co.dhl.smas.backend.alert.Alert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The alerts each set of thresholds would have raised during a backtest.
+ */
+public class BacktestReport {
+
+    private final Map<String, List<BacktestAlert>> alertsByRuleSet = new LinkedHashMap<>();
+
+    BacktestReport(Collection<AlertThresholds> ruleSets) {
+        ruleSets.forEach(ruleSet -> alertsByRuleSet.put(ruleSet.getName(), new ArrayList<>()));
+    }
+
+    void addAll(Collection<BacktestAlert> alerts) {
+        alerts.forEach(alert -> alertsByRuleSet.get(alert.getRuleSet()).add(alert));
+    }
+
+    /**
+     * Sorts the alerts of every rule set by date then sensor, once every sensor has been added.
+     */
+    void sort() {
+        alertsByRuleSet.values().forEach(alerts -> alerts.sort(Comparator.comparing(BacktestAlert::getOpened)
+                .thenComparing(BacktestAlert::getSensorId)));
+    }
+
+    /**
+     * @return The names of the rule sets in the order they were passed to the backtest.
+     */
+    public Collection<String> getRuleSets() {
+        return Collections.unmodifiableSet(alertsByRuleSet.keySet());
+    }
+
+    /**
+     * @param ruleSet The name of the rule set.
+     * @return The alerts the rule set would have raised in date order.
+     */
+    public List<BacktestAlert> getAlerts(String ruleSet) {
+        return Collections.unmodifiableList(alertsByRuleSet.getOrDefault(ruleSet, List.of()));
+    }
+
+    /**
+     * @param ruleSet The name of the rule set.
+     * @return The number of alerts the rule set would have raised of each type.
+     */
+    public Map<Alert.TypeOfAlert, Long> countByType(String ruleSet) {
+        Map<Alert.TypeOfAlert, Long> counts = new EnumMap<>(Alert.TypeOfAlert.class);
+        getAlerts(ruleSet).forEach(alert -> counts.merge(alert.getType(), 1L, Long::sum));
+        return counts;
+    }
+}
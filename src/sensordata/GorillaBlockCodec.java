@@ -0,0 +1,220 @@
+package sensordata;
+
+import java.util.Arrays;
+
+/**
+ * Compresses a block of readings for a single sensor using the delta-of-delta encoding for the dates and the
+ * XOR encoding for the values described in the Facebook Gorilla paper. Hourly and daily averages are evenly spaced
+ * and change slowly, so most readings compress to a couple of bits for the date and a handful for the value.
+ * <p>
+ * Layout: reading count (32 bits), first date (64 bits), first value (64 bits), then one encoded date and value
+ * per remaining reading.
+ */
+public final class GorillaBlockCodec {
+
+    private GorillaBlockCodec() {
+    }
+
+    /**
+     * Encodes the readings, which must be in date order.
+     *
+     * @param series The readings to encode.
+     * @return The compressed block.
+     */
+    public static byte[] encode(SensorSeries series) {
+        BitWriter writer = new BitWriter(series.size() * 2 + 24);
+        writer.write(series.size(), 32);
+        if (series.isEmpty()) {
+            return writer.toByteArray();
+        }
+        long previousTime = series.getTime(0);
+        long previousDelta = 0;
+        long previousBits = Double.doubleToRawLongBits(series.getValue(0));
+        int previousLeading = Integer.MAX_VALUE;
+        int previousTrailing = 0;
+        writer.write(previousTime, 64);
+        writer.write(previousBits, 64);
+
+        for (int i = 1; i < series.size(); i++) {
+            long time = series.getTime(i);
+            long delta = time - previousTime;
+            if (delta < 0) {
+                throw new IllegalArgumentException("Readings must be in date order");
+            }
+            writeDeltaOfDelta(writer, delta - previousDelta);
+            previousDelta = delta;
+            previousTime = time;
+
+            long bits = Double.doubleToRawLongBits(series.getValue(i));
+            long xor = bits ^ previousBits;
+            previousBits = bits;
+            if (xor == 0) {
+                writer.writeBit(false);
+                continue;
+            }
+            writer.writeBit(true);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading != Integer.MAX_VALUE && leading >= previousLeading && trailing >= previousTrailing) {
+                // The meaningful bits fit within the previous window so only they are written.
+                writer.writeBit(false);
+                writer.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                int length = 64 - leading - trailing;
+                writer.writeBit(true);
+                writer.write(leading, 5);
+                writer.write(length - 1, 6);
+                writer.write(xor >>> trailing, length);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes the readings in the block that fall between from and to inclusive and adds them to the passed series.
+     * Decoding stops as soon as a reading after to is found.
+     *
+     * @param block The compressed block.
+     * @param from  The earliest date to include as epoch millis.
+     * @param to    The latest date to include as epoch millis.
+     * @param into  The series to add the readings to.
+     */
+    public static void decode(byte[] block, long from, long to, SensorSeries into) {
+        BitReader reader = new BitReader(block);
+        int count = (int) reader.read(32);
+        if (count == 0) {
+            return;
+        }
+        long time = reader.read(64);
+        long delta = 0;
+        long bits = reader.read(64);
+        int leading = 0;
+        int trailing = 0;
+        addIfInRange(time, bits, from, to, into);
+
+        for (int i = 1; i < count && time <= to; i++) {
+            delta += readDeltaOfDelta(reader);
+            time += delta;
+            if (reader.readBit()) {
+                if (reader.readBit()) {
+                    leading = (int) reader.read(5);
+                    int length = (int) reader.read(6) + 1;
+                    trailing = 64 - leading - length;
+                }
+                bits ^= reader.read(64 - leading - trailing) << trailing;
+            }
+            addIfInRange(time, bits, from, to, into);
+        }
+    }
+
+    /**
+     * @param block The compressed block.
+     * @return All readings in the block.
+     */
+    public static SensorSeries decode(byte[] block) {
+        SensorSeries series = new SensorSeries();
+        decode(block, Long.MIN_VALUE, Long.MAX_VALUE, series);
+        return series;
+    }
+
+    private static void addIfInRange(long time, long bits, long from, long to, SensorSeries into) {
+        if (time >= from && time <= to) {
+            into.add(time, Double.longBitsToDouble(bits));
+        }
+    }
+
+    private static void writeDeltaOfDelta(BitWriter writer, long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writer.writeBit(false);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            writer.write(0b10, 2);
+            writer.write(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            writer.write(0b110, 3);
+            writer.write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            writer.write(0b1110, 4);
+            writer.write(deltaOfDelta, 12);
+        } else {
+            writer.write(0b1111, 4);
+            writer.write(deltaOfDelta, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+        if (!reader.readBit()) {
+            return 0;
+        } else if (!reader.readBit()) {
+            return reader.readSigned(7);
+        } else if (!reader.readBit()) {
+            return reader.readSigned(9);
+        } else if (!reader.readBit()) {
+            return reader.readSigned(12);
+        }
+        return reader.read(64);
+    }
+
+    private static final class BitWriter {
+        private byte[] bytes;
+        private long bitPosition = 0;
+
+        private BitWriter(int initialBytes) {
+            bytes = new byte[initialBytes];
+        }
+
+        void writeBit(boolean bit) {
+            int index = (int) (bitPosition >>> 3);
+            if (index == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            if (bit) {
+                bytes[index] |= (byte) (0x80 >>> (bitPosition & 7));
+            }
+            bitPosition++;
+        }
+
+        /**
+         * Writes the lowest number of bits of the value, most significant first.
+         */
+        void write(long value, int numberOfBits) {
+            for (int i = numberOfBits - 1; i >= 0; i--) {
+                writeBit(((value >>> i) & 1) == 1);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((bitPosition + 7) >>> 3));
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] bytes;
+        private long bitPosition = 0;
+
+        private BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean readBit() {
+            int index = (int) (bitPosition >>> 3);
+            boolean bit = (bytes[index] & (0x80 >>> (bitPosition & 7))) != 0;
+            bitPosition++;
+            return bit;
+        }
+
+        long read(int numberOfBits) {
+            long value = 0;
+            for (int i = 0; i < numberOfBits; i++) {
+                value = (value << 1) | (readBit() ? 1 : 0);
+            }
+            return value;
+        }
+
+        long readSigned(int numberOfBits) {
+            long value = read(numberOfBits);
+            return (value << (64 - numberOfBits)) >> (64 - numberOfBits);
+        }
+    }
+}
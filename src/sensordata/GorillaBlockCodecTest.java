@@ -0,0 +1,57 @@
+package sensordata;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GorillaBlockCodecTest {
+
+    private static final long START = 1_659_312_000_000L;
+    private static final long ONE_HOUR = 3_600_000L;
+
+    @Test
+    void testRoundTrip() {
+        SensorSeries series = new SensorSeries();
+        for (int i = 0; i < 24; i++) {
+            series.add(START + i * ONE_HOUR, 50.0 + (i % 3) * 0.1);
+        }
+        // A missing hour and a repeated value.
+        series.add(START + 26 * ONE_HOUR, 50.2);
+        series.add(START + 27 * ONE_HOUR, -12345.678);
+
+        byte[] block = GorillaBlockCodec.encode(series);
+        SensorSeries decoded = GorillaBlockCodec.decode(block);
+        assertArrayEquals(series.getTimes(), decoded.getTimes());
+        assertArrayEquals(series.getValues(), decoded.getValues());
+
+        // Check the block is smaller than the raw dates and values.
+        assertTrue(block.length < series.size() * 16);
+    }
+
+    @Test
+    void testDecodeRange() {
+        SensorSeries series = new SensorSeries();
+        for (int i = 0; i < 24; i++) {
+            series.add(START + i * ONE_HOUR, i);
+        }
+        byte[] block = GorillaBlockCodec.encode(series);
+
+        // Only the readings between from and to inclusive are added.
+        SensorSeries range = new SensorSeries();
+        GorillaBlockCodec.decode(block, START + 3 * ONE_HOUR, START + 7 * ONE_HOUR, range);
+        assertEquals(5, range.size());
+        assertEquals(3.0, range.getValue(0));
+        assertEquals(START + 7 * ONE_HOUR, range.getTime(4));
+
+        // Check an empty block.
+        assertTrue(GorillaBlockCodec.decode(GorillaBlockCodec.encode(new SensorSeries())).isEmpty());
+    }
+
+    @Test
+    void testReadingsMustBeInOrder() {
+        SensorSeries series = new SensorSeries();
+        series.add(START, 1.0);
+        series.add(START - 1, 1.0);
+        assertThrows(IllegalArgumentException.class, () -> GorillaBlockCodec.encode(series));
+    }
+}
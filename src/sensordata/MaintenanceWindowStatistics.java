@@ -0,0 +1,68 @@
+package sensordata;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Streams the readings for {@link PredictiveMaintenanceAlertGenerator} into the month to date, last month and
+ * rolling one day windows, keeping only a running average for each.
+ */
+public class MaintenanceWindowStatistics implements ReadingConsumer {
+
+    private final Window monthToDate;
+    private final Window lastMonth;
+    private final Window rolling1Day;
+    private long count = 0;
+
+    public MaintenanceWindowStatistics(ZonedDateTime startOfMtd, ZonedDateTime now,
+                                       ZonedDateTime startOfLastMonth, ZonedDateTime endOfLastMonth,
+                                       ZonedDateTime startOfTwentyFourHoursAgo, ZonedDateTime lastChecked) {
+        monthToDate = new Window(startOfMtd, now);
+        lastMonth = new Window(startOfLastMonth, endOfLastMonth);
+        rolling1Day = new Window(startOfTwentyFourHoursAgo, lastChecked);
+    }
+
+    @Override
+    public void accept(long epochMillis, double value) {
+        count++;
+        monthToDate.accept(epochMillis, value);
+        lastMonth.accept(epochMillis, value);
+        rolling1Day.accept(epochMillis, value);
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public double getMtdAvg() {
+        return monthToDate.statistics.getAverage(0);
+    }
+
+    public double getLastMonthAvg() {
+        return lastMonth.statistics.getAverage(0);
+    }
+
+    public double getRolling1DayAvg() {
+        return rolling1Day.statistics.getAverage(0);
+    }
+
+    /**
+     * A window with inclusive bounds, the same as the sub maps used by applyDataAndCreateAlarms.
+     */
+    private static final class Window implements ReadingConsumer {
+        private final long from;
+        private final long to;
+        private final RunningStatistics statistics = new RunningStatistics();
+
+        private Window(ZonedDateTime from, ZonedDateTime to) {
+            this.from = from.toInstant().toEpochMilli();
+            this.to = to.toInstant().toEpochMilli();
+        }
+
+        @Override
+        public void accept(long epochMillis, double value) {
+            if (epochMillis >= from && epochMillis <= to) {
+                statistics.add(value);
+            }
+        }
+    }
+}
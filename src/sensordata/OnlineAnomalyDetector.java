@@ -0,0 +1,127 @@
+package sensordata;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects peak and trough anomalies as each reading arrives rather than on the 15 minute maintenance check, so
+ * short spikes between the sweep samples are not missed. Each sensor keeps an exponentially weighted baseline mean
+ * and variance, and each reading is tested against both an EWMA chart, for sudden spikes, and a two sided CUSUM,
+ * for smaller sustained shifts. Every reading is O(1) and the state is a few doubles per sensor.
+ * <p>
+ * As with checkForAnomalies a reading must also be more than the minimum deviation from the baseline, 20% by
+ * default, so normal noise on a very steady sensor is not reported.
+ */
+@Component
+public class OnlineAnomalyDetector {
+
+    public enum Excursion {
+        NONE,
+        HIGH,
+        LOW
+    }
+
+    private final double baselineWeight;
+    private final double ewmaWeight;
+    private final double ewmaWidth;
+    private final double cusumSlack;
+    private final double cusumLimit;
+    private final double minimumDeviation;
+    private final int warmUpReadings;
+    private final Map<Long, SensorState> states = new ConcurrentHashMap<>();
+
+    /**
+     * @param baselineWeight   The weight of each reading in the baseline mean and variance, smaller is slower.
+     * @param ewmaWeight       The weight of each reading in the EWMA chart, 1 tests each reading on its own.
+     * @param ewmaWidth        The width of the EWMA control limits in standard deviations.
+     * @param cusumSlack       The shift in standard deviations the CUSUM allows before accumulating.
+     * @param cusumLimit       The accumulated standard deviations at which the CUSUM raises.
+     * @param minimumDeviation The fraction of the baseline a reading must also deviate by.
+     * @param warmUpReadings   The number of readings used to learn the baseline before anything is raised.
+     */
+    public OnlineAnomalyDetector(@Value("${anomaly.detector.baseline.weight:0.01}") double baselineWeight,
+                                 @Value("${anomaly.detector.ewma.weight:0.3}") double ewmaWeight,
+                                 @Value("${anomaly.detector.ewma.width:3.0}") double ewmaWidth,
+                                 @Value("${anomaly.detector.cusum.slack:0.5}") double cusumSlack,
+                                 @Value("${anomaly.detector.cusum.limit:5.0}") double cusumLimit,
+                                 @Value("${anomaly.detector.minimum.deviation:0.2}") double minimumDeviation,
+                                 @Value("${anomaly.detector.warm.up.readings:30}") int warmUpReadings) {
+        this.baselineWeight = baselineWeight;
+        this.ewmaWeight = ewmaWeight;
+        this.ewmaWidth = ewmaWidth;
+        this.cusumSlack = cusumSlack;
+        this.cusumLimit = cusumLimit;
+        this.minimumDeviation = minimumDeviation;
+        this.warmUpReadings = warmUpReadings;
+    }
+
+    /**
+     * Tests the reading against the sensor's baseline then adds it to the baseline.
+     *
+     * @param sensorId The sensor the reading is from.
+     * @param value    The reading.
+     * @return HIGH or LOW if the reading is an anomaly, otherwise NONE.
+     */
+    public Excursion accept(Long sensorId, double value) {
+        if (Double.isNaN(value)) {
+            return Excursion.NONE;
+        }
+        SensorState state = states.computeIfAbsent(sensorId, id -> new SensorState());
+        synchronized (state) {
+            return state.accept(value);
+        }
+    }
+
+    /**
+     * Forgets the baseline of the sensor, e.g. after it has been reset or replaced.
+     */
+    public void reset(Long sensorId) {
+        states.remove(sensorId);
+    }
+
+    private final class SensorState {
+        private long count = 0;
+        private double mean = 0;
+        private double variance = 0;
+        private double ewma = 0;
+        private double cusumHigh = 0;
+        private double cusumLow = 0;
+
+        private Excursion accept(double value) {
+            Excursion excursion = count < warmUpReadings ? Excursion.NONE : test(value);
+            count++;
+            // While warming up the weight starts at 1 / count so the baseline is the plain average.
+            double weight = Math.max(baselineWeight, 1.0 / count);
+            double difference = value - mean;
+            double increment = weight * difference;
+            mean += increment;
+            variance = (1 - weight) * (variance + difference * increment);
+            ewma = count == 1 ? value : ewmaWeight * value + (1 - ewmaWeight) * ewma;
+            return excursion;
+        }
+
+        private Excursion test(double value) {
+            // A perfectly steady sensor would otherwise have no deviation at all.
+            double sigma = Math.max(Math.sqrt(variance), Math.abs(mean) * 0.001 + Double.MIN_NORMAL);
+            double z = (value - mean) / sigma;
+            double smoothed = ewmaWeight * value + (1 - ewmaWeight) * ewma;
+            double limit = ewmaWidth * sigma * Math.sqrt(ewmaWeight / (2 - ewmaWeight));
+            cusumHigh = Math.max(0, cusumHigh + z - cusumSlack);
+            cusumLow = Math.max(0, cusumLow - z - cusumSlack);
+            boolean deviates = Math.abs(value - mean) > minimumDeviation * Math.abs(mean);
+
+            if (deviates && value > mean && (smoothed - mean > limit || cusumHigh > cusumLimit)) {
+                cusumHigh = 0;
+                return Excursion.HIGH;
+            }
+            if (deviates && value < mean && (mean - smoothed > limit || cusumLow > cusumLimit)) {
+                cusumLow = 0;
+                return Excursion.LOW;
+            }
+            return Excursion.NONE;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package sensordata;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sensordata.OnlineAnomalyDetector.Excursion.*;
+
+class OnlineAnomalyDetectorTest {
+
+    OnlineAnomalyDetector underTest;
+    Random random;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new OnlineAnomalyDetector(0.01, 0.3, 3.0, 0.5, 5.0, 0.2, 30);
+        random = new Random(3);
+    }
+
+    @Test
+    void testNoiseIsNotAnAnomaly() {
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(NONE, underTest.accept(1L, 100 + random.nextGaussian()));
+        }
+    }
+
+    @Test
+    void testSingleSpikeAndDip() {
+        warmUp(1L);
+        assertEquals(HIGH, underTest.accept(1L, 150));
+        warmUp(1L);
+        assertEquals(LOW, underTest.accept(1L, 50));
+
+        // A deviation within the minimum deviation is not reported however unusual it is.
+        warmUp(1L);
+        assertEquals(NONE, underTest.accept(1L, 115));
+    }
+
+    @Test
+    void testSustainedShiftIsFoundByTheCusum() {
+        // Too small a shift for the EWMA chart, but it keeps accumulating.
+        OnlineAnomalyDetector cusumOnly = new OnlineAnomalyDetector(0.001, 0.3, 1000, 0.5, 5.0, 0.2, 30);
+        for (int i = 0; i < 1000; i++) {
+            cusumOnly.accept(1L, 100 + random.nextGaussian() * 20);
+        }
+        OnlineAnomalyDetector.Excursion excursion = NONE;
+        for (int i = 0; i < 50 && excursion == NONE; i++) {
+            excursion = cusumOnly.accept(1L, 125 + random.nextGaussian());
+        }
+        assertEquals(HIGH, excursion);
+    }
+
+    @Test
+    void testWarmUpAndReset() {
+        // Nothing is raised until the baseline has been learnt.
+        for (int i = 0; i < 29; i++) {
+            assertEquals(NONE, underTest.accept(2L, i % 2 == 0 ? 100 : 1000));
+        }
+        warmUp(2L);
+        underTest.reset(2L);
+        assertEquals(NONE, underTest.accept(2L, 1000));
+        assertEquals(NONE, underTest.accept(2L, Double.NaN));
+    }
+
+    private void warmUp(Long sensorId) {
+        for (int i = 0; i < 200; i++) {
+            underTest.accept(sensorId, 100 + random.nextGaussian());
+        }
+    }
+}
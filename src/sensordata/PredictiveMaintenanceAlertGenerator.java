@@ -2,6 +2,7 @@ package sensordata;
 
 import lombok.Getter;
 import org.springframework.context.ApplicationEventPublisher;
+import springhibernate.AlertMailer;
 import uk.co.dhl.smas.backend.alert.Alert;
 import uk.co.dhl.smas.backend.alert.AlertService;
 import uk.co.dhl.smas.backend.condition.AnalogSensor;
@@ -30,10 +31,26 @@ public class PredictiveMaintenanceAlertGenerator implements PermissionChecker, F
     private static final double FOUR = 4.0;
     private static final double TWO = 2.0;
     private static final int COUNTER_RESET = 0;
+
+    /**
+     * The thresholds the alerts have always been raised with.
+     */
+    public static final AlertThresholds DEFAULT_THRESHOLDS = AlertThresholds.builder()
+            .name("default")
+            .meanFive(FIVE_PERCENT)
+            .meanThree(THREE_PERCENT)
+            .meanOne(ONE_PERCENT)
+            .anomaly(TWENTY_PERCENT)
+            .fourPeaks(FOUR)
+            .twoPeaks(TWO)
+            .build();
+
+    private final AlertThresholds thresholds;
     private final AlertService alertService;
     private final UserDetailsServiceImpl userService;
     private final AnalogSensorService analogSensorService;
     private final ApplicationEventPublisher ape;
+    private final AlertMailer alertMailer;
     private AnalogSensor sensor;
     @Getter
     private TreeMap<ZonedDateTime, Double> sensorData;
@@ -56,11 +73,24 @@ public class PredictiveMaintenanceAlertGenerator implements PermissionChecker, F
      * <a href="https://www.dropbox.com/scl/fi/pi68otkdnen2lu5eedjnt/MaintenanceView-Alarms.pptx?dl=0&rlkey=udoam8x46zhum6e1xh044uah8">https://www.dropbox.com/scl/fi/pi68otkdnen2lu5eedjnt/MaintenanceView-Alarms.pptx?dl=0&rlkey=udoam8x46zhum6e1xh044uah8</a>
      */
     public PredictiveMaintenanceAlertGenerator(AlertService alertService, UserDetailsServiceImpl userService,
-                                               AnalogSensorService analogSensorService, ApplicationEventPublisher ape) {
+                                               AnalogSensorService analogSensorService, ApplicationEventPublisher ape,
+                                               AlertMailer alertMailer) {
+        this(alertService, userService, analogSensorService, ape, alertMailer, DEFAULT_THRESHOLDS);
+    }
+
+    /**
+     * Creates a generator that raises alerts using different thresholds, see {@link PredictiveMaintenanceBacktester}.
+     */
+    protected PredictiveMaintenanceAlertGenerator(AlertService alertService, UserDetailsServiceImpl userService,
+                                                  AnalogSensorService analogSensorService,
+                                                  ApplicationEventPublisher ape, AlertMailer alertMailer,
+                                                  AlertThresholds thresholds) {
+        this.thresholds = thresholds;
         this.alertService = alertService;
         this.userService = userService;
         this.analogSensorService = analogSensorService;
         this.ape = ape;
+        this.alertMailer = alertMailer;
         sensorData = new TreeMap<>();
     }
 
@@ -91,29 +121,76 @@ public class PredictiveMaintenanceAlertGenerator implements PermissionChecker, F
             rolling1DayAvg = rolling1Day.values().stream().mapToDouble(Number::doubleValue).average().orElse(0);
 
             //Check all conditions with the extracted data.
-            checkMean();
-            checkPeaksAndTroughs();
-            checkFrequencyOfPeaksAndTroughs();
-            checkForAnomalies();
+            checkAllConditions();
         } else {
             log.info("sensor data map was empty in Predictive Maintenance Calculator");
         }
     }
 
+    /**
+     * Creates the windows to stream a sensors readings into, see StreamingSensorDataSource.
+     *
+     * @return Running averages for the month to date, last month and rolling 1 day windows.
+     */
+    public MaintenanceWindowStatistics newWindowStatistics() {
+        return new MaintenanceWindowStatistics(startOfMtd(), now(), startOfLastMonth(), endOfLastMonth(),
+                startOfTwentyFourHoursAgo(), lastCheckedForMaintenanceAlerts());
+    }
+
+    /**
+     * The same as applyDataAndCreateAlarms but uses averages that have already been streamed from the database,
+     * so the readings are never held in memory.
+     *
+     * @param statistics   The averages for each window.
+     * @param analogSensor The sensor this data is related to.
+     */
+    public void applyStatisticsAndCreateAlarms(MaintenanceWindowStatistics statistics, AnalogSensor analogSensor) {
+        if (!statistics.isEmpty()) {
+            applyAveragesAndCreateAlarms(statistics.getMtdAvg(), statistics.getLastMonthAvg(),
+                    statistics.getRolling1DayAvg(), analogSensor);
+        } else {
+            log.info("sensor data stream was empty in Predictive Maintenance Calculator");
+        }
+    }
+
+    /**
+     * Checks all conditions with averages that have already been calculated.
+     *
+     * @param mtdAvg         The month to date average.
+     * @param lastMonthAvg   The last month average.
+     * @param rolling1DayAvg The rolling one day average.
+     * @param analogSensor   The sensor this data is related to.
+     */
+    void applyAveragesAndCreateAlarms(double mtdAvg, double lastMonthAvg, double rolling1DayAvg,
+                                      AnalogSensor analogSensor) {
+        sensor = analogSensor;
+        this.mtdAvg = mtdAvg;
+        this.lastMonthAvg = lastMonthAvg;
+        this.rolling1DayAvg = rolling1DayAvg;
+        checkAllConditions();
+    }
+
+    private void checkAllConditions() {
+        checkMean();
+        checkPeaksAndTroughs();
+        checkFrequencyOfPeaksAndTroughs();
+        checkForAnomalies();
+    }
+
     /**
      * Check how much the MTD mean has deviated by compared to last month.
      */
     public void checkMean() {
         //If the Mean has deviated by >5% or <5% alert the user.
-        if (isOutsideOfPercentage(mtdAvg, lastMonthAvg, FIVE_PERCENT)) {
+        if (isOutsideOfPercentage(mtdAvg, lastMonthAvg, thresholds.getMeanFive())) {
             checkAndCreateAlert(Alert.TypeOfAlert.MEAN_FIVE_PERCENT, startOfMtd(), getCalculatedPercentageDifference(mtdAvg, lastMonthAvg));
         }
         //If the Mean has deviated by >3% or <3% alert the user.
-        else if (isOutsideOfPercentage(mtdAvg, lastMonthAvg, THREE_PERCENT)) {
+        else if (isOutsideOfPercentage(mtdAvg, lastMonthAvg, thresholds.getMeanThree())) {
             checkAndCreateAlert(Alert.TypeOfAlert.MEAN_THREE_PERCENT, startOfMtd(), getCalculatedPercentageDifference(mtdAvg, lastMonthAvg));
         }
         //If the Mean has deviated by >1% or <1% alert the user.
-        else if (isOutsideOfPercentage(mtdAvg, lastMonthAvg, ONE_PERCENT)) {
+        else if (isOutsideOfPercentage(mtdAvg, lastMonthAvg, thresholds.getMeanOne())) {
             checkAndCreateAlert(MEAN_ONE_PERCENT, startOfMtd(), getCalculatedPercentageDifference(mtdAvg, lastMonthAvg));
         }
     }
@@ -148,13 +225,13 @@ public class PredictiveMaintenanceAlertGenerator implements PermissionChecker, F
         //Check for new peaks
         if (sensor.getTimeDateHigh().isAfter(lastCheckedForMaintenanceAlerts())) {
             checkAndCreateAlert(Alert.TypeOfAlert.NEW_PEAK, null, sensor.getHighestValue());
-            analogSensorService.updateSensorPeakCounter(sensor, sensor.getPeakCounter() + 1);
+            updatePeakCounter(sensor, sensor.getPeakCounter() + 1);
         }
 
         //Check for new troughs
         if (sensor.getTimeDateLow().isAfter(lastCheckedForMaintenanceAlerts())) {
             checkAndCreateAlert(Alert.TypeOfAlert.NEW_TROUGH, null, sensor.getLowestValue());
-            analogSensorService.updateSensorTroughCounter(sensor, sensor.getTroughCounter() + 1);
+            updateTroughCounter(sensor, sensor.getTroughCounter() + 1);
         }
     }
 
@@ -165,10 +242,10 @@ public class PredictiveMaintenanceAlertGenerator implements PermissionChecker, F
         //Check for multiple peaks. If the peak counter is 2 then we should create a TWO_PEAK alert
         //but only if a FOUR_PEAK alert has been created since the last TWO_PEAK alert because the
         //counter will have been reset.
-        if (sensor.getPeakCounter() >= FOUR) {
+        if (sensor.getPeakCounter() >= thresholds.getFourPeaks()) {
             checkAndCreateAlert(Alert.TypeOfAlert.FOUR_PEAKS, null, sensor.getPeakCounter());
-            analogSensorService.updateSensorPeakCounter(sensor, COUNTER_RESET);
-        } else if (sensor.getPeakCounter() >= TWO && getLastAlertForThisType(sensor, Alert.TypeOfAlert.FOUR_PEAKS)
+            updatePeakCounter(sensor, COUNTER_RESET);
+        } else if (sensor.getPeakCounter() >= thresholds.getTwoPeaks() && getLastAlertForThisType(sensor, Alert.TypeOfAlert.FOUR_PEAKS)
                 .isAfter(getLastAlertForThisType(sensor, Alert.TypeOfAlert.TWO_PEAKS))) {
             checkAndCreateAlert(Alert.TypeOfAlert.TWO_PEAKS, null, sensor.getPeakCounter());
         }
@@ -176,10 +253,10 @@ public class PredictiveMaintenanceAlertGenerator implements PermissionChecker, F
         //Check for multiple troughs. If the trough counter is 2 then we should create a TWO_TROUGHS alert
         //but only if a FOUR_TROUGHS alert has been created since the last TWO_TROUGHS alert because the
         //counter will have been reset.
-        if (sensor.getTroughCounter() >= FOUR) {
+        if (sensor.getTroughCounter() >= thresholds.getFourPeaks()) {
             checkAndCreateAlert(Alert.TypeOfAlert.FOUR_TROUGHS, null, sensor.getTroughCounter());
-            analogSensorService.updateSensorTroughCounter(sensor, COUNTER_RESET);
-        } else if (sensor.getTroughCounter() >= TWO && getLastAlertForThisType(sensor, Alert.TypeOfAlert.FOUR_TROUGHS)
+            updateTroughCounter(sensor, COUNTER_RESET);
+        } else if (sensor.getTroughCounter() >= thresholds.getTwoPeaks() && getLastAlertForThisType(sensor, Alert.TypeOfAlert.FOUR_TROUGHS)
                 .isAfter(getLastAlertForThisType(sensor, Alert.TypeOfAlert.TWO_TROUGHS))) {
             checkAndCreateAlert(Alert.TypeOfAlert.TWO_TROUGHS, null, sensor.getTroughCounter());
         }
@@ -192,13 +269,13 @@ public class PredictiveMaintenanceAlertGenerator implements PermissionChecker, F
     public void checkForAnomalies() {
         //Check for peak anomaly's
         if (sensor.getTimeDateHigh().isAfter(lastCheckedForMaintenanceAlerts()) &&
-                sensor.getHighestValue() > rolling1DayAvg + (rolling1DayAvg * TWENTY_PERCENT)) {
+                sensor.getHighestValue() > rolling1DayAvg + (rolling1DayAvg * thresholds.getAnomaly())) {
             checkAndCreateAlert(Alert.TypeOfAlert.PEAK_ANOMALY, startOfTwentyFourHoursAgo(), sensor.getHighestValue());
         }
 
         //Check for trough anomaly's
         if (sensor.getTimeDateLow().isAfter(lastCheckedForMaintenanceAlerts()) &&
-                sensor.getLowestValue() < rolling1DayAvg - (rolling1DayAvg * TWENTY_PERCENT)) {
+                sensor.getLowestValue() < rolling1DayAvg - (rolling1DayAvg * thresholds.getAnomaly())) {
             checkAndCreateAlert(Alert.TypeOfAlert.TROUGH_ANOMALY, startOfTwentyFourHoursAgo(), sensor.getLowestValue());
         }
     }
@@ -214,21 +291,87 @@ public class PredictiveMaintenanceAlertGenerator implements PermissionChecker, F
         noAlertsAfter = noAlertsAfter == null? now() : noAlertsAfter;
         ZonedDateTime lastAlertForThisType = getLastAlertForThisType(sensor, alertType);
 
-        if (lastAlertForThisType.isBefore(noAlertsAfter) && sensor.isAlertsEnabled() &&
-                sensor.getMachine().isRunningStatusGreen()) {
-            Alert alert = Alert.builder()
-                    .opened(now())
-                    .machine(sensor.getMachine())
-                    .sensor(sensor)
-                    .user(userService.defaultUserForAlerts())
-                    .type(alertType.type)
-                    .alertMetricValue(getFormattedValue(alertType, alertValue))
-                    .build();
+        if (lastAlertForThisType.isBefore(noAlertsAfter) && isAlertable(sensor)) {
+            createAlert(sensor, alertType, getFormattedValue(alertType, alertValue));
+        }
+    }
+
+    /**
+     * Raises the alert for a rule matched by {@link AlertRuleEngine}, de-duplicated the same as the built in alerts.
+     *
+     * @param match The sensor and the rule it matched.
+     */
+    public void checkAndCreateAlert(AlertRuleMatch match) {
+        switch (match.getRule().getAlertsAfter()) {
+            case START_OF_MONTH:
+                checkAndCreateAlert(match.getSensor(), match.getRule().getAlertType(), startOfMtd(),
+                        match.getAlertValue());
+                break;
+            case TWENTY_FOUR_HOURS:
+                checkAndCreateAlert(match.getSensor(), match.getRule().getAlertType(), startOfTwentyFourHoursAgo(),
+                        match.getAlertValue());
+                break;
+            default:
+                checkAndCreateAlert(match.getSensor(), match.getRule().getAlertType(), null, match.getAlertValue());
+        }
+    }
+
+    /**
+     * The same as checkAndCreateAlert for an alert found outside of applyDataAndCreateAlarms.
+     *
+     * @param analogSensor  The sensor the alert is for.
+     * @param alertType     The alert to be created
+     * @param noAlertsAfter The period in which we dont want this alert to be created again.
+     * @param alertValue    The value of the alert.
+     */
+    public synchronized void checkAndCreateAlert(AnalogSensor analogSensor, Alert.TypeOfAlert alertType,
+                                                 ZonedDateTime noAlertsAfter, double alertValue) {
+        sensor = analogSensor;
+        checkAndCreateAlert(alertType, noAlertsAfter, alertValue);
+    }
+
+    /**
+     * @param sensor The sensor to check.
+     * @return True if alerts are enabled for the sensor and its machine is running.
+     */
+    protected boolean isAlertable(AnalogSensor sensor) {
+        return sensor.isAlertsEnabled() && sensor.getMachine().isRunningStatusGreen();
+    }
+
+    /**
+     * Saves and emails the alert then posts it via the RestAPI. The recipients are found by the {@link AlertMailer}
+     * when there is one.
+     *
+     * @param sensor           The sensor the alert is for.
+     * @param alertType        The alert to be created.
+     * @param alertMetricValue The formatted value of the alert.
+     */
+    protected void createAlert(AnalogSensor sensor, Alert.TypeOfAlert alertType, String alertMetricValue) {
+        Alert alert = Alert.builder()
+                .opened(now())
+                .machine(sensor.getMachine())
+                .sensor(sensor)
+                .user(userService.defaultUserForAlerts())
+                .type(alertType.type)
+                .alertMetricValue(alertMetricValue)
+                .build();
+        if (alertMailer != null) {
+            alertService.save(alert);
+            alertMailer.send(alert);
+        } else {
             alertService.saveAndEmail(alert);
-            if(ape != null) {
-                ape.publishEvent(new PostAlertEvent(this, alert));
-            }
         }
+        if(ape != null) {
+            ape.publishEvent(new PostAlertEvent(this, alert));
+        }
+    }
+
+    protected void updatePeakCounter(AnalogSensor sensor, int peakCounter) {
+        analogSensorService.updateSensorPeakCounter(sensor, peakCounter);
+    }
+
+    protected void updateTroughCounter(AnalogSensor sensor, int troughCounter) {
+        analogSensorService.updateSensorTroughCounter(sensor, troughCounter);
     }
 
     /**
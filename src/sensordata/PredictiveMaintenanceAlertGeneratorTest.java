@@ -104,6 +104,26 @@ class PredictiveMaintenanceAlertGeneratorTest implements FormattedZoneDateTimes
         assertEquals(startOfToday.plusHours(3L), spy.getRolling1Day().lastKey());
     }
 
+    @Test
+    void testStreamedStatisticsMatchTheDataMap() {
+        doReturn(ZonedDateTime.now().minusMonths(2L)).when(spy)
+                .getLastAlertForThisType(any(), any());
+        TreeMap<ZonedDateTime, Double> data = getGreaterThanFivePercentDeviationTestData();
+        spy.applyDataAndCreateAlarms(data, analogSensor);
+        double mtdAvg = spy.getMtdAvg();
+        double lastMonthAvg = spy.getLastMonthAvg();
+        double rolling1DayAvg = spy.getRolling1DayAvg();
+
+        //Stream the same data through the windows and check the averages and alerts match.
+        MaintenanceWindowStatistics statistics = spy.newWindowStatistics();
+        data.forEach((date, value) -> statistics.accept(date.toInstant().toEpochMilli(), value));
+        spy.applyStatisticsAndCreateAlarms(statistics, analogSensor);
+        assertEquals(mtdAvg, spy.getMtdAvg(), 0.000001);
+        assertEquals(lastMonthAvg, spy.getLastMonthAvg(), 0.000001);
+        assertEquals(rolling1DayAvg, spy.getRolling1DayAvg(), 0.000001);
+        verify(spy, times(2)).checkAndCreateAlert(Alert.TypeOfAlert.MEAN_FIVE_PERCENT, startOfMtd, 6);
+    }
+
     @Test
     void testMean() {
         //MEAN
@@ -0,0 +1,76 @@
+package sensordata;
+
+import org.springframework.stereotype.Component;
+import springasyncthreads.SensorSweepExecutor;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static springasyncthreads.SensorSweepExecutor.Resource.HISTORIAN;
+
+/**
+ * Shows how the predictive maintenance alerts would have behaved over a past period with different thresholds,
+ * without waiting for them to happen. The stored readings are replayed through {@link PredictiveMaintenanceAlertGenerator}
+ * on a simulated clock, checking every 15 minutes as the scheduled check does, and the alerts are reported rather
+ * than saved or emailed.
+ * <p>
+ * Each sensor's history is read once and replayed for every rule set, and the sensors are backtested in parallel
+ * on the sweep executor, with the historian reads limited by its permits.
+ */
+@Component
+public class PredictiveMaintenanceBacktester {
+
+    private static final Logger log = Logger.getLogger(PredictiveMaintenanceBacktester.class.getSimpleName());
+
+    /**
+     * The same interval as ScheduledSensorService.checkForMaintenance.
+     */
+    static final Duration CHECK_INTERVAL = Duration.ofMinutes(15);
+
+    private final SensorSweepExecutor sweepExecutor;
+
+    public PredictiveMaintenanceBacktester(SensorSweepExecutor sweepExecutor) {
+        this.sweepExecutor = sweepExecutor;
+    }
+
+    /**
+     * @param sensors  The sensors to backtest.
+     * @param from     The start of the backtest.
+     * @param to       The end of the backtest.
+     * @param history  Where the readings are read from, the month before from is also read to fill the averages.
+     * @param ruleSets The thresholds to compare, normally including DEFAULT_THRESHOLDS. The names must be unique.
+     * @return The alerts each rule set would have raised.
+     */
+    public BacktestReport run(Collection<AnalogSensor> sensors, ZonedDateTime from, ZonedDateTime to,
+                              StreamingSensorDataSource history, List<AlertThresholds> ruleSets) {
+        long start = System.currentTimeMillis();
+        BacktestReport report = new BacktestReport(ruleSets);
+        sweepExecutor.invokeForEach(sensors, sensor -> backtest(sensor, from, to, history, ruleSets))
+                .forEach(report::addAll);
+        report.sort();
+        log.info("Backtested " + sensors.size() + " sensors with " + ruleSets.size() + " rule sets in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return report;
+    }
+
+    private List<BacktestAlert> backtest(AnalogSensor sensor, ZonedDateTime from, ZonedDateTime to,
+                                         StreamingSensorDataSource history, List<AlertThresholds> ruleSets) {
+        ZonedDateTime startOfLastMonth = from.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).minusMonths(1L);
+        SensorSeries series = new SensorSeries(8192);
+        sweepExecutor.withPermit(HISTORIAN, () -> {
+            history.streamValuesBetweenFromAndTo(sensor, startOfLastMonth, to, series::add);
+            return null;
+        });
+        List<BacktestAlert> alerts = new ArrayList<>();
+        for (AlertThresholds ruleSet : ruleSets) {
+            alerts.addAll(new BacktestAlertGenerator(ruleSet, sensor, series).replay(from, to, CHECK_INTERVAL));
+        }
+        return alerts;
+    }
+}
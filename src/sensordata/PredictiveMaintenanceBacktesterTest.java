@@ -0,0 +1,79 @@
+package sensordata;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import springasyncthreads.SensorSweepExecutor;
+import uk.co.dhl.smas.backend.alert.Alert;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.backend.machine.Machine;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+class PredictiveMaintenanceBacktesterTest {
+
+    private final ZonedDateTime startOfFebruary = ZonedDateTime.of(2024, 2, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private final ZonedDateTime startOfMarch = startOfFebruary.plusMonths(1L);
+    private final SensorSweepExecutor sweepExecutor = new SensorSweepExecutor(false, 2, 2, 2);
+    private PredictiveMaintenanceBacktester underTest;
+    private AnalogSensor analogSensor;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new PredictiveMaintenanceBacktester(sweepExecutor);
+        analogSensor = spy(AnalogSensor.builder().machine(Machine.builder().build()).unitOfMeasure("A").build());
+        analogSensor.setId(1L);
+        doReturn(true).when(analogSensor).isAlertsEnabled();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sweepExecutor.shutdown();
+    }
+
+    @Test
+    void testRuleSetsAreComparedOnTheSameHistory() {
+        // Hourly readings of 10 through February then 11 through March, a 10% rise in the mean.
+        StreamingSensorDataSource history = (sensor, from, to, consumer) -> {
+            for (ZonedDateTime time = from; !time.isAfter(to); time = time.plusHours(1L)) {
+                consumer.accept(time.toInstant().toEpochMilli(), time.isBefore(startOfMarch) ? 10 : 11);
+            }
+        };
+        AlertThresholds relaxed = PredictiveMaintenanceAlertGenerator.DEFAULT_THRESHOLDS.toBuilder()
+                .name("relaxed")
+                .meanFive(0.15)
+                .build();
+
+        BacktestReport report = underTest.run(List.of(analogSensor), startOfMarch, startOfMarch.plusDays(10L),
+                history, List.of(PredictiveMaintenanceAlertGenerator.DEFAULT_THRESHOLDS, relaxed));
+
+        assertEquals(List.of("default", "relaxed"), List.copyOf(report.getRuleSets()));
+
+        // The mean alert is only raised once a month, the single new peak is the first reading of 11.
+        Map<Alert.TypeOfAlert, Long> defaults = report.countByType("default");
+        assertEquals(Map.of(Alert.TypeOfAlert.MEAN_FIVE_PERCENT, 1L, Alert.TypeOfAlert.NEW_PEAK, 1L), defaults);
+        BacktestAlert mean = report.getAlerts("default").get(0);
+        assertEquals(startOfMarch, mean.getOpened());
+        assertEquals(1L, mean.getSensorId());
+        assertEquals("10.0 %", mean.getAlertMetricValue());
+
+        // Relaxing the 5% threshold drops the alert to the 3% level.
+        Map<Alert.TypeOfAlert, Long> relaxedCounts = report.countByType("relaxed");
+        assertEquals(Map.of(Alert.TypeOfAlert.MEAN_THREE_PERCENT, 1L, Alert.TypeOfAlert.NEW_PEAK, 1L), relaxedCounts);
+    }
+
+    @Test
+    void testNoHistoryRaisesNoAlerts() {
+        BacktestReport report = underTest.run(List.of(analogSensor), startOfMarch, startOfMarch.plusDays(1L),
+                (sensor, from, to, consumer) -> { }, List.of(PredictiveMaintenanceAlertGenerator.DEFAULT_THRESHOLDS));
+
+        assertTrue(report.getAlerts("default").isEmpty());
+    }
+}
@@ -0,0 +1,235 @@
+package sensordata;
+
+import java.util.Arrays;
+
+/**
+ * A merging t-digest, estimates any quantile of the readings streamed in using a fixed number of centroids however
+ * many readings there are. Centroids are kept small near the tails so p1 and p99 stay accurate while the middle of
+ * the distribution is summarised more coarsely. Two sketches can be merged, so hourly sketches can be combined into
+ * daily and 30 day views without re-reading the readings.
+ * <p>
+ * Not thread safe, see {@link SensorQuantileSketches}.
+ */
+public class QuantileSketch implements ReadingConsumer {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+    private final int capacity;
+    private double[] means;
+    private double[] weights;
+    private int centroids = 0;
+    private double centroidWeight = 0;
+
+    // Readings are buffered and merged into the centroids in batches, allocated on the first reading.
+    private double[] buffer;
+    private int buffered = 0;
+
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public QuantileSketch() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression Roughly the number of centroids kept, higher is more accurate but uses more memory.
+     */
+    public QuantileSketch(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("The compression must be at least 10 but was " + compression);
+        }
+        this.compression = compression;
+        capacity = (int) Math.ceil(compression) + 10;
+        means = new double[capacity];
+        weights = new double[capacity];
+    }
+
+    @Override
+    public void accept(long epochMillis, double value) {
+        add(value);
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        min = getCount() == 0 || value < min ? value : min;
+        max = getCount() == 0 || value > max ? value : max;
+        if (buffer == null) {
+            buffer = new double[capacity * 4];
+        }
+        buffer[buffered++] = value;
+        if (buffered == buffer.length) {
+            compress();
+        }
+    }
+
+    /**
+     * Adds all the readings summarised by another sketch, the other sketch is not changed.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.getCount() == 0) {
+            return;
+        }
+        other.compress();
+        compress();
+        min = getCount() == 0 || other.min < min ? other.min : min;
+        max = getCount() == 0 || other.max > max ? other.max : max;
+        mergeCentroids(other.means, other.weights, other.centroids, other.centroidWeight);
+    }
+
+    /**
+     * @return The number of readings added.
+     */
+    public long getCount() {
+        return Math.round(centroidWeight) + buffered;
+    }
+
+    /**
+     * @param q The quantile between 0 and 1, e.g. 0.99 for p99.
+     * @return The estimated value at the quantile, or NaN if there were no readings.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("The quantile must be between 0 and 1 but was " + q);
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1 || q == 0) {
+            return q == 1 ? max : centroids == 1 ? means[0] : min;
+        }
+        double index = q * centroidWeight;
+        // Between the min and the centre of the first centroid.
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double weightSoFar = weights[0] / 2;
+        for (int i = 0; i < centroids - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2;
+            if (weightSoFar + gap > index) {
+                return means[i] + (means[i + 1] - means[i]) * (index - weightSoFar) / gap;
+            }
+            weightSoFar += gap;
+        }
+        // Between the centre of the last centroid and the max.
+        int last = centroids - 1;
+        return means[last] + (max - means[last]) * Math.min(1, (index - weightSoFar) / (weights[last] / 2));
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return A copy with the same readings, which can be merged into without changing this sketch.
+     */
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(compression);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Merges any buffered readings and releases the spare memory, for sketches that are only read or merged
+     * from now on. Readings can still be added afterwards.
+     */
+    public void trim() {
+        compress();
+        buffer = null;
+        means = Arrays.copyOf(means, centroids);
+        weights = Arrays.copyOf(weights, centroids);
+    }
+
+    public void clear() {
+        centroids = 0;
+        centroidWeight = 0;
+        buffered = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        double[] ones = new double[buffered];
+        Arrays.fill(ones, 1);
+        int count = buffered;
+        buffered = 0;
+        mergeCentroids(buffer, ones, count, count);
+    }
+
+    /**
+     * Merges sorted centroids into these centroids, combining neighbours while the combined centroid stays within
+     * the size allowed at its position by the scale function.
+     */
+    private void mergeCentroids(double[] otherMeans, double[] otherWeights, int otherCount, double otherWeight) {
+        double total = centroidWeight + otherWeight;
+        double[] newMeans = new double[capacity];
+        double[] newWeights = new double[capacity];
+        int size = 0;
+
+        int i = 0;
+        int j = 0;
+        double mean = 0;
+        double weight = 0;
+        double weightSoFar = 0;
+        double kLeft = scale(0);
+        while (i < centroids || j < otherCount) {
+            double nextMean;
+            double nextWeight;
+            if (j == otherCount || (i < centroids && means[i] <= otherMeans[j])) {
+                nextMean = means[i];
+                nextWeight = weights[i++];
+            } else {
+                nextMean = otherMeans[j];
+                nextWeight = otherWeights[j++];
+            }
+            if (weight == 0) {
+                mean = nextMean;
+                weight = nextWeight;
+            } else if (scale((weightSoFar + weight + nextWeight) / total) - kLeft <= 1) {
+                weight += nextWeight;
+                mean += (nextMean - mean) * nextWeight / weight;
+            } else {
+                if (size == newMeans.length) {
+                    newMeans = Arrays.copyOf(newMeans, size * 2);
+                    newWeights = Arrays.copyOf(newWeights, size * 2);
+                }
+                newMeans[size] = mean;
+                newWeights[size++] = weight;
+                weightSoFar += weight;
+                kLeft = scale(weightSoFar / total);
+                mean = nextMean;
+                weight = nextWeight;
+            }
+        }
+        if (weight > 0) {
+            if (size == newMeans.length) {
+                newMeans = Arrays.copyOf(newMeans, size * 2);
+                newWeights = Arrays.copyOf(newWeights, size * 2);
+            }
+            newMeans[size] = mean;
+            newWeights[size++] = weight;
+        }
+        means = newMeans;
+        weights = newWeights;
+        centroids = size;
+        centroidWeight = total;
+    }
+
+    /**
+     * The k1 scale function, it is steep near 0 and 1 so the centroids at the tails hold few readings.
+     */
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+    }
+}
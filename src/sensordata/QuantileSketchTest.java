@@ -0,0 +1,67 @@
+package sensordata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+
+    @Test
+    void testQuantilesOfANormalDistribution() {
+        Random random = new Random(1);
+        double[] values = new double[100_000];
+        QuantileSketch underTest = new QuantileSketch();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 10 + 50;
+            underTest.add(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, underTest.getCount());
+        assertEquals(values[0], underTest.quantile(0));
+        assertEquals(values[values.length - 1], underTest.quantile(1));
+        for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.99}) {
+            assertEquals(values[(int) (q * values.length)], underTest.quantile(q), 0.3, "p" + q);
+        }
+    }
+
+    @Test
+    void testMergedSketchesMatchASingleSketch() {
+        Random random = new Random(2);
+        QuantileSketch all = new QuantileSketch();
+        QuantileSketch[] hours = new QuantileSketch[24];
+        for (int hour = 0; hour < hours.length; hour++) {
+            hours[hour] = new QuantileSketch();
+            for (int i = 0; i < 1000; i++) {
+                double value = random.nextDouble() * 100;
+                all.add(value);
+                hours[hour].add(value);
+            }
+            hours[hour].trim();
+        }
+        QuantileSketch day = new QuantileSketch();
+        for (QuantileSketch hour : hours) {
+            day.merge(hour);
+        }
+        assertEquals(all.getCount(), day.getCount());
+        for (double q : new double[]{0.01, 0.5, 0.99}) {
+            assertEquals(all.quantile(q), day.quantile(q), 0.5, "p" + q);
+        }
+        // The merged sketches are unchanged.
+        assertEquals(1000, hours[0].getCount());
+    }
+
+    @Test
+    void testEmptyAndSingleReading() {
+        QuantileSketch underTest = new QuantileSketch();
+        assertTrue(Double.isNaN(underTest.quantile(0.5)));
+        underTest.add(Double.NaN);
+        assertEquals(0, underTest.getCount());
+        underTest.add(3);
+        assertEquals(3, underTest.quantile(0.01));
+        assertEquals(3, underTest.quantile(0.99));
+        assertThrows(IllegalArgumentException.class, () -> underTest.quantile(1.5));
+    }
+}
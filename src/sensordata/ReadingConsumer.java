@@ -0,0 +1,15 @@
+package sensordata;
+
+/**
+ * Receives sensor readings one at a time in date order as primitives, so a window of readings can be processed
+ * without building a {@code TreeMap<ZonedDateTime, Double>} of the whole window.
+ */
+@FunctionalInterface
+public interface ReadingConsumer {
+
+    /**
+     * @param epochMillis The date of the reading.
+     * @param value       The value of the reading.
+     */
+    void accept(long epochMillis, double value);
+}
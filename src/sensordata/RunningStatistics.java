@@ -0,0 +1,61 @@
+package sensordata;
+
+/**
+ * Calculates the average, standard deviation, min and max of readings as they are streamed in using Welford's
+ * method, so the statistics for any length of window are calculated in constant memory.
+ */
+public class RunningStatistics implements ReadingConsumer {
+
+    private long count = 0;
+    private double mean = 0;
+    private double sumOfSquaredDifferences = 0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    @Override
+    public void accept(long epochMillis, double value) {
+        add(value);
+    }
+
+    public void add(double value) {
+        count++;
+        double difference = value - mean;
+        mean += difference / count;
+        sumOfSquaredDifferences += difference * (value - mean);
+        min = count == 1 || value < min ? value : min;
+        max = count == 1 || value > max ? value : max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param orElse The value to return if there were no readings.
+     * @return The average of the readings.
+     */
+    public double getAverage(double orElse) {
+        return count == 0 ? orElse : mean;
+    }
+
+    /**
+     * @return The population standard deviation of the readings, the same as SmasMaths.SD, or 0 if there were none.
+     */
+    public double getStandardDeviation() {
+        return count == 0 ? 0 : Math.sqrt(sumOfSquaredDifferences / count);
+    }
+
+    /**
+     * @return The lowest reading, or NaN if there were none.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return The highest reading, or NaN if there were none.
+     */
+    public double getMax() {
+        return max;
+    }
+}
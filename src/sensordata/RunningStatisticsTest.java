@@ -0,0 +1,26 @@
+package sensordata;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunningStatisticsTest {
+
+    @Test
+    void testAverageAndStandardDeviation() {
+        RunningStatistics underTest = new RunningStatistics();
+
+        // Check no readings are handled correctly.
+        assertEquals(0, underTest.getCount());
+        assertTrue(Double.isNaN(underTest.getAverage(Double.NaN)));
+        assertEquals(0, underTest.getStandardDeviation());
+
+        double[] values = {2, 4, 4, 4, 5, 5, 7, 9};
+        for (int i = 0; i < values.length; i++) {
+            underTest.accept(i, values[i]);
+        }
+        assertEquals(8, underTest.getCount());
+        assertEquals(5.0, underTest.getAverage(Double.NaN), 0.000001);
+        assertEquals(2.0, underTest.getStandardDeviation(), 0.000001);
+    }
+}
@@ -0,0 +1,104 @@
+package sensordata;
+
+/**
+ * The plain loop implementation, used when the Vector API is not available.
+ */
+class ScalarStatisticsKernel implements StatisticsKernel {
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumOfSquares(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i] * values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumOfSquaredDeviations(double[] values, int from, int to, double mean) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double difference = values[i] - mean;
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    @Override
+    public double min(double[] values, int from, int to) {
+        if (to <= from) {
+            return Double.NaN;
+        }
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    @Override
+    public double max(double[] values, int from, int to) {
+        if (to <= from) {
+            return Double.NaN;
+        }
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    @Override
+    public int countAbove(double[] values, int from, int to, double threshold) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (values[i] > threshold) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int countBelow(double[] values, int from, int to, double threshold) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (values[i] < threshold) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int countOutside(double[] values, int from, int to, double lower, double upper) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (values[i] < lower || values[i] > upper) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int markOutside(double[] values, double[] lower, double[] upper, boolean[] out) {
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            out[i] = values[i] < lower[i] || values[i] > upper[i];
+            if (out[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
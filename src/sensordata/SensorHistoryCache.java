@@ -0,0 +1,339 @@
+package sensordata;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * A local copy of the recent readings for each sensor, so a restarted node does not have to re-read 30 to 60 days
+ * of history per sensor from the historian. Each sensor has its own append only file of fixed size records which is
+ * memory mapped, the records are in date order so the file itself is the index and a range is found by binary
+ * search. The last date in each file is the watermark, only readings after it are fetched from the historian.
+ * <p>
+ * File layout: magic (int), version (int), record count (long), then records of date as epoch millis (long)
+ * and value (double).
+ */
+@Component
+public class SensorHistoryCache {
+
+    private static final Logger log = Logger.getLogger(SensorHistoryCache.class.getSimpleName());
+
+    static final int MAGIC = 0x534D4153;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 16;
+    private static final int INITIAL_RECORDS = 1 << 14;
+    // A mapped buffer is indexed by int, about 134 million readings, years of readings at one a second.
+    static final long MAX_RECORDS = (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES;
+
+    private final Path directory;
+    private final int retentionDays;
+    private final Map<Long, SensorFile> files = new ConcurrentHashMap<>();
+
+    public SensorHistoryCache(@Value("${sensor.history.cache.dir:sensor-history}") String directory,
+                              @Value("${sensor.history.cache.retention.days:62}") int retentionDays) {
+        this.directory = Paths.get(directory);
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Maps every existing sensor file at start up, only the headers are read so this takes seconds
+     * regardless of how much history is cached.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "sensor-*.dat")) {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                long sensorId = Long.parseLong(name.substring(7, name.length() - 4));
+                files.put(sensorId, new SensorFile(path));
+            }
+        }
+        log.info("Opened the sensor history cache with " + files.size() + " sensors");
+    }
+
+    @PreDestroy
+    public void close() {
+        files.values().forEach(SensorFile::close);
+        files.clear();
+    }
+
+    /**
+     * Passes the readings between from and to to the consumer, topping the cache up from the historian first.
+     * Readings before the start of the cache are streamed straight from the historian without being cached.
+     *
+     * @param sensor    The sensor to read.
+     * @param from      The start of the window.
+     * @param to        The end of the window.
+     * @param historian Where to read any readings that are not cached.
+     * @param consumer  Receives the readings in date order.
+     */
+    public void stream(AnalogSensor sensor, ZonedDateTime from, ZonedDateTime to,
+                       StreamingSensorDataSource historian, ReadingConsumer consumer) {
+        stream(sensor, from, to, historian, consumer, null);
+    }
+
+    /**
+     * The same as stream but also passes each reading that is new to the cache to newReadings as it arrives
+     * from the historian, e.g. for the {@link OnlineAnomalyDetector}.
+     *
+     * @param newReadings Receives the readings after the watermark in date order, may be null.
+     */
+    public void stream(AnalogSensor sensor, ZonedDateTime from, ZonedDateTime to,
+                       StreamingSensorDataSource historian, ReadingConsumer consumer, ReadingConsumer newReadings) {
+        SensorFile file = getFile(sensor.getId());
+        long fromMillis = from.toInstant().toEpochMilli();
+        long toMillis = to.toInstant().toEpochMilli();
+        synchronized (file) {
+            topUp(file, sensor, from, to, historian, newReadings);
+            long first = file.getFirstTime();
+            if (fromMillis < first) {
+                ZonedDateTime gapTo = ZonedDateTime.ofInstant(Instant.ofEpochMilli(first - 1), from.getZone());
+                historian.streamValuesBetweenFromAndTo(sensor, from, gapTo, consumer);
+            }
+            file.read(fromMillis, toMillis, consumer);
+        }
+    }
+
+    /**
+     * Reads any readings up to the passed time that are not yet cached from the historian. Once a sensor has been
+     * topped up to a time any stream up to that time is served from the cache alone, so the jobs that share a tick
+     * of the sensor pipeline only go to the historian once per sensor.
+     *
+     * @param sensor      The sensor to read.
+     * @param to          The time to top up to, normally the time of the tick.
+     * @param historian   Where to read the readings that are not cached.
+     * @param newReadings Receives the readings after the watermark in date order, may be null.
+     */
+    public void topUp(AnalogSensor sensor, ZonedDateTime to, StreamingSensorDataSource historian,
+                      ReadingConsumer newReadings) {
+        SensorFile file = getFile(sensor.getId());
+        synchronized (file) {
+            topUp(file, sensor, to, to, historian, newReadings);
+        }
+    }
+
+    private void topUp(SensorFile file, AnalogSensor sensor, ZonedDateTime from, ZonedDateTime to,
+                       StreamingSensorDataSource historian, ReadingConsumer newReadings) {
+        long toMillis = to.toInstant().toEpochMilli();
+        long watermark = file.getWatermark();
+        if (watermark >= toMillis || file.fetchedTo >= toMillis) {
+            return;
+        }
+        // An empty cache is filled for the whole retention period, as older readings can't be prepended.
+        ZonedDateTime retentionStart = to.minusDays(retentionDays);
+        ZonedDateTime topUpFrom = watermark != Long.MIN_VALUE ?
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(watermark), to.getZone()) :
+                from.isBefore(retentionStart) ? from : retentionStart;
+        historian.streamValuesBetweenFromAndTo(sensor, topUpFrom, to, (epochMillis, value) -> {
+            if (epochMillis > file.getWatermark()) {
+                file.append(epochMillis, value);
+                if (newReadings != null) {
+                    newReadings.accept(epochMillis, value);
+                }
+            }
+        });
+        file.fetchedTo = toMillis;
+    }
+
+    /**
+     * @param sensorId The id of the sensor.
+     * @return The date of the latest cached reading, or Long.MIN_VALUE if nothing is cached.
+     */
+    public long getWatermark(Long sensorId) {
+        SensorFile file = files.get(sensorId);
+        return file == null ? Long.MIN_VALUE : file.getWatermark();
+    }
+
+    /**
+     * Adds a reading for the sensor, readings at or before the watermark are ignored.
+     */
+    public void append(Long sensorId, long epochMillis, double value) {
+        SensorFile file = getFile(sensorId);
+        synchronized (file) {
+            file.append(epochMillis, value);
+        }
+    }
+
+    /**
+     * Passes the cached readings between from and to inclusive to the consumer.
+     */
+    public void read(Long sensorId, long from, long to, ReadingConsumer consumer) {
+        SensorFile file = files.get(sensorId);
+        if (file != null) {
+            synchronized (file) {
+                file.read(from, to, consumer);
+            }
+        }
+    }
+
+    /**
+     * Rewrites every file without the readings older than the retention period, run nightly.
+     */
+    @Scheduled(cron = "0 30 1 * * ?")
+    public void compact() {
+        long cutOff = ZonedDateTime.now().minusDays(retentionDays).toInstant().toEpochMilli();
+        files.forEach((sensorId, file) -> {
+            synchronized (file) {
+                file.removeBefore(cutOff);
+            }
+        });
+    }
+
+    private SensorFile getFile(Long sensorId) {
+        return files.computeIfAbsent(sensorId, id -> {
+            try {
+                return new SensorFile(directory.resolve("sensor-" + id + ".dat"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * A single sensors memory mapped file, callers synchronise on the instance.
+     */
+    static final class SensorFile {
+        private final Path path;
+        private FileChannel channel;
+        private MappedByteBuffer buffer;
+        private long count;
+        // The latest time the historian has been read up to, held in memory only so a restart reads it again.
+        private long fetchedTo = Long.MIN_VALUE;
+
+        SensorFile(Path path) throws IOException {
+            this.path = path;
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() < HEADER_BYTES) {
+                map(INITIAL_RECORDS);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(8, 0L);
+            } else {
+                map((channel.size() - HEADER_BYTES) / RECORD_BYTES);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException(path + " is not a sensor history file");
+                }
+            }
+            count = buffer.getLong(8);
+        }
+
+        long getWatermark() {
+            return count == 0 ? Long.MIN_VALUE : getTime(count - 1);
+        }
+
+        long getFirstTime() {
+            return count == 0 ? Long.MAX_VALUE : getTime(0);
+        }
+
+        void append(long epochMillis, double value) {
+            if (epochMillis <= getWatermark()) {
+                return;
+            }
+            if (getCapacity() == count) {
+                if (count == MAX_RECORDS) {
+                    // The retention should keep the file far smaller, drop the oldest quarter rather than fail.
+                    log.warning(path + " is full, dropping the oldest readings");
+                    removeBefore(getTime(count / 4));
+                } else {
+                    try {
+                        map(Math.min(count * 2, MAX_RECORDS));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            int position = position(count);
+            buffer.putLong(position, epochMillis);
+            buffer.putDouble(position + 8, value);
+            // The count is written last so a crash part way through a record does not expose it.
+            count++;
+            buffer.putLong(8, count);
+        }
+
+        void read(long from, long to, ReadingConsumer consumer) {
+            for (long i = firstIndexAtOrAfter(from); i < count; i++) {
+                long time = getTime(i);
+                if (time > to) {
+                    break;
+                }
+                consumer.accept(time, buffer.getDouble(position(i) + 8));
+            }
+        }
+
+        void removeBefore(long cutOff) {
+            long first = firstIndexAtOrAfter(cutOff);
+            if (first == 0) {
+                return;
+            }
+            long remaining = count - first;
+            for (long i = 0; i < remaining; i++) {
+                int from = position(first + i);
+                int to = position(i);
+                buffer.putLong(to, buffer.getLong(from));
+                buffer.putDouble(to + 8, buffer.getDouble(from + 8));
+            }
+            count = remaining;
+            buffer.putLong(8, count);
+        }
+
+        void close() {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException e) {
+                log.warning("Failed to close " + path + ": " + e.getMessage());
+            }
+        }
+
+        private long firstIndexAtOrAfter(long epochMillis) {
+            long low = 0;
+            long high = count;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (getTime(middle) < epochMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private long getTime(long index) {
+            return buffer.getLong(position(index));
+        }
+
+        private long getCapacity() {
+            return (buffer.capacity() - HEADER_BYTES) / RECORD_BYTES;
+        }
+
+        private static int position(long index) {
+            return Math.toIntExact(HEADER_BYTES + index * RECORD_BYTES);
+        }
+
+        private void map(long records) throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + Math.max(1, records) * RECORD_BYTES);
+        }
+    }
+}
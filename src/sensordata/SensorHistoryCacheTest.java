@@ -0,0 +1,137 @@
+package sensordata;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorHistoryCacheTest {
+
+    private static final long ONE_MINUTE = 60_000L;
+
+    @TempDir
+    Path directory;
+    SensorHistoryCache underTest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        underTest = new SensorHistoryCache(directory.toString(), 62);
+        underTest.open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.close();
+    }
+
+    @Test
+    void testAppendAndRead() throws IOException {
+        assertEquals(Long.MIN_VALUE, underTest.getWatermark(1L));
+        // More than the initial size of the file so it has to grow.
+        for (int i = 0; i < 20000; i++) {
+            underTest.append(1L, i * ONE_MINUTE, i);
+        }
+        // Readings at or before the watermark are ignored.
+        underTest.append(1L, 5 * ONE_MINUTE, -1);
+        assertEquals(19999 * ONE_MINUTE, underTest.getWatermark(1L));
+
+        RunningStatistics range = new RunningStatistics();
+        underTest.read(1L, 100 * ONE_MINUTE, 199 * ONE_MINUTE, range);
+        assertEquals(100, range.getCount());
+        assertEquals(149.5, range.getAverage(0));
+
+        // Check the readings survive a restart.
+        underTest.close();
+        underTest = new SensorHistoryCache(directory.toString(), 62);
+        underTest.open();
+        assertEquals(19999 * ONE_MINUTE, underTest.getWatermark(1L));
+    }
+
+    @Test
+    void testStreamOnlyFetchesPastTheWatermark() {
+        AnalogSensor sensor = AnalogSensor.builder().build();
+        sensor.setId(2L);
+        ZonedDateTime to = ZonedDateTime.now();
+        ZonedDateTime from = to.minusDays(30);
+        AtomicInteger historianCalls = new AtomicInteger();
+        StreamingSensorDataSource historian = (s, f, t, consumer) -> {
+            historianCalls.incrementAndGet();
+            for (ZonedDateTime date = f; !date.isAfter(t); date = date.plusHours(1)) {
+                consumer.accept(date.toInstant().toEpochMilli(), 1.0);
+            }
+        };
+
+        RunningStatistics first = new RunningStatistics();
+        underTest.stream(sensor, from, to, historian, first);
+        assertEquals(1, historianCalls.get());
+        long watermark = underTest.getWatermark(2L);
+
+        // A second read up to the same time is served from the cache alone.
+        RunningStatistics second = new RunningStatistics();
+        underTest.stream(sensor, from, to, historian, second);
+        assertEquals(1, historianCalls.get());
+        assertEquals(first.getCount(), second.getCount());
+
+        // A later read is served from the cache with a top up from the watermark.
+        RunningStatistics third = new RunningStatistics();
+        underTest.stream(sensor, from, to.plusMinutes(1), historian, third);
+        assertEquals(2, historianCalls.get());
+        assertEquals(first.getCount(), third.getCount());
+        assertEquals(watermark, underTest.getWatermark(2L));
+    }
+
+    @Test
+    void testTopUpIsSharedByLaterStreams() {
+        AnalogSensor sensor = AnalogSensor.builder().build();
+        sensor.setId(4L);
+        ZonedDateTime tick = ZonedDateTime.now();
+        AtomicInteger historianCalls = new AtomicInteger();
+        StreamingSensorDataSource historian = (s, f, t, consumer) -> {
+            historianCalls.incrementAndGet();
+            for (ZonedDateTime date = f; !date.isAfter(t); date = date.plusHours(1)) {
+                consumer.accept(date.toInstant().toEpochMilli(), 1.0);
+            }
+        };
+
+        AtomicInteger newReadings = new AtomicInteger();
+        underTest.topUp(sensor, tick, historian, (t, v) -> newReadings.incrementAndGet());
+        assertEquals(1, historianCalls.get());
+        assertTrue(newReadings.get() > 0);
+
+        // Each job reads its own slice of the window without going back to the historian.
+        RunningStatistics lastHour = new RunningStatistics();
+        underTest.stream(sensor, tick.minusHours(1), tick, historian, lastHour);
+        RunningStatistics lastMonth = new RunningStatistics();
+        underTest.stream(sensor, tick.minusDays(30), tick.minusMinutes(30), historian, lastMonth);
+        assertEquals(1, historianCalls.get());
+        assertTrue(lastMonth.getCount() > lastHour.getCount());
+    }
+
+    @Test
+    void testCompact() {
+        long now = System.currentTimeMillis();
+        underTest.append(3L, now - 100L * 24 * 60 * ONE_MINUTE, 1);
+        underTest.append(3L, now - ONE_MINUTE, 2);
+        underTest.compact();
+
+        RunningStatistics all = new RunningStatistics();
+        underTest.read(3L, Long.MIN_VALUE, Long.MAX_VALUE, all);
+        assertEquals(1, all.getCount());
+        assertEquals(2, all.getAverage(0));
+    }
+
+    @Test
+    void testTheLargestFileCanBeMapped() {
+        // Every record position has to fit in the int index of the mapped buffer.
+        assertTrue(SensorHistoryCache.HEADER_BYTES + SensorHistoryCache.MAX_RECORDS * SensorHistoryCache.RECORD_BYTES
+                <= Integer.MAX_VALUE);
+    }
+}
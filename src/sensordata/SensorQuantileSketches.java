@@ -0,0 +1,212 @@
+package sensordata;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a {@link QuantileSketch} of the readings of each sensor, so the dashboards and alert rules can ask for
+ * percentiles such as p1, p50 and p99 without re-reading the 30 day window. Each sensor has a sketch for each of
+ * the last 24 hours and each completed hour is merged into a sketch for its day, for the last 30 days, so the
+ * memory used per sensor is fixed however many readings there are.
+ * <p>
+ * The sketches are fed with the readings new to the {@link SensorHistoryCache} during the fetch stage of the sensor
+ * sweep, and filled from the cache the first time a sensor is loaded after a restart. The windows are relative to
+ * the latest reading of each sensor rather than the clock. The alert rules read them as operands such as HOUR.P99,
+ * see {@link AlertRule}.
+ * <p>
+ * Each sensor holds 54 sketches, 24 hourly and 30 daily, of up to about 110 centroids each. A centroid is a mean
+ * and a weight so a completed sketch is at most about 1.7KB once trimmed. The sketch of the currently open hour also
+ * has a buffer of 440 readings, about 3.5KB, and up to three merged views are kept between readings. In all about
+ * 100KB per sensor at most, so 1,000 sensors use about 100MB.
+ */
+@Component
+public class SensorQuantileSketches {
+
+    static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    static final int HOURS = 24;
+    static final int DAYS = 30;
+
+    public enum Window {
+        /**
+         * The hour of the latest reading.
+         */
+        HOUR,
+        /**
+         * The last 24 hours.
+         */
+        DAY,
+        /**
+         * The last 30 days.
+         */
+        THIRTY_DAYS
+    }
+
+    private final SensorHistoryCache historyCache;
+    private final Map<Long, SensorSketches> sketches = new ConcurrentHashMap<>();
+
+    public SensorQuantileSketches(SensorHistoryCache historyCache) {
+        this.historyCache = historyCache;
+    }
+
+    /**
+     * Fills the sketches of a sensor from the history cache if they have not been already, called before the
+     * cache is topped up so the readings are taken in date order.
+     *
+     * @param sensorId The id of the sensor.
+     */
+    public void load(Long sensorId) {
+        SensorSketches sensor = getSketches(sensorId);
+        if (sensor.isLoaded()) {
+            return;
+        }
+        long watermark = historyCache.getWatermark(sensorId);
+        if (watermark != Long.MIN_VALUE) {
+            historyCache.read(sensorId, watermark - DAYS * DAY_MILLIS, watermark, sensor::add);
+        }
+        sensor.setLoaded();
+    }
+
+    /**
+     * Adds a reading to the sketches of the sensor, readings at or before the latest reading are ignored.
+     */
+    public void accept(Long sensorId, long epochMillis, double value) {
+        getSketches(sensorId).add(epochMillis, value);
+    }
+
+    /**
+     * @param sensorId The id of the sensor.
+     * @param window   The window to take the quantile over.
+     * @param q        The quantile between 0 and 1, e.g. 0.99 for p99.
+     * @return The estimated value at the quantile, or NaN if there are no readings in the window.
+     */
+    public double quantile(Long sensorId, Window window, double q) {
+        return quantiles(sensorId, window, q)[0];
+    }
+
+    /**
+     * The same as quantile for more than one quantile at once, e.g. p1, p50 and p99 for the dashboards.
+     */
+    public double[] quantiles(Long sensorId, Window window, double... qs) {
+        SensorSketches sensor = sketches.get(sensorId);
+        double[] values = new double[qs.length];
+        if (sensor == null) {
+            Arrays.fill(values, Double.NaN);
+            return values;
+        }
+        synchronized (sensor) {
+            QuantileSketch view = sensor.getView(window);
+            for (int i = 0; i < qs.length; i++) {
+                values[i] = view.quantile(qs[i]);
+            }
+        }
+        return values;
+    }
+
+    public void remove(Long sensorId) {
+        sketches.remove(sensorId);
+    }
+
+    private SensorSketches getSketches(Long sensorId) {
+        return sketches.computeIfAbsent(sensorId, id -> new SensorSketches());
+    }
+
+    /**
+     * The hourly and daily sketches of a single sensor, held in rings indexed by the hour or day since the epoch.
+     * Callers synchronise on the instance.
+     */
+    static final class SensorSketches {
+        private final QuantileSketch[] hourly = new QuantileSketch[HOURS];
+        private final long[] hourIds = new long[HOURS];
+        private final QuantileSketch[] daily = new QuantileSketch[DAYS];
+        private final long[] dayIds = new long[DAYS];
+        private final Map<Window, QuantileSketch> views = new EnumMap<>(Window.class);
+        private long currentHour = Long.MIN_VALUE;
+        private long lastTime = Long.MIN_VALUE;
+        private volatile boolean loaded = false;
+
+        synchronized void add(long epochMillis, double value) {
+            if (epochMillis <= lastTime) {
+                return;
+            }
+            lastTime = epochMillis;
+            long hour = Math.floorDiv(epochMillis, HOUR_MILLIS);
+            if (hour != currentHour) {
+                if (currentHour != Long.MIN_VALUE) {
+                    // The completed hour is merged into its day, it is kept in the hourly ring for the last 24 hours.
+                    QuantileSketch completed = getHour(currentHour);
+                    completed.trim();
+                    QuantileSketch day = getSlot(daily, dayIds, Math.floorDiv(currentHour, (long) HOURS));
+                    day.merge(completed);
+                    day.trim();
+                }
+                currentHour = hour;
+                getSlot(hourly, hourIds, hour).clear();
+            }
+            getHour(hour).add(value);
+            views.clear();
+        }
+
+        /**
+         * @return A sketch of the window, kept until the next reading so repeated queries are not merged again.
+         */
+        QuantileSketch getView(Window window) {
+            return views.computeIfAbsent(window, w -> {
+                QuantileSketch view = new QuantileSketch();
+                if (currentHour == Long.MIN_VALUE) {
+                    return view;
+                }
+                if (w == Window.HOUR) {
+                    view.merge(getHour(currentHour));
+                } else if (w == Window.DAY) {
+                    for (int i = 0; i < HOURS; i++) {
+                        if (hourly[i] != null && hourIds[i] > currentHour - HOURS) {
+                            view.merge(hourly[i]);
+                        }
+                    }
+                } else {
+                    long currentDay = Math.floorDiv(currentHour, (long) HOURS);
+                    for (int i = 0; i < DAYS; i++) {
+                        if (daily[i] != null && dayIds[i] > currentDay - DAYS) {
+                            view.merge(daily[i]);
+                        }
+                    }
+                    // The current hour has not been merged into its day yet.
+                    view.merge(getHour(currentHour));
+                }
+                return view;
+            });
+        }
+
+        boolean isLoaded() {
+            return loaded;
+        }
+
+        void setLoaded() {
+            loaded = true;
+        }
+
+        private QuantileSketch getHour(long hour) {
+            return hourly[(int) Math.floorMod(hour, (long) HOURS)];
+        }
+
+        /**
+         * @return The sketch in the ring for the id, cleared first if it held an older id.
+         */
+        private static QuantileSketch getSlot(QuantileSketch[] ring, long[] ids, long id) {
+            int slot = (int) Math.floorMod(id, (long) ring.length);
+            if (ring[slot] == null) {
+                ring[slot] = new QuantileSketch();
+                ids[slot] = id;
+            } else if (ids[slot] != id) {
+                ring[slot].clear();
+                ids[slot] = id;
+            }
+            return ring[slot];
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package sensordata;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sensordata.SensorQuantileSketches.DAY_MILLIS;
+import static sensordata.SensorQuantileSketches.Window.*;
+
+class SensorQuantileSketchesTest {
+
+    private static final long ONE_MINUTE = 60_000L;
+    // The start of a day so each day of readings falls in its own daily sketch.
+    private static final long START = 19_000 * DAY_MILLIS;
+
+    @TempDir
+    Path directory;
+    SensorHistoryCache historyCache;
+    SensorQuantileSketches underTest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        historyCache = new SensorHistoryCache(directory.toString(), 62);
+        historyCache.open();
+        underTest = new SensorQuantileSketches(historyCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        historyCache.close();
+    }
+
+    @Test
+    void testWindows() {
+        // 40 days of readings where each reading is the number of the day.
+        for (long minute = 0; minute < 40 * 24 * 60; minute++) {
+            underTest.accept(1L, START + minute * ONE_MINUTE, minute / (24 * 60));
+        }
+        assertEquals(39, underTest.quantile(1L, HOUR, 0.5));
+        assertEquals(39, underTest.quantile(1L, DAY, 0.01));
+
+        // Only the last 30 days are kept, days 10 to 39.
+        double[] quantiles = underTest.quantiles(1L, THIRTY_DAYS, 0, 0.5, 1);
+        assertEquals(10, quantiles[0]);
+        assertEquals(24.5, quantiles[1], 0.5);
+        assertEquals(39, quantiles[2]);
+
+        // Readings at or before the latest reading are ignored.
+        underTest.accept(1L, START, 1000);
+        assertEquals(39, underTest.quantile(1L, THIRTY_DAYS, 1));
+
+        assertTrue(Double.isNaN(underTest.quantile(2L, DAY, 0.5)));
+    }
+
+    @Test
+    void testLoadFromTheHistoryCache() {
+        for (long minute = 0; minute < 2 * 24 * 60; minute++) {
+            historyCache.append(3L, START + minute * ONE_MINUTE, minute % 100);
+        }
+        underTest.load(3L);
+        assertEquals(0, underTest.quantile(3L, THIRTY_DAYS, 0));
+        assertEquals(99, underTest.quantile(3L, THIRTY_DAYS, 1));
+        assertEquals(49.5, underTest.quantile(3L, DAY, 0.5), 1);
+
+        // A second load does not add the readings again.
+        underTest.load(3L);
+        underTest.accept(3L, START + 2 * DAY_MILLIS, 1000);
+        assertEquals(1000, underTest.quantile(3L, THIRTY_DAYS, 1));
+        assertEquals(1000, underTest.quantile(3L, HOUR, 0.5));
+    }
+}
@@ -0,0 +1,63 @@
+package sensordata;
+
+import java.util.Arrays;
+
+/**
+ * A growable series of readings held as primitive arrays, used where a {@code TreeMap<ZonedDateTime, Double>}
+ * would box every reading. The dates are held as epoch millis.
+ */
+public class SensorSeries {
+
+    private long[] times;
+    private double[] values;
+    private int size = 0;
+
+    public SensorSeries() {
+        this(64);
+    }
+
+    public SensorSeries(int initialCapacity) {
+        times = new long[Math.max(1, initialCapacity)];
+        values = new double[Math.max(1, initialCapacity)];
+    }
+
+    public void add(long epochMillis, double value) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        times[size] = epochMillis;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return A copy of the dates trimmed to the size of the series.
+     */
+    public long[] getTimes() {
+        return Arrays.copyOf(times, size);
+    }
+
+    /**
+     * @return A copy of the values trimmed to the size of the series.
+     */
+    public double[] getValues() {
+        return Arrays.copyOf(values, size);
+    }
+}
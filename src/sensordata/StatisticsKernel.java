@@ -0,0 +1,71 @@
+package sensordata;
+
+/**
+ * Primitive statistics over {@code double[]} windows of readings and over sensor columns, see
+ * {@link StatisticsKernels#get()} for the implementation to use. Ranges are from inclusive to exclusive.
+ */
+public interface StatisticsKernel {
+
+    double sum(double[] values, int from, int to);
+
+    double sumOfSquares(double[] values, int from, int to);
+
+    /**
+     * @return The sum of the squared differences from the mean, the population variance is this divided by the count.
+     */
+    double sumOfSquaredDeviations(double[] values, int from, int to, double mean);
+
+    /**
+     * @return The lowest value, or NaN if the range is empty.
+     */
+    double min(double[] values, int from, int to);
+
+    /**
+     * @return The highest value, or NaN if the range is empty.
+     */
+    double max(double[] values, int from, int to);
+
+    /**
+     * @return The number of values greater than the threshold.
+     */
+    int countAbove(double[] values, int from, int to, double threshold);
+
+    /**
+     * @return The number of values less than the threshold.
+     */
+    int countBelow(double[] values, int from, int to, double threshold);
+
+    /**
+     * @return The number of values less than lower or greater than upper, e.g. outside the control limits.
+     */
+    int countOutside(double[] values, int from, int to, double lower, double upper);
+
+    /**
+     * Compares a column of values, one per sensor, with a band per sensor. NaN is never outside the band.
+     *
+     * @param values The value for each sensor.
+     * @param lower  The lower bound for each sensor.
+     * @param upper  The upper bound for each sensor.
+     * @param out    Set to true for each sensor whose value is less than lower or greater than upper.
+     * @return The number of sensors outside their band.
+     */
+    int markOutside(double[] values, double[] lower, double[] upper, boolean[] out);
+
+    /**
+     * @return The average of the range, or NaN if it is empty.
+     */
+    default double average(double[] values, int from, int to) {
+        return to <= from ? Double.NaN : sum(values, from, to) / (to - from);
+    }
+
+    /**
+     * @return The population standard deviation of the range the same as SmasMaths.SD, or 0 if it is empty.
+     */
+    default double standardDeviation(double[] values, int from, int to) {
+        if (to <= from) {
+            return 0;
+        }
+        double mean = sum(values, from, to) / (to - from);
+        return Math.sqrt(sumOfSquaredDeviations(values, from, to, mean) / (to - from));
+    }
+}
@@ -0,0 +1,47 @@
+package sensordata;
+
+import java.util.logging.Logger;
+
+/**
+ * Chooses the {@link StatisticsKernel} for this JVM, the Vector API kernel when the jdk.incubator.vector module is
+ * present and the scalar kernel otherwise. Set {@code -Dsensor.statistics.vector=false} to always use the scalar
+ * kernel.
+ */
+public final class StatisticsKernels {
+
+    private static final Logger log = Logger.getLogger(StatisticsKernels.class.getSimpleName());
+
+    private static final StatisticsKernel KERNEL = create();
+
+    private StatisticsKernels() {
+    }
+
+    public static StatisticsKernel get() {
+        return KERNEL;
+    }
+
+    static StatisticsKernel scalar() {
+        return new ScalarStatisticsKernel();
+    }
+
+    /**
+     * Loaded reflectively so src/ compiles and the application still runs without the incubator module, the
+     * Vector API kernel is compiled from the vector/ source root.
+     */
+    private static StatisticsKernel create() {
+        if (!Boolean.parseBoolean(System.getProperty("sensor.statistics.vector", "true"))) {
+            return scalar();
+        }
+        try {
+            StatisticsKernel kernel = (StatisticsKernel) Class.forName("sensordata.VectorStatisticsKernel")
+                    .getDeclaredConstructor().newInstance();
+            // Fails here rather than on first use if the module is missing.
+            kernel.sum(new double[1], 0, 1);
+            log.info("Using the Vector API statistics kernel");
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.info("The Vector API is not available on this JVM, using the scalar statistics kernel");
+            return scalar();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package sensordata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticsKernelsTest {
+
+    private final StatisticsKernel scalar = StatisticsKernels.scalar();
+    private final StatisticsKernel underTest = StatisticsKernels.get();
+
+    @Test
+    void testScalarKernel() {
+        double[] values = {1, 2, 3, 4, 10};
+
+        assertEquals(20, scalar.sum(values, 0, 5));
+        assertEquals(130, scalar.sumOfSquares(values, 0, 5));
+        assertEquals(4, scalar.average(values, 0, 5));
+        assertEquals(Math.sqrt(10), scalar.standardDeviation(values, 0, 5), 1e-12);
+        assertEquals(2, scalar.min(values, 1, 5));
+        assertEquals(4, scalar.max(values, 0, 4));
+        assertEquals(2, scalar.countAbove(values, 0, 5, 3));
+        assertEquals(2, scalar.countBelow(values, 0, 5, 3));
+        assertEquals(2, scalar.countOutside(values, 0, 5, 1.5, 4));
+
+        // Empty ranges.
+        assertEquals(0, scalar.sum(values, 2, 2));
+        assertTrue(Double.isNaN(scalar.min(values, 2, 2)));
+        assertTrue(Double.isNaN(scalar.average(values, 2, 2)));
+        assertEquals(0, scalar.standardDeviation(values, 2, 2));
+    }
+
+    @Test
+    void testKernelMatchesScalar() {
+        Random random = new Random(7);
+        // An odd length so every vector width leaves a tail.
+        double[] values = new double[1037];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 20 + random.nextGaussian() * 5;
+        }
+        for (int from : new int[]{0, 3, 17}) {
+            for (int to : new int[]{17, 18, 1000, 1037}) {
+                assertEquals(scalar.sum(values, from, to), underTest.sum(values, from, to), 1e-9);
+                assertEquals(scalar.sumOfSquares(values, from, to), underTest.sumOfSquares(values, from, to), 1e-6);
+                assertEquals(scalar.standardDeviation(values, from, to),
+                        underTest.standardDeviation(values, from, to), 1e-9);
+                assertEquals(scalar.min(values, from, to), underTest.min(values, from, to));
+                assertEquals(scalar.max(values, from, to), underTest.max(values, from, to));
+                assertEquals(scalar.countAbove(values, from, to, 22), underTest.countAbove(values, from, to, 22));
+                assertEquals(scalar.countBelow(values, from, to, 18), underTest.countBelow(values, from, to, 18));
+                assertEquals(scalar.countOutside(values, from, to, 15, 25),
+                        underTest.countOutside(values, from, to, 15, 25));
+            }
+        }
+    }
+
+    @Test
+    void testMarkOutside() {
+        double[] values = new double[37];
+        double[] lower = new double[values.length];
+        double[] upper = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        Arrays.fill(lower, 5);
+        Arrays.fill(upper, 30);
+        // NaN values and bounds never match.
+        values[2] = Double.NaN;
+        lower[3] = Double.NaN;
+        upper[35] = Double.NaN;
+
+        boolean[] expected = new boolean[values.length];
+        boolean[] out = new boolean[values.length];
+        assertEquals(scalar.markOutside(values, lower, upper, expected), underTest.markOutside(values, lower, upper, out));
+        assertArrayEquals(expected, out);
+        assertFalse(out[2]);
+        assertFalse(out[3]);
+        assertTrue(out[4]);
+        assertFalse(out[35]);
+        assertTrue(out[36]);
+    }
+}
@@ -0,0 +1,23 @@
+package sensordata;
+
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Implemented by the sensor monitoring data processors that can stream readings straight from the result set,
+ * as an alternative to getValuesAndDatesBetweenFromAndTo which builds a TreeMap of the whole window.
+ */
+public interface StreamingSensorDataSource {
+
+    /**
+     * Passes every converted reading for the sensor between from and to to the consumer in date order.
+     *
+     * @param sensor   The sensor to read.
+     * @param from     The start of the window.
+     * @param to       The end of the window.
+     * @param consumer Receives each reading.
+     */
+    void streamValuesBetweenFromAndTo(AnalogSensor sensor, ZonedDateTime from, ZonedDateTime to,
+                                      ReadingConsumer consumer);
+}
@@ -0,0 +1,268 @@
+package sensordata;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Reduces a sensor series to a fixed number of points for the trend and control limit charts using
+ * Largest-Triangle-Three-Buckets, so the charts keep their shape without sending every reading to the browser.
+ * <p>
+ * Readings are passed in one at a time in date order and the selected points are passed straight to the sink,
+ * only the readings for two buckets are ever held. When extremes are preserved the min and max of each bucket
+ * are also kept so any peaks and troughs that created a NEW_PEAK or NEW_TROUGH alert are still visible.
+ */
+public class TrendDownsampler implements ReadingConsumer {
+
+    private final long from;
+    private final long span;
+    private final int bucketCount;
+    private final boolean preserveExtremes;
+    private final ReadingConsumer sink;
+    private final int threshold;
+
+    private Bucket pending = new Bucket();
+    private Bucket current = new Bucket();
+    private int currentIndex = -1;
+    private boolean firstSent = false;
+    private long selectedTime;
+    private double selectedValue;
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * @param from             The start of the chart, the buckets are spread evenly between from and to.
+     * @param to               The end of the chart.
+     * @param threshold        The maximum number of points to send, normally the width of the chart in pixels. At
+     *                         least 3, or 5 when extremes are preserved.
+     * @param preserveExtremes True to also keep the min and max of each bucket.
+     * @param sink             Receives the selected points.
+     */
+    public TrendDownsampler(ZonedDateTime from, ZonedDateTime to, int threshold, boolean preserveExtremes,
+                            ReadingConsumer sink) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("The threshold must be at least 3 but was " + threshold);
+        }
+        if (preserveExtremes && threshold < 5) {
+            // A single bucket can send three points, which with the first and last would exceed the threshold.
+            throw new IllegalArgumentException("The threshold must be at least 5 when extremes are preserved but was "
+                    + threshold);
+        }
+        this.from = from.toInstant().toEpochMilli();
+        this.span = Math.max(1L, to.toInstant().toEpochMilli() - this.from + 1);
+        this.threshold = threshold;
+        this.preserveExtremes = preserveExtremes;
+        this.bucketCount = preserveExtremes ? Math.max(1, (threshold - 2) / 3) : threshold - 2;
+        this.sink = sink;
+    }
+
+    /**
+     * Adds the next reading, readings must be passed in date order.
+     *
+     * @param epochMillis The date of the reading.
+     * @param value       The value of the reading.
+     */
+    @Override
+    public void accept(long epochMillis, double value) {
+        if (epochMillis < lastTime) {
+            throw new IllegalArgumentException("Readings must be passed in date order");
+        }
+        lastTime = epochMillis;
+        if (!firstSent) {
+            // The first reading is always kept.
+            firstSent = true;
+            select(epochMillis, value);
+            sink.accept(epochMillis, value);
+            return;
+        }
+        int index = getBucketIndex(epochMillis);
+        if (index != currentIndex && !current.isEmpty()) {
+            // The current bucket is full so the pending bucket can now be compared against its average.
+            if (!pending.isEmpty()) {
+                emit(pending, current.averageTime(), current.averageValue());
+            }
+            Bucket emptied = pending.clear();
+            pending = current;
+            current = emptied;
+        }
+        currentIndex = index;
+        current.add(epochMillis, value);
+    }
+
+    /**
+     * Sends the remaining buckets and the final reading, which is always kept.
+     */
+    public void finish() {
+        Bucket last = current.isEmpty() ? pending : current;
+        if (last.isEmpty()) {
+            return;
+        }
+        long lastT = last.lastTime();
+        double lastV = last.lastValue();
+        last.removeLast();
+        if (!pending.isEmpty()) {
+            if (current.isEmpty()) {
+                emit(pending, lastT, lastV);
+            } else {
+                emit(pending, current.averageTime(), current.averageValue());
+            }
+        }
+        if (!current.isEmpty()) {
+            emit(current, lastT, lastV);
+        }
+        sink.accept(lastT, lastV);
+    }
+
+    /**
+     * Convenience for callers that already have the whole series, e.g. from getValuesAndDatesBetweenFromAndTo.
+     *
+     * @param series           The series to downsample.
+     * @param threshold        The maximum number of points to return.
+     * @param preserveExtremes True to also keep the min and max of each bucket.
+     * @return The series unchanged if it is already within the threshold, otherwise the selected points.
+     */
+    public static TreeMap<ZonedDateTime, Double> downsample(SortedMap<ZonedDateTime, Double> series, int threshold,
+                                                             boolean preserveExtremes) {
+        if (series.size() <= threshold) {
+            return new TreeMap<>(series);
+        }
+        ZoneId zone = series.firstKey().getZone();
+        TreeMap<ZonedDateTime, Double> downsampled = new TreeMap<>();
+        TrendDownsampler downsampler = new TrendDownsampler(series.firstKey(), series.lastKey(), threshold,
+                preserveExtremes, (t, v) -> downsampled.put(ZonedDateTime.ofInstant(Instant.ofEpochMilli(t), zone), v));
+        for (Map.Entry<ZonedDateTime, Double> entry : series.entrySet()) {
+            downsampler.accept(entry.getKey().toInstant().toEpochMilli(), entry.getValue());
+        }
+        downsampler.finish();
+        return downsampled;
+    }
+
+    /**
+     * @return The maximum number of points that will be sent to the sink.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    private int getBucketIndex(long epochMillis) {
+        long offset = Math.max(0L, epochMillis - from);
+        return (int) Math.min(bucketCount - 1, offset * bucketCount / span);
+    }
+
+    /**
+     * Selects the point in the bucket which forms the largest triangle with the previously selected point
+     * and the average of the next bucket, then sends it along with the bucket min and max if required.
+     */
+    private void emit(Bucket bucket, double nextTime, double nextValue) {
+        int selected = 0;
+        double maxArea = -1;
+        for (int i = 0; i < bucket.size; i++) {
+            double area = Math.abs((selectedTime - nextTime) * (bucket.values[i] - selectedValue)
+                    - (selectedTime - bucket.times[i]) * (nextValue - selectedValue));
+            if (area > maxArea) {
+                maxArea = area;
+                selected = i;
+            }
+        }
+        if (preserveExtremes) {
+            int min = bucket.minIndex();
+            int max = bucket.maxIndex();
+            int[] indexes = {selected, min, max};
+            Arrays.sort(indexes);
+            int previous = -1;
+            for (int index : indexes) {
+                if (index != previous) {
+                    sink.accept(bucket.times[index], bucket.values[index]);
+                    previous = index;
+                }
+            }
+        } else {
+            sink.accept(bucket.times[selected], bucket.values[selected]);
+        }
+        select(bucket.times[selected], bucket.values[selected]);
+    }
+
+    private void select(long epochMillis, double value) {
+        selectedTime = epochMillis;
+        selectedValue = value;
+    }
+
+    /**
+     * The readings that fall within one bucket, held as primitives to avoid boxing every reading.
+     */
+    private static final class Bucket {
+        private long[] times = new long[16];
+        private double[] values = new double[16];
+        private int size = 0;
+        private double timeSum = 0;
+        private double valueSum = 0;
+
+        void add(long time, double value) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = time;
+            values[size] = value;
+            size++;
+            timeSum += time;
+            valueSum += value;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        Bucket clear() {
+            size = 0;
+            timeSum = 0;
+            valueSum = 0;
+            return this;
+        }
+
+        long lastTime() {
+            return times[size - 1];
+        }
+
+        double lastValue() {
+            return values[size - 1];
+        }
+
+        void removeLast() {
+            size--;
+            timeSum -= times[size];
+            valueSum -= values[size];
+        }
+
+        double averageTime() {
+            return timeSum / size;
+        }
+
+        double averageValue() {
+            return valueSum / size;
+        }
+
+        int minIndex() {
+            int min = 0;
+            for (int i = 1; i < size; i++) {
+                if (values[i] < values[min]) {
+                    min = i;
+                }
+            }
+            return min;
+        }
+
+        int maxIndex() {
+            int max = 0;
+            for (int i = 1; i < size; i++) {
+                if (values[i] > values[max]) {
+                    max = i;
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package sensordata;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrendDownsamplerTest {
+
+    private final ZonedDateTime start = ZonedDateTime.of(2022, 8, 1, 0, 0, 0, 0, ZoneId.systemDefault());
+
+    @Test
+    void testDownsample() {
+        // 30 days of minute readings with a single peak and trough.
+        TreeMap<ZonedDateTime, Double> series = new TreeMap<>();
+        for (int i = 0; i < 43200; i++) {
+            double value = 50 + Math.sin(i / 100.0);
+            if (i == 20000) {
+                value = 90;
+            } else if (i == 30000) {
+                value = 10;
+            }
+            series.put(start.plusMinutes(i), value);
+        }
+
+        // Check the threshold is respected and the first and last readings are kept.
+        TreeMap<ZonedDateTime, Double> downsampled = TrendDownsampler.downsample(series, 300, false);
+        assertTrue(downsampled.size() <= 300);
+        assertEquals(series.firstKey(), downsampled.firstKey());
+        assertEquals(series.lastKey(), downsampled.lastKey());
+
+        // Check the peak and trough are kept when extremes are preserved.
+        downsampled = TrendDownsampler.downsample(series, 300, true);
+        assertTrue(downsampled.size() <= 300);
+        assertEquals(90, Collections.max(downsampled.values()));
+        assertEquals(10, Collections.min(downsampled.values()));
+        assertEquals(90, downsampled.get(start.plusMinutes(20000)));
+    }
+
+    @Test
+    void testSmallSeriesIsUnchanged() {
+        TreeMap<ZonedDateTime, Double> series = new TreeMap<>();
+        series.put(start, 1.0);
+        series.put(start.plusMinutes(1), 2.0);
+        assertEquals(series, TrendDownsampler.downsample(series, 300, true));
+        assertEquals(Collections.emptyMap(), TrendDownsampler.downsample(new TreeMap<>(), 300, true));
+    }
+
+    @Test
+    void testReadingsMustBeInOrder() {
+        TrendDownsampler downsampler = new TrendDownsampler(start, start.plusDays(1), 10, false, (t, v) -> { });
+        downsampler.accept(start.plusMinutes(5).toInstant().toEpochMilli(), 1.0);
+        assertThrows(IllegalArgumentException.class,
+                () -> downsampler.accept(start.toInstant().toEpochMilli(), 1.0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TrendDownsampler(start, start.plusDays(1), 2, false, (t, v) -> { }));
+    }
+
+    @Test
+    void testThresholdLeavesRoomForTheExtremes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TrendDownsampler(start, start.plusDays(1), 4, true, (t, v) -> { }));
+
+        // The smallest threshold allowed is still respected.
+        TreeMap<ZonedDateTime, Double> series = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            series.put(start.plusMinutes(i), i % 2 == 0 ? 1.0 : -1.0);
+        }
+        assertTrue(TrendDownsampler.downsample(series, 5, true).size() <= 5);
+    }
+}
@@ -0,0 +1,150 @@
+package springasyncthreads;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uk.co.dhl.smas.backend.condition.Sensor;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Lets {@link ScheduledSensorService} run on more than one node. Every node heartbeats into the scheduler_node table,
+ * the sensors are shared between the live nodes using a {@link ConsistentHashRing} and jobs that must only run once
+ * per hour or day are claimed through the scheduler_lease table. A claim that has not been completed within the
+ * lease timeout, e.g. because its node died part way through, can be claimed again by another node.
+ * <p>
+ * Old leases and nodes that stopped heartbeating are pruned once a day.
+ */
+@Component
+@ConditionalOnProperty(prefix = "scheduled.condition.sensor", name = "enabled", havingValue = "true")
+public class ClusterCoordinator {
+
+    private static final Logger log = Logger.getLogger(ClusterCoordinator.class.getSimpleName());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+    private final long nodeTimeoutSeconds;
+    private final long leaseTimeoutSeconds;
+    private final long retentionDays;
+    private volatile ConsistentHashRing ring = new ConsistentHashRing(Set.of());
+    private volatile Set<String> liveNodes = Set.of();
+
+    public ClusterCoordinator(JdbcTemplate jdbcTemplate,
+                              @Value("${scheduled.cluster.node.id:}") String nodeId,
+                              @Value("${scheduled.cluster.node.timeout.seconds:30}") long nodeTimeoutSeconds,
+                              @Value("${scheduled.cluster.lease.timeout.seconds:900}") long leaseTimeoutSeconds,
+                              @Value("${scheduled.cluster.retention.days:7}") long retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.nodeTimeoutSeconds = nodeTimeoutSeconds;
+        this.leaseTimeoutSeconds = leaseTimeoutSeconds;
+        this.retentionDays = retentionDays;
+    }
+
+    @PostConstruct
+    public void createTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS scheduler_node (" +
+                "node_id varchar(64) PRIMARY KEY, " +
+                "last_heartbeat timestamp with time zone NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS scheduler_lease (" +
+                "job_key varchar(128) PRIMARY KEY, " +
+                "node_id varchar(64) NOT NULL, " +
+                "claimed timestamp with time zone NOT NULL)");
+        jdbcTemplate.execute("ALTER TABLE scheduler_lease ADD COLUMN IF NOT EXISTS completed timestamp with time zone");
+        heartbeat();
+    }
+
+    /**
+     * Records that this node is alive and rebuilds the ring if any nodes have joined or left.
+     */
+    @Scheduled(fixedRate = 10000)
+    public void heartbeat() {
+        Timestamp now = Timestamp.from(Instant.now());
+        int updated = jdbcTemplate.update("UPDATE scheduler_node SET last_heartbeat = ? WHERE node_id = ?", now, nodeId);
+        if (updated == 0) {
+            jdbcTemplate.update("INSERT INTO scheduler_node (node_id, last_heartbeat) VALUES (?, ?)", nodeId, now);
+        }
+        Timestamp cutOff = Timestamp.from(Instant.now().minusSeconds(nodeTimeoutSeconds));
+        List<String> nodes = jdbcTemplate.queryForList(
+                "SELECT node_id FROM scheduler_node WHERE last_heartbeat > ?", String.class, cutOff);
+        Set<String> current = new HashSet<>(nodes);
+        current.add(nodeId);
+        if (!current.equals(liveNodes)) {
+            log.info("Scheduler nodes changed from " + liveNodes + " to " + current + ", rebalancing sensors");
+            liveNodes = Set.copyOf(current);
+            ring = new ConsistentHashRing(liveNodes);
+        }
+    }
+
+    /**
+     * @param sensor The sensor to check.
+     * @return True if this node is responsible for updating the sensor.
+     */
+    public boolean isOwnedByThisNode(Sensor sensor) {
+        return nodeId.equals(ring.getOwner(sensor.getId()));
+    }
+
+    /**
+     * Claims a job for a single time bucket, only the first node to claim it will get true unless that node has
+     * not completed the job within the lease timeout, in which case the next node to try takes it over. The job
+     * should be marked as done with {@link #complete(String, ZonedDateTime)} once it has finished.
+     *
+     * @param job    The name of the job.
+     * @param bucket The start of the hour or day the job is for.
+     * @return True if this node should run the job.
+     */
+    public boolean tryClaim(String job, ZonedDateTime bucket) {
+        String jobKey = getJobKey(job, bucket);
+        Instant now = Instant.now();
+        int claimed = jdbcTemplate.update("INSERT INTO scheduler_lease (job_key, node_id, claimed) VALUES (?, ?, ?) " +
+                        "ON CONFLICT (job_key) DO UPDATE SET node_id = EXCLUDED.node_id, claimed = EXCLUDED.claimed " +
+                        "WHERE scheduler_lease.completed IS NULL AND scheduler_lease.claimed < ?",
+                jobKey, nodeId, Timestamp.from(now), Timestamp.from(now.minusSeconds(leaseTimeoutSeconds)));
+        if (claimed == 0) {
+            log.info(jobKey + " has already been claimed by another node");
+        }
+        return claimed == 1;
+    }
+
+    /**
+     * Records that this node finished a job it claimed, so it won't be claimed again once the lease times out.
+     *
+     * @param job    The name of the job.
+     * @param bucket The start of the hour or day the job is for.
+     */
+    public void complete(String job, ZonedDateTime bucket) {
+        jdbcTemplate.update("UPDATE scheduler_lease SET completed = ? WHERE job_key = ? AND node_id = ?",
+                Timestamp.from(Instant.now()), getJobKey(job, bucket), nodeId);
+    }
+
+    /**
+     * Removes the leases older than the retention period and the nodes that have stopped heartbeating, each node
+     * runs this and the deletes are safe to run more than once.
+     */
+    @Scheduled(cron = "0 50 2 * * ?")
+    public void prune() {
+        Timestamp cutOff = Timestamp.from(Instant.now().minus(retentionDays, ChronoUnit.DAYS));
+        int leases = jdbcTemplate.update("DELETE FROM scheduler_lease WHERE claimed < ?", cutOff);
+        int nodes = jdbcTemplate.update("DELETE FROM scheduler_node WHERE last_heartbeat < ?", cutOff);
+        log.info("Pruned " + leases + " scheduler leases and " + nodes + " scheduler nodes");
+    }
+
+    private static String getJobKey(String job, ZonedDateTime bucket) {
+        return job + ":" + bucket.toInstant();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,88 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import uk.co.dhl.smas.backend.condition.Sensor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Covers how each node shares the sensors out from the live nodes it reads. The live nodes are stubbed rather than
+ * read from the scheduler_node table, the statements themselves are not run here.
+ */
+class ClusterCoordinatorTest {
+
+    JdbcTemplate jdbcTemplateA;
+    JdbcTemplate jdbcTemplateB;
+    ClusterCoordinator nodeA;
+    ClusterCoordinator nodeB;
+    List<Sensor> sensors;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplateA = mock(JdbcTemplate.class);
+        jdbcTemplateB = mock(JdbcTemplate.class);
+        nodeA = new ClusterCoordinator(jdbcTemplateA, "node-a", 30, 900, 7);
+        nodeB = new ClusterCoordinator(jdbcTemplateB, "node-b", 30, 900, 7);
+        // Both nodes are live and each sees the other.
+        liveNodes(jdbcTemplateA, "node-a", "node-b");
+        liveNodes(jdbcTemplateB, "node-a", "node-b");
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        sensors = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            Sensor sensor = mock(Sensor.class);
+            when(sensor.getId()).thenReturn(id);
+            sensors.add(sensor);
+        }
+    }
+
+    @Test
+    void testEverySensorHasExactlyOneOwner() {
+        int ownedByA = 0;
+        for (Sensor sensor : sensors) {
+            assertNotEquals(nodeA.isOwnedByThisNode(sensor), nodeB.isOwnedByThisNode(sensor));
+            ownedByA += nodeA.isOwnedByThisNode(sensor) ? 1 : 0;
+        }
+        assertTrue(ownedByA > 0 && ownedByA < sensors.size());
+    }
+
+    @Test
+    void testSensorsMoveWhenANodeStops() {
+        // Node B has stopped heartbeating so node A no longer reads it as live.
+        liveNodes(jdbcTemplateA, "node-a");
+        nodeA.heartbeat();
+
+        sensors.forEach(sensor -> assertTrue(nodeA.isOwnedByThisNode(sensor)));
+    }
+
+    @Test
+    void testNodeCountsItselfAsLive() {
+        // The first heartbeat of node B is not yet visible to its own read.
+        liveNodes(jdbcTemplateB, "node-a");
+        nodeB.heartbeat();
+
+        for (Sensor sensor : sensors) {
+            assertNotEquals(nodeA.isOwnedByThisNode(sensor), nodeB.isOwnedByThisNode(sensor));
+        }
+    }
+
+    @Test
+    void testHeartbeatInsertsANewNode() {
+        verify(jdbcTemplateA).update(startsWith("INSERT INTO scheduler_node"), eq("node-a"), any());
+
+        when(jdbcTemplateA.update(startsWith("UPDATE scheduler_node"), any(), eq("node-a"))).thenReturn(1);
+        nodeA.heartbeat();
+
+        verify(jdbcTemplateA, times(1)).update(startsWith("INSERT INTO scheduler_node"), eq("node-a"), any());
+    }
+
+    private static void liveNodes(JdbcTemplate jdbcTemplate, String... nodeIds) {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), any())).thenReturn(List.of(nodeIds));
+    }
+}
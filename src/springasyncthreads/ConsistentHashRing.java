@@ -0,0 +1,53 @@
+package springasyncthreads;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns sensors to nodes so that when a node joins or leaves only the sensors belonging to that node move.
+ * Each node is placed on the ring many times to spread the sensors evenly.
+ */
+public class ConsistentHashRing {
+
+    static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> nodeIds) {
+        nodeIds.forEach(nodeId -> {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(nodeId + "#" + i), nodeId);
+            }
+        });
+    }
+
+    /**
+     * @param sensorId The id of the sensor.
+     * @return The node that should update the sensor, or null if there are no nodes.
+     */
+    public String getOwner(Long sensorId) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash("sensor:" + sensorId));
+        return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+    }
+
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
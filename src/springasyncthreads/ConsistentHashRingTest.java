@@ -0,0 +1,44 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    @Test
+    void testSensorsAreSpreadAcrossNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"));
+        Map<String, Integer> counts = new HashMap<>();
+        for (long id = 0; id < 3000; id++) {
+            counts.merge(ring.getOwner(id), 1, Integer::sum);
+        }
+        assertEquals(Set.of("a", "b", "c"), counts.keySet());
+        // Each node should have roughly a third of the sensors.
+        counts.values().forEach(count -> assertTrue(count > 700 && count < 1300, "count was " + count));
+    }
+
+    @Test
+    void testOnlyTheLeavingNodesSensorsMove() {
+        ConsistentHashRing three = new ConsistentHashRing(List.of("a", "b", "c"));
+        ConsistentHashRing two = new ConsistentHashRing(List.of("a", "b"));
+        for (long id = 0; id < 3000; id++) {
+            String before = three.getOwner(id);
+            if (!before.equals("c")) {
+                assertEquals(before, two.getOwner(id));
+            }
+        }
+    }
+
+    @Test
+    void testEmptyRing() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of());
+        assertTrue(ring.isEmpty());
+        assertNull(ring.getOwner(1L));
+    }
+}
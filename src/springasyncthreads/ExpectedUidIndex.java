@@ -0,0 +1,127 @@
+package springasyncthreads;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.backend.order.Order;
+import uk.co.dhl.smas.backend.order.OrderService;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * The ancillary ids expected by the in-progress order on each machine, so the last UID read by an identification
+ * type sensor (barcode scanner, RFID reader etc) can be checked with a single hash lookup instead of loading the
+ * order and scanning its ancillary ids on every sweep.
+ * <p>
+ * A machine is loaded from the OrderService the first time one of its sensors is checked, then kept up to date by
+ * {@link OrderStatusChangedEvent}s from the {@link OrderLifecycleListener}. The whole index is dropped periodically in case an order was started or
+ * finished on another node.
+ */
+@Component
+public class ExpectedUidIndex {
+
+    private static final Logger log = Logger.getLogger(ExpectedUidIndex.class.getSimpleName());
+
+    /**
+     * Held for a machine with no in-progress order, so that machine is not reloaded on every scan. Compared by
+     * identity so it is never confused with an order that has no ancillary ids.
+     */
+    private static final Set<String> NO_ORDER = Collections.unmodifiableSet(new HashSet<>());
+
+    public enum Match {
+        /**
+         * The UID is one of the ancillary ids of the in-progress order.
+         */
+        MATCH,
+        /**
+         * There is an in-progress order but the UID is not one of its ancillary ids.
+         */
+        NO_MATCH,
+        /**
+         * There is no in-progress order on the machine so there is nothing to compare against.
+         */
+        NO_ORDER
+    }
+
+    private final OrderService orderService;
+    private final boolean enabled;
+    private final Map<Long, Set<String>> expectedByMachine = new ConcurrentHashMap<>();
+
+    public ExpectedUidIndex(OrderService orderService,
+                            @Value("${sensor.uid.match.in.progress.orders:false}") boolean enabled) {
+        this.orderService = orderService;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return True if UIDs are compared against the in-progress orders, false where the sensor value has already
+     * been checked for a match before it reaches us, as it is for MTC.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks the UID against the ancillary ids of the in-progress order on the machine.
+     *
+     * @param machine The machine the sensor is fitted to, null for ancillary equipment.
+     * @param uid     The last UID read by the sensor.
+     * @return Whether the UID matched.
+     */
+    public Match match(Machine machine, String uid) {
+        if (machine == null || machine.getId() == null) {
+            return Match.NO_ORDER;
+        }
+        Set<String> expected = expectedByMachine.computeIfAbsent(machine.getId(),
+                id -> toIds(orderService.findInProgressOrder(machine).orElse(null)));
+        if (expected == NO_ORDER) {
+            return Match.NO_ORDER;
+        }
+        return uid != null && expected.contains(uid.trim()) ? Match.MATCH : Match.NO_MATCH;
+    }
+
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        Order order = event.getOrder();
+        if (order.getMachine() == null || order.getMachine().getId() == null) {
+            return;
+        }
+        expectedByMachine.put(order.getMachine().getId(), event.isInProgress() ? toIds(order) : NO_ORDER);
+    }
+
+    /**
+     * Drops every machine so they are reloaded from the database on their next scan.
+     */
+    @Scheduled(fixedRateString = "${sensor.uid.match.refresh.millis:900000}")
+    public void invalidateAll() {
+        if (!expectedByMachine.isEmpty()) {
+            log.fine("Clearing the expected UIDs for " + expectedByMachine.size() + " machines");
+            expectedByMachine.clear();
+        }
+    }
+
+    private static Set<String> toIds(Order order) {
+        if (order == null) {
+            return NO_ORDER;
+        }
+        Collection<String> ancillaryIds = order.getAncillaryIds();
+        if (ancillaryIds == null) {
+            return Collections.emptySet();
+        }
+        Set<String> ids = new HashSet<>();
+        for (String id : ancillaryIds) {
+            if (id != null) {
+                ids.add(id.trim());
+            }
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+}
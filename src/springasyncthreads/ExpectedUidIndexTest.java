@@ -0,0 +1,71 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.backend.order.Order;
+import uk.co.dhl.smas.backend.order.OrderService;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpectedUidIndexTest {
+
+    @Mock
+    OrderService orderService;
+    @Mock
+    Order order;
+    ExpectedUidIndex underTest;
+    Machine machine = Machine.builder().id(1L).build();
+    Machine idleMachine = Machine.builder().id(2L).build();
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ExpectedUidIndex(orderService, true);
+    }
+
+    @Test
+    void testMatch() {
+        when(order.getAncillaryIds()).thenReturn(List.of("TOOL-1", "TOOL-2"));
+        when(orderService.findInProgressOrder(machine)).thenReturn(Optional.of(order));
+        when(orderService.findInProgressOrder(idleMachine)).thenReturn(Optional.empty());
+
+        assertEquals(ExpectedUidIndex.Match.MATCH, underTest.match(machine, "TOOL-2"));
+        assertEquals(ExpectedUidIndex.Match.MATCH, underTest.match(machine, "TOOL-1 "));
+        assertEquals(ExpectedUidIndex.Match.NO_MATCH, underTest.match(machine, "TOOL-3"));
+        assertEquals(ExpectedUidIndex.Match.NO_MATCH, underTest.match(machine, null));
+        assertEquals(ExpectedUidIndex.Match.NO_ORDER, underTest.match(idleMachine, "TOOL-1"));
+        assertEquals(ExpectedUidIndex.Match.NO_ORDER, underTest.match(null, "TOOL-1"));
+
+        // Each machine is only loaded once, including the one without an order.
+        verify(orderService, times(1)).findInProgressOrder(machine);
+        verify(orderService, times(1)).findInProgressOrder(idleMachine);
+    }
+
+    @Test
+    void testOrderEvents() {
+        when(order.getMachine()).thenReturn(machine);
+        when(order.getAncillaryIds()).thenReturn(List.of("TOOL-1"));
+
+        underTest.onOrderStatusChanged(new OrderStatusChangedEvent(this, order, true));
+        assertEquals(ExpectedUidIndex.Match.MATCH, underTest.match(machine, "TOOL-1"));
+
+        // Once the order finishes there is nothing to match against.
+        underTest.onOrderStatusChanged(new OrderStatusChangedEvent(this, order, false));
+        assertEquals(ExpectedUidIndex.Match.NO_ORDER, underTest.match(machine, "TOOL-1"));
+        verify(orderService, never()).findInProgressOrder(any());
+
+        // After the index is cleared the machine is reloaded.
+        when(orderService.findInProgressOrder(machine)).thenReturn(Optional.empty());
+        underTest.invalidateAll();
+        assertEquals(ExpectedUidIndex.Match.NO_ORDER, underTest.match(machine, "TOOL-1"));
+        verify(orderService, times(1)).findInProgressOrder(machine);
+    }
+}
@@ -0,0 +1,90 @@
+package springasyncthreads;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import sensordata.ReadingConsumer;
+import sensordata.StreamingSensorDataSource;
+import springhibernate.JdbcReadingStreamer;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.data.SensorMonitoringDataProcessorFactory;
+import uk.co.dhl.smas.data.conditionmonitoring.dataprocessors.AbstractSensorMonitoringDataProcessor;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Streams the readings of a sensor from the historian for the {@link sensordata.SensorHistoryCache} and the sweep.
+ * <p>
+ * When sensor.history.stream.sql is set the readings are streamed straight from the result set with a
+ * {@link JdbcReadingStreamer}, the query takes the sensor id, from and to and selects the date and the converted
+ * value ordered by date. Otherwise the window is read from the client's data processor a chunk at a time, so at most
+ * one chunk of readings is held in a TreeMap however long the window is.
+ */
+@Component
+public class HistorianReadingSource implements StreamingSensorDataSource {
+
+    private final Supplier<AbstractSensorMonitoringDataProcessor> processors;
+    private final JdbcReadingStreamer streamer;
+    private final String sql;
+    private final Duration chunk;
+
+    public HistorianReadingSource(ObjectProvider<JdbcTemplate> jdbcTemplate,
+                                  @Value("${sensor.history.stream.sql:}") String sql,
+                                  @Value("${sensor.history.chunk.hours:24}") long chunkHours) {
+        this(SensorMonitoringDataProcessorFactory::getSensorMonitoringDataProcessor,
+                sql.isEmpty() ? null : new JdbcReadingStreamer(jdbcTemplate.getObject()), sql,
+                Duration.ofHours(chunkHours));
+    }
+
+    HistorianReadingSource(Supplier<AbstractSensorMonitoringDataProcessor> processors, JdbcReadingStreamer streamer,
+                           String sql, Duration chunk) {
+        this.processors = processors;
+        this.streamer = streamer;
+        this.sql = sql;
+        this.chunk = chunk;
+    }
+
+    /**
+     * @return The client's data processor, for the readings that are not streamed such as the current value.
+     */
+    public AbstractSensorMonitoringDataProcessor getProcessor() {
+        return processors.get();
+    }
+
+    @Override
+    public void streamValuesBetweenFromAndTo(AnalogSensor sensor, ZonedDateTime from, ZonedDateTime to,
+                                             ReadingConsumer consumer) {
+        if (streamer != null) {
+            streamer.stream(sql, value -> value, consumer, sensor.getId(),
+                    Timestamp.from(from.toInstant()), Timestamp.from(to.toInstant()));
+            return;
+        }
+        AbstractSensorMonitoringDataProcessor processor = processors.get();
+        long last = Long.MIN_VALUE;
+        ZonedDateTime start = from;
+        while (!start.isAfter(to)) {
+            ZonedDateTime end = start.plus(chunk).isBefore(to) ? start.plus(chunk) : to;
+            TreeMap<ZonedDateTime, Double> readings = processor.getValuesAndDatesBetweenFromAndTo(sensor, start, end);
+            if (readings != null) {
+                for (Map.Entry<ZonedDateTime, Double> reading : readings.entrySet()) {
+                    long time = reading.getKey().toInstant().toEpochMilli();
+                    // A reading on the boundary between two chunks is in both.
+                    if (time > last && reading.getValue() != null) {
+                        consumer.accept(time, reading.getValue());
+                        last = time;
+                    }
+                }
+            }
+            if (end.equals(to)) {
+                break;
+            }
+            start = end;
+        }
+    }
+}
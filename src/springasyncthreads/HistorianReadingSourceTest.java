@@ -0,0 +1,53 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.data.conditionmonitoring.dataprocessors.AbstractSensorMonitoringDataProcessor;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HistorianReadingSourceTest {
+
+    @Mock
+    AbstractSensorMonitoringDataProcessor processor;
+
+    @Test
+    void testWindowIsReadAChunkAtATime() {
+        ZonedDateTime from = ZonedDateTime.of(2023, 1, 1, 0, 0, 0, 0, ZoneId.systemDefault());
+        ZonedDateTime to = from.plusHours(60);
+        when(processor.getValuesAndDatesBetweenFromAndTo(any(), any(), any())).thenAnswer(invocation -> {
+            ZonedDateTime start = invocation.getArgument(1);
+            ZonedDateTime end = invocation.getArgument(2);
+            TreeMap<ZonedDateTime, Double> readings = new TreeMap<>();
+            // A reading every 12 hours, including both ends of the chunk.
+            for (ZonedDateTime time = start; !time.isAfter(end); time = time.plusHours(12)) {
+                readings.put(time, (double) time.getHour());
+            }
+            return readings;
+        });
+        HistorianReadingSource underTest = new HistorianReadingSource(() -> processor, null, null,
+                Duration.ofHours(24));
+
+        List<Long> times = new ArrayList<>();
+        underTest.streamValuesBetweenFromAndTo(new AnalogSensor(), from, to, (epochMillis, value) -> times.add(epochMillis));
+
+        // Three chunks, 24 + 24 + 12 hours, with the boundary readings only passed once.
+        verify(processor, times(3)).getValuesAndDatesBetweenFromAndTo(any(), any(), any());
+        assertEquals(6, times.size());
+        assertEquals(from.toInstant().toEpochMilli(), times.get(0));
+        assertEquals(to.toInstant().toEpochMilli(), times.get(5));
+    }
+}
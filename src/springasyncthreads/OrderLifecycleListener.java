@@ -0,0 +1,109 @@
+package springasyncthreads;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.backend.order.Order;
+import uk.co.dhl.smas.backend.order.OrderService;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Publishes an {@link OrderStatusChangedEvent} whenever an order is saved or deleted, so the
+ * {@link ExpectedUidIndex} follows orders being started and finished wherever that happens in the application.
+ * The Order entity is not ours to annotate, so the listener is registered with Hibernate rather than with
+ * {@code @EntityListeners}, and runs after the transaction has committed so the in-progress order of the machine
+ * can be read back.
+ */
+@Component
+public class OrderLifecycleListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    private static final Logger log = Logger.getLogger(OrderLifecycleListener.class.getSimpleName());
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final OrderService orderService;
+    private final ApplicationEventPublisher ape;
+
+    public OrderLifecycleListener(EntityManagerFactory entityManagerFactory, OrderService orderService,
+                                  ApplicationEventPublisher ape) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.orderService = orderService;
+        this.ape = ape;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        onOrderChanged(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        onOrderChanged(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        onOrderChanged(event.getEntity());
+    }
+
+    /**
+     * Publishes the order now in progress on the machine of the changed order, or the changed order as finished if
+     * there is none. Any change to an order is treated as a possible start or finish, as the lookup is a single
+     * query and orders are saved far less often than the sensors are scanned.
+     *
+     * @param entity The entity that was saved or deleted.
+     */
+    void onOrderChanged(Object entity) {
+        if (!(entity instanceof Order)) {
+            return;
+        }
+        Order order = (Order) entity;
+        Machine machine = order.getMachine();
+        if (machine == null || machine.getId() == null) {
+            return;
+        }
+        Optional<Order> inProgress = orderService.findInProgressOrder(machine);
+        log.fine("Order changed on machine " + machine.getId() + ", in progress: " + inProgress.isPresent());
+        ape.publishEvent(new OrderStatusChangedEvent(this, inProgress.orElse(order), inProgress.isPresent()));
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return true;
+    }
+}
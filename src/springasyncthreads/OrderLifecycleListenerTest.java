@@ -0,0 +1,93 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.backend.order.Order;
+import uk.co.dhl.smas.backend.order.OrderService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderLifecycleListenerTest {
+
+    @Mock
+    EntityManagerFactory entityManagerFactory;
+    @Mock
+    OrderService orderService;
+    @Mock
+    ApplicationEventPublisher ape;
+    @Mock
+    Order order;
+    OrderLifecycleListener underTest;
+    Machine machine = Machine.builder().id(1L).build();
+
+    @BeforeEach
+    void setUp() {
+        underTest = new OrderLifecycleListener(entityManagerFactory, orderService, ape);
+        lenient().when(order.getMachine()).thenReturn(machine);
+    }
+
+    @Test
+    void testStartedOrderIsPublished() {
+        when(orderService.findInProgressOrder(machine)).thenReturn(Optional.of(order));
+
+        underTest.onOrderChanged(order);
+
+        OrderStatusChangedEvent event = captureEvent();
+        assertSame(order, event.getOrder());
+        assertTrue(event.isInProgress());
+    }
+
+    @Test
+    void testFinishedOrderIsPublished() {
+        when(orderService.findInProgressOrder(machine)).thenReturn(Optional.empty());
+
+        underTest.onOrderChanged(order);
+
+        OrderStatusChangedEvent event = captureEvent();
+        assertSame(order, event.getOrder());
+        assertFalse(event.isInProgress());
+    }
+
+    @Test
+    void testIndexFollowsTheOrders() {
+        ExpectedUidIndex index = new ExpectedUidIndex(orderService, true);
+        doAnswer(invocation -> {
+            index.onOrderStatusChanged(invocation.getArgument(0));
+            return null;
+        }).when(ape).publishEvent(any(OrderStatusChangedEvent.class));
+        when(order.getAncillaryIds()).thenReturn(List.of("TOOL-1"));
+        when(orderService.findInProgressOrder(machine)).thenReturn(Optional.of(order), Optional.empty());
+
+        underTest.onOrderChanged(order);
+        assertEquals(ExpectedUidIndex.Match.MATCH, index.match(machine, "TOOL-1"));
+        underTest.onOrderChanged(order);
+        assertEquals(ExpectedUidIndex.Match.NO_ORDER, index.match(machine, "TOOL-1"));
+        // The index was only ever filled by the events.
+        verify(orderService, times(2)).findInProgressOrder(machine);
+    }
+
+    @Test
+    void testOtherEntitiesAreIgnored() {
+        underTest.onOrderChanged(machine);
+
+        verifyNoInteractions(orderService, ape);
+    }
+
+    private OrderStatusChangedEvent captureEvent() {
+        ArgumentCaptor<OrderStatusChangedEvent> event = ArgumentCaptor.forClass(OrderStatusChangedEvent.class);
+        verify(ape).publishEvent(event.capture());
+        return event.getValue();
+    }
+}
@@ -0,0 +1,28 @@
+package springasyncthreads;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+import uk.co.dhl.smas.backend.order.Order;
+
+/**
+ * Published by the {@link OrderLifecycleListener} when an order is started or finished on a machine, so the
+ * {@link ExpectedUidIndex} can swap the expected ancillary ids for that machine without reloading the order on every
+ * scan.
+ */
+@Getter
+public class OrderStatusChangedEvent extends ApplicationEvent {
+
+    private final Order order;
+    private final boolean inProgress;
+
+    /**
+     * @param source     The publisher.
+     * @param order      The order that changed.
+     * @param inProgress True if the order has been started, false if it has finished or been stopped.
+     */
+    public OrderStatusChangedEvent(Object source, Order order, boolean inProgress) {
+        super(source);
+        this.order = order;
+        this.inProgress = inProgress;
+    }
+}
@@ -1,30 +1,46 @@
 package springasyncthreads;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import sensordata.AlertRuleEngine;
+import sensordata.MaintenanceWindowStatistics;
+import sensordata.OnlineAnomalyDetector;
+import sensordata.PredictiveMaintenanceAlertGenerator;
+import sensordata.ReadingConsumer;
+import sensordata.RunningStatistics;
+import sensordata.SensorHistoryCache;
+import sensordata.SensorQuantileSketches;
+import sensordata.StreamingSensorDataSource;
+import springhibernate.AlertMailer;
+import springhibernate.AnalogSensorDataBlockService;
 import uk.co.dhl.smas.backend.alert.Alert;
 import uk.co.dhl.smas.backend.alert.AlertService;
 import uk.co.dhl.smas.backend.condition.*;
 import uk.co.dhl.smas.backend.order.OrderService;
 import uk.co.dhl.smas.backend.user.UserDetailsServiceImpl;
-import uk.co.dhl.smas.data.SensorMonitoringDataProcessorFactory;
 import uk.co.dhl.smas.data.conditionmonitoring.dataprocessors.AbstractSensorMonitoringDataProcessor;
 import uk.co.dhl.smas.ui.view.SmasMaths;
-import uk.co.dhl.smas.ui.view.conditionmonitoring.predictivemaintenance.PredictiveMaintenanceAlertGenerator;
 import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
 
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static java.lang.Double.NaN;
+import static springasyncthreads.SensorSweepExecutor.Resource.HISTORIAN;
+import static springasyncthreads.SensorSweepExecutor.Resource.PRIMARY_DB;
 import static uk.co.dhl.smas.backend.condition.Sensor.*;
 import static uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours.*;
 
@@ -34,25 +50,66 @@ public class ScheduledSensorService {
 
     private final static Logger log = Logger.getLogger(ScheduledSensorService.class.getSimpleName());
 
+    // Readings older than this when first read only train the anomaly detector.
+    private static final long ANOMALY_MAX_AGE_MILLIS = 5 * 60 * 1000L;
+
     //Services
     private final AnalogSensorService analogSensorService;
     private final DigitalSensorService digitalSensorService;
     private final AlertService alertService;
     private final AnalogSensorDataEntryService analogSensorDataEntryService;
     private final OrderService orderService;
+    private final AnalogSensorDataBlockService analogSensorDataBlockService;
 
     //Tools
     private final PredictiveMaintenanceAlertGenerator pmag;
+    private final ApplicationEventPublisher ape;
+    private final ClusterCoordinator clusterCoordinator;
+    private final SensorSweepExecutor sweepExecutor;
+    private final SensorHistoryCache historyCache;
+    private final HistorianReadingSource historian;
+    private final AlertRuleEngine alertRuleEngine;
+    private final OnlineAnomalyDetector anomalyDetector;
+    private final SensorQuantileSketches quantileSketches;
+    private final ExpectedUidIndex expectedUidIndex;
+    private final SensorRefreshScheduler refreshScheduler;
+    private final SweepStageSchedule stageSchedule = new SweepStageSchedule(ZonedDateTime.now());
+    private final long sensorListMillis;
+    // Every sensor in supervisor view, re-read from the database every sensorListMillis rather than every tick.
+    private volatile List<Sensor> sensorList;
+    private volatile long sensorListReadAt;
+    // Kept apart from pmag as the sweep raises anomalies on many threads while the maintenance check runs.
+    private final PredictiveMaintenanceAlertGenerator anomalyAlerts;
 
     public ScheduledSensorService(AnalogSensorService analogSensorService,
                                   DigitalSensorService digitalSensorService, AnalogSensorDataEntryService analogSensorDataEntryService,
-                                  AlertService alertService, OrderService orderService, UserDetailsServiceImpl userService, ApplicationEventPublisher ape) {
+                                  AlertService alertService, OrderService orderService, UserDetailsServiceImpl userService, ApplicationEventPublisher ape,
+                                  AnalogSensorDataBlockService analogSensorDataBlockService, ClusterCoordinator clusterCoordinator,
+                                  SensorSweepExecutor sweepExecutor, SensorHistoryCache historyCache,
+                                  AlertRuleEngine alertRuleEngine, OnlineAnomalyDetector anomalyDetector,
+                                  ExpectedUidIndex expectedUidIndex, SensorRefreshScheduler refreshScheduler,
+                                  SensorQuantileSketches quantileSketches, HistorianReadingSource historian,
+                                  AlertMailer alertMailer,
+                                  @Value("${scheduled.sensor.list.refresh.millis:300000}") long sensorListMillis) {
         this.analogSensorService = analogSensorService;
         this.digitalSensorService = digitalSensorService;
         this.analogSensorDataEntryService = analogSensorDataEntryService;
         this.alertService = alertService;
         this.orderService = orderService;
-        pmag = new PredictiveMaintenanceAlertGenerator(alertService, userService, analogSensorService, ape);
+        this.analogSensorDataBlockService = analogSensorDataBlockService;
+        this.ape = ape;
+        this.clusterCoordinator = clusterCoordinator;
+        this.sweepExecutor = sweepExecutor;
+        this.historyCache = historyCache;
+        this.alertRuleEngine = alertRuleEngine;
+        this.anomalyDetector = anomalyDetector;
+        this.expectedUidIndex = expectedUidIndex;
+        this.refreshScheduler = refreshScheduler;
+        this.quantileSketches = quantileSketches;
+        this.historian = historian;
+        this.sensorListMillis = sensorListMillis;
+        pmag = new PredictiveMaintenanceAlertGenerator(alertService, userService, analogSensorService, ape, alertMailer);
+        anomalyAlerts = new PredictiveMaintenanceAlertGenerator(alertService, userService, analogSensorService, ape, alertMailer);
     }
 
     /**
@@ -70,96 +127,303 @@ public class ScheduledSensorService {
         return sensors;
     }
 
+    /**
+     * The sensors this node is responsible for on a tick of the pipeline. The sensors are only read from the
+     * database every few minutes, as each is loaded with its alerts, and the values each refresh writes, including a
+     * new highest or lowest value and the 30 day statistics, are applied to the held sensors in between, see
+     * {@link SensorStateDelta#applyTo(Sensor)}. The open alerts read by each refresh replace the held alerts.
+     * Ownership is checked every tick so sensors move between nodes straight away.
+     *
+     * @param nowMillis The time of the tick.
+     * @return A list of sensors owned by this node.
+     */
+    private List<Sensor> getSensorsForThisTick(long nowMillis) {
+        List<Sensor> sensors = sensorList;
+        if (sensors == null || nowMillis - sensorListReadAt >= sensorListMillis) {
+            sensors = getSensors(true);
+            sensorList = sensors;
+            sensorListReadAt = nowMillis;
+        }
+        return sensors.stream()
+                .filter(clusterCoordinator::isOwnedByThisNode)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Retrieves the correct sensor monitoring data processor for the client.
      *
      * @return A sensor monitoring data processor.
      */
     private AbstractSensorMonitoringDataProcessor getProcessor() {
-        return SensorMonitoringDataProcessorFactory.getSensorMonitoringDataProcessor();
+        return historian.getProcessor();
     }
 
-    @Scheduled(fixedRate = 60000)
+    /**
+     * A tick of the sensor pipeline. Each sensor has a single fetch stage per tick which tops the history cache up
+     * to the time of the tick, the refresh, maintenance check and hourly rollup then run as dependent stages that
+     * each read their own slice of the cached window, so no historian row is read twice. How often each sensor is
+     * refreshed depends on its state, see {@link SensorRefreshScheduler}, and when the maintenance check and rollup
+     * run is decided by {@link SweepStageSchedule}.
+     */
+    @Scheduled(fixedRateString = "${scheduled.sensor.tick.millis:15000}")
     @Async("asyncExecutor")
     public void updateSensorTables() {
-        log.info("updateConditionSensorTable has started" + "\t" + "<<<--------------------------------<<<");
-        getSensors(true).forEach(sensor -> {
+        ZonedDateTime now = ZonedDateTime.now();
+        updateSensorTables(now, stageSchedule.stagesDue(now));
+    }
+
+    /**
+     * Runs a tick of the sensor pipeline.
+     *
+     * @param now    The time of the tick.
+     * @param stages The dependent stages due on this tick.
+     */
+    void updateSensorTables(ZonedDateTime now, Set<SweepStageSchedule.Stage> stages) {
+        analogSensorService.buildStatusTreeIfRequired();
+        long nowMillis = now.toInstant().toEpochMilli();
+        List<Sensor> sensors = getSensorsForThisTick(nowMillis);
+        Set<Sensor> refresh = Collections.newSetFromMap(new IdentityHashMap<>());
+        refresh.addAll(refreshScheduler.takeDue(sensors, nowMillis));
+        List<Sensor> work = sensors.stream()
+                .filter(sensor -> refresh.contains(sensor) || (!stages.isEmpty() && sensor instanceof AnalogSensor))
+                .collect(Collectors.toList());
+        if (work.isEmpty()) {
+            return;
+        }
+        log.info("updateConditionSensorTable has started for " + refresh.size() + " sensors with " + stages + "\t" + "<<<--------------------------------<<<");
+        // Each sensor is updated on its own thread, see SensorSweepExecutor.
+        List<SensorStateDelta> deltas = sweepExecutor.invokeForEach(work,
+                sensor -> runStages(sensor, refresh.contains(sensor), stages, now));
+        publishDeltas(deltas);
+        if (stages.contains(SweepStageSchedule.Stage.MAINTENANCE)) {
+            checkAlertRules(sensors);
+        }
+    }
+
+    /**
+     * Runs the stages of a tick for a single sensor, the fetch stage always runs first.
+     *
+     * @param sensor  The sensor.
+     * @param refresh True if the sensor is due to be refreshed on this tick.
+     * @param stages  The dependent stages due on this tick.
+     * @param now     The time of the tick, every stage reads up to this time at most.
+     * @return The fields that changed during the refresh, or null.
+     */
+    private SensorStateDelta runStages(Sensor sensor, boolean refresh, Set<SweepStageSchedule.Stage> stages,
+                                       ZonedDateTime now) {
+        SensorStateDelta delta = null;
+        try {
             if (sensor instanceof AnalogSensor) {
-                updateAnalogSensor((AnalogSensor) sensor);
-            } else if (sensor instanceof DigitalSensor) {
-                updateDigitalSensor((DigitalSensor) sensor);
+                AnalogSensor analogSensor = (AnalogSensor) sensor;
+                fetchNewReadings(analogSensor, now);
+                if (refresh) {
+                    delta = updateAnalogSensor(analogSensor, now);
+                }
+                if (stages.contains(SweepStageSchedule.Stage.MAINTENANCE) && sensor.getType() == MAINTENANCE_TYPE) {
+                    checkForMaintenance(analogSensor, now);
+                }
+                if (stages.contains(SweepStageSchedule.Stage.HOURLY_ROLLUP)) {
+                    createHourlyAvgEntry(analogSensor, SweepStageSchedule.rollupBucket(now));
+                }
+            } else if (refresh && sensor instanceof DigitalSensor) {
+                delta = updateDigitalSensor((DigitalSensor) sensor);
+            }
+        } finally {
+            if (refresh) {
+                refreshScheduler.reschedule(sensor, delta, System.currentTimeMillis());
             }
+        }
+        if (delta != null) {
+            // The sensor is held between ticks so it has to show what was written.
+            delta.applyTo(sensor);
+        }
+        return delta == null || delta.isEmpty() ? null : delta;
+    }
+
+    /**
+     * The fetch stage, tops the history cache of the sensor up to the time of the tick. Every reading new to the
+     * cache is added to the sensors quantile sketches and for a maintenance sensor checked for anomalies, readings
+     * older than a few minutes, e.g. when the cache is first filled, only train the detector.
+     *
+     * @param analogSensor The sensor to fetch.
+     * @param now          The time of the tick.
+     */
+    private void fetchNewReadings(AnalogSensor analogSensor, ZonedDateTime now) {
+        if (analogSensor.getType().equals(IDENTIFICATION_TYPE)) {
+            return;
+        }
+        List<Map.Entry<Alert.TypeOfAlert, Double>> anomalies = new ArrayList<>();
+        long raiseAfter = now.toInstant().toEpochMilli() - ANOMALY_MAX_AGE_MILLIS;
+        boolean anomalyCheck = analogSensor.getType().equals(MAINTENANCE_TYPE);
+        ReadingConsumer newReadings = (epochMillis, value) -> {
+            quantileSketches.accept(analogSensor.getId(), epochMillis, value);
+            if (anomalyCheck) {
+                checkForAnomaly(analogSensor, epochMillis >= raiseAfter, value, anomalies);
+            }
+        };
+        quantileSketches.load(analogSensor.getId());
+        sweepExecutor.withPermit(HISTORIAN, () -> {
+            historyCache.topUp(analogSensor, now, historian, newReadings);
+            return null;
         });
+        raiseAnomalies(analogSensor, anomalies);
+    }
+
+    private void raiseAnomalies(AnalogSensor analogSensor, List<Map.Entry<Alert.TypeOfAlert, Double>> anomalies) {
+        if (!anomalies.isEmpty()) {
+            sweepExecutor.withPermit(PRIMARY_DB, () -> {
+                anomalies.forEach(anomaly -> anomalyAlerts.checkAndCreateAlert(analogSensor, anomaly.getKey(),
+                        anomalyAlerts.startOfTwentyFourHoursAgo(), anomaly.getValue()));
+                return null;
+            });
+        }
     }
 
     /**
-     * Checks all sensors every 15minutes for potential maintenance requirements
-     * on the machines that they are monitoring.
+     * Sends the sensors that changed during this sweep to any open dashboards, so they don't have to
+     * re-query the database to find out what has changed.
+     *
+     * @param deltas The changed fields of each sensor.
      */
-    @Scheduled(cron = "0 */15 * * * ?")
-    @Async("asyncExecutor")
-    public void checkForMaintenance() {
-        ZonedDateTime startOfLastMonth = ZonedDateTime.now()
-                .minusDays(ZonedDateTime.now().getDayOfMonth() - 1)
+    private void publishDeltas(List<SensorStateDelta> deltas) {
+        if (!deltas.isEmpty() && ape != null) {
+            ape.publishEvent(new SensorStateDeltaEvent(this, deltas));
+        }
+    }
+
+    /**
+     * The maintenance stage for a single sensor, compares this month to date with last month.
+     *
+     * @param analogSensor The maintenance sensor to check.
+     * @param now          The time of the tick.
+     */
+    private void checkForMaintenance(AnalogSensor analogSensor, ZonedDateTime now) {
+        ZonedDateTime startOfLastMonth = now
+                .minusDays(now.getDayOfMonth() - 1)
                 .truncatedTo(ChronoUnit.DAYS)
                 .minusMonths(1L);
-        ZonedDateTime now = ZonedDateTime.now().truncatedTo(ChronoUnit.HOURS);
-        if (!getSensors(false).isEmpty()) {
-            getSensors(false).forEach(sensor -> {
-                if (sensor instanceof AnalogSensor && sensor.getType() == MAINTENANCE_TYPE) {
-                    pmag.applyDataAndCreateAlarms(getProcessor().getValuesAndDatesBetweenFromAndTo((AnalogSensor) sensor,
-                            startOfLastMonth, now), (AnalogSensor) sensor);
-                }
-            });
+        ZonedDateTime to = now.truncatedTo(ChronoUnit.HOURS);
+        // Only the running averages are held rather than the whole window, and they are all calculated before the
+        // shared alert generator is locked so the other sensors are only held up while the alarms are created.
+        MaintenanceWindowStatistics statistics = pmag.newWindowStatistics();
+        sweepExecutor.withPermit(HISTORIAN, () -> {
+            historyCache.stream(analogSensor, startOfLastMonth, to, historian, statistics);
+            return null;
+        });
+        synchronized (pmag) {
+            pmag.applyStatisticsAndCreateAlarms(statistics, analogSensor);
         }
     }
 
+    /**
+     * Evaluates the client specific alert rules for every maintenance sensor at once, the alerts are raised through
+     * the alert generator so they are de-duplicated and emailed the same as the built in alerts.
+     *
+     * @param sensors The sensors for this node.
+     */
+    private void checkAlertRules(List<Sensor> sensors) {
+        if (!alertRuleEngine.hasRules()) {
+            return;
+        }
+        List<AnalogSensor> maintenanceSensors = sensors.stream()
+                .filter(sensor -> sensor instanceof AnalogSensor && sensor.getType() == MAINTENANCE_TYPE)
+                .map(sensor -> (AnalogSensor) sensor)
+                .collect(Collectors.toList());
+        // Every window is read through the history cache, only the readings it does not hold come from the historian.
+        StreamingSensorDataSource cached = (sensor, from, to, consumer) -> sweepExecutor.withPermit(HISTORIAN, () -> {
+            historyCache.stream(sensor, from, to, historian, consumer);
+            return null;
+        });
+        alertRuleEngine.evaluate(maintenanceSensors, pmag, cached).forEach(pmag::checkAndCreateAlert);
+    }
+
     /**
      * Creates a new data entry of type 1 for Daily Average every day at 00:10AM,
-     * uses the service to get the average of all type 2 hourly entries
+     * the average of all type 2 hourly entries is read from the compressed blocks, see {@link #getDailyAverage}.
      */
     @Scheduled(cron = "0 10 0 * * ?")
     @Async("asyncExecutor")
     public void createDailyAvgEntry() {
+        ZonedDateTime startOfToday = ZonedDateTime.now().truncatedTo(ChronoUnit.DAYS);
+        if (!clusterCoordinator.tryClaim("createDailyAvgEntry", startOfToday)) {
+            return;
+        }
         if (!getSensors(false).isEmpty()) {
             getSensors(false).forEach(sensor -> {
                 if (sensor instanceof AnalogSensor) {
                     AnalogSensorDataEntry entry = AnalogSensorDataEntry.builder()
                             .analogSensor((AnalogSensor) sensor)
                             .type(AnalogSensorDataEntry.DAILY)
-                            .zonedDateTime(ZonedDateTime.now().truncatedTo(ChronoUnit.DAYS).minusDays(1))
-                            .averageValue(analogSensorDataEntryService.getDailyAverageForSensor((AnalogSensor) sensor))
+                            .zonedDateTime(startOfToday.minusDays(1))
+                            .averageValue(getDailyAverage((AnalogSensor) sensor, startOfToday))
                             .build();
                     analogSensorDataEntryService.save(entry);
+                    analogSensorDataBlockService.append(entry);
                 }
             });
         }
+        clusterCoordinator.complete("createDailyAvgEntry", startOfToday);
     }
 
     /**
-     * Creates a new data entry of type 2 for hourly Average every hour at 00:05,
-     * it collects the average value from all live readings in the past hour from the production DB
+     * Averages yesterday's hourly entries from the compressed blocks, which only loads the one block for the day
+     * rather than every hourly row. Until the backfill has reached yesterday the blocks may not hold it, in which
+     * case the rows are averaged as before.
+     *
+     * @param analogSensor The sensor.
+     * @param startOfToday The end of the day to average.
+     * @return The daily average.
      */
-    @Scheduled(cron = "0 5 * * * ?")
-    @Async("asyncExecutor")
-    public void createHourlyAvgEntry() {
-        ZonedDateTime startOfThisHour = ZonedDateTime.now().truncatedTo(ChronoUnit.HOURS);
-        ZonedDateTime startOfThePreviousHour = startOfThisHour.minusHours(1);
+    double getDailyAverage(AnalogSensor analogSensor, ZonedDateTime startOfToday) {
+        double average = analogSensorDataBlockService.getAverageBetween(analogSensor.getId(),
+                AnalogSensorDataEntry.HOURLY, startOfToday.minusDays(1), startOfToday.minusNanos(1_000_000));
+        return Double.isNaN(average) ? analogSensorDataEntryService.getDailyAverageForSensor(analogSensor) : average;
+    }
 
-        if (!getSensors(false).isEmpty()) {
-            getSensors(false).forEach(sensor -> {
-                if (sensor instanceof AnalogSensor) {
-                    AnalogSensorDataEntry entry = AnalogSensorDataEntry.builder()
-                            .analogSensor((AnalogSensor) sensor)
-                            .type(AnalogSensorDataEntry.HOURLY)
-                            .zonedDateTime(ZonedDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1))
-                            .averageValue(getProcessor().getSensorAverage((AnalogSensor) sensor,
-                                    startOfThePreviousHour, startOfThisHour))
-                            .build();
-                    analogSensorDataEntryService.save(entry);
-                }
+    /**
+     * The hourly rollup stage for a single sensor, it averages all the live readings in the hour before the passed
+     * hour. The readings are taken from the history cache, the UIDs of identification sensors are averaged by the
+     * processor as before.
+     *
+     * <p>
+     * Each entry is claimed through the {@link ClusterCoordinator} first, a sensor can move to another node within
+     * the hour, e.g. when a node joins, and the entry would otherwise be saved by both.
+     *
+     * @param analogSensor    The sensor.
+     * @param startOfThisHour The end of the hour to average.
+     */
+    private void createHourlyAvgEntry(AnalogSensor analogSensor, ZonedDateTime startOfThisHour) {
+        String job = "createHourlyAvgEntry:" + analogSensor.getId();
+        if (!clusterCoordinator.tryClaim(job, startOfThisHour)) {
+            return;
+        }
+        ZonedDateTime startOfThePreviousHour = startOfThisHour.minusHours(1);
+        double average;
+        if (!analogSensor.getType().equals(IDENTIFICATION_TYPE)) {
+            RunningStatistics lastHour = new RunningStatistics();
+            // The stream is inclusive so the reading at the start of this hour is left for the next entry.
+            sweepExecutor.withPermit(HISTORIAN, () -> {
+                historyCache.stream(analogSensor, startOfThePreviousHour, startOfThisHour.minusNanos(1_000_000),
+                        historian, lastHour);
+                return null;
             });
+            average = lastHour.getAverage(NaN);
+        } else {
+            average = sweepExecutor.withPermit(HISTORIAN, () -> getProcessor().getSensorAverage(analogSensor,
+                    startOfThePreviousHour, startOfThisHour));
         }
+        AnalogSensorDataEntry entry = AnalogSensorDataEntry.builder()
+                .analogSensor(analogSensor)
+                .type(AnalogSensorDataEntry.HOURLY)
+                .zonedDateTime(startOfThePreviousHour)
+                .averageValue(average)
+                .build();
+        sweepExecutor.withPermit(PRIMARY_DB, () -> {
+            analogSensorDataEntryService.save(entry);
+            analogSensorDataBlockService.append(entry);
+            return null;
+        });
+        clusterCoordinator.complete(job, startOfThisHour);
     }
 
     /**
@@ -167,13 +431,19 @@ public class ScheduledSensorService {
      * then NaN will be returned.
      *
      * @param digitalSensor The sensor to update.
+     * @return The fields that changed.
      */
-    private void updateDigitalSensor(DigitalSensor digitalSensor) {
-        double couldBeNaN = getProcessor().getSensorCurrent(digitalSensor);
+    private SensorStateDelta updateDigitalSensor(DigitalSensor digitalSensor) {
+        double couldBeNaN = sweepExecutor.withPermit(HISTORIAN, () -> getProcessor().getSensorCurrent(digitalSensor));
         double current = Double.isNaN(couldBeNaN) ? -1 : couldBeNaN;
 
         DashboardRAGColours digitalSensorBlobColour = current >= digitalSensor.getGreenValue() ? GREEN : RED;
-        digitalSensorService.updateDigitalSensor(digitalSensor, current, digitalSensorBlobColour);
+        sweepExecutor.withPermit(PRIMARY_DB, () -> {
+            digitalSensorService.updateDigitalSensor(digitalSensor, current, digitalSensorBlobColour);
+            return null;
+        });
+        return SensorStateDelta.between(digitalSensor.getId(), digitalSensor.getCurrent(), current,
+                digitalSensor.getBlobColour(), digitalSensorBlobColour, null, null);
     }
 
     /**
@@ -183,28 +453,47 @@ public class ScheduledSensorService {
      * ConditionSensorService.
      *
      * @param analogSensor The sensor to update
+     * @return The fields that changed, to be pushed to the dashboards.
      */
-    public void updateAnalogSensor(AnalogSensor analogSensor) {
+    public SensorStateDelta updateAnalogSensor(AnalogSensor analogSensor) {
+        ZonedDateTime now = ZonedDateTime.now();
+        fetchNewReadings(analogSensor, now);
+        return updateAnalogSensor(analogSensor, now);
+    }
+
+    /**
+     * The refresh stage of a tick, the history cache has already been topped up to now by the fetch stage.
+     */
+    private SensorStateDelta updateAnalogSensor(AnalogSensor analogSensor, ZonedDateTime now) {
+        double oldCurrent = analogSensor.getCurrent();
+        DashboardRAGColours oldBlob = analogSensor.getBlobColour();
+        DashboardRAGColours oldPm = analogSensor.getPredictiveMaintenance();
 
         if (analogSensor.getType().equals(IDENTIFICATION_TYPE)) {
             // The last UID reading for this sensor, If it is of type 3 (Identification)
-            String uidValue = getProcessor().getLastUidReadingFromSensor(analogSensor);
+            String uidValue = sweepExecutor.withPermit(HISTORIAN,
+                    () -> getProcessor().getLastUidReadingFromSensor(analogSensor));
             log.info("Updating ID type sensor: " + analogSensor.getDisplay_name() + " with value: " + uidValue);
-            analogSensorService.updateCustomColumn(analogSensor, uidValue);
-            checkLastUidValueWithOrderAncillaryValues(analogSensor);
+            String oldUid = analogSensor.getCustomColumn();
+            return sweepExecutor.withPermit(PRIMARY_DB, () -> {
+                if (!Objects.equals(uidValue, oldUid)) {
+                    analogSensorService.updateCustomColumn(analogSensor, uidValue);
+                }
+                DashboardRAGColours blob = checkLastUidValueWithOrderAncillaryValues(analogSensor, uidValue);
+                return SensorStateDelta.betweenUids(analogSensor.getId(), oldUid, uidValue, oldBlob, blob);
+            });
         } else {
-            ZonedDateTime now = ZonedDateTime.now();
             ZonedDateTime startOfThirtyDaysAgo = now.truncatedTo(ChronoUnit.DAYS).minusDays(30L);
 
-            // A list of converted values from the past 30 days.
-            TreeMap<ZonedDateTime, Double> last30Days = getProcessor()
-                    .getValuesAndDatesBetweenFromAndTo(analogSensor, startOfThirtyDaysAgo, now);
+            // The average and standard deviation of the converted values from the past 30 days.
+            RunningStatistics last30Days = sweepExecutor.withPermit(HISTORIAN,
+                    () -> getLast30DaysStatistics(analogSensor, startOfThirtyDaysAgo, now));
             // The current value of the sensor regardless if the machine is running.
-            double current = getProcessor().getSensorCurrent(analogSensor);
+            double current = sweepExecutor.withPermit(HISTORIAN, () -> getProcessor().getSensorCurrent(analogSensor));
             // The average value of the sensor when the machine has been running for the past thirty days.
-            double average = last30Days.values().stream().mapToDouble(Double::doubleValue).average().orElse(NaN);
+            double average = last30Days.getAverage(NaN);
             // The standard deviation from the last 30 days.
-            double stdDev = SmasMaths.SD(new ArrayList<>(last30Days.values()));
+            double stdDev = last30Days.getStandardDeviation();
             // The upper control which is plus 3 stdv from the mean.
             double ucl = analogSensor.getAvValue() + 3 * analogSensor.getStddev();
             // The lower control limit which is minus 3 stdv from the mean.
@@ -212,52 +501,90 @@ public class ScheduledSensorService {
             // The colour of the trend cell if the current is out of the ucl / lcl limits.
             int trendColour = analogSensor.isCurrentOutOfLimits() ? 2 : 0;
 
-            // Update the highest or lowest value if it is detected.
-            checkHighLowValues(analogSensor);
-
             // If the Data processor fails to get a value from the DB it will return NaN
-            if (!Double.isNaN(current) && !Double.isNaN(average)) {
-                analogSensorService.updateConditionSensor(analogSensor,
-                        SmasMaths.round(current, 1),
-                        SmasMaths.round(average, 1),
-                        stdDev, trendColour, ucl, lcl);
-            }
-            updateCurrentColumnCellColours(analogSensor);
-            updatePredictiveMaintenanceColumnCellColour(analogSensor);
+            double written = Double.isNaN(current) || Double.isNaN(average) ? NaN : SmasMaths.round(current, 1);
+
+            return sweepExecutor.withPermit(PRIMARY_DB, () -> {
+                // Update the highest or lowest value if it is detected.
+                checkHighLowValues(analogSensor);
+
+                double writtenAverage = Double.isNaN(written) ? NaN : SmasMaths.round(average, 1);
+                if (!Double.isNaN(written)) {
+                    analogSensorService.updateConditionSensor(analogSensor,
+                            written,
+                            writtenAverage,
+                            stdDev, trendColour, ucl, lcl);
+                }
+                DashboardRAGColours blob = updateCurrentColumnCellColours(analogSensor);
+                DashboardRAGColours pm = updatePredictiveMaintenanceColumnCellColour(analogSensor);
+                return SensorStateDelta.between(analogSensor.getId(), oldCurrent, written, oldBlob, blob, oldPm, pm)
+                        .withStatistics(analogSensor, now, writtenAverage, stdDev, ucl, lcl);
+            });
         }
     }
 
     /**
-     * Checks the last Uid reading from the sensor, this currently checks to ensure the value equals "1"
-     * if it does then the actual vs expected matched, this check was done in the Database view.
-     * In future this will likely evolve to use something stored on the order or machine
+     * Streams the readings from the local history cache into running statistics, so the 30 day window is never held
+     * in memory. Any readings not yet cached are read from the historian a chunk at a time, see
+     * {@link HistorianReadingSource}.
      *
-     * @param analogSensor The analog sensor reading the Uid. Could be barcode scanner or RFID reader. Etc
+     * @param analogSensor The sensor to read.
+     * @param from         The start of the window.
+     * @param to           The end of the window.
+     * @return The average and standard deviation of the window.
      */
-    private void checkLastUidValueWithOrderAncillaryValues(AnalogSensor analogSensor) {
+    private RunningStatistics getLast30DaysStatistics(AnalogSensor analogSensor, ZonedDateTime from, ZonedDateTime to) {
+        RunningStatistics statistics = new RunningStatistics();
+        historyCache.stream(analogSensor, from, to, historian, statistics);
+        return statistics;
+    }
 
-        DashboardRAGColours doExpectedAndActualUidsMatch = RED;
-        if (analogSensor.getCustomColumn().equals("1")) {
-            doExpectedAndActualUidsMatch = GREEN;
+    /**
+     * Passes the reading to the anomaly detector, keeping any PEAK_ANOMALY or TROUGH_ANOMALY to be raised once the
+     * readings have been read. Readings older than a few minutes, e.g. when the cache is first filled, only train
+     * the detector.
+     */
+    private void checkForAnomaly(AnalogSensor analogSensor, boolean raise, double value,
+                                 List<Map.Entry<Alert.TypeOfAlert, Double>> anomalies) {
+        OnlineAnomalyDetector.Excursion excursion = anomalyDetector.accept(analogSensor.getId(), value);
+        if (raise && excursion == OnlineAnomalyDetector.Excursion.HIGH) {
+            anomalies.add(Map.entry(Alert.TypeOfAlert.PEAK_ANOMALY, value));
+        } else if (raise && excursion == OnlineAnomalyDetector.Excursion.LOW) {
+            anomalies.add(Map.entry(Alert.TypeOfAlert.TROUGH_ANOMALY, value));
         }
+    }
 
-        //Todo: MTC were the first client to use this functionality and the sensor value is brought into our system
-        // having already being checked for a match, if this is used again the comparison of the
-        // actual UID vs the expected UID will likely be done in our system, and below is a template of how this may be achieved.
-//        // Gets the in-progress order if one exists for the machine the passed sensor is attached too.
-//        Order couldBeNullOrder = orderService.findInProgressOrder(analogSensor.getMachine()).orElse(null);
-//        //Checks if the order is null, if it is then set the blob colour too amber to indicate there is no in-progress order.
-//        if(couldBeNullOrder != null) {
-//            for(String id : couldBeNullOrder.getAncillaryIds()) {
-//                if (analogSensor.getCustomColumn().equals(id)) {
-//                    doExpectedAndActualUidsMatch = GREEN;
-//                    break;
-//                }
-//            }
-//        } else {
-//            doExpectedAndActualUidsMatch = AMBER;
-//        }
-        analogSensorService.updateConditionSensorBlobColour(analogSensor, doExpectedAndActualUidsMatch);
+    /**
+     * Checks the last Uid reading from the sensor. When matching against orders is enabled the reading is looked up
+     * in the ancillary ids of the in-progress order on the sensors machine, see {@link ExpectedUidIndex}, amber
+     * showing there is no in-progress order. Otherwise the check was done in the Database view, as it was for MTC,
+     * and the value equals "1" if the actual vs expected matched.
+     *
+     * @param analogSensor The analog sensor reading the Uid. Could be barcode scanner or RFID reader. Etc
+     * @param uidValue     The last Uid read by the sensor.
+     * @return The blob colour written to the sensor.
+     */
+    private DashboardRAGColours checkLastUidValueWithOrderAncillaryValues(AnalogSensor analogSensor, String uidValue) {
+        DashboardRAGColours doExpectedAndActualUidsMatch;
+        if (expectedUidIndex.isEnabled()) {
+            switch (expectedUidIndex.match(analogSensor.getMachine(), uidValue)) {
+                case MATCH:
+                    doExpectedAndActualUidsMatch = GREEN;
+                    break;
+                case NO_ORDER:
+                    doExpectedAndActualUidsMatch = AMBER;
+                    break;
+                default:
+                    doExpectedAndActualUidsMatch = RED;
+            }
+        } else {
+            doExpectedAndActualUidsMatch = "1".equals(uidValue) ? GREEN : RED;
+        }
+        // Only written when it changes, the sensor is read every minute but the colour rarely moves.
+        if (doExpectedAndActualUidsMatch != analogSensor.getBlobColour()) {
+            analogSensorService.updateConditionSensorBlobColour(analogSensor, doExpectedAndActualUidsMatch);
+        }
+        return doExpectedAndActualUidsMatch;
     }
 
     /**
@@ -279,21 +606,22 @@ public class ScheduledSensorService {
      * updated to reflect this.
      *
      * @param analogSensor The sensor to check against.
+     * @return The blob colour written to the sensor.
      */
-    private void updateCurrentColumnCellColours(AnalogSensor analogSensor) {
+    private DashboardRAGColours updateCurrentColumnCellColours(AnalogSensor analogSensor) {
+        DashboardRAGColours blobColour;
         if (analogSensor.isSensorInRedState()) {
-            analogSensorService.updateConditionSensorBlobColour
-                    (analogSensor, RED);
+            blobColour = RED;
         } else if (analogSensor.isSensorInAmberState()) {
-            analogSensorService.updateConditionSensorBlobColour
-                    (analogSensor, DashboardRAGColours.AMBER);
+            blobColour = DashboardRAGColours.AMBER;
         } else {
-            analogSensorService.updateConditionSensorBlobColour
-                    (analogSensor, GREEN);
+            blobColour = GREEN;
         }
+        analogSensorService.updateConditionSensorBlobColour(analogSensor, blobColour);
+        return blobColour;
     }
 
-    private void updatePredictiveMaintenanceColumnCellColour(AnalogSensor sensor) {
+    private DashboardRAGColours updatePredictiveMaintenanceColumnCellColour(AnalogSensor sensor) {
         List<Alert> openAlerts =
                 alertService.findAllOpenAlertsForSensor(sensor);
         List<Alert> redAlerts = openAlerts.stream()
@@ -317,6 +645,9 @@ public class ScheduledSensorService {
         } else {
             sensor.setPredictiveMaintenance(GREEN);
         }
+        // The sensor is held between ticks, its open alerts are what decide how often it is refreshed.
+        sensor.setAlerts(openAlerts);
         analogSensorService.updateSensorPredictiveMaintenance(sensor);
+        return sensor.getPredictiveMaintenance();
     }
 }
@@ -0,0 +1,234 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import sensordata.AlertRuleEngine;
+import sensordata.MaintenanceWindowStatistics;
+import sensordata.OnlineAnomalyDetector;
+import sensordata.ReadingConsumer;
+import sensordata.SensorHistoryCache;
+import sensordata.SensorQuantileSketches;
+import sensordata.StreamingSensorDataSource;
+import springhibernate.AlertMailer;
+import springhibernate.AnalogSensorDataBlockService;
+import uk.co.dhl.smas.backend.alert.Alert;
+import uk.co.dhl.smas.backend.alert.AlertService;
+import uk.co.dhl.smas.backend.condition.*;
+import uk.co.dhl.smas.backend.order.OrderService;
+import uk.co.dhl.smas.backend.user.UserDetailsServiceImpl;
+import uk.co.dhl.smas.data.conditionmonitoring.dataprocessors.AbstractSensorMonitoringDataProcessor;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ScheduledSensorServiceTest {
+
+    @Mock
+    AnalogSensorService analogSensorService;
+    @Mock
+    DigitalSensorService digitalSensorService;
+    @Mock
+    AnalogSensorDataEntryService analogSensorDataEntryService;
+    @Mock
+    AlertService alertService;
+    @Mock
+    OrderService orderService;
+    @Mock
+    UserDetailsServiceImpl userService;
+    @Mock
+    ApplicationEventPublisher ape;
+    @Mock
+    AnalogSensorDataBlockService analogSensorDataBlockService;
+    @Mock
+    ClusterCoordinator clusterCoordinator;
+    @Mock
+    SensorHistoryCache historyCache;
+    @Mock
+    AlertRuleEngine alertRuleEngine;
+    @Mock
+    OnlineAnomalyDetector anomalyDetector;
+    @Mock
+    ExpectedUidIndex expectedUidIndex;
+    @Mock
+    SensorRefreshScheduler refreshScheduler;
+    @Mock
+    SensorQuantileSketches quantileSketches;
+    @Mock
+    HistorianReadingSource historian;
+    @Mock
+    AlertMailer alertMailer;
+    // Not a StreamingSensorDataSource, as for most clients.
+    @Mock
+    AbstractSensorMonitoringDataProcessor processor;
+
+    private static final Set<SweepStageSchedule.Stage> MAINTENANCE = EnumSet.of(SweepStageSchedule.Stage.MAINTENANCE);
+    private static final Set<SweepStageSchedule.Stage> HOURLY_ROLLUP =
+            EnumSet.of(SweepStageSchedule.Stage.HOURLY_ROLLUP);
+
+    private SensorSweepExecutor sweepExecutor;
+    private ScheduledSensorService underTest;
+    private AnalogSensor sensor;
+
+    @BeforeEach
+    void setUp() {
+        sweepExecutor = new SensorSweepExecutor(false, 2, 2, 2);
+        underTest = new ScheduledSensorService(analogSensorService, digitalSensorService,
+                analogSensorDataEntryService, alertService, orderService, userService, ape,
+                analogSensorDataBlockService, clusterCoordinator, sweepExecutor, historyCache, alertRuleEngine,
+                anomalyDetector, expectedUidIndex, refreshScheduler, quantileSketches, historian,
+                alertMailer, 300_000L);
+        sensor = new AnalogSensor();
+        sensor.setId(1L);
+        sensor.setType(Sensor.MAINTENANCE_TYPE);
+        lenient().when(historian.getProcessor()).thenReturn(processor);
+        when(analogSensorService.findAllIncludedInSupervisorView()).thenReturn(List.of(sensor));
+        when(clusterCoordinator.isOwnedByThisNode(sensor)).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sweepExecutor.shutdown();
+    }
+
+    @Test
+    void testAlertRulesAreEvaluatedWithoutAStreamingProcessor() {
+        when(alertRuleEngine.hasRules()).thenReturn(true);
+        when(alertRuleEngine.evaluate(anyList(), any(), any())).thenReturn(List.of());
+
+        underTest.updateSensorTables(ZonedDateTime.now(), MAINTENANCE);
+
+        ArgumentCaptor<StreamingSensorDataSource> source = ArgumentCaptor.forClass(StreamingSensorDataSource.class);
+        verify(alertRuleEngine).evaluate(eq(List.of(sensor)), any(), source.capture());
+        // The rules read their windows through the history cache, which falls back to the historian.
+        ZonedDateTime to = ZonedDateTime.now();
+        ReadingConsumer consumer = (epochMillis, value) -> {
+        };
+        source.getValue().streamValuesBetweenFromAndTo(sensor, to.minusDays(1L), to, consumer);
+        verify(historyCache).stream(sensor, to.minusDays(1L), to, historian, consumer);
+    }
+
+    @Test
+    void testNoRulesAreEvaluatedWhenThereAreNone() {
+        underTest.updateSensorTables(ZonedDateTime.now(), MAINTENANCE);
+
+        verify(alertRuleEngine, never()).evaluate(anyList(), any(), any());
+    }
+
+    @Test
+    void testEveryNewReadingIsCheckedForAnomalies() {
+        long now = System.currentTimeMillis();
+        doAnswer(invocation -> {
+            ReadingConsumer newReadings = invocation.getArgument(3);
+            // One reading from when the cache was first filled, two from this tick.
+            newReadings.accept(now - 60 * 60 * 1000L, 10);
+            newReadings.accept(now - 2000L, 11);
+            newReadings.accept(now - 1000L, 30);
+            return null;
+        }).when(historyCache).topUp(eq(sensor), any(), eq(historian), any());
+        when(anomalyDetector.accept(eq(1L), anyDouble())).thenReturn(OnlineAnomalyDetector.Excursion.NONE);
+        when(anomalyDetector.accept(1L, 30)).thenReturn(OnlineAnomalyDetector.Excursion.HIGH);
+        when(alertService.getDateOpenedForMostRecentAlertForSensorAndType(eq(sensor), any()))
+                .thenReturn(ZonedDateTime.now());
+
+        underTest.updateSensorTables(ZonedDateTime.now(), MAINTENANCE);
+
+        verify(anomalyDetector).accept(1L, 10);
+        verify(anomalyDetector).accept(1L, 11);
+        verify(anomalyDetector).accept(1L, 30);
+        verify(quantileSketches, times(3)).accept(eq(1L), anyLong(), anyDouble());
+        // Only the peak from this tick is raised, the alert generator finds it was raised recently.
+        verify(alertService).getDateOpenedForMostRecentAlertForSensorAndType(sensor,
+                Alert.TypeOfAlert.PEAK_ANOMALY.type);
+        verify(alertService, never()).save(any());
+        verify(alertMailer, never()).send(any());
+    }
+
+    @Test
+    void testSensorListIsHeldBetweenTicks() {
+        underTest.updateSensorTables();
+        underTest.updateSensorTables();
+
+        // The list is only read once, ownership is checked on every tick.
+        verify(analogSensorService, times(1)).findAllIncludedInSupervisorView();
+        verify(clusterCoordinator, times(2)).isOwnedByThisNode(sensor);
+    }
+
+    @Test
+    void testHourlyRollupIsClaimedForEachSensor() {
+        ZonedDateTime now = ZonedDateTime.now().truncatedTo(ChronoUnit.HOURS).plusMinutes(6);
+        when(clusterCoordinator.tryClaim("createHourlyAvgEntry:1", now.truncatedTo(ChronoUnit.HOURS)))
+                .thenReturn(true);
+
+        underTest.updateSensorTables(now, HOURLY_ROLLUP);
+
+        verify(analogSensorDataEntryService).save(any());
+        verify(analogSensorDataBlockService).append(any());
+        verify(clusterCoordinator).complete("createHourlyAvgEntry:1", now.truncatedTo(ChronoUnit.HOURS));
+    }
+
+    @Test
+    void testHourlyRollupClaimedByAnotherNodeIsNotSaved() {
+        // The sensor moved here within the hour, the node that owned it before has already saved the entry.
+        when(clusterCoordinator.tryClaim(eq("createHourlyAvgEntry:1"), any())).thenReturn(false);
+
+        underTest.updateSensorTables(ZonedDateTime.now(), HOURLY_ROLLUP);
+
+        verify(analogSensorDataEntryService, never()).save(any());
+        verify(clusterCoordinator, never()).complete(any(), any());
+    }
+
+    @Test
+    void testHeldSensorKeepsItsHighestValue() {
+        // Loaded with a high of 5 and a current of 8, the readings then rise to 9 and fall back to 8.5.
+        sensor.setHighestValue(5);
+        sensor.setCurrent(8);
+        when(refreshScheduler.takeDue(anyList(), anyLong())).thenReturn(List.of(sensor));
+        when(processor.getSensorCurrent(sensor)).thenReturn(9.0, 8.5);
+        doAnswer(invocation -> {
+            ReadingConsumer statistics = invocation.getArgument(4);
+            statistics.accept(System.currentTimeMillis(), 7);
+            return null;
+        }).when(historyCache).stream(eq(sensor), any(), any(), eq(historian), any());
+        when(alertService.findAllOpenAlertsForSensor(sensor)).thenReturn(List.of());
+
+        ZonedDateTime now = ZonedDateTime.now();
+        underTest.updateSensorTables(now, EnumSet.noneOf(SweepStageSchedule.Stage.class));
+        underTest.updateSensorTables(now.plusSeconds(15), EnumSet.noneOf(SweepStageSchedule.Stage.class));
+        underTest.updateSensorTables(now.plusSeconds(30), EnumSet.noneOf(SweepStageSchedule.Stage.class));
+
+        // Each refresh checks the current value written by the one before, the high written is never lower.
+        ArgumentCaptor<Double> highs = ArgumentCaptor.forClass(Double.class);
+        verify(analogSensorService, times(2)).updateHigh(eq(sensor), highs.capture());
+        assertEquals(List.of(8.0, 9.0), highs.getAllValues());
+        assertEquals(9.0, sensor.getHighestValue());
+        assertEquals(7.0, sensor.getAvValue());
+        assertEquals(8.5, sensor.getCurrent());
+    }
+
+    @Test
+    void testMaintenanceWindowIsStreamedNotRead() {
+        underTest.updateSensorTables(ZonedDateTime.now(), MAINTENANCE);
+
+        // Last month and this month to date are streamed into running averages, never read into a TreeMap.
+        verify(historyCache).stream(eq(sensor), any(), any(), eq(historian), any(MaintenanceWindowStatistics.class));
+        verify(processor, never()).getValuesAndDatesBetweenFromAndTo(any(), any(), any());
+    }
+}
@@ -0,0 +1,222 @@
+package springasyncthreads;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.backend.condition.DigitalSensor;
+import uk.co.dhl.smas.backend.condition.Sensor;
+import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which sensors are refreshed on each tick of {@link ScheduledSensorService#updateSensorTables()}, rather
+ * than refreshing every sensor every minute. Each sensor has its own next refresh time held in a priority queue
+ * ordered by that time, and after each refresh the interval is chosen from the sensors state, so sensors that are
+ * amber, red, have open alerts or are nearing their amber set points are read more often and sensors on stopped or
+ * off shift machines are read less often.
+ * <p>
+ * A sensor taken from the queue is not due again until it has been rescheduled, so a slow refresh that overlaps
+ * the next tick is not started twice. If it is never rescheduled, e.g. the sweep was interrupted, it becomes due
+ * again after the longest interval.
+ * <p>
+ * Analog and digital sensors are held in different tables so their ids can be the same, each sensor is keyed by
+ * its type and id.
+ */
+@Component
+public class SensorRefreshScheduler {
+
+    /**
+     * How urgently a sensor needs refreshing, in order of urgency.
+     */
+    public enum Priority {
+        /**
+         * Amber or red, has open alerts or is nearing an amber set point.
+         */
+        URGENT,
+        NORMAL,
+        /**
+         * The machine is not running.
+         */
+        IDLE,
+        /**
+         * The machine has not run for longer than the off shift threshold.
+         */
+        OFF_SHIFT
+    }
+
+    private final Map<Priority, Long> intervals = new EnumMap<>(Priority.class);
+    private final long longestInterval;
+    private final long offShiftSeconds;
+    private final double approachFraction;
+
+    private final PriorityQueue<Due> queue = new PriorityQueue<>();
+    // The time each sensor is next due, entries in the queue that don't match are stale and skipped.
+    private final Map<SensorKey, Long> nextDue = new HashMap<>();
+
+    public SensorRefreshScheduler(@Value("${scheduled.sensor.refresh.urgent.millis:15000}") long urgentMillis,
+                                  @Value("${scheduled.sensor.refresh.normal.millis:60000}") long normalMillis,
+                                  @Value("${scheduled.sensor.refresh.idle.millis:300000}") long idleMillis,
+                                  @Value("${scheduled.sensor.refresh.off.shift.millis:900000}") long offShiftMillis,
+                                  @Value("${scheduled.sensor.off.shift.seconds:14400}") long offShiftSeconds,
+                                  @Value("${scheduled.sensor.set.point.approach:0.1}") double approachFraction) {
+        intervals.put(Priority.URGENT, urgentMillis);
+        intervals.put(Priority.NORMAL, normalMillis);
+        intervals.put(Priority.IDLE, idleMillis);
+        intervals.put(Priority.OFF_SHIFT, offShiftMillis);
+        this.longestInterval = intervals.values().stream().mapToLong(Long::longValue).max().orElse(normalMillis);
+        this.offShiftSeconds = offShiftSeconds;
+        this.approachFraction = approachFraction;
+    }
+
+    /**
+     * Removes the sensors that are due from the queue. Sensors not seen before are due straight away and any sensor
+     * no longer in the passed list, e.g. it has moved to another node, is forgotten.
+     *
+     * @param sensors The sensors this node is responsible for.
+     * @param now     The time now in epoch millis.
+     * @return The sensors to refresh on this tick, each must be passed to reschedule once it has been refreshed.
+     */
+    public synchronized <S extends Sensor> List<S> takeDue(Collection<S> sensors, long now) {
+        Map<SensorKey, S> byKey = new HashMap<>();
+        for (S sensor : sensors) {
+            SensorKey key = SensorKey.of(sensor);
+            byKey.put(key, sensor);
+            if (!nextDue.containsKey(key)) {
+                schedule(key, now);
+            }
+        }
+        nextDue.keySet().retainAll(byKey.keySet());
+
+        List<S> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().time <= now) {
+            Due next = queue.poll();
+            Long time = nextDue.get(next.key);
+            if (time != null && time == next.time) {
+                // Held back until it is rescheduled.
+                schedule(next.key, now + longestInterval);
+                due.add(byKey.get(next.key));
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Schedules the next refresh of a sensor after it has been refreshed.
+     *
+     * @param sensor The sensor that was refreshed.
+     * @param delta  The fields that changed during the refresh, may be null.
+     * @param now    The time now in epoch millis.
+     */
+    public void reschedule(Sensor sensor, SensorStateDelta delta, long now) {
+        reschedule(sensor, prioritise(sensor, delta), now);
+    }
+
+    synchronized void reschedule(Sensor sensor, Priority priority, long now) {
+        SensorKey key = SensorKey.of(sensor);
+        if (nextDue.containsKey(key)) {
+            schedule(key, now + intervals.get(priority));
+        }
+    }
+
+    /**
+     * Chooses how urgently the sensor needs refreshing, from its values after the refresh where they changed.
+     */
+    Priority prioritise(Sensor sensor, SensorStateDelta delta) {
+        if (sensor instanceof AnalogSensor) {
+            AnalogSensor analogSensor = (AnalogSensor) sensor;
+            DashboardRAGColours blob = delta != null && delta.getBlobColour() != null ?
+                    delta.getBlobColour() : analogSensor.getBlobColour();
+            DashboardRAGColours pm = delta != null && delta.getPredictiveMaintenance() != null ?
+                    delta.getPredictiveMaintenance() : analogSensor.getPredictiveMaintenance();
+            double current = delta != null && delta.getCurrent() != null ?
+                    delta.getCurrent() : analogSensor.getCurrent();
+            if (isWarning(blob) || isWarning(pm) || !analogSensor.getOpenAlerts().isEmpty()
+                    || isNearingSetPoint(current, analogSensor.getLowAmberSetPoint(),
+                    analogSensor.getHighAmberSetPoint())) {
+                return Priority.URGENT;
+            }
+        }
+        Machine machine = sensor.getMachine();
+        if (machine == null || machine.isRunningStatusGreen()) {
+            return Priority.NORMAL;
+        }
+        return machine.getSecondsSinceLastRun() > offShiftSeconds ? Priority.OFF_SHIFT : Priority.IDLE;
+    }
+
+    /**
+     * @return True if the current value is within the approach fraction of the band between the set points of
+     * either set point, or beyond them. Unset set points, both zero, are ignored.
+     */
+    boolean isNearingSetPoint(double current, double lowAmber, double highAmber) {
+        if (Double.isNaN(current) || (lowAmber == 0 && highAmber == 0) || highAmber <= lowAmber) {
+            return false;
+        }
+        double margin = (highAmber - lowAmber) * approachFraction;
+        return current >= highAmber - margin || current <= lowAmber + margin;
+    }
+
+    private static boolean isWarning(DashboardRAGColours colour) {
+        return colour == DashboardRAGColours.RED || colour == DashboardRAGColours.ORANGE
+                || colour == DashboardRAGColours.AMBER;
+    }
+
+    private void schedule(SensorKey key, long time) {
+        nextDue.put(key, time);
+        queue.add(new Due(key, time));
+    }
+
+    private static final class SensorKey {
+        private final boolean digital;
+        private final Long id;
+
+        private SensorKey(boolean digital, Long id) {
+            this.digital = digital;
+            this.id = id;
+        }
+
+        static SensorKey of(Sensor sensor) {
+            return new SensorKey(sensor instanceof DigitalSensor, sensor.getId());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SensorKey)) {
+                return false;
+            }
+            SensorKey other = (SensorKey) o;
+            return digital == other.digital && Objects.equals(id, other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(digital, id);
+        }
+    }
+
+    private static final class Due implements Comparable<Due> {
+        private final SensorKey key;
+        private final long time;
+
+        private Due(SensorKey key, long time) {
+            this.key = key;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(Due other) {
+            return Long.compare(time, other.time);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.backend.condition.DigitalSensor;
+import uk.co.dhl.smas.backend.condition.Sensor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SensorRefreshSchedulerTest {
+
+    SensorRefreshScheduler underTest;
+    AnalogSensor one;
+    AnalogSensor two;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new SensorRefreshScheduler(15_000, 60_000, 300_000, 900_000, 14_400, 0.1);
+        one = getSensor(1L);
+        two = getSensor(2L);
+    }
+
+    @Test
+    void testIntervalsFollowPriority() {
+        // New sensors are due straight away.
+        assertEquals(List.of(one, two), underTest.takeDue(List.of(one, two), 0));
+        // Nothing is due again until it has been rescheduled.
+        assertTrue(underTest.takeDue(List.of(one, two), 1_000).isEmpty());
+
+        underTest.reschedule(one, SensorRefreshScheduler.Priority.URGENT, 1_000);
+        underTest.reschedule(two, SensorRefreshScheduler.Priority.IDLE, 1_000);
+        assertTrue(underTest.takeDue(List.of(one, two), 15_999).isEmpty());
+        assertEquals(List.of(one), underTest.takeDue(List.of(one, two), 16_000));
+
+        underTest.reschedule(one, SensorRefreshScheduler.Priority.URGENT, 16_000);
+        assertEquals(List.of(one), underTest.takeDue(List.of(one, two), 31_000));
+        assertEquals(List.of(two), underTest.takeDue(List.of(one, two), 301_000));
+    }
+
+    @Test
+    void testUnrescheduledSensorsAreRetried() {
+        underTest.takeDue(List.of(one), 0);
+        assertTrue(underTest.takeDue(List.of(one), 899_999).isEmpty());
+        assertEquals(List.of(one), underTest.takeDue(List.of(one), 900_000));
+    }
+
+    @Test
+    void testRemovedSensorsAreForgotten() {
+        underTest.takeDue(List.of(one, two), 0);
+        underTest.reschedule(one, SensorRefreshScheduler.Priority.NORMAL, 0);
+        underTest.reschedule(two, SensorRefreshScheduler.Priority.NORMAL, 0);
+
+        // Two has moved to another node.
+        assertEquals(List.of(one), underTest.takeDue(List.of(one), 60_000));
+        underTest.reschedule(two, SensorRefreshScheduler.Priority.URGENT, 60_000);
+        // When it comes back it is due straight away.
+        assertEquals(List.of(two), underTest.takeDue(List.of(one, two), 61_000));
+    }
+
+    @Test
+    void testAnalogAndDigitalSensorsWithTheSameId() {
+        DigitalSensor digital = mock(DigitalSensor.class);
+        when(digital.getId()).thenReturn(1L);
+        List<Sensor> sensors = List.of(one, digital);
+
+        assertEquals(sensors, underTest.takeDue(sensors, 0));
+        underTest.reschedule(one, SensorRefreshScheduler.Priority.URGENT, 0);
+        underTest.reschedule(digital, SensorRefreshScheduler.Priority.IDLE, 0);
+
+        // Each is scheduled on its own interval.
+        assertEquals(List.of(one), underTest.takeDue(sensors, 15_000));
+        assertEquals(List.of(digital), underTest.takeDue(sensors, 300_000));
+    }
+
+    @Test
+    void testIsNearingSetPoint() {
+        assertTrue(underTest.isNearingSetPoint(91, 0, 100));
+        assertTrue(underTest.isNearingSetPoint(105, 0, 100));
+        assertTrue(underTest.isNearingSetPoint(9, 0, 100));
+        assertFalse(underTest.isNearingSetPoint(50, 0, 100));
+        // Set points that have not been set are ignored.
+        assertFalse(underTest.isNearingSetPoint(50, 0, 0));
+        assertFalse(underTest.isNearingSetPoint(Double.NaN, 0, 100));
+    }
+
+    private AnalogSensor getSensor(Long id) {
+        AnalogSensor sensor = mock(AnalogSensor.class);
+        when(sensor.getId()).thenReturn(id);
+        return sensor;
+    }
+}
@@ -0,0 +1,192 @@
+package springasyncthreads;
+
+import lombok.Getter;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.backend.condition.Sensor;
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * The fields of a single sensor that changed during a sweep of {@link ScheduledSensorService}.
+ * Any field that did not change is left null so only the changes are sent to the dashboards.
+ */
+@Getter
+public class SensorStateDelta {
+
+    private final Long sensorId;
+    private final Double current;
+    private final DashboardRAGColours blobColour;
+    private final DashboardRAGColours predictiveMaintenance;
+    /**
+     * The last UID read by an identification sensor.
+     */
+    private final String customColumn;
+    /**
+     * A new highest value since the last reset and the time of the sweep that wrote it.
+     */
+    private final Double highestValue;
+    private final ZonedDateTime timeDateHigh;
+    /**
+     * A new lowest value since the last reset and the time of the sweep that wrote it.
+     */
+    private final Double lowestValue;
+    private final ZonedDateTime timeDateLow;
+    /**
+     * The average and standard deviation of the last 30 days and the control limits written with them.
+     */
+    private final Double avValue;
+    private final Double stddev;
+    private final Double upperControlLimit;
+    private final Double lowerControlLimit;
+
+    SensorStateDelta(Long sensorId, Double current, DashboardRAGColours blobColour,
+                     DashboardRAGColours predictiveMaintenance, String customColumn) {
+        this(sensorId, current, blobColour, predictiveMaintenance, customColumn,
+                null, null, null, null, null, null, null, null);
+    }
+
+    private SensorStateDelta(Long sensorId, Double current, DashboardRAGColours blobColour,
+                             DashboardRAGColours predictiveMaintenance, String customColumn,
+                             Double highestValue, ZonedDateTime timeDateHigh,
+                             Double lowestValue, ZonedDateTime timeDateLow,
+                             Double avValue, Double stddev, Double upperControlLimit, Double lowerControlLimit) {
+        this.sensorId = sensorId;
+        this.current = current;
+        this.blobColour = blobColour;
+        this.predictiveMaintenance = predictiveMaintenance;
+        this.customColumn = customColumn;
+        this.highestValue = highestValue;
+        this.timeDateHigh = timeDateHigh;
+        this.lowestValue = lowestValue;
+        this.timeDateLow = timeDateLow;
+        this.avValue = avValue;
+        this.stddev = stddev;
+        this.upperControlLimit = upperControlLimit;
+        this.lowerControlLimit = lowerControlLimit;
+    }
+
+    /**
+     * Compares the values a sensor had before the sweep with the values written by the sweep.
+     *
+     * @param sensorId   The id of the sensor.
+     * @param oldCurrent The current value before the sweep.
+     * @param newCurrent The current value written by the sweep, NaN if it was not updated.
+     * @param oldBlob    The blob colour before the sweep.
+     * @param newBlob    The blob colour written by the sweep.
+     * @param oldPm      The predictive maintenance colour before the sweep.
+     * @param newPm      The predictive maintenance colour written by the sweep, null for digital sensors.
+     * @return A delta holding only the changed fields.
+     */
+    public static SensorStateDelta between(Long sensorId, double oldCurrent, double newCurrent,
+                                           DashboardRAGColours oldBlob, DashboardRAGColours newBlob,
+                                           DashboardRAGColours oldPm, DashboardRAGColours newPm) {
+        return new SensorStateDelta(sensorId,
+                Double.isNaN(newCurrent) || newCurrent == oldCurrent ? null : newCurrent,
+                Objects.equals(oldBlob, newBlob) ? null : newBlob,
+                newPm == null || Objects.equals(oldPm, newPm) ? null : newPm,
+                null);
+    }
+
+    /**
+     * Compares the values an identification sensor had before the sweep with the values written by the sweep.
+     *
+     * @param sensorId The id of the sensor.
+     * @param oldUid   The UID in the custom column before the sweep.
+     * @param newUid   The last UID read by the sweep, null if none was read.
+     * @param oldBlob  The blob colour before the sweep.
+     * @param newBlob  The blob colour written by the sweep.
+     * @return A delta holding only the changed fields.
+     */
+    public static SensorStateDelta betweenUids(Long sensorId, String oldUid, String newUid,
+                                               DashboardRAGColours oldBlob, DashboardRAGColours newBlob) {
+        return new SensorStateDelta(sensorId, null,
+                Objects.equals(oldBlob, newBlob) ? null : newBlob,
+                null,
+                newUid == null || Objects.equals(oldUid, newUid) ? null : newUid);
+    }
+
+    /**
+     * Adds the statistics written by the refresh of an analog sensor. They are compared with the values still held
+     * on the sensor, which is only updated when the delta is applied, so the sensor also shows whether its current
+     * value beat the highest or lowest value.
+     *
+     * @param sensor  The sensor before the sweep.
+     * @param readAt  The time of the sweep.
+     * @param average The average written by the sweep, NaN if the statistics were not updated.
+     * @param stdDev  The standard deviation written by the sweep.
+     * @param ucl     The upper control limit written by the sweep.
+     * @param lcl     The lower control limit written by the sweep.
+     * @return A copy of this delta with the changed statistics added.
+     */
+    public SensorStateDelta withStatistics(AnalogSensor sensor, ZonedDateTime readAt,
+                                           double average, double stdDev, double ucl, double lcl) {
+        boolean high = sensor.isCurrentGreaterThanHigh();
+        boolean low = sensor.isCurrentLessThanLow();
+        boolean written = !Double.isNaN(average);
+        return new SensorStateDelta(sensorId, current, blobColour, predictiveMaintenance, customColumn,
+                high ? sensor.getCurrent() : null, high ? readAt : null,
+                low ? sensor.getCurrent() : null, low ? readAt : null,
+                written && average != sensor.getAvValue() ? average : null,
+                written && stdDev != sensor.getStddev() ? stdDev : null,
+                written && ucl != sensor.getUpperControlLimit() ? ucl : null,
+                written && lcl != sensor.getLowerControlLimit() ? lcl : null);
+    }
+
+    /**
+     * Sets the changed fields on the sensor, so a sensor held between sweeps has the values written to the
+     * database.
+     *
+     * @param sensor The sensor the delta is for.
+     */
+    public void applyTo(Sensor sensor) {
+        if (current != null) {
+            sensor.setCurrent(current);
+        }
+        if (blobColour != null) {
+            sensor.setBlobColour(blobColour);
+        }
+        if (predictiveMaintenance != null && sensor instanceof AnalogSensor) {
+            ((AnalogSensor) sensor).setPredictiveMaintenance(predictiveMaintenance);
+        }
+        if (customColumn != null && sensor instanceof AnalogSensor) {
+            ((AnalogSensor) sensor).setCustomColumn(customColumn);
+        }
+        if (sensor instanceof AnalogSensor) {
+            applyStatisticsTo((AnalogSensor) sensor);
+        }
+    }
+
+    private void applyStatisticsTo(AnalogSensor sensor) {
+        if (highestValue != null) {
+            sensor.setHighestValue(highestValue);
+            sensor.setTimeDateHigh(timeDateHigh);
+        }
+        if (lowestValue != null) {
+            sensor.setLowestValue(lowestValue);
+            sensor.setTimeDateLow(timeDateLow);
+        }
+        if (avValue != null) {
+            sensor.setAvValue(avValue);
+        }
+        if (stddev != null) {
+            sensor.setStddev(stddev);
+        }
+        if (upperControlLimit != null) {
+            sensor.setUpperControlLimit(upperControlLimit);
+        }
+        if (lowerControlLimit != null) {
+            sensor.setLowerControlLimit(lowerControlLimit);
+        }
+    }
+
+    /**
+     * @return True if nothing changed for this sensor, in which case it is not sent.
+     */
+    public boolean isEmpty() {
+        return current == null && blobColour == null && predictiveMaintenance == null && customColumn == null
+                && highestValue == null && lowestValue == null && avValue == null && stddev == null
+                && upperControlLimit == null && lowerControlLimit == null;
+    }
+}
@@ -0,0 +1,20 @@
+package springasyncthreads;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Published once per sweep of {@link ScheduledSensorService#updateSensorTables()} with every sensor that changed.
+ */
+public class SensorStateDeltaEvent extends ApplicationEvent {
+
+    @Getter
+    private final List<SensorStateDelta> deltas;
+
+    public SensorStateDeltaEvent(Object source, List<SensorStateDelta> deltas) {
+        super(source);
+        this.deltas = List.copyOf(deltas);
+    }
+}
@@ -0,0 +1,90 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.Test;
+import uk.co.dhl.smas.backend.condition.AnalogSensor;
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorStateDeltaTest {
+
+    @Test
+    void testBetween() {
+        // Nothing changed so the delta should be empty.
+        SensorStateDelta delta = SensorStateDelta.between(1L, 10.0, 10.0,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN);
+        assertTrue(delta.isEmpty());
+
+        // Only the changed fields are populated.
+        delta = SensorStateDelta.between(1L, 10.0, 10.5,
+                DashboardRAGColours.GREEN, DashboardRAGColours.AMBER,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN);
+        assertFalse(delta.isEmpty());
+        assertEquals(10.5, delta.getCurrent());
+        assertEquals(DashboardRAGColours.AMBER, delta.getBlobColour());
+        assertNull(delta.getPredictiveMaintenance());
+
+        // A NaN current from a failed read is not sent, neither is a missing predictive maintenance colour.
+        delta = SensorStateDelta.between(1L, 10.0, Double.NaN,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN,
+                DashboardRAGColours.RED, null);
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    void testBetweenUids() {
+        // A new UID is sent even when the blob colour is unchanged.
+        SensorStateDelta delta = SensorStateDelta.betweenUids(1L, "A100", "A200",
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN);
+        assertFalse(delta.isEmpty());
+        assertEquals("A200", delta.getCustomColumn());
+        assertNull(delta.getBlobColour());
+
+        // The same UID read again is not sent, neither is a failed read.
+        assertTrue(SensorStateDelta.betweenUids(1L, "A100", "A100",
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN).isEmpty());
+        assertTrue(SensorStateDelta.betweenUids(1L, "A100", null,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN).isEmpty());
+    }
+
+    @Test
+    void testWithStatistics() {
+        AnalogSensor sensor = new AnalogSensor();
+        sensor.setCurrent(12.0);
+        sensor.setHighestValue(10.0);
+        sensor.setLowestValue(2.0);
+        sensor.setAvValue(6.0);
+        sensor.setStddev(1.0);
+        ZonedDateTime readAt = ZonedDateTime.now();
+
+        // The current beat the high, the low and the unchanged deviation are not sent.
+        SensorStateDelta delta = SensorStateDelta.between(1L, 12.0, 12.0,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN)
+                .withStatistics(sensor, readAt, 6.5, 1.0, 9.0, 3.0);
+        assertFalse(delta.isEmpty());
+        assertEquals(12.0, delta.getHighestValue());
+        assertEquals(readAt, delta.getTimeDateHigh());
+        assertNull(delta.getLowestValue());
+        assertEquals(6.5, delta.getAvValue());
+        assertNull(delta.getStddev());
+
+        // The held sensor shows what was written.
+        delta.applyTo(sensor);
+        assertEquals(12.0, sensor.getHighestValue());
+        assertEquals(readAt, sensor.getTimeDateHigh());
+        assertEquals(2.0, sensor.getLowestValue());
+        assertEquals(6.5, sensor.getAvValue());
+        assertEquals(9.0, sensor.getUpperControlLimit());
+
+        // Statistics that were not written are not sent.
+        sensor.setCurrent(8.0);
+        assertTrue(SensorStateDelta.between(1L, 8.0, Double.NaN,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN,
+                DashboardRAGColours.GREEN, DashboardRAGColours.GREEN)
+                .withStatistics(sensor, readAt, Double.NaN, 1.0, 9.0, 3.0).isEmpty());
+    }
+}
@@ -0,0 +1,119 @@
+package springasyncthreads;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the update for each sensor in a sweep on its own thread. Almost all of the time is spent waiting on the
+ * historian and the database, so when virtual threads are enabled every sensor gets a virtual thread and the
+ * concurrency is limited by a semaphore per downstream resource instead of by the size of a thread pool.
+ * <p>
+ * Virtual threads need Java 21, on older runtimes a fixed pool of platform threads is used instead.
+ */
+@Component
+public class SensorSweepExecutor {
+
+    private static final Logger log = Logger.getLogger(SensorSweepExecutor.class.getSimpleName());
+
+    /**
+     * The downstream resources a sensor update waits on.
+     */
+    public enum Resource {
+        HISTORIAN,
+        PRIMARY_DB
+    }
+
+    private final ExecutorService executor;
+    private final Map<Resource, Semaphore> permits = new EnumMap<>(Resource.class);
+
+    public SensorSweepExecutor(@Value("${scheduled.sensor.virtual.threads:false}") boolean virtualThreads,
+                               @Value("${scheduled.sensor.platform.threads:4}") int platformThreads,
+                               @Value("${scheduled.sensor.historian.permits:16}") int historianPermits,
+                               @Value("${scheduled.sensor.db.permits:8}") int dbPermits) {
+        this.executor = virtualThreads ? createVirtualThreadExecutor(platformThreads) :
+                Executors.newFixedThreadPool(platformThreads);
+        permits.put(Resource.HISTORIAN, new Semaphore(historianPermits, true));
+        permits.put(Resource.PRIMARY_DB, new Semaphore(dbPermits, true));
+    }
+
+    /**
+     * Runs the task for every item and waits for them all to finish. A failure for one item is logged
+     * and does not stop the others.
+     *
+     * @param items The items to process, normally the sensors in a sweep.
+     * @param task  The task to run for each item.
+     * @return The non null results in the same order as the items.
+     */
+    public <S, T> List<T> invokeForEach(Collection<S> items, Function<S, T> task) {
+        List<Future<T>> futures = new ArrayList<>(items.size());
+        items.forEach(item -> futures.add(executor.submit(() -> task.apply(item))));
+
+        List<T> results = new ArrayList<>(items.size());
+        for (Future<T> future : futures) {
+            try {
+                T result = future.get();
+                if (result != null) {
+                    results.add(result);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                break;
+            } catch (ExecutionException e) {
+                log.log(Level.WARNING, "A sensor update failed during the sweep", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Waits for a permit for the resource before calling it, so no more than the configured number of
+     * threads use the resource at once however many sensors are in flight.
+     *
+     * @param resource The resource being called.
+     * @param call     The call to make.
+     * @return The result of the call.
+     */
+    public <T> T withPermit(Resource resource, Supplier<T> call) {
+        Semaphore semaphore = permits.get(resource);
+        semaphore.acquireUninterruptibly();
+        try {
+            return call.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Looked up reflectively so the application still runs on Java 17.
+     */
+    private static ExecutorService createVirtualThreadExecutor(int platformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warning("Virtual threads are not available on this JVM, using " + platformThreads + " platform threads");
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+    }
+}
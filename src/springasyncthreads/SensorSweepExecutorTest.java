@@ -0,0 +1,59 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorSweepExecutorTest {
+
+    SensorSweepExecutor underTest = new SensorSweepExecutor(true, 4, 3, 8);
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    @Test
+    void testInvokeForEach() {
+        List<Integer> items = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+
+        // Results are returned in order and nulls are dropped.
+        List<Integer> results = underTest.invokeForEach(items, i -> i % 2 == 0 ? i : null);
+        assertEquals(50, results.size());
+        assertEquals(98, results.get(49));
+
+        // A failure for one item does not stop the others.
+        results = underTest.invokeForEach(items, i -> {
+            if (i == 5) {
+                throw new IllegalStateException("Historian unavailable");
+            }
+            return i;
+        });
+        assertEquals(99, results.size());
+    }
+
+    @Test
+    void testWithPermitLimitsConcurrency() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Integer> items = IntStream.range(0, 50).boxed().collect(Collectors.toList());
+
+        underTest.invokeForEach(items, i -> underTest.withPermit(SensorSweepExecutor.Resource.HISTORIAN, () -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return i;
+        }));
+        assertTrue(maxInFlight.get() <= 3);
+    }
+}
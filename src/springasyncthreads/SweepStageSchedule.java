@@ -0,0 +1,75 @@
+package springasyncthreads;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Decides which of the dependent stages run on a tick of the sensor pipeline, see
+ * {@link ScheduledSensorService#updateSensorTables()}. The maintenance check and hourly rollup used to be separate
+ * scheduled jobs that each read their own window from the historian and collided at the top of the hour, they now
+ * run on the first tick after they fall due and read their slice from the window the tick has already fetched.
+ * <p>
+ * Each stage runs once per bucket, the first bucket is the one the application starts in so a restart does not
+ * repeat a stage that has already run.
+ */
+class SweepStageSchedule {
+
+    /**
+     * The stages that depend on the fetch stage of a tick.
+     */
+    enum Stage {
+        /**
+         * Checks the maintenance sensors for potential maintenance requirements, every 15 minutes.
+         */
+        MAINTENANCE,
+        /**
+         * Saves the hourly average of every analog sensor for the previous hour, at 5 minutes past each hour.
+         */
+        HOURLY_ROLLUP
+    }
+
+    static final int MAINTENANCE_MINUTES = 15;
+    static final int ROLLUP_DELAY_MINUTES = 5;
+
+    private ZonedDateTime lastMaintenance;
+    private ZonedDateTime lastRollup;
+
+    SweepStageSchedule(ZonedDateTime start) {
+        lastMaintenance = maintenanceBucket(start);
+        lastRollup = rollupBucket(start);
+    }
+
+    /**
+     * @param now The time of the tick.
+     * @return The stages to run on this tick, marking them as run.
+     */
+    synchronized Set<Stage> stagesDue(ZonedDateTime now) {
+        Set<Stage> due = EnumSet.noneOf(Stage.class);
+        ZonedDateTime maintenance = maintenanceBucket(now);
+        if (maintenance.isAfter(lastMaintenance)) {
+            lastMaintenance = maintenance;
+            due.add(Stage.MAINTENANCE);
+        }
+        ZonedDateTime rollup = rollupBucket(now);
+        if (rollup.isAfter(lastRollup)) {
+            lastRollup = rollup;
+            due.add(Stage.HOURLY_ROLLUP);
+        }
+        return due;
+    }
+
+    private static ZonedDateTime maintenanceBucket(ZonedDateTime time) {
+        ZonedDateTime hour = time.truncatedTo(ChronoUnit.HOURS);
+        return hour.plusMinutes(time.getMinute() / MAINTENANCE_MINUTES * MAINTENANCE_MINUTES);
+    }
+
+    /**
+     * @param time The time of the tick.
+     * @return The end of the hour the rollup on that tick covers.
+     */
+    static ZonedDateTime rollupBucket(ZonedDateTime time) {
+        return time.minusMinutes(ROLLUP_DELAY_MINUTES).truncatedTo(ChronoUnit.HOURS);
+    }
+}
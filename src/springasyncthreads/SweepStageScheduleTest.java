@@ -0,0 +1,40 @@
+package springasyncthreads;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SweepStageScheduleTest {
+
+    ZonedDateTime start = ZonedDateTime.of(2024, 3, 1, 9, 50, 0, 0, ZoneId.of("Europe/London"));
+
+    @Test
+    void testStagesRunOncePerBucket() {
+        SweepStageSchedule underTest = new SweepStageSchedule(start);
+        // Nothing runs in the bucket the application started in.
+        assertTrue(underTest.stagesDue(start.plusSeconds(15)).isEmpty());
+
+        assertEquals(Set.of(SweepStageSchedule.Stage.MAINTENANCE), underTest.stagesDue(start.plusMinutes(10)));
+        assertTrue(underTest.stagesDue(start.plusMinutes(10).plusSeconds(15)).isEmpty());
+
+        // The rollup waits until 5 past the hour.
+        assertTrue(underTest.stagesDue(start.plusMinutes(14)).isEmpty());
+        assertEquals(Set.of(SweepStageSchedule.Stage.HOURLY_ROLLUP), underTest.stagesDue(start.plusMinutes(15)));
+
+        // A missed bucket runs once on the next tick.
+        assertEquals(Set.of(SweepStageSchedule.Stage.MAINTENANCE, SweepStageSchedule.Stage.HOURLY_ROLLUP),
+                underTest.stagesDue(start.plusHours(2)));
+        assertTrue(underTest.stagesDue(start.plusHours(2).plusSeconds(15)).isEmpty());
+    }
+
+    @Test
+    void testRollupBucket() {
+        // At 10:05 the rollup is for 09:00 to 10:00.
+        assertEquals(start.withMinute(0).plusHours(1), SweepStageSchedule.rollupBucket(start.plusMinutes(15)));
+        assertEquals(start.withMinute(0), SweepStageSchedule.rollupBucket(start.plusMinutes(14)));
+    }
+}
@@ -0,0 +1,124 @@
+package springhibernate;
+
+import entitys.User;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An immutable centered interval tree over user alarm windows, answering which windows contain a time of day
+ * in O(log n + k). The windows are open at both ends to match {@link User#isUserAvailableForAlerts()}.
+ *
+ * @param <T> The value held for each window.
+ */
+class AlarmWindowIndex<T> {
+
+    /**
+     * A single alarm window, as nanos of the day.
+     */
+    static final class Window<T> {
+        final long start;
+        final long stop;
+        final T value;
+
+        Window(long start, long stop, T value) {
+            this.start = start;
+            this.stop = stop;
+            this.value = value;
+        }
+    }
+
+    private final Node<T> root;
+    private final int size;
+
+    AlarmWindowIndex(List<Window<T>> windows) {
+        // A window without a whole nano between its start and stop can never contain a time so it is left out.
+        List<Window<T>> valid = new ArrayList<>();
+        windows.stream().filter(window -> window.stop - window.start >= 2).forEach(valid::add);
+        size = valid.size();
+        root = build(valid);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Passes the value of every window containing the time to the consumer.
+     *
+     * @param nanoOfDay The time of day in nanos, see LocalTime.toNanoOfDay.
+     * @param consumer  Receives the matching values.
+     */
+    void findContaining(long nanoOfDay, Consumer<T> consumer) {
+        Node<T> node = root;
+        while (node != null) {
+            if (nanoOfDay < node.center) {
+                for (Window<T> window : node.byStart) {
+                    if (window.start >= nanoOfDay) {
+                        break;
+                    }
+                    consumer.accept(window.value);
+                }
+                node = node.left;
+            } else if (nanoOfDay > node.center) {
+                for (Window<T> window : node.byStop) {
+                    if (window.stop <= nanoOfDay) {
+                        break;
+                    }
+                    consumer.accept(window.value);
+                }
+                node = node.right;
+            } else {
+                for (Window<T> window : node.byStart) {
+                    consumer.accept(window.value);
+                }
+                return;
+            }
+        }
+    }
+
+    private static <T> Node<T> build(List<Window<T>> windows) {
+        if (windows.isEmpty()) {
+            return null;
+        }
+        // The middle of the median window by start, which is always inside at least that window.
+        List<Window<T>> sorted = new ArrayList<>(windows);
+        sorted.sort(Comparator.comparingLong(window -> window.start));
+        Window<T> median = sorted.get(sorted.size() / 2);
+        long center = median.start + (median.stop - median.start) / 2;
+
+        List<Window<T>> left = new ArrayList<>();
+        List<Window<T>> right = new ArrayList<>();
+        List<Window<T>> overlapping = new ArrayList<>();
+        for (Window<T> window : windows) {
+            if (window.stop <= center) {
+                left.add(window);
+            } else if (window.start >= center) {
+                right.add(window);
+            } else {
+                overlapping.add(window);
+            }
+        }
+        return new Node<>(center, overlapping, build(left), build(right));
+    }
+
+    private static final class Node<T> {
+        private final long center;
+        private final List<Window<T>> byStart;
+        private final List<Window<T>> byStop;
+        private final Node<T> left;
+        private final Node<T> right;
+
+        private Node(long center, List<Window<T>> overlapping, Node<T> left, Node<T> right) {
+            this.center = center;
+            this.byStart = new ArrayList<>(overlapping);
+            this.byStart.sort(Comparator.comparingLong(window -> window.start));
+            this.byStop = new ArrayList<>(overlapping);
+            this.byStop.sort(Comparator.comparingLong((Window<T> window) -> window.stop).reversed());
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
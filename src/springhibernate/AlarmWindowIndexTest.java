@@ -0,0 +1,85 @@
+package springhibernate;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlarmWindowIndexTest {
+
+    @Test
+    void testFindContaining() {
+        AlarmWindowIndex<String> underTest = new AlarmWindowIndex<>(List.of(
+                window("08:00", "17:00", "day"),
+                window("06:00", "14:00", "early"),
+                window("14:00", "22:00", "late"),
+                window("00:00", "23:59", "always")));
+
+        assertEquals(List.of("always"), find(underTest, "05:00"));
+        assertEquals(List.of("always", "day", "early"), sorted(find(underTest, "09:30")));
+        // The windows are open at both ends, the same as User.isUserAvailableForAlerts.
+        assertEquals(List.of("always", "day"), sorted(find(underTest, "14:00")));
+        assertEquals(List.of("always", "late"), sorted(find(underTest, "17:00")));
+        assertEquals(List.of(), find(underTest, "23:59"));
+    }
+
+    @Test
+    void testEmptyAndZeroLengthWindows() {
+        AlarmWindowIndex<String> empty = new AlarmWindowIndex<>(List.of());
+        assertEquals(List.of(), find(empty, "12:00"));
+
+        AlarmWindowIndex<String> zeroLength = new AlarmWindowIndex<>(List.of(
+                window("12:00", "12:00", "none"), window("13:00", "12:00", "backwards")));
+        assertEquals(0, zeroLength.size());
+        assertEquals(List.of(), find(zeroLength, "12:00"));
+    }
+
+    @Test
+    void testMatchesLinearScan() {
+        Random random = new Random(42);
+        List<AlarmWindowIndex.Window<Integer>> windows = new ArrayList<>();
+        List<LocalTime[]> times = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            // Plenty of duplicate windows, as most users keep the default alarm times.
+            LocalTime start = LocalTime.of(random.nextInt(24), random.nextInt(4) * 15);
+            LocalTime stop = start.plusHours(random.nextInt(12));
+            times.add(new LocalTime[]{start, stop});
+            windows.add(new AlarmWindowIndex.Window<>(start.toNanoOfDay(), stop.toNanoOfDay(), i));
+        }
+        AlarmWindowIndex<Integer> underTest = new AlarmWindowIndex<>(windows);
+
+        for (int minute = 0; minute < 24 * 60; minute += 7) {
+            LocalTime time = LocalTime.of(minute / 60, minute % 60);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < times.size(); i++) {
+                if (time.isAfter(times.get(i)[0]) && time.isBefore(times.get(i)[1])) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> found = new ArrayList<>();
+            underTest.findContaining(time.toNanoOfDay(), found::add);
+            found.sort(Integer::compare);
+            assertEquals(expected, found, "At " + time);
+        }
+    }
+
+    private static AlarmWindowIndex.Window<String> window(String start, String stop, String value) {
+        return new AlarmWindowIndex.Window<>(LocalTime.parse(start).toNanoOfDay(),
+                LocalTime.parse(stop).toNanoOfDay(), value);
+    }
+
+    private static List<String> find(AlarmWindowIndex<String> index, String time) {
+        List<String> found = new ArrayList<>();
+        index.findContaining(LocalTime.parse(time).toNanoOfDay(), found::add);
+        return found;
+    }
+
+    private static List<String> sorted(List<String> values) {
+        values.sort(String::compareTo);
+        return values;
+    }
+}
@@ -0,0 +1,172 @@
+package springhibernate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Moves closed alerts older than the archive age from the alert table into the alert_archive table in background
+ * batches, so the alert table only holds the open and recently closed alerts. The open alert queries, the most
+ * recent alert checks of the alert generator and the alerts loaded with each AnalogSensor then only touch that
+ * small hot set, and the history is read through {@link AlertHistoryService}.
+ * <p>
+ * The archive age must be longer than the longest window the alert generator de-duplicates over, which starts at
+ * the beginning of last month, otherwise an archived alert could be raised again.
+ */
+@Service
+public class AlertArchiver {
+    private static final Logger log = Logger.getLogger(AlertArchiver.class.getName());
+
+    static final String HOT_TABLE = "alert";
+    static final String ARCHIVE_TABLE = "alert_archive";
+    // The start of last month can be up to 62 days ago.
+    static final int MINIMUM_ARCHIVE_DAYS = 62;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int archiveAfterDays;
+    private final int batchSize;
+    private final long batchPauseMillis;
+    private volatile List<String> archivedColumns = List.of();
+
+    public AlertArchiver(JdbcTemplate jdbcTemplate,
+                         @Value("${alerts.archive.after.days:90}") int archiveAfterDays,
+                         @Value("${alerts.archive.batch.size:1000}") int batchSize,
+                         @Value("${alerts.archive.batch.pause.millis:100}") long batchPauseMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        if (archiveAfterDays < MINIMUM_ARCHIVE_DAYS) {
+            log.warning("alerts.archive.after.days of " + archiveAfterDays + " is shorter than the alert generator " +
+                    "looks back, using " + MINIMUM_ARCHIVE_DAYS);
+        }
+        this.archiveAfterDays = Math.max(MINIMUM_ARCHIVE_DAYS, archiveAfterDays);
+        this.batchSize = batchSize;
+        this.batchPauseMillis = batchPauseMillis;
+    }
+
+    /**
+     * Creates the archive table with the same columns as the alert table, and a partial index so the open alerts
+     * of a sensor are found without reading the closed ones. Both tables are indexed by sensor and opened for the
+     * history pages. The alert table is written to all the time, so its indexes are built concurrently rather than
+     * blocking the writes while they are built.
+     */
+    @PostConstruct
+    public void createTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + ARCHIVE_TABLE + " (LIKE " + HOT_TABLE + " INCLUDING DEFAULTS)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + ARCHIVE_TABLE + "_sensor_opened_idx ON " +
+                ARCHIVE_TABLE + " (sensor_id, opened)");
+        createHotIndex("_open_idx", "(sensor_id) WHERE closed IS NULL");
+        createHotIndex("_sensor_opened_idx", "(sensor_id, opened)");
+        archivedColumns = loadArchivedColumns();
+    }
+
+    /**
+     * Builds an index on the alert table without blocking writes. A concurrent build that fails, e.g. when the node
+     * is stopped part way through, leaves an INVALID index behind which IF NOT EXISTS would skip, so an invalid
+     * index that no node is still building is dropped and built again.
+     *
+     * @param suffix     The name of the index after the table name.
+     * @param definition The columns and any where clause of the index.
+     */
+    void createHotIndex(String suffix, String definition) {
+        String index = HOT_TABLE + suffix;
+        List<Boolean> valid = jdbcTemplate.queryForList("SELECT indisvalid FROM pg_index " +
+                "WHERE indexrelid = to_regclass(?)", Boolean.class, index);
+        if (valid.equals(List.of(false))) {
+            Integer building = jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_progress_create_index " +
+                    "WHERE index_relid = to_regclass(?)", Integer.class, index);
+            if (building != null && building > 0) {
+                return;
+            }
+            log.warning("Rebuilding invalid index " + index);
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + index);
+        }
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + index + " ON " + HOT_TABLE + " " +
+                definition);
+    }
+
+    /**
+     * Runs every night at 02:30, moves the closed alerts older than the archive age a batch at a time, pausing
+     * between batches so the alert generator is not held up.
+     *
+     * @return The number of alerts archived.
+     */
+    @Scheduled(cron = "0 30 2 * * ?")
+    public int archiveClosedAlerts() {
+        List<String> columns = loadArchivedColumns();
+        archivedColumns = columns;
+        Timestamp cutOff = Timestamp.from(ZonedDateTime.now().minusDays(archiveAfterDays).toInstant());
+        int total = 0;
+        int moved;
+        do {
+            moved = archiveBatch(columns, cutOff);
+            total += moved;
+            if (moved == batchSize && batchPauseMillis > 0) {
+                try {
+                    Thread.sleep(batchPauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } while (moved == batchSize);
+        log.info("Archived " + total + " closed alerts");
+        return total;
+    }
+
+    /**
+     * Moves a single batch in one statement, so each alert is either in the alert table or the archive, never both.
+     * Rows locked by another node archiving at the same time are skipped.
+     *
+     * @param columns The columns to copy.
+     * @param cutOff  Alerts closed before this are archived.
+     * @return The number of alerts moved.
+     */
+    int archiveBatch(List<String> columns, Timestamp cutOff) {
+        String columnList = String.join(", ", columns);
+        return jdbcTemplate.update("WITH moved AS (" +
+                "DELETE FROM " + HOT_TABLE + " WHERE id IN (SELECT id FROM " + HOT_TABLE +
+                " WHERE closed IS NOT NULL AND closed < ? ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                "RETURNING " + columnList + ") " +
+                "INSERT INTO " + ARCHIVE_TABLE + " (" + columnList + ") SELECT " + columnList + " FROM moved",
+                cutOff, batchSize);
+    }
+
+    /**
+     * @return The columns of the archive table that are also in the alert table, as of start up or the last run.
+     */
+    public List<String> getArchivedColumns() {
+        return archivedColumns;
+    }
+
+    /**
+     * @return The columns of the archive table that are also in the alert table. A column added to the alert table
+     * later is logged and left in the alert table until it is added to the archive.
+     */
+    List<String> loadArchivedColumns() {
+        List<String> hot = getColumns(HOT_TABLE);
+        List<String> archived = getColumns(ARCHIVE_TABLE);
+        hot.stream()
+                .filter(column -> !archived.contains(column))
+                .forEach(column -> log.warning("Column " + column + " is missing from " + ARCHIVE_TABLE));
+        archived.retainAll(hot);
+        return archived;
+    }
+
+    /**
+     * @return The number of days after closing that an alert is archived.
+     */
+    public int getArchiveAfterDays() {
+        return archiveAfterDays;
+    }
+
+    private List<String> getColumns(String table) {
+        return jdbcTemplate.queryForList("SELECT column_name FROM information_schema.columns " +
+                "WHERE table_name = ? AND table_schema = current_schema() ORDER BY ordinal_position", String.class, table);
+    }
+}
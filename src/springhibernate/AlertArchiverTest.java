@@ -0,0 +1,93 @@
+package springhibernate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AlertArchiverTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    AlertArchiver underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new AlertArchiver(jdbcTemplate, 90, 100, 0);
+    }
+
+    @Test
+    void testArchiveAgeIsNotShorterThanTheGeneratorLooksBack() {
+        assertEquals(90, underTest.getArchiveAfterDays());
+        assertEquals(AlertArchiver.MINIMUM_ARCHIVE_DAYS,
+                new AlertArchiver(jdbcTemplate, 7, 100, 0).getArchiveAfterDays());
+    }
+
+    @Test
+    void testArchivesInBatchesUntilABatchIsShort() {
+        doReturn(new ArrayList<>(List.of("id", "opened", "closed"))).when(jdbcTemplate)
+                .queryForList(anyString(), eq(String.class), anyString());
+        when(jdbcTemplate.update(startsWith("WITH moved AS"), any(Timestamp.class), eq(100)))
+                .thenReturn(100, 100, 42);
+
+        assertEquals(242, underTest.archiveClosedAlerts());
+        verify(jdbcTemplate, times(3)).update(anyString(), any(Timestamp.class), eq(100));
+        assertEquals(List.of("id", "opened", "closed"), underTest.getArchivedColumns());
+    }
+
+    @Test
+    void testHotIndexIsBuiltConcurrently() {
+        underTest.createHotIndex("_open_idx", "(sensor_id) WHERE closed IS NULL");
+
+        verify(jdbcTemplate).execute(
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS alert_open_idx ON alert (sensor_id) WHERE closed IS NULL");
+    }
+
+    @Test
+    void testInvalidHotIndexIsRebuilt() {
+        doReturn(List.of(false)).when(jdbcTemplate)
+                .queryForList(startsWith("SELECT indisvalid"), eq(Boolean.class), eq("alert_open_idx"));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("alert_open_idx"))).thenReturn(0);
+
+        underTest.createHotIndex("_open_idx", "(sensor_id) WHERE closed IS NULL");
+
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute("DROP INDEX CONCURRENTLY IF EXISTS alert_open_idx");
+        inOrder.verify(jdbcTemplate).execute(
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS alert_open_idx ON alert (sensor_id) WHERE closed IS NULL");
+    }
+
+    @Test
+    void testHotIndexBeingBuiltIsLeft() {
+        // Another node is part way through building the index, so it is not valid yet.
+        doReturn(List.of(false)).when(jdbcTemplate)
+                .queryForList(startsWith("SELECT indisvalid"), eq(Boolean.class), eq("alert_open_idx"));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("alert_open_idx"))).thenReturn(1);
+
+        underTest.createHotIndex("_open_idx", "(sensor_id) WHERE closed IS NULL");
+
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void testOnlyColumnsInBothTablesAreArchived() {
+        doReturn(new ArrayList<>(List.of("id", "opened", "closed", "notes"))).when(jdbcTemplate)
+                .queryForList(anyString(), eq(String.class), eq(AlertArchiver.HOT_TABLE));
+        doReturn(new ArrayList<>(List.of("id", "opened", "closed"))).when(jdbcTemplate)
+                .queryForList(anyString(), eq(String.class), eq(AlertArchiver.ARCHIVE_TABLE));
+
+        assertEquals(List.of("id", "opened", "closed"), underTest.loadArchivedColumns());
+    }
+}
@@ -0,0 +1,150 @@
+package springhibernate;
+
+import org.springframework.stereotype.Service;
+import uk.co.dhl.smas.backend.alert.Alert;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Reads the alert history whether the alerts are still in the alert table or have been moved to the archive by
+ * the {@link AlertArchiver}. A range that starts after the archive age can't hold an archived alert, as an alert
+ * is only archived a number of days after it was closed, so only the alert table is queried.
+ * <p>
+ * The alerts are read only, an archived alert can't be changed through the Alert entity. The alert history of a
+ * sensor is shown by SensorAlertGridView, which pages through {@link #findPageForSensor} so the archived alerts
+ * are listed alongside the ones still in the alert table.
+ */
+@Service
+public class AlertHistoryService {
+
+    private final EntityManager entityManager;
+    private final AlertArchiver archiver;
+
+    public AlertHistoryService(EntityManager entityManager, AlertArchiver archiver) {
+        this.entityManager = entityManager;
+        this.archiver = archiver;
+    }
+
+    /**
+     * @param sensorId The id of the sensor.
+     * @param from     The start of the range the alerts were opened in.
+     * @param to       The end of the range.
+     * @return The alerts for the sensor, most recently opened first.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Alert> findAllForSensorBetween(Long sensorId, ZonedDateTime from, ZonedDateTime to) {
+        Query query = createQuery("sensor_id = :sensorId AND opened BETWEEN :from AND :to", from);
+        query.setParameter("sensorId", sensorId);
+        return (List<Alert>) setRange(query, from, to).getResultList();
+    }
+
+    /**
+     * @param from The start of the range the alerts were opened in.
+     * @param to   The end of the range.
+     * @return The alerts for every sensor, most recently opened first.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Alert> findAllBetween(ZonedDateTime from, ZonedDateTime to) {
+        return (List<Alert>) setRange(createQuery("opened BETWEEN :from AND :to", from), from, to).getResultList();
+    }
+
+    /**
+     * Reads a page of the alert grid of a sensor, see AlertDataProvider. The alert table and the archive are read
+     * together, most recently opened first, with the id breaking ties so every alert has a fixed position. The page
+     * after a known alert is read by keyset from the (sensor_id, opened) index of each table, otherwise the page is
+     * read by offset.
+     *
+     * @param sensorId The id of the sensor.
+     * @param after    The last alert of the page before, or null to read the page by offset.
+     * @param offset   The offset of the first alert, only used when after is null.
+     * @param limit    The number of alerts.
+     * @return The alerts on the page.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Alert> findPageForSensor(Long sensorId, Alert after, int offset, int limit) {
+        Query query = createQuery(getPageSql(after != null));
+        query.setParameter("sensorId", sensorId);
+        if (after != null) {
+            query.setParameter("opened", Timestamp.from(after.getOpened().toInstant()))
+                    .setParameter("id", after.getId())
+                    .setParameter("rows", limit);
+        } else {
+            query.setParameter("rows", offset + limit)
+                    .setFirstResult(offset);
+        }
+        return (List<Alert>) query.setMaxResults(limit).getResultList();
+    }
+
+    /**
+     * @param sensorId The id of the sensor.
+     * @return The number of alerts the sensor has raised, including the archived alerts.
+     */
+    public long countForSensor(Long sensorId) {
+        Number count = (Number) entityManager.createNativeQuery(getCountSql())
+                .setParameter("sensorId", sensorId)
+                .getSingleResult();
+        return count.longValue();
+    }
+
+    /**
+     * @param from The start of the range.
+     * @return True if alerts opened from this time onwards may have been archived.
+     */
+    boolean isArchiveNeeded(ZonedDateTime from) {
+        return from.isBefore(ZonedDateTime.now().minusDays(archiver.getArchiveAfterDays()));
+    }
+
+    String getSql(String where, ZonedDateTime from) {
+        return getSql(where, isArchiveNeeded(from), "opened DESC");
+    }
+
+    String getSql(String where, boolean includeArchive, String orderBy) {
+        String select = getSelect();
+        String sql = select + AlertArchiver.HOT_TABLE + " WHERE " + where;
+        if (includeArchive) {
+            sql += " UNION ALL " + select + AlertArchiver.ARCHIVE_TABLE + " WHERE " + where;
+        }
+        return sql + " ORDER BY " + orderBy;
+    }
+
+    /**
+     * Each table is read in order and limited on its own so only the rows that can be on the page are merged. The
+     * opened bound is implied by the row comparison but lets the comparison use the (sensor_id, opened) index.
+     */
+    String getPageSql(boolean keyset) {
+        String where = "sensor_id = :sensorId"
+                + (keyset ? " AND opened <= :opened AND (opened, id) < (:opened, :id)" : "");
+        String orderBy = " ORDER BY opened DESC, id DESC";
+        String page = " WHERE " + where + orderBy + " LIMIT :rows";
+        return "(" + getSelect() + AlertArchiver.HOT_TABLE + page + ") UNION ALL ("
+                + getSelect() + AlertArchiver.ARCHIVE_TABLE + page + ")" + orderBy;
+    }
+
+    String getCountSql() {
+        return "SELECT (SELECT count(*) FROM " + AlertArchiver.HOT_TABLE + " WHERE sensor_id = :sensorId) + "
+                + "(SELECT count(*) FROM " + AlertArchiver.ARCHIVE_TABLE + " WHERE sensor_id = :sensorId)";
+    }
+
+    private String getSelect() {
+        List<String> columns = archiver.getArchivedColumns();
+        return "SELECT " + (columns.isEmpty() ? "*" : String.join(", ", columns)) + " FROM ";
+    }
+
+    private Query createQuery(String where, ZonedDateTime from) {
+        return createQuery(getSql(where, from));
+    }
+
+    private Query createQuery(String sql) {
+        return entityManager.createNativeQuery(sql, Alert.class)
+                .setHint("org.hibernate.readOnly", true);
+    }
+
+    private static Query setRange(Query query, ZonedDateTime from, ZonedDateTime to) {
+        return query.setParameter("from", Timestamp.from(from.toInstant()))
+                .setParameter("to", Timestamp.from(to.toInstant()));
+    }
+}
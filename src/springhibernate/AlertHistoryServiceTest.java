@@ -0,0 +1,112 @@
+package springhibernate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import uk.co.dhl.smas.backend.alert.Alert;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AlertHistoryServiceTest {
+
+    @Mock
+    EntityManager entityManager;
+    @Mock
+    AlertArchiver archiver;
+    AlertHistoryService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new AlertHistoryService(entityManager, archiver);
+        lenient().when(archiver.getArchiveAfterDays()).thenReturn(90);
+        lenient().when(archiver.getArchivedColumns()).thenReturn(List.of("id", "opened", "closed"));
+    }
+
+    @Test
+    void testRecentRangeOnlyReadsTheAlertTable() {
+        String sql = underTest.getSql("opened BETWEEN :from AND :to", ZonedDateTime.now().minusDays(7));
+        assertEquals("SELECT id, opened, closed FROM alert WHERE opened BETWEEN :from AND :to ORDER BY opened DESC",
+                sql);
+    }
+
+    @Test
+    void testOlderRangeAlsoReadsTheArchive() {
+        String sql = underTest.getSql("opened BETWEEN :from AND :to", ZonedDateTime.now().minusDays(120));
+        assertEquals("SELECT id, opened, closed FROM alert WHERE opened BETWEEN :from AND :to UNION ALL " +
+                "SELECT id, opened, closed FROM alert_archive WHERE opened BETWEEN :from AND :to ORDER BY opened DESC",
+                sql);
+    }
+
+    @Test
+    void testPagesAlwaysReadTheArchive() {
+        assertEquals("(SELECT id, opened, closed FROM alert WHERE sensor_id = :sensorId " +
+                        "ORDER BY opened DESC, id DESC LIMIT :rows) UNION ALL " +
+                        "(SELECT id, opened, closed FROM alert_archive WHERE sensor_id = :sensorId " +
+                        "ORDER BY opened DESC, id DESC LIMIT :rows) ORDER BY opened DESC, id DESC",
+                underTest.getPageSql(false));
+        String keyset = "sensor_id = :sensorId AND opened <= :opened AND (opened, id) < (:opened, :id)";
+        assertEquals("(SELECT id, opened, closed FROM alert WHERE " + keyset +
+                        " ORDER BY opened DESC, id DESC LIMIT :rows) UNION ALL " +
+                        "(SELECT id, opened, closed FROM alert_archive WHERE " + keyset +
+                        " ORDER BY opened DESC, id DESC LIMIT :rows) ORDER BY opened DESC, id DESC",
+                underTest.getPageSql(true));
+    }
+
+    @Test
+    void testPageAfterAnAlertIsReadByKeyset() {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery(underTest.getPageSql(true), Alert.class)).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of());
+        Alert last = mock(Alert.class);
+        ZonedDateTime opened = ZonedDateTime.now().minusDays(200);
+        when(last.getOpened()).thenReturn(opened);
+        when(last.getId()).thenReturn(42L);
+
+        underTest.findPageForSensor(7L, last, 500, 50);
+
+        verify(query).setParameter("sensorId", 7L);
+        verify(query).setParameter("opened", Timestamp.from(opened.toInstant()));
+        verify(query).setParameter("id", 42L);
+        // Each table only reads the page, however far down the grid is.
+        verify(query).setParameter("rows", 50);
+        verify(query).setMaxResults(50);
+        verify(query, never()).setFirstResult(anyInt());
+    }
+
+    @Test
+    void testPageWithoutAKeyIsReadByOffset() {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery(underTest.getPageSql(false), Alert.class)).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of());
+
+        underTest.findPageForSensor(7L, null, 100, 50);
+
+        verify(query).setParameter("rows", 150);
+        verify(query).setFirstResult(100);
+        verify(query).setMaxResults(50);
+    }
+
+    @Test
+    void testCountIncludesTheArchive() {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery("SELECT (SELECT count(*) FROM alert WHERE sensor_id = :sensorId) + " +
+                "(SELECT count(*) FROM alert_archive WHERE sensor_id = :sensorId)")).thenReturn(query);
+        when(query.getSingleResult()).thenReturn(BigInteger.valueOf(12));
+
+        assertEquals(12, underTest.countForSensor(7L));
+        verify(query).setParameter("sensorId", 7L);
+    }
+}
@@ -0,0 +1,62 @@
+package springhibernate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+import uk.co.dhl.smas.backend.alert.Alert;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Emails a new alert to the users who want alerts at the time it is raised. The recipients are found in the
+ * {@link AlertRecipientIndex} rather than by loading every user and checking User.isUserAvailableForAlerts, and
+ * the alert goes out as a single message to all of them.
+ */
+@Service
+public class AlertMailer {
+
+    private static final Logger log = Logger.getLogger(AlertMailer.class.getSimpleName());
+
+    private final JavaMailSender mailSender;
+    private final AlertRecipientIndex alertRecipientIndex;
+    private final String from;
+
+    public AlertMailer(JavaMailSender mailSender, AlertRecipientIndex alertRecipientIndex,
+                       @Value("${spring.mail.username:}") String from) {
+        this.mailSender = mailSender;
+        this.alertRecipientIndex = alertRecipientIndex;
+        this.from = from;
+    }
+
+    /**
+     * Emails the alert to every team, a failure to send is logged rather than thrown as the alert has already been
+     * saved.
+     *
+     * @param alert The saved alert.
+     */
+    public void send(Alert alert) {
+        List<AlertRecipientIndex.Recipient> recipients = alertRecipientIndex.getRecipients(null,
+                AlertRecipientIndex.Channel.EMAIL, ZonedDateTime.now().toLocalTime());
+        if (recipients.isEmpty()) {
+            return;
+        }
+        SimpleMailMessage message = new SimpleMailMessage();
+        if (!from.isEmpty()) {
+            message.setFrom(from);
+        }
+        message.setTo(recipients.stream().map(AlertRecipientIndex.Recipient::getEmailAddress).toArray(String[]::new));
+        message.setSubject("SMAS Alert: " + alert.getCategoryString());
+        message.setText(alert.getCategoryString() + "\n" +
+                "Value: " + alert.getAlertMetricValue() + "\n" +
+                "Opened: " + alert.getOpened());
+        try {
+            mailSender.send(message);
+        } catch (MailException e) {
+            log.warning("Unable to email the alert to " + recipients.size() + " users: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package springhibernate;
+
+import entitys.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import uk.co.dhl.smas.backend.alert.Alert;
+
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AlertMailerTest {
+
+    JavaMailSender mailSender = mock(JavaMailSender.class);
+    AlertRecipientIndex alertRecipientIndex = mock(AlertRecipientIndex.class);
+    AlertMailer underTest;
+    Alert alert = mock(Alert.class);
+
+    @BeforeEach
+    void setUp() {
+        underTest = new AlertMailer(mailSender, alertRecipientIndex, "alerts@example.com");
+        lenient().when(alert.getCategoryString()).thenReturn("Peak Anomaly");
+    }
+
+    @Test
+    void testSendsOneMessageToEveryRecipient() {
+        when(alertRecipientIndex.getRecipients(isNull(), eq(AlertRecipientIndex.Channel.EMAIL), any()))
+                .thenReturn(List.of(recipient(1L, "alice"), recipient(2L, "bob")));
+
+        underTest.send(alert);
+
+        ArgumentCaptor<SimpleMailMessage> message = ArgumentCaptor.forClass(SimpleMailMessage.class);
+        verify(mailSender).send(message.capture());
+        assertArrayEquals(new String[]{"alice@example.com", "bob@example.com"}, message.getValue().getTo());
+        assertEquals("alerts@example.com", message.getValue().getFrom());
+    }
+
+    @Test
+    void testNothingIsSentWithoutRecipients() {
+        when(alertRecipientIndex.getRecipients(isNull(), eq(AlertRecipientIndex.Channel.EMAIL), any()))
+                .thenReturn(List.of());
+
+        underTest.send(alert);
+
+        verifyNoInteractions(mailSender);
+    }
+
+    @Test
+    void testFailureToSendIsNotThrown() {
+        when(alertRecipientIndex.getRecipients(isNull(), eq(AlertRecipientIndex.Channel.EMAIL), any()))
+                .thenReturn(List.of(recipient(1L, "alice")));
+        doThrow(new MailSendException("down")).when(mailSender).send(any(SimpleMailMessage.class));
+
+        assertDoesNotThrow(() -> underTest.send(alert));
+    }
+
+    private AlertRecipientIndex.Recipient recipient(Long id, String username) {
+        User user = spy(new User());
+        doReturn(id).when(user).getId();
+        user.setUsername(username);
+        user.setEmailAddress(username + "@example.com");
+        user.setAlarmsStart(LocalTime.parse("00:30"));
+        user.setAlarmsStop(LocalTime.parse("23:30"));
+        user.setEmailAlerts(true);
+        return new AlertRecipientIndex.Recipient(user);
+    }
+}
@@ -0,0 +1,255 @@
+package springhibernate;
+
+import entitys.User;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Works out who should receive an alert without loading every user, see {@link AlertMailer}. The alarm windows of
+ * the users who have opted in to alerts are held in an {@link AlarmWindowIndex} per team and channel, so finding
+ * the users available at a time of day costs O(log n + k) for a team, and a search of each team's index across
+ * every team. Only the lightweight {@link Recipient} details are held, never the User entity and its authorities.
+ * <p>
+ * The index is built when the application starts. When a user is saved or deleted only the indexes for their old
+ * and new team are rebuilt from the members of those teams, see {@link UserAlertWindowListener}.
+ */
+@Component
+public class AlertRecipientIndex {
+
+    private static final Logger log = Logger.getLogger(AlertRecipientIndex.class.getSimpleName());
+
+    /**
+     * Used as the team of the users who are not on a team.
+     */
+    static final Long NO_TEAM = -1L;
+
+    private static final String RECIPIENT_QUERY = "SELECT u.id, t.id, u.username, u.emailAddress, " +
+            "u.mobilePhoneNumber, u.alarmsStart, u.alarmsStop, u.emailAlerts, u.smsAlerts, u.deleted " +
+            "FROM User u LEFT JOIN u.team t";
+
+    public enum Channel {
+        EMAIL,
+        SMS
+    }
+
+    /**
+     * The details needed to send an alert to a user.
+     */
+    @Getter
+    public static final class Recipient {
+        private final Long userId;
+        private final Long teamId;
+        private final String username;
+        private final String emailAddress;
+        private final String mobilePhoneNumber;
+        private final LocalTime alarmsStart;
+        private final LocalTime alarmsStop;
+        private final boolean emailAlerts;
+        private final boolean smsAlerts;
+
+        Recipient(User user) {
+            this(user.getId(), user.getTeam() == null ? null : user.getTeam().getId(), user.getUsername(),
+                    user.getEmailAddress(), user.getMobilePhoneNumber(), user.getAlarmsStart(), user.getAlarmsStop(),
+                    user.isEmailAlerts(), user.isSmsAlerts(), user.isDeleted());
+        }
+
+        /**
+         * @param row A row of {@link #RECIPIENT_QUERY}.
+         */
+        Recipient(Object[] row) {
+            this((Long) row[0], (Long) row[1], (String) row[2], (String) row[3], (String) row[4],
+                    (LocalTime) row[5], (LocalTime) row[6], (Boolean) row[7], (Boolean) row[8], (Boolean) row[9]);
+        }
+
+        private Recipient(Long userId, Long teamId, String username, String emailAddress, String mobilePhoneNumber,
+                          LocalTime alarmsStart, LocalTime alarmsStop, boolean emailAlerts, boolean smsAlerts,
+                          boolean deleted) {
+            this.userId = userId;
+            this.teamId = teamId;
+            this.username = username;
+            this.emailAddress = emailAddress;
+            this.mobilePhoneNumber = mobilePhoneNumber;
+            this.alarmsStart = alarmsStart;
+            this.alarmsStop = alarmsStop;
+            this.emailAlerts = emailAlerts && !deleted;
+            this.smsAlerts = smsAlerts && !deleted;
+        }
+
+        /**
+         * The same conditions as User.isUserAvailableForAlerts, apart from the time.
+         */
+        boolean isOnChannel(Channel channel) {
+            if (alarmsStart == null || alarmsStop == null || emailAddress == null) {
+                return false;
+            }
+            return channel == Channel.EMAIL ? emailAlerts : smsAlerts && mobilePhoneNumber != null;
+        }
+    }
+
+    private final EntityManager entityManager;
+    private final Map<Long, Recipient> recipients = new HashMap<>();
+    private final Map<Long, Map<Long, Recipient>> teams = new HashMap<>();
+    private volatile Map<IndexKey, AlarmWindowIndex<Recipient>> indexes = Map.of();
+
+    public AlertRecipientIndex(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Builds the index when the application starts. Only the columns the {@link Recipient} needs are read, so the
+     * users are never loaded with their authorities.
+     */
+    @PostConstruct
+    public void load() {
+        List<Object[]> rows = entityManager.createQuery(RECIPIENT_QUERY, Object[].class).getResultList();
+        List<Recipient> loaded = new ArrayList<>();
+        rows.forEach(row -> loaded.add(new Recipient(row)));
+        rebuildRecipients(loaded);
+    }
+
+    /**
+     * Builds every index from scratch.
+     *
+     * @param users Every user.
+     */
+    public void rebuild(Collection<User> users) {
+        List<Recipient> rebuilt = new ArrayList<>();
+        users.forEach(user -> rebuilt.add(new Recipient(user)));
+        rebuildRecipients(rebuilt);
+    }
+
+    private synchronized void rebuildRecipients(Collection<Recipient> all) {
+        recipients.clear();
+        teams.clear();
+        all.forEach(recipient -> {
+            recipients.put(recipient.userId, recipient);
+            teams.computeIfAbsent(teamKey(recipient.teamId), team -> new HashMap<>()).put(recipient.userId, recipient);
+        });
+        Map<IndexKey, AlarmWindowIndex<Recipient>> rebuilt = new HashMap<>();
+        teams.keySet().forEach(team -> rebuildTeam(team, rebuilt));
+        indexes = rebuilt;
+        log.info("Alert recipient index built for " + recipients.size() + " users");
+    }
+
+    /**
+     * Updates the indexes after a user has been created or changed.
+     *
+     * @param user The saved user.
+     */
+    public synchronized void onUserChanged(User user) {
+        Recipient recipient = new Recipient(user);
+        Recipient old = recipients.put(user.getId(), recipient);
+        if (old != null) {
+            teams.get(teamKey(old.teamId)).remove(old.userId);
+        }
+        teams.computeIfAbsent(teamKey(recipient.teamId), team -> new HashMap<>()).put(recipient.userId, recipient);
+        rebuildFor(old, recipient.teamId);
+    }
+
+    /**
+     * Updates the indexes after a user has been removed.
+     *
+     * @param userId The id of the removed user.
+     */
+    public synchronized void onUserRemoved(Long userId) {
+        Recipient old = recipients.remove(userId);
+        if (old != null) {
+            teams.get(teamKey(old.teamId)).remove(userId);
+            rebuildFor(old, old.teamId);
+        }
+    }
+
+    /**
+     * Finds the users on the team who want alerts on the channel at the time.
+     *
+     * @param teamId  The team, or null for every team.
+     * @param channel Email or SMS.
+     * @param time    The time the alert is sent.
+     * @return The recipients.
+     */
+    public List<Recipient> getRecipients(Long teamId, Channel channel, LocalTime time) {
+        Map<IndexKey, AlarmWindowIndex<Recipient>> current = indexes;
+        List<Recipient> found = new ArrayList<>();
+        if (teamId == null) {
+            // There are only a handful of teams so every team's index is searched rather than keeping one more.
+            current.forEach((key, index) -> {
+                if (key.channel == channel) {
+                    index.findContaining(time.toNanoOfDay(), found::add);
+                }
+            });
+        } else {
+            AlarmWindowIndex<Recipient> index = current.get(new IndexKey(teamId, channel));
+            if (index != null) {
+                index.findContaining(time.toNanoOfDay(), found::add);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Rebuilds only the indexes of the old and new team of a changed user, from the members of those teams.
+     */
+    private void rebuildFor(Recipient old, Long newTeamId) {
+        Map<IndexKey, AlarmWindowIndex<Recipient>> updated = new HashMap<>(indexes);
+        rebuildTeam(teamKey(newTeamId), updated);
+        if (old != null && !teamKey(old.teamId).equals(teamKey(newTeamId))) {
+            rebuildTeam(teamKey(old.teamId), updated);
+        }
+        indexes = updated;
+    }
+
+    private void rebuildTeam(Long team, Map<IndexKey, AlarmWindowIndex<Recipient>> into) {
+        Collection<Recipient> members = teams.getOrDefault(team, Map.of()).values();
+        for (Channel channel : Channel.values()) {
+            List<AlarmWindowIndex.Window<Recipient>> windows = new ArrayList<>();
+            members.stream()
+                    .filter(recipient -> recipient.isOnChannel(channel))
+                    .forEach(recipient -> windows.add(new AlarmWindowIndex.Window<>(
+                            recipient.alarmsStart.toNanoOfDay(), recipient.alarmsStop.toNanoOfDay(), recipient)));
+            if (windows.isEmpty()) {
+                into.remove(new IndexKey(team, channel));
+            } else {
+                into.put(new IndexKey(team, channel), new AlarmWindowIndex<>(windows));
+            }
+        }
+    }
+
+    private static Long teamKey(Long teamId) {
+        return teamId == null ? NO_TEAM : teamId;
+    }
+
+    private static final class IndexKey {
+        private final Long teamId;
+        private final Channel channel;
+
+        private IndexKey(Long teamId, Channel channel) {
+            this.teamId = teamId;
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof IndexKey)) {
+                return false;
+            }
+            IndexKey other = (IndexKey) o;
+            return teamId.equals(other.teamId) && channel == other.channel;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(teamId, channel);
+        }
+    }
+}
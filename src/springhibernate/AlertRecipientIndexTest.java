@@ -0,0 +1,123 @@
+package springhibernate;
+
+import entitys.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.dhl.smas.backend.team.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AlertRecipientIndexTest {
+
+    AlertRecipientIndex underTest;
+    EntityManager entityManager = mock(EntityManager.class);
+    Team teamA = mock(Team.class);
+    Team teamB = mock(Team.class);
+    User alice;
+    User bob;
+    User carol;
+
+    @BeforeEach
+    void setUp() {
+        when(teamA.getId()).thenReturn(1L);
+        when(teamB.getId()).thenReturn(2L);
+        alice = getUser(1L, "alice", teamA, "08:00", "17:00", true, true);
+        bob = getUser(2L, "bob", teamA, "16:00", "23:00", true, false);
+        carol = getUser(3L, "carol", teamB, "00:30", "23:30", false, true);
+        underTest = new AlertRecipientIndex(entityManager);
+        underTest.rebuild(List.of(alice, bob, carol));
+    }
+
+    @Test
+    void testGetRecipients() {
+        assertEquals(List.of("alice"), usernames(1L, AlertRecipientIndex.Channel.EMAIL, "09:00"));
+        assertEquals(List.of("alice", "bob"), usernames(1L, AlertRecipientIndex.Channel.EMAIL, "16:30"));
+        assertEquals(List.of("alice"), usernames(1L, AlertRecipientIndex.Channel.SMS, "16:30"));
+        assertEquals(List.of("carol"), usernames(2L, AlertRecipientIndex.Channel.SMS, "16:30"));
+        assertEquals(List.of(), usernames(2L, AlertRecipientIndex.Channel.EMAIL, "16:30"));
+
+        // No team gives the recipients across every team.
+        assertEquals(List.of("alice", "carol"), usernames(null, AlertRecipientIndex.Channel.SMS, "16:30"));
+    }
+
+    @Test
+    void testUserChanges() {
+        // Deleted users are removed from every channel.
+        alice.setDeleted(true);
+        underTest.onUserChanged(alice);
+        assertEquals(List.of("bob"), usernames(1L, AlertRecipientIndex.Channel.EMAIL, "16:30"));
+        assertEquals(List.of("carol"), usernames(null, AlertRecipientIndex.Channel.SMS, "16:30"));
+
+        // Moving team removes the user from the old team.
+        bob.setTeam(teamB);
+        underTest.onUserChanged(bob);
+        assertEquals(List.of(), usernames(1L, AlertRecipientIndex.Channel.EMAIL, "16:30"));
+        assertEquals(List.of("bob"), usernames(2L, AlertRecipientIndex.Channel.EMAIL, "16:30"));
+
+        underTest.onUserRemoved(3L);
+        assertEquals(List.of(), usernames(2L, AlertRecipientIndex.Channel.SMS, "16:30"));
+        assertEquals(List.of(), usernames(null, AlertRecipientIndex.Channel.SMS, "16:30"));
+    }
+
+    @Test
+    void testLoad() {
+        @SuppressWarnings("unchecked")
+        TypedQuery<Object[]> query = mock(TypedQuery.class);
+        when(entityManager.createQuery(anyString(), eq(Object[].class))).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of(
+                new Object[]{4L, 1L, "dave", "dave@example.com", null, LocalTime.parse("06:00"),
+                        LocalTime.parse("14:00"), true, true, false},
+                new Object[]{5L, null, "erin", "erin@example.com", "07700900000", LocalTime.parse("06:00"),
+                        LocalTime.parse("14:00"), true, true, false},
+                new Object[]{6L, 2L, "frank", "frank@example.com", null, LocalTime.parse("06:00"),
+                        LocalTime.parse("14:00"), true, false, true}));
+
+        underTest.load();
+
+        assertEquals(List.of("dave"), usernames(1L, AlertRecipientIndex.Channel.EMAIL, "09:00"));
+        assertEquals(List.of(), usernames(2L, AlertRecipientIndex.Channel.EMAIL, "09:00"));
+        // A user without a team or a mobile number is still found across every team.
+        assertEquals(List.of("dave", "erin"), usernames(null, AlertRecipientIndex.Channel.EMAIL, "09:00"));
+        assertEquals(List.of("erin"), usernames(null, AlertRecipientIndex.Channel.SMS, "09:00"));
+    }
+
+    @Test
+    void testOnlyTheChangedTeamsAreRebuilt() {
+        User dave = getUser(4L, "dave", teamA, "08:00", "17:00", true, false);
+        underTest.onUserChanged(dave);
+        assertEquals(List.of("alice", "dave"), usernames(1L, AlertRecipientIndex.Channel.EMAIL, "09:00"));
+        // Team B was not touched, and every team is still searched when no team is given.
+        assertEquals(List.of("carol"), usernames(2L, AlertRecipientIndex.Channel.SMS, "09:00"));
+        assertEquals(List.of("alice", "dave"), usernames(null, AlertRecipientIndex.Channel.EMAIL, "09:00"));
+    }
+
+    private List<String> usernames(Long teamId, AlertRecipientIndex.Channel channel, String time) {
+        return underTest.getRecipients(teamId, channel, LocalTime.parse(time)).stream()
+                .map(AlertRecipientIndex.Recipient::getUsername)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private User getUser(Long id, String username, Team team, String start, String stop,
+                         boolean emailAlerts, boolean smsAlerts) {
+        User user = spy(new User());
+        doReturn(id).when(user).getId();
+        user.setUsername(username);
+        user.setEmailAddress(username + "@example.com");
+        user.setMobilePhoneNumber("07700900000");
+        user.setTeam(team);
+        user.setAlarmsStart(LocalTime.parse(start));
+        user.setAlarmsStop(LocalTime.parse(stop));
+        user.setEmailAlerts(emailAlerts);
+        user.setSmsAlerts(smsAlerts);
+        return user;
+    }
+}
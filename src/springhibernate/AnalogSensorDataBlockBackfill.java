@@ -0,0 +1,126 @@
+package springhibernate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.co.dhl.smas.backend.condition.AnalogSensorDataEntry;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import java.sql.Date;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Copies the hourly and daily entries written before the compressed blocks existed into blocks through
+ * {@link AnalogSensorDataBlockService#migrateEntries}, a sensor and a month at a time so no more than a month of
+ * entries is held at once. The newest months are copied first as they are the ones the dashboards read.
+ * <p>
+ * Only runs when {@code blocks.backfill.enabled} is true. Each sensor and month is claimed in the
+ * data_block_backfill table in the same transaction as its blocks are written, so the nodes share the work, a
+ * month that fails is retried the next night and one that has been copied is never copied again. Entries written
+ * since the blocks existed are appended as they are created, copying them again only replaces them with the same
+ * values.
+ */
+@Service
+@ConditionalOnProperty(prefix = "blocks.backfill", name = "enabled", havingValue = "true")
+public class AnalogSensorDataBlockBackfill {
+    private static final Logger log = Logger.getLogger(AnalogSensorDataBlockBackfill.class.getName());
+
+    static final String SENSOR_QUERY = "select c.id from AnalogSensor c order by c.id";
+    static final String ENTRY_QUERY = "select e from AnalogSensorDataEntry e " +
+            "WHERE e.analogSensor.id = :sensorId " +
+            "AND e.zonedDateTime >= :from " +
+            "AND e.zonedDateTime < :to";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final AnalogSensorDataBlockService analogSensorDataBlockService;
+    private final int months;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+
+    public AnalogSensorDataBlockBackfill(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                         EntityManager entityManager,
+                                         AnalogSensorDataBlockService analogSensorDataBlockService,
+                                         @Value("${blocks.backfill.months:36}") int months) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.analogSensorDataBlockService = analogSensorDataBlockService;
+        this.months = months;
+    }
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS data_block_backfill (" +
+                "sensor_id bigint NOT NULL, " +
+                "month date NOT NULL, " +
+                "PRIMARY KEY (sensor_id, month))");
+    }
+
+    /**
+     * Runs every night at 03:10, after the alert archive, and copies every month not yet copied from this month
+     * back to the configured number of months.
+     *
+     * @return The number of entries copied.
+     */
+    @Scheduled(cron = "${blocks.backfill.cron:0 10 3 * * ?}")
+    public int backfill() {
+        List<Long> sensorIds = entityManager.createQuery(SENSOR_QUERY, Long.class).getResultList();
+        YearMonth thisMonth = YearMonth.now(zoneId);
+        int total = 0;
+        for (int i = 0; i <= months; i++) {
+            YearMonth month = thisMonth.minusMonths(i);
+            for (Long sensorId : sensorIds) {
+                try {
+                    total += backfill(sensorId, month);
+                } catch (RuntimeException e) {
+                    log.warning("Unable to copy " + month + " of sensor " + sensorId + " into blocks: " +
+                            e.getMessage());
+                }
+            }
+        }
+        log.info("Copied " + total + " entries into compressed blocks");
+        return total;
+    }
+
+    /**
+     * Copies a month of entries for one sensor, unless this or another node has already claimed it.
+     *
+     * @param sensorId The id of the sensor.
+     * @param month    The month to copy.
+     * @return The number of entries copied.
+     */
+    int backfill(Long sensorId, YearMonth month) {
+        Integer copied = transactionTemplate.execute(status -> {
+            // A node copying the same month holds the row until it commits, after which this insert does nothing.
+            int claimed = jdbcTemplate.update("INSERT INTO data_block_backfill (sensor_id, month) VALUES (?, ?) " +
+                    "ON CONFLICT DO NOTHING", sensorId, Date.valueOf(month.atDay(1)));
+            if (claimed == 0) {
+                return 0;
+            }
+            ZonedDateTime from = month.atDay(1).atStartOfDay(zoneId);
+            List<AnalogSensorDataEntry> entries = entityManager.createQuery(ENTRY_QUERY, AnalogSensorDataEntry.class)
+                    .setParameter("sensorId", sensorId)
+                    .setParameter("from", from)
+                    .setParameter("to", from.plusMonths(1))
+                    .getResultList();
+            if (!entries.isEmpty()) {
+                analogSensorDataBlockService.migrateEntries(entries);
+            }
+            // The entries are not needed once they are in the blocks, so the month isn't held by the session.
+            entityManager.flush();
+            entityManager.clear();
+            return entries.size();
+        });
+        return copied == null ? 0 : copied;
+    }
+}
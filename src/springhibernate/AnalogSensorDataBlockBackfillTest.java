@@ -0,0 +1,84 @@
+package springhibernate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import uk.co.dhl.smas.backend.condition.AnalogSensorDataEntry;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AnalogSensorDataBlockBackfillTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    PlatformTransactionManager transactionManager;
+    @Mock
+    EntityManager entityManager;
+    @Mock
+    AnalogSensorDataBlockService analogSensorDataBlockService;
+    @Mock
+    TypedQuery<AnalogSensorDataEntry> entryQuery;
+    AnalogSensorDataBlockBackfill underTest;
+    YearMonth month = YearMonth.of(2022, 8);
+
+    @BeforeEach
+    void setUp() {
+        underTest = new AnalogSensorDataBlockBackfill(jdbcTemplate, transactionManager, entityManager,
+                analogSensorDataBlockService, 12);
+    }
+
+    @Test
+    void testMonthIsCopiedIntoBlocks() {
+        List<AnalogSensorDataEntry> entries = List.of(mock(AnalogSensorDataEntry.class),
+                mock(AnalogSensorDataEntry.class));
+        when(jdbcTemplate.update(startsWith("INSERT INTO data_block_backfill"), eq(1L), any())).thenReturn(1);
+        when(entityManager.createQuery(AnalogSensorDataBlockBackfill.ENTRY_QUERY, AnalogSensorDataEntry.class))
+                .thenReturn(entryQuery);
+        when(entryQuery.setParameter(anyString(), any())).thenReturn(entryQuery);
+        when(entryQuery.getResultList()).thenReturn(entries);
+
+        assertEquals(2, underTest.backfill(1L, month));
+
+        verify(analogSensorDataBlockService).migrateEntries(entries);
+        verify(entityManager).flush();
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void testMonthClaimedByAnotherNodeIsSkipped() {
+        when(jdbcTemplate.update(startsWith("INSERT INTO data_block_backfill"), eq(1L), any())).thenReturn(0);
+
+        assertEquals(0, underTest.backfill(1L, month));
+
+        verifyNoInteractions(analogSensorDataBlockService);
+        verify(entityManager, never()).createQuery(anyString(), eq(AnalogSensorDataEntry.class));
+    }
+
+    @Test
+    void testFailedMonthIsRolledBackForTheNextRun() {
+        when(jdbcTemplate.update(startsWith("INSERT INTO data_block_backfill"), eq(1L), any())).thenReturn(1);
+        when(entityManager.createQuery(AnalogSensorDataBlockBackfill.ENTRY_QUERY, AnalogSensorDataEntry.class))
+                .thenReturn(entryQuery);
+        when(entryQuery.setParameter(anyString(), any())).thenReturn(entryQuery);
+        when(entryQuery.getResultList()).thenReturn(List.of(mock(AnalogSensorDataEntry.class)));
+        doThrow(new IllegalStateException("Deadlock")).when(analogSensorDataBlockService).migrateEntries(any());
+
+        assertThrows(IllegalStateException.class, () -> underTest.backfill(1L, month));
+
+        // The claim was made in the same transaction, so it is rolled back with the blocks.
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+}
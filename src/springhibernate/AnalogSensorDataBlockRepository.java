@@ -0,0 +1,31 @@
+package springhibernate;
+
+import entitys.AnalogSensor;
+import entitys.AnalogSensorDataBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface AnalogSensorDataBlockRepository extends JpaRepository<AnalogSensorDataBlock, Long> {
+
+    Optional<AnalogSensorDataBlock> findByAnalogSensorAndTypeAndBlockStart(AnalogSensor analogSensor, int type,
+                                                                           ZonedDateTime blockStart);
+
+    /**
+     * Finds every block of the passed type which overlaps from and to, in date order.
+     */
+    @Query("select b from AnalogSensorDataBlock b " +
+            "WHERE b.analogSensor.id = :sensorId " +
+            "AND b.type = :type " +
+            "AND b.blockEnd > :from " +
+            "AND b.blockStart <= :to " +
+            "ORDER BY b.blockStart")
+    List<AnalogSensorDataBlock> findAllOverlapping(@Param("sensorId") Long sensorId,
+                                                   @Param("type") int type,
+                                                   @Param("from") ZonedDateTime from,
+                                                   @Param("to") ZonedDateTime to);
+}
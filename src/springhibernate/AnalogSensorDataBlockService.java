@@ -0,0 +1,178 @@
+package springhibernate;
+
+import entitys.AnalogSensor;
+import entitys.AnalogSensorDataBlock;
+import org.springframework.stereotype.Service;
+import sensordata.GorillaBlockCodec;
+import sensordata.SensorSeries;
+import uk.co.dhl.smas.backend.condition.AnalogSensorDataEntry;
+
+import javax.transaction.Transactional;
+import java.time.DayOfWeek;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the hourly and daily sensor averages as compressed blocks and reads date ranges from them
+ * straight into primitive arrays.
+ */
+@Service
+public class AnalogSensorDataBlockService {
+    private static final Logger log = Logger.getLogger(AnalogSensorDataBlockService.class.getName());
+
+    private final AnalogSensorDataBlockRepository analogSensorDataBlockRepository;
+
+    public AnalogSensorDataBlockService(AnalogSensorDataBlockRepository analogSensorDataBlockRepository) {
+        this.analogSensorDataBlockRepository = analogSensorDataBlockRepository;
+    }
+
+    /**
+     * Gets the start of the block that the passed date falls into, hourly entries are stored in daily blocks
+     * and daily entries are stored in weekly blocks starting on a Monday.
+     *
+     * @param type The type of entry.
+     * @param date The date of the entry.
+     * @return The start of the block.
+     */
+    ZonedDateTime getBlockStart(int type, ZonedDateTime date) {
+        ZonedDateTime startOfDay = date.truncatedTo(ChronoUnit.DAYS);
+        return type == AnalogSensorDataEntry.DAILY ?
+                startOfDay.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : startOfDay;
+    }
+
+    ZonedDateTime getBlockEnd(int type, ZonedDateTime blockStart) {
+        return type == AnalogSensorDataEntry.DAILY ? blockStart.plusWeeks(1L) : blockStart.plusDays(1L);
+    }
+
+    /**
+     * Adds a single entry to its block, creating the block if required. Used by the scheduled jobs
+     * once an hourly or daily average has been calculated.
+     *
+     * @param entry The entry to add.
+     */
+    @Transactional
+    public void append(AnalogSensorDataEntry entry) {
+        migrateEntries(List.of(entry));
+    }
+
+    /**
+     * Migrates existing rows into compressed blocks. The entries can be passed a sensor or a month at a time,
+     * any entries already in a block are kept and an entry with the same date is replaced.
+     *
+     * @param entries The hourly or daily entries to migrate.
+     */
+    @Transactional
+    public void migrateEntries(List<AnalogSensorDataEntry> entries) {
+        Map<BlockKey, List<AnalogSensorDataEntry>> byBlock = entries.stream()
+                .collect(Collectors.groupingBy(entry -> new BlockKey(entry.getAnalogSensor(),
+                        entry.getType(), getBlockStart(entry.getType(), entry.getZonedDateTime()))));
+
+        byBlock.forEach((key, blockEntries) -> {
+            AnalogSensorDataBlock block = analogSensorDataBlockRepository
+                    .findByAnalogSensorAndTypeAndBlockStart(key.sensor, key.type, key.blockStart)
+                    .orElse(AnalogSensorDataBlock.builder()
+                            .analogSensor(key.sensor)
+                            .type(key.type)
+                            .blockStart(key.blockStart)
+                            .blockEnd(getBlockEnd(key.type, key.blockStart))
+                            .build());
+
+            TreeMap<Long, Double> merged = new TreeMap<>();
+            if (block.getData() != null) {
+                SensorSeries existing = GorillaBlockCodec.decode(block.getData());
+                for (int i = 0; i < existing.size(); i++) {
+                    merged.put(existing.getTime(i), existing.getValue(i));
+                }
+            }
+            blockEntries.stream()
+                    .sorted(Comparator.comparing(AnalogSensorDataEntry::getZonedDateTime))
+                    .forEach(entry -> merged.put(entry.getZonedDateTime().toInstant().toEpochMilli(),
+                            entry.getAverageValue()));
+
+            SensorSeries series = new SensorSeries(merged.size());
+            merged.forEach(series::add);
+            block.setData(GorillaBlockCodec.encode(series));
+            block.setEntryCount(series.size());
+            analogSensorDataBlockRepository.save(block);
+        });
+        log.info("Migrated " + entries.size() + " entries into " + byBlock.size() + " blocks");
+    }
+
+    /**
+     * Reads the entries between from and to inclusive, only the blocks which overlap the range are loaded.
+     *
+     * The sensor is passed by id so the scheduled jobs, which hold the sensors from the backend, can read the
+     * blocks too.
+     *
+     * @param sensorId The id of the sensor to read.
+     * @param type     Either AnalogSensorDataEntry.HOURLY or AnalogSensorDataEntry.DAILY.
+     * @param from     The start of the range.
+     * @param to       The end of the range.
+     * @return The entries in date order.
+     */
+    public SensorSeries findValuesBetweenFromAndTo(Long sensorId, int type, ZonedDateTime from, ZonedDateTime to) {
+        List<AnalogSensorDataBlock> blocks = analogSensorDataBlockRepository.findAllOverlapping(sensorId, type,
+                from, to);
+        SensorSeries series = new SensorSeries(blocks.stream().mapToInt(AnalogSensorDataBlock::getEntryCount).sum());
+        long fromMillis = from.toInstant().toEpochMilli();
+        long toMillis = to.toInstant().toEpochMilli();
+        blocks.forEach(block -> GorillaBlockCodec.decode(block.getData(), fromMillis, toMillis, series));
+        return series;
+    }
+
+    /**
+     * Averages the entries between from and to inclusive, entries without a value are skipped.
+     *
+     * @param sensorId The id of the sensor to read.
+     * @param type     Either AnalogSensorDataEntry.HOURLY or AnalogSensorDataEntry.DAILY.
+     * @param from     The start of the range.
+     * @param to       The end of the range.
+     * @return The average, NaN if the blocks hold no values in the range.
+     */
+    public double getAverageBetween(Long sensorId, int type, ZonedDateTime from, ZonedDateTime to) {
+        SensorSeries series = findValuesBetweenFromAndTo(sensorId, type, from, to);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < series.size(); i++) {
+            if (!Double.isNaN(series.getValue(i))) {
+                sum += series.getValue(i);
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    private static final class BlockKey {
+        private final AnalogSensor sensor;
+        private final int type;
+        private final ZonedDateTime blockStart;
+
+        private BlockKey(AnalogSensor sensor, int type, ZonedDateTime blockStart) {
+            this.sensor = sensor;
+            this.type = type;
+            this.blockStart = blockStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey other = (BlockKey) o;
+            return sensor.getId().equals(other.sensor.getId()) && type == other.type
+                    && blockStart.toInstant().equals(other.blockStart.toInstant());
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * sensor.getId().hashCode() + type) + blockStart.toInstant().hashCode();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package springhibernate;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * Creates the indexes behind the AnalogSensorRepository lookups by machine, type and name, which are sorted by name.
+ * Hibernate only creates the tables, so without these every lookup read the whole sensor table.
+ */
+@Component
+public class AnalogSensorIndexes {
+
+    static final String TABLE = "analog_sensor";
+
+    /**
+     * The columns of each index, the machine, type and name index also serves the lookups by machine alone. The name
+     * index serves the lookups by name and the pages of the sensor grid, which are read in name order.
+     */
+    static final List<String> INDEXES = List.of(
+            "machine_id, type, name",
+            "machine_id, name",
+            "type, name",
+            "name");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AnalogSensorIndexes(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void createIndexes() {
+        for (String columns : INDEXES) {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + getIndexName(columns) + " ON " + TABLE +
+                    " (" + columns + ")");
+        }
+    }
+
+    static String getIndexName(String columns) {
+        return TABLE + "_" + columns.replace(", ", "_") + "_idx";
+    }
+}
@@ -0,0 +1,55 @@
+package springhibernate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AnalogSensorIndexesTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testCreateIndexes() {
+        new AnalogSensorIndexes(jdbcTemplate).createIndexes();
+        verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS analog_sensor_machine_id_type_name_idx " +
+                "ON analog_sensor (machine_id, type, name)");
+        verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS analog_sensor_machine_id_name_idx " +
+                "ON analog_sensor (machine_id, name)");
+        verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS analog_sensor_type_name_idx " +
+                "ON analog_sensor (type, name)");
+        verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS analog_sensor_name_idx " +
+                "ON analog_sensor (name)");
+    }
+
+    @Test
+    void testSummariesDoNotLoadAssociations() {
+        // Any association in the projection would be joined or fetched again, with the alerts of every sensor.
+        Set<Class<?>> columnTypes = Set.of(Long.class, String.class, Integer.class, DashboardRAGColours.class);
+        for (Method method : SensorSummary.class.getMethods()) {
+            assertTrue(columnTypes.contains(method.getReturnType()), method.getName() + " is not a column");
+        }
+        List<Method> summaries = Arrays.stream(AnalogSensorRepository.class.getMethods())
+                .filter(method -> method.getName().startsWith("findSummaries"))
+                .collect(Collectors.toList());
+        assertFalse(summaries.isEmpty());
+        for (Method method : summaries) {
+            ParameterizedType type = (ParameterizedType) method.getGenericReturnType();
+            assertEquals(SensorSummary.class, type.getActualTypeArguments()[0], method.getName());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package springhibernate;
 
 import entitys.AnalogSensor;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -23,11 +24,68 @@ public interface AnalogSensorRepository extends JpaRepository<AnalogSensor, Long
 
     Optional<AnalogSensor> findAllByName(String name);
 
+    /**
+     * Only the name and id of every sensor, used to build the name to id index without loading the entities.
+     */
+    @Query("select c.name as name, c.id as id from AnalogSensor c")
+    List<NameAndId> findAllNamesAndIds();
+
+    /**
+     * The colours of every sensor for rebuilding the SensorStatusTree, the machine is only joined for its id and
+     * supervisor view flag.
+     */
+    @Query("select c.id as id, m.id as machineId, c.type as type, " +
+            "m.includeInSupervisorView as includeInSupervisorView, c.blobColour as blobColour, " +
+            "c.predictiveMaintenance as predictiveMaintenance from AnalogSensor c left join c.machine m")
+    List<SensorStatus> findAllStatuses();
+
+    @Query("select c.id from AnalogSensor c where c.name = :name")
+    Optional<Long> findIdByName(@Param("name") String name);
+
     List<AnalogSensor> findAllByType(int type);
 
     List<AnalogSensor> findAllByMachineAndType(Machine machine, int type,
                                                           Sort var1);
 
+    /**
+     * The same as findAllByMachine but only selects the columns in SensorSummary, for the dashboard colour lookups.
+     */
+    List<SensorSummary> findSummariesByMachine(Machine machine, Sort sort);
+
+    List<SensorSummary> findSummariesByType(int type);
+
+    List<SensorSummary> findSummariesByMachineAndType(Machine machine, int type, Sort sort);
+
+    List<SensorSummary> findSummariesByMachineIsNull();
+
+    /**
+     * A page of a lazy sensor grid, see AnalogSensorService.findPage. Only the columns in SensorSummary are selected,
+     * so the alerts each sensor loads eagerly are not read. The pageable holds the sort by name and the limit, the
+     * keyset queries below start after or before the name of the last row of the previous page.
+     */
+    List<SensorSummary> findSummariesByNameContainingIgnoreCase(String text, Pageable pageable);
+
+    List<SensorSummary> findSummariesByNameContainingIgnoreCaseAndNameGreaterThan(String text, String name,
+                                                                                  Pageable pageable);
+
+    List<SensorSummary> findSummariesByNameContainingIgnoreCaseAndNameLessThan(String text, String name,
+                                                                               Pageable pageable);
+
+    long countByNameContainingIgnoreCase(String text);
+
+    List<SensorSummary> findSummariesByMachineAndNameContainingIgnoreCase(Machine machine, String text,
+                                                                          Pageable pageable);
+
+    List<SensorSummary> findSummariesByMachineAndNameContainingIgnoreCaseAndNameGreaterThan(Machine machine,
+                                                                                           String text, String name,
+                                                                                           Pageable pageable);
+
+    List<SensorSummary> findSummariesByMachineAndNameContainingIgnoreCaseAndNameLessThan(Machine machine, String text,
+                                                                                        String name,
+                                                                                        Pageable pageable);
+
+    long countByMachineAndNameContainingIgnoreCase(Machine machine, String text);
+
     @Modifying(flushAutomatically = true)
     @Query("update AnalogSensor c set " +
             "c.current = :current, " +
@@ -119,5 +177,17 @@ public interface AnalogSensorRepository extends JpaRepository<AnalogSensor, Long
             "WHERE c.id = :id")
     @Transactional
     void updateCustomColumn(@Param("id") Long id, @Param("customValue") String customValue);
-}
 
+    /**
+     * Moves the sensor with the id only if it still has the name, so an id cached against an old name is not used.
+     *
+     * @return The number of sensors moved, 0 if the sensor has been renamed or deleted.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update AnalogSensor c set " +
+            "c.x = :x, " +
+            "c.y = :y " +
+            "WHERE c.id = :id AND c.name = :name")
+    @Transactional
+    int updateXY(@Param("id") Long id, @Param("name") String name, @Param("x") double x, @Param("y") double y);
+}
@@ -1,16 +1,24 @@
 package springhibernate;
 
 import entitys.AnalogSensor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import uk.co.dhl.smas.backend.machine.Machine;
 import uk.co.dhl.smas.ui.view.PermissionChecker;
 import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
 import uk.co.dhl.smas.ui.view.utils.FormattedZoneDateTimes;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -19,13 +27,78 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
     private static final Logger log = Logger.getLogger(AnalogSensorService.class.getName());
 
     private final AnalogSensorRepository analogSensorRepository;
+    private final SensorStatusTree statusTree;
+    private final SessionPermissions sessionPermissions;
+    private final long statusTreeMaxAgeMillis;
 
-    public AnalogSensorService(AnalogSensorRepository analogSensorRepository) {
+    /**
+     * The id of each sensor by name, so moving blobs on the layout does not load the sensor to find its id.
+     */
+    private final Map<String, Long> idsByName = new ConcurrentHashMap<>();
+    /**
+     * The name each sensor is held under in idsByName, so the old name of a renamed sensor is removed directly.
+     */
+    private final Map<Long, String> namesById = new ConcurrentHashMap<>();
+    private volatile boolean idsByNameLoaded = false;
+
+    public AnalogSensorService(AnalogSensorRepository analogSensorRepository, SensorStatusTree statusTree,
+                               SessionPermissions sessionPermissions,
+                               @Value("${sensor.status.tree.max.age.millis:60000}") long statusTreeMaxAgeMillis) {
         this.analogSensorRepository = analogSensorRepository;
+        this.statusTree = statusTree;
+        this.sessionPermissions = sessionPermissions;
+        this.statusTreeMaxAgeMillis = statusTreeMaxAgeMillis;
     }
 
     public void save(AnalogSensor analogSensor) {
         analogSensorRepository.save(analogSensor);
+        if (statusTree.isBuilt()) {
+            statusTree.put(analogSensor);
+        }
+        if (analogSensor.getId() != null) {
+            // The sensor may have been renamed so any old name is removed.
+            if (analogSensor.getName() != null) {
+                index(analogSensor.getName(), analogSensor.getId());
+            } else {
+                String oldName = namesById.remove(analogSensor.getId());
+                if (oldName != null) {
+                    idsByName.remove(oldName, analogSensor.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Holds the sensor under its name, removing the name it was held under before and any other sensor held under
+     * the same name.
+     */
+    private void index(String name, Long id) {
+        String oldName = namesById.put(id, name);
+        if (oldName != null && !oldName.equals(name)) {
+            idsByName.remove(oldName, id);
+        }
+        Long oldId = idsByName.put(name, id);
+        if (oldId != null && !oldId.equals(id)) {
+            namesById.remove(oldId, name);
+        }
+    }
+
+    private void unindex(String name, Long id) {
+        idsByName.remove(name, id);
+        namesById.remove(id, name);
+    }
+
+    /**
+     * Builds the in memory status tree from the database if it has not been built already or is older than the
+     * maximum age, called at the start of each sweep so the dashboards can read colours without querying the
+     * database. Only the colours are read, not the sensors. The tree on each node only follows the sensors that
+     * node owns, so the rebuild is what picks up the colours written by the other nodes. Changes on this node that
+     * the tree can't follow invalidate it through the {@link SensorStatusTreeListener}, so it is rebuilt at once.
+     */
+    public void buildStatusTreeIfRequired() {
+        if (statusTree.isOlderThan(statusTreeMaxAgeMillis, System.currentTimeMillis())) {
+            statusTree.rebuildFromStatuses(analogSensorRepository.findAllStatuses());
+        }
     }
 
     public List<AnalogSensor> findAllByMachine(Machine machine) {
@@ -53,8 +126,36 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
     }
 
     public AnalogSensor findAllByName(String name) {
-        return analogSensorRepository.findAllByName(name).isPresent() ?
-                analogSensorRepository.findAllByName(name).get() : null;
+        return analogSensorRepository.findAllByName(name).orElse(null);
+    }
+
+    /**
+     * Finds the id of the sensor with the passed name from the index, the index is loaded on first use and any
+     * name that is not in it, e.g. a sensor added by another node, is looked up individually.
+     *
+     * @param name The *name* of the sensor.
+     * @return The id of the sensor or null if there is no sensor with that name.
+     */
+    Long findIdByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (!idsByNameLoaded) {
+            for (NameAndId sensor : analogSensorRepository.findAllNamesAndIds()) {
+                if (sensor.getName() != null) {
+                    index(sensor.getName(), sensor.getId());
+                }
+            }
+            idsByNameLoaded = true;
+        }
+        Long id = idsByName.get(name);
+        if (id == null) {
+            id = analogSensorRepository.findIdByName(name).orElse(null);
+            if (id != null) {
+                index(name, id);
+            }
+        }
+        return id;
     }
 
     /**
@@ -77,6 +178,7 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
 
     public void updateSensorPredictiveMaintenance(AnalogSensor sensor) {
         analogSensorRepository.updatePm(sensor.getId(), sensor.getPredictiveMaintenance());
+        statusTree.updatePredictiveMaintenance(sensor.getId(), sensor.getPredictiveMaintenance());
     }
 
     public void updateHigh(AnalogSensor analogSensor, double high) {
@@ -92,11 +194,13 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
      * Resets *timeDateHigh* and *timeDateLow* to null
      * updates the last reset column with a formatted ZonedDateTime.now
      * Called when the reset button/ yes button in ConditonForm is clicked.
+     * The user is taken from the session permissions rather than loaded on every reset.
      *
      * @param sensor The sensor to reset
      */
     public void resetConditionSensor(AnalogSensor sensor) {
-        analogSensorRepository.resetConditionSensor(sensor.getId(), now(), sensor.getCurrent(), getLoggedInUser());
+        analogSensorRepository.resetConditionSensor(sensor.getId(), now(), sensor.getCurrent(),
+                sessionPermissions.getUserReference());
     }
 
     /**
@@ -110,10 +214,40 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
      * @param newY The Y coordinate for the svg.
      */
     public void updateAnalogSensorXY(String name, double newX, double newY) {
-        AnalogSensor sensor = findAllByName(name);
-        sensor.setX(Sensor.getOffSet(newX, true));
-        sensor.setY(Sensor.getOffSet(newY, false));
-        save(sensor);
+        updateAnalogSensorPositions(Collections.singletonList(new SensorPosition(name, newX, newY)));
+    }
+
+    /**
+     * Updates the *x* and *y* of every moved blob in one transaction, only the x and y columns are written
+     * so the rest of the sensor is neither loaded nor saved. The offsets are applied as in updateAnalogSensorXY.
+     * If no sensor has the indexed id and name, e.g. it was renamed or deleted on another node, the name is looked
+     * up again.
+     *
+     * @param positions The new positions of the moved blobs, any unknown names are logged and skipped.
+     */
+    @Transactional
+    public void updateAnalogSensorPositions(Collection<SensorPosition> positions) {
+        for (SensorPosition position : positions) {
+            String name = position.getName();
+            Long id = findIdByName(name);
+            if (id != null && !updateXY(id, position)) {
+                unindex(name, id);
+                id = analogSensorRepository.findIdByName(name).orElse(null);
+                if (id != null && updateXY(id, position)) {
+                    index(name, id);
+                    continue;
+                }
+                id = null;
+            }
+            if (id == null) {
+                log.warning("Unable to move " + name + " as there is no sensor with that name");
+            }
+        }
+    }
+
+    private boolean updateXY(Long id, SensorPosition position) {
+        return analogSensorRepository.updateXY(id, position.getName(), Sensor.getOffSet(position.getX(), true),
+                Sensor.getOffSet(position.getY(), false)) > 0;
     }
 
     /**
@@ -124,18 +258,27 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
      */
     public void updateConditionSensorBlobColour(AnalogSensor analogSensor, DashboardRAGColours ragColour) {
         analogSensorRepository.updateConditionSensorBlobColour(analogSensor.getId(), ragColour);
+        statusTree.updateBlobColour(analogSensor.getId(), ragColour);
     }
 
+    @Transactional(readOnly = true)
     public DashboardRAGColours getAncillaryColourCode() {
-        return getDashboardRAGColours(findAllByMachine(null), DashboardRAGColours.RED);
+        if (statusTree.isBuilt()) {
+            return orDefault(statusTree.getWorstBlobColourForMachine(null), DashboardRAGColours.RED);
+        }
+        return getDashboardRAGColours(findSummariesForAncillaryEquipment(), DashboardRAGColours.RED);
     }
 
     /**
      * Gets the overall most sever CURRENT COLUMN from all analog sensors of the passed type.
      * @return Rag colour
      */
+    @Transactional(readOnly = true)
     public DashboardRAGColours getOverallMostSevereBlobColourForType(int type) {
-        return getDashboardRAGColours(findAllByType(type), DashboardRAGColours.GRAY);
+        if (statusTree.isBuilt()) {
+            return orDefault(statusTree.getWorstBlobColourForType(type), DashboardRAGColours.GRAY);
+        }
+        return getDashboardRAGColours(findSummariesByType(type), DashboardRAGColours.GRAY);
     }
 
     /**
@@ -144,8 +287,12 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
      * @param type The type of sensor see Sensor class
      * @return Rag colour
      */
+    @Transactional(readOnly = true)
     public DashboardRAGColours getMostSevereBlobColourForType(Machine machine, int type) {
-        List<AnalogSensor> sensors = findAllByMachineAndType(machine, type);
+        if (statusTree.isBuilt()) {
+            return orDefault(statusTree.getWorstBlobColourForMachineAndType(machine, type), DashboardRAGColours.GRAY);
+        }
+        List<SensorSummary> sensors = findSummariesByMachineAndType(machine, type);
         log.info("This many sensors " + sensors.size() + " for machine: " + machine.getName());
         return getDashboardRAGColours(sensors, DashboardRAGColours.GRAY);
     }
@@ -157,28 +304,42 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
      * @param defaultRag The default if no sensors are present
      * @return rag colour
      */
-    DashboardRAGColours getDashboardRAGColours(List<AnalogSensor> sensors, DashboardRAGColours defaultRag) {
-        Optional<AnalogSensor> worst = sensors.stream().max(Comparator.comparing(s -> s.getBlobColour().rank));
+    DashboardRAGColours getDashboardRAGColours(List<SensorSummary> sensors, DashboardRAGColours defaultRag) {
+        Optional<SensorSummary> worst = sensors.stream().max(Comparator.comparing(s -> s.getBlobColour().rank));
         return worst.isPresent() ? worst.get().getBlobColour() : defaultRag;
     }
 
+    private DashboardRAGColours orDefault(DashboardRAGColours ragColour, DashboardRAGColours defaultRag) {
+        return ragColour == null ? defaultRag : ragColour;
+    }
+
+    /**
+     * Orange alerts are shown as amber on the traffic lights and blobs.
+     *
+     * @param worst The worst predictive maintenance colour, null if no sensors were found.
+     * @return The colour to display.
+     */
+    private DashboardRAGColours getDisplayedAlertColour(DashboardRAGColours worst) {
+        if (worst == null) {
+            return DashboardRAGColours.GRAY;
+        }
+        return worst == DashboardRAGColours.ORANGE ? DashboardRAGColours.AMBER : worst;
+    }
+
     /**
      * Gets the sensor with the worst alert type, which passes the colour to the top level traffic light.
      * If the the worst alert type is of type Orange then an amber is returned.
      *
      * @return The colour the traffic light should be.
      */
+    @Transactional(readOnly = true)
     public DashboardRAGColours getTheSensorWithTheWorstAlertType() {
+        if (statusTree.isBuilt()) {
+            return getDisplayedAlertColour(statusTree.getWorstPredictiveMaintenanceInSupervisorView());
+        }
         Optional<AnalogSensor> worst = findAllIncludedInSupervisorView().stream()
                 .min(Comparator.comparing(AnalogSensor::getPredictiveMaintenance));
-        if (worst.isPresent()) {
-            if (worst.get().getPredictiveMaintenance() == DashboardRAGColours.ORANGE) {
-                return DashboardRAGColours.AMBER;
-            } else {
-                return worst.get().getPredictiveMaintenance();
-            }
-        }
-        return DashboardRAGColours.GRAY;
+        return getDisplayedAlertColour(worst.map(AnalogSensor::getPredictiveMaintenance).orElse(null));
     }
 
     /**
@@ -188,16 +349,14 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
      * @param machine The machine to get sensors for.
      * @return The colour the drill down blow colour should be.
      */
+    @Transactional(readOnly = true)
     public DashboardRAGColours getTheSensorForAMachineWithTheWorstAlertType(Machine machine) {
-        Optional<AnalogSensor> worst = findAllByMachine(machine).stream().min(Comparator.comparing(AnalogSensor::getPredictiveMaintenance));
-        if (worst.isPresent()) {
-            if (worst.get().getPredictiveMaintenance() == DashboardRAGColours.ORANGE) {
-                return DashboardRAGColours.AMBER;
-            } else {
-                return worst.get().getPredictiveMaintenance();
-            }
+        if (statusTree.isBuilt()) {
+            return getDisplayedAlertColour(statusTree.getWorstPredictiveMaintenanceForMachine(machine));
         }
-        return DashboardRAGColours.GRAY;
+        Optional<SensorSummary> worst = findSummariesByMachine(machine).stream()
+                .min(Comparator.comparing(SensorSummary::getPredictiveMaintenance));
+        return getDisplayedAlertColour(worst.map(SensorSummary::getPredictiveMaintenance).orElse(null));
     }
 
     public List<AnalogSensor> findAllByType(int type) {
@@ -213,6 +372,72 @@ public class AnalogSensorService implements FormattedZoneDateTimes, PermissionCh
         return analogSensorRepository.findAllByMachineIsNull();
     }
 
+    public List<SensorSummary> findSummariesByMachine(Machine machine) {
+        return analogSensorRepository.findSummariesByMachine(machine, Sort.by("name"));
+    }
+
+    public List<SensorSummary> findSummariesByType(int type) {
+        return analogSensorRepository.findSummariesByType(type);
+    }
+
+    public List<SensorSummary> findSummariesByMachineAndType(Machine machine, int type) {
+        return analogSensorRepository.findSummariesByMachineAndType(machine, type, Sort.by("name"));
+    }
+
+    public List<SensorSummary> findSummariesForAncillaryEquipment() {
+        return analogSensorRepository.findSummariesByMachineIsNull();
+    }
+
+    /**
+     * Reads a single page of a lazy sensor grid, sorted by name. The names are unique, so the page after a row can be
+     * read from the index on name rather than skipping every row before it. Only the columns in SensorSummary are
+     * read.
+     *
+     * @param filter     The filter of the grid.
+     * @param descending True to sort by name descending.
+     * @param after      The name of the row before the page, or null to read the page by offset.
+     * @param offset     The offset of the first row, only used when after is null.
+     * @param limit      The number of rows.
+     * @return The sensors on the page.
+     */
+    @Transactional(readOnly = true)
+    public List<SensorSummary> findPage(SensorFilter filter, boolean descending, String after, int offset,
+                                        int limit) {
+        Sort sort = descending ? Sort.by("name").descending() : Sort.by("name");
+        Machine machine = filter.getMachine();
+        String text = filter.getText();
+        if (after != null) {
+            Pageable first = PageRequest.of(0, limit, sort);
+            if (machine == null) {
+                return descending ?
+                        analogSensorRepository.findSummariesByNameContainingIgnoreCaseAndNameLessThan(text, after,
+                                first) :
+                        analogSensorRepository.findSummariesByNameContainingIgnoreCaseAndNameGreaterThan(text, after,
+                                first);
+            }
+            return descending ?
+                    analogSensorRepository.findSummariesByMachineAndNameContainingIgnoreCaseAndNameLessThan(machine,
+                            text, after, first) :
+                    analogSensorRepository.findSummariesByMachineAndNameContainingIgnoreCaseAndNameGreaterThan(
+                            machine, text, after, first);
+        }
+        // Only the rows asked for are read, even part way through a page.
+        Pageable pageable = new OffsetPageRequest(offset, limit, sort);
+        return machine == null ?
+                analogSensorRepository.findSummariesByNameContainingIgnoreCase(text, pageable) :
+                analogSensorRepository.findSummariesByMachineAndNameContainingIgnoreCase(machine, text, pageable);
+    }
+
+    /**
+     * @return The number of sensors matching the filter of a lazy sensor grid.
+     */
+    @Transactional(readOnly = true)
+    public long count(SensorFilter filter) {
+        return filter.getMachine() == null ?
+                analogSensorRepository.countByNameContainingIgnoreCase(filter.getText()) :
+                analogSensorRepository.countByMachineAndNameContainingIgnoreCase(filter.getMachine(), filter.getText());
+    }
+
     public List<AnalogSensor> getSensorsOnRunningMachines() {
         return analogSensorRepository.findAllByMachineIsNotNull().stream()
                 .filter(sensor -> sensor.getMachine().isRunningStatusGreen())
@@ -1,5 +1,6 @@
 package springhibernate;
 
+import entitys.AnalogSensor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -7,13 +8,17 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.backend.user.User;
 import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -21,6 +26,8 @@ class AnalogSensorServiceTest {
 
     @Mock
     AnalogSensorRepository analogSensorRepository;
+    @Mock
+    SessionPermissions sessionPermissions;
     AnalogSensorService underTest;
     AnalogSensor analogSensor;
     AnalogSensorService spy;
@@ -58,7 +65,8 @@ class AnalogSensorServiceTest {
 
     @BeforeEach
     void setUp(){
-        underTest = new AnalogSensorService(analogSensorRepository);
+        underTest = new AnalogSensorService(analogSensorRepository, new SensorStatusTree(), sessionPermissions,
+                60_000L);
         analogSensor = new AnalogSensor();
         spy = Mockito.spy(underTest);
         underTest.save(analogSensor);
@@ -99,63 +107,63 @@ class AnalogSensorServiceTest {
     @Test
     void testgetAncillaryColourCode(){
         // Check worst of three is correctly returned.
-        doReturn(Arrays.asList(one, two, three)).when(spy).findAllByMachine(null);
+        doReturn(summaries(one, two, three)).when(spy).findSummariesForAncillaryEquipment();
         assertEquals(DashboardRAGColours.RED, spy.getAncillaryColourCode());
 
         // Check when all three are Green that Green is returned and not default RED or GRAY.
-        doReturn(Arrays.asList(four, five, six)).when(spy).findAllByMachine(null);
+        doReturn(summaries(four, five, six)).when(spy).findSummariesForAncillaryEquipment();
         assertEquals(DashboardRAGColours.GREEN, spy.getAncillaryColourCode());
 
         // Check empty list is handled correctly.
-        doReturn(Collections.emptyList()).when(spy).findAllByMachine(null);
+        doReturn(Collections.emptyList()).when(spy).findSummariesForAncillaryEquipment();
         assertEquals(DashboardRAGColours.RED, spy.getAncillaryColourCode());
     }
 
     @Test
     void testGetOverallWorstConditionSensor(){
         // Check red returned.
-        when(spy.findAllByType(0)).thenReturn(List.of(one, two, three));
+        when(spy.findSummariesByType(0)).thenReturn(summaries(one, two, three));
         assertEquals(DashboardRAGColours.RED, spy.getOverallMostSevereBlobColourForType(0));
 
         // Check amber is returned.
         three.setBlobColour(DashboardRAGColours.GREEN);
-        when(spy.findAllByType(0)).thenReturn(List.of(one, two, three));
+        when(spy.findSummariesByType(0)).thenReturn(summaries(one, two, three));
         assertEquals(DashboardRAGColours.AMBER, spy.getOverallMostSevereBlobColourForType(0));
 
         // Check when all three are Green that Green is returned and not default RED or GRAY.
-        when(spy.findAllByType(0)).thenReturn(List.of(four, five, six));
+        when(spy.findSummariesByType(0)).thenReturn(summaries(four, five, six));
         assertEquals(DashboardRAGColours.GREEN, spy.getOverallMostSevereBlobColourForType(0));
 
         // Check empty list is handled correctly, should return default rag RED.
-        when(spy.findAllByType(0)).thenReturn(Collections.emptyList());
+        when(spy.findSummariesByType(0)).thenReturn(Collections.emptyList());
         assertEquals(DashboardRAGColours.GRAY, spy.getOverallMostSevereBlobColourForType(0));
 
         //The traffic light used to respond only to machines running, see SMAS-308.
         //When only one machine isnt running
         one.setBlobColour(DashboardRAGColours.RED);
         one.setMachine(notRunningMachine);
-        when(spy.findAllByType(0)).thenReturn(List.of(one, two, three));
+        when(spy.findSummariesByType(0)).thenReturn(summaries(one, two, three));
         assertEquals(DashboardRAGColours.RED, spy.getOverallMostSevereBlobColourForType(0));
 
         // When all machines arnt running
         two.setMachine(notRunningMachine);
         three.setMachine(notRunningMachine);
-        when(spy.findAllByType(0)).thenReturn(List.of(one, two, three));
+        when(spy.findSummariesByType(0)).thenReturn(summaries(one, two, three));
         assertEquals(DashboardRAGColours.RED, spy.getOverallMostSevereBlobColourForType(0));
     }
     @Test
     void testGetWorstSensorForMachine(){
 
         // Check worst of three is correctly returned.
-        doReturn(Arrays.asList(one, two, three)).when(spy).findAllByMachineAndType(runningMachine, 0);
+        doReturn(summaries(one, two, three)).when(spy).findSummariesByMachineAndType(runningMachine, 0);
         assertEquals(DashboardRAGColours.RED, spy.getMostSevereBlobColourForType(runningMachine, 0));
 
         // Check when all three are Green that Green is returned and not default RED or GRAY.
-        doReturn(Arrays.asList(four, five, six)).when(spy).findAllByMachineAndType(runningMachine, 0);
+        doReturn(summaries(four, five, six)).when(spy).findSummariesByMachineAndType(runningMachine, 0);
         assertEquals(DashboardRAGColours.GREEN, spy.getMostSevereBlobColourForType(runningMachine, 0));
 
         // Check empty list is handled correctly.
-        doReturn(Collections.emptyList()).when(spy).findAllByMachineAndType(runningMachine, 0);
+        doReturn(Collections.emptyList()).when(spy).findSummariesByMachineAndType(runningMachine, 0);
         assertEquals(DashboardRAGColours.GRAY, spy.getMostSevereBlobColourForType(runningMachine, 0));
 
         //The machine blob used to respond only to machines running, see SMAS-308.
@@ -189,26 +197,213 @@ class AnalogSensorServiceTest {
     @Test
     void testGetTheSensorForAMachineWithTheWorstAlertType() {
         // Check worst of three is correctly returned. Red being the worst.
-        doReturn(Arrays.asList(one, two, three)).when(spy).findAllByMachine(runningMachine);
+        doReturn(summaries(one, two, three)).when(spy).findSummariesByMachine(runningMachine);
         assertEquals(DashboardRAGColours.RED, spy.getTheSensorForAMachineWithTheWorstAlertType(runningMachine));
 
         // Check worst of three is correctly returned. When Orange is the worst then Amber should be returned.
-        doReturn(Arrays.asList(four, two, three)).when(spy).findAllByMachine(runningMachine);
+        doReturn(summaries(four, two, three)).when(spy).findSummariesByMachine(runningMachine);
         assertEquals(DashboardRAGColours.AMBER, spy.getTheSensorForAMachineWithTheWorstAlertType(runningMachine));
 
         // Check worst of three is correctly returned. Amber being the worst.
-        doReturn(Arrays.asList(four, six, three)).when(spy).findAllByMachine(runningMachine);
+        doReturn(summaries(four, six, three)).when(spy).findSummariesByMachine(runningMachine);
         assertEquals(DashboardRAGColours.AMBER, spy.getTheSensorForAMachineWithTheWorstAlertType(runningMachine));
 
         // Check worst of three is correctly returned. All green.
-        doReturn(Arrays.asList(four, six)).when(spy).findAllByMachine(runningMachine);
+        doReturn(summaries(four, six)).when(spy).findSummariesByMachine(runningMachine);
         assertEquals(DashboardRAGColours.GREEN, spy.getTheSensorForAMachineWithTheWorstAlertType(runningMachine));
 
         // Check empty list is handled correctly. No sensors found.
-        doReturn(Collections.emptyList()).when(spy).findAllByMachine(runningMachine);
+        doReturn(Collections.emptyList()).when(spy).findSummariesByMachine(runningMachine);
         assertEquals(DashboardRAGColours.GRAY, spy.getTheSensorForAMachineWithTheWorstAlertType(runningMachine));
 
         // Check if the machine is not running then gray is returned.
         assertEquals(DashboardRAGColours.GRAY, spy.getTheSensorForAMachineWithTheWorstAlertType(notRunningMachine));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testUpdateAnalogSensorPositions() {
+        when(analogSensorRepository.findAllNamesAndIds())
+                .thenReturn(List.of(nameAndId("A", 1L), nameAndId("B", 2L)));
+        when(analogSensorRepository.findIdByName("C")).thenReturn(Optional.of(3L));
+        when(analogSensorRepository.findIdByName("D")).thenReturn(Optional.empty());
+        when(analogSensorRepository.updateXY(anyLong(), anyString(), anyDouble(), anyDouble())).thenReturn(1);
+
+        underTest.updateAnalogSensorPositions(Arrays.asList(new SensorPosition("A", 10, 20),
+                new SensorPosition("B", 30, 40), new SensorPosition("C", 50, 60), new SensorPosition("D", 70, 80)));
+
+        // Only the x and y are written, by id, and the unknown sensor is skipped.
+        verify(analogSensorRepository).updateXY(eq(1L), eq("A"), anyDouble(), anyDouble());
+        verify(analogSensorRepository).updateXY(eq(2L), eq("B"), anyDouble(), anyDouble());
+        verify(analogSensorRepository).updateXY(eq(3L), eq("C"), anyDouble(), anyDouble());
+        verify(analogSensorRepository, never()).findAllByName(anyString());
+        verify(analogSensorRepository, never()).save(any());
+
+        // The index is only loaded once and names found individually are remembered.
+        underTest.updateAnalogSensorXY("C", 1, 2);
+        verify(analogSensorRepository, times(1)).findAllNamesAndIds();
+        verify(analogSensorRepository, times(1)).findIdByName("C");
+        verify(analogSensorRepository, times(2)).updateXY(eq(3L), eq("C"), anyDouble(), anyDouble());
+    }
+
+    @Test
+    void testSensorRenamedOnAnotherNodeIsLookedUpAgain() {
+        when(analogSensorRepository.findAllNamesAndIds())
+                .thenReturn(List.of(nameAndId("OLD", 5L), nameAndId("GONE", 6L)));
+        // Sensor 5 has been renamed and another sensor now has its old name, sensor 6 has been deleted.
+        when(analogSensorRepository.updateXY(eq(5L), eq("OLD"), anyDouble(), anyDouble())).thenReturn(0);
+        when(analogSensorRepository.findIdByName("OLD")).thenReturn(Optional.of(9L));
+        when(analogSensorRepository.updateXY(eq(9L), eq("OLD"), anyDouble(), anyDouble())).thenReturn(1);
+        when(analogSensorRepository.updateXY(eq(6L), eq("GONE"), anyDouble(), anyDouble())).thenReturn(0);
+        when(analogSensorRepository.findIdByName("GONE")).thenReturn(Optional.empty());
+
+        underTest.updateAnalogSensorPositions(Arrays.asList(new SensorPosition("OLD", 10, 20),
+                new SensorPosition("GONE", 30, 40)));
+
+        verify(analogSensorRepository).updateXY(eq(9L), eq("OLD"), anyDouble(), anyDouble());
+        assertEquals(9L, underTest.findIdByName("OLD"));
+        assertNull(underTest.findIdByName("GONE"));
+    }
+
+    @Test
+    void testRenamedSensorIsReindexed() {
+        when(analogSensorRepository.findAllNamesAndIds())
+                .thenReturn(List.of(nameAndId("OLD", 5L)));
+        assertEquals(5L, underTest.findIdByName("OLD"));
+
+        AnalogSensor renamed = new AnalogSensor();
+        renamed.setId(5L);
+        renamed.setName("NEW");
+        underTest.save(renamed);
+
+        assertEquals(5L, underTest.findIdByName("NEW"));
+        when(analogSensorRepository.findIdByName("OLD")).thenReturn(Optional.empty());
+        assertNull(underTest.findIdByName("OLD"));
+
+        // Another sensor takes the old name, renaming sensor 5 again only removes its own name.
+        AnalogSensor other = new AnalogSensor();
+        other.setId(9L);
+        other.setName("OLD");
+        underTest.save(other);
+        renamed.setName("NEWER");
+        underTest.save(renamed);
+        assertEquals(9L, underTest.findIdByName("OLD"));
+        assertEquals(5L, underTest.findIdByName("NEWER"));
+        verify(analogSensorRepository, times(1)).findIdByName("OLD");
+    }
+
+    @Test
+    void testFindPage() {
+        SensorFilter all = new SensorFilter(null, " pump ");
+        assertEquals("pump", all.getText());
+
+        // A page after a known row is read by keyset.
+        underTest.findPage(all, false, "PUMP 2", 50, 50);
+        verify(analogSensorRepository).findSummariesByNameContainingIgnoreCaseAndNameGreaterThan(eq("pump"),
+                eq("PUMP 2"), argThat(page -> page.getOffset() == 0 && page.getPageSize() == 50));
+        underTest.findPage(new SensorFilter(runningMachine, ""), true, "PUMP 2", 50, 50);
+        verify(analogSensorRepository).findSummariesByMachineAndNameContainingIgnoreCaseAndNameLessThan(
+                eq(runningMachine), eq(""), eq("PUMP 2"), any());
+
+        // Otherwise by offset.
+        underTest.findPage(all, false, null, 100, 50);
+        verify(analogSensorRepository).findSummariesByNameContainingIgnoreCase(eq("pump"),
+                argThat(page -> page.getOffset() == 100 && page.getPageSize() == 50));
+    }
+
+    @Test
+    void testFindPagePartWayThroughAPage() {
+        // Only the rows asked for are read, not the rows before them.
+        List<SensorSummary> page = summaries(five, six);
+        when(analogSensorRepository.findSummariesByNameContainingIgnoreCase(eq(""),
+                argThat(pageable -> pageable.getOffset() == 4 && pageable.getPageSize() == 2)))
+                .thenReturn(page);
+        assertEquals(page, underTest.findPage(SensorFilter.ALL, false, null, 4, 2));
+    }
+
+    /**
+     * Summaries that read through to the sensors, so colours changed during a test are seen.
+     */
+    private static List<SensorSummary> summaries(AnalogSensor... sensors) {
+        return Arrays.stream(sensors).map(sensor -> new SensorSummary() {
+            public Long getId() {
+                return sensor.getId();
+            }
+
+            public String getName() {
+                return sensor.getName();
+            }
+
+            public Integer getType() {
+                return sensor.getType();
+            }
+
+            public DashboardRAGColours getBlobColour() {
+                return sensor.getBlobColour();
+            }
+
+            public DashboardRAGColours getPredictiveMaintenance() {
+                return sensor.getPredictiveMaintenance();
+            }
+        }).collect(Collectors.toList());
+    }
+
+    @Test
+    void testResetConditionSensorTakesTheUserFromTheSession() {
+        User user = mock(User.class);
+        when(sessionPermissions.getUserReference()).thenReturn(user);
+        one.setCurrent(12.5);
+
+        underTest.resetConditionSensor(one);
+
+        verify(analogSensorRepository).resetConditionSensor(eq(one.getId()), any(), eq(12.5), same(user));
+    }
+
+    @Test
+    void testColoursAreReadFromTheStatusTreeOnceBuilt() {
+        Machine machine = Machine.builder().id(1L).build();
+        SensorStatus red = status(1L, DashboardRAGColours.RED, DashboardRAGColours.ORANGE);
+        SensorStatus green = status(2L, DashboardRAGColours.GREEN, DashboardRAGColours.GREEN);
+        when(analogSensorRepository.findAllStatuses()).thenReturn(List.of(red, green));
+
+        underTest.buildStatusTreeIfRequired();
+        assertEquals(DashboardRAGColours.RED, underTest.getMostSevereBlobColourForType(machine, 0));
+        assertEquals(DashboardRAGColours.RED, underTest.getOverallMostSevereBlobColourForType(0));
+        assertEquals(DashboardRAGColours.GRAY, underTest.getOverallMostSevereBlobColourForType(1));
+        assertEquals(DashboardRAGColours.AMBER, underTest.getTheSensorWithTheWorstAlertType());
+
+        // The sweep turns sensor one green, the tree follows without another read.
+        AnalogSensor sensor = new AnalogSensor();
+        sensor.setId(1L);
+        underTest.updateConditionSensorBlobColour(sensor, DashboardRAGColours.GREEN);
+        underTest.buildStatusTreeIfRequired();
+        assertEquals(DashboardRAGColours.GREEN, underTest.getMostSevereBlobColourForType(machine, 0));
+
+        verify(analogSensorRepository).save(analogSensor);
+        verify(analogSensorRepository).findAllStatuses();
+        verify(analogSensorRepository).updateConditionSensorBlobColour(1L, DashboardRAGColours.GREEN);
+        verifyNoMoreInteractions(analogSensorRepository);
+    }
+
+    private SensorStatus status(Long id, DashboardRAGColours blob, DashboardRAGColours pm) {
+        SensorStatus status = mock(SensorStatus.class);
+        when(status.getId()).thenReturn(id);
+        when(status.getMachineId()).thenReturn(1L);
+        when(status.getType()).thenReturn(0);
+        when(status.getIncludeInSupervisorView()).thenReturn(true);
+        when(status.getBlobColour()).thenReturn(blob);
+        when(status.getPredictiveMaintenance()).thenReturn(pm);
+        return status;
+    }
+
+    private static NameAndId nameAndId(String name, Long id) {
+        return new NameAndId() {
+            public String getName() {
+                return name;
+            }
+
+            public Long getId() {
+                return id;
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package springhibernate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.logging.Logger;
+
+/**
+ * Passes permission changes between nodes, each node holds its own {@link UserPermissionCache}. A change made on
+ * this node moves the generation in the permission_generation table on, and every node polls the table and drops
+ * all of its cached permissions when the generation has moved on since it last looked. Permission changes are rare
+ * so dropping everything on the other nodes costs no more than a reload per logged in user.
+ */
+@Component
+public class ClusterPermissionInvalidator {
+
+    private static final Logger log = Logger.getLogger(ClusterPermissionInvalidator.class.getSimpleName());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserPermissionCache userPermissionCache;
+    private long seen = -1;
+
+    public ClusterPermissionInvalidator(JdbcTemplate jdbcTemplate, UserPermissionCache userPermissionCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userPermissionCache = userPermissionCache;
+    }
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS permission_generation (" +
+                "id integer PRIMARY KEY, " +
+                "generation bigint NOT NULL)");
+        jdbcTemplate.update("INSERT INTO permission_generation (id, generation) VALUES (1, 0) " +
+                "ON CONFLICT (id) DO NOTHING");
+        seen = readGeneration();
+    }
+
+    /**
+     * Tells the other nodes that a permission has changed, called after this node has invalidated its own cache.
+     */
+    public synchronized void publish() {
+        Long generation = jdbcTemplate.queryForObject("UPDATE permission_generation " +
+                "SET generation = generation + 1 WHERE id = 1 RETURNING generation", Long.class);
+        // Only our own change is marked as seen, a change from another node in between is left for the next poll.
+        if (generation != null && generation == seen + 1) {
+            seen = generation;
+        }
+    }
+
+    /**
+     * Drops every cached permission if another node has published a change since the last poll.
+     */
+    @Scheduled(fixedRateString = "${user.permission.poll.millis:5000}")
+    public synchronized void poll() {
+        long generation = readGeneration();
+        if (generation != seen) {
+            log.fine("Permissions changed on another node, generation " + seen + " to " + generation);
+            seen = generation;
+            userPermissionCache.invalidateAll();
+        }
+    }
+
+    private long readGeneration() {
+        Long generation = jdbcTemplate.queryForObject(
+                "SELECT generation FROM permission_generation WHERE id = 1", Long.class);
+        return generation == null ? 0 : generation;
+    }
+}
@@ -0,0 +1,67 @@
+package springhibernate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClusterPermissionInvalidatorTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    UserPermissionCache userPermissionCache;
+    ClusterPermissionInvalidator underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ClusterPermissionInvalidator(jdbcTemplate, userPermissionCache);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT generation"), eq(Long.class))).thenReturn(3L);
+        underTest.createTable();
+    }
+
+    @Test
+    void testNothingIsDroppedWithoutAChange() {
+        underTest.poll();
+
+        verify(userPermissionCache, never()).invalidateAll();
+    }
+
+    @Test
+    void testChangeOnAnotherNodeDropsEverything() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT generation"), eq(Long.class))).thenReturn(4L);
+
+        underTest.poll();
+        underTest.poll();
+
+        verify(userPermissionCache, times(1)).invalidateAll();
+    }
+
+    @Test
+    void testOwnChangeIsNotDroppedAgain() {
+        when(jdbcTemplate.queryForObject(startsWith("UPDATE permission_generation"), eq(Long.class))).thenReturn(4L);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT generation"), eq(Long.class))).thenReturn(4L);
+
+        underTest.publish();
+        underTest.poll();
+
+        verify(userPermissionCache, never()).invalidateAll();
+    }
+
+    @Test
+    void testChangeOnAnotherNodeDuringPublishIsStillDropped() {
+        // Another node moved the generation on to 4 before this node's change took it to 5.
+        when(jdbcTemplate.queryForObject(startsWith("UPDATE permission_generation"), eq(Long.class))).thenReturn(5L);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT generation"), eq(Long.class))).thenReturn(5L);
+
+        underTest.publish();
+        underTest.poll();
+
+        verify(userPermissionCache).invalidateAll();
+    }
+}
@@ -0,0 +1,58 @@
+package springhibernate;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import sensordata.ReadingConsumer;
+
+import java.sql.PreparedStatement;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Used by the data processors to implement {@link sensordata.StreamingSensorDataSource}. Rows are read with a fetch
+ * size and passed to the consumer as they arrive, so only one fetch of rows is ever held in memory.
+ * <p>
+ * The PostgreSQL driver only honours the fetch size when auto commit is off, so callers should run inside a
+ * read only transaction.
+ */
+public class JdbcReadingStreamer {
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public JdbcReadingStreamer(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, DEFAULT_FETCH_SIZE);
+    }
+
+    public JdbcReadingStreamer(JdbcTemplate jdbcTemplate, int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Runs the query and passes each row to the consumer. The query must select the date of the reading as the
+     * first column and the raw value as the second, ordered by date.
+     *
+     * @param sql        The query.
+     * @param conversion Converts the raw value, e.g. from mA to the sensors unit of measure.
+     * @param consumer   Receives each reading.
+     * @param args       The query parameters.
+     */
+    public void stream(String sql, DoubleUnaryOperator conversion, ReadingConsumer consumer, Object... args) {
+        PreparedStatementCreator creator = connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(fetchSize);
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            return statement;
+        };
+        jdbcTemplate.query(creator, resultSet -> {
+            double value = resultSet.getDouble(2);
+            if (!resultSet.wasNull()) {
+                consumer.accept(resultSet.getTimestamp(1).getTime(), conversion.applyAsDouble(value));
+            }
+        });
+    }
+}
@@ -0,0 +1,52 @@
+package springhibernate;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers the key of the last row of each page a lazy grid has fetched, so the next page can be read with a
+ * keyset query, e.g. {@code name > :lastName}, rather than skipping all the rows before it with an offset. A grid
+ * that jumps ahead to a page it has not fetched falls back to an offset for that page only.
+ * <p>
+ * The keys are only valid for one filter and sort order, clear the cursor when either changes.
+ *
+ * @param <K> The key, e.g. the name of a sensor.
+ */
+public class KeysetCursor<K> {
+
+    static final int MAX_KEYS = 1000;
+
+    // The key of the row before each offset.
+    private final TreeMap<Integer, K> keys = new TreeMap<>();
+
+    /**
+     * @param offset The offset of the first row of the page.
+     * @return The key of the row before the offset, or null if the page has to be read by offset.
+     */
+    public synchronized K getKeyBefore(int offset) {
+        return keys.get(offset);
+    }
+
+    /**
+     * Remembers the last row of a page that has been fetched.
+     *
+     * @param offset The offset of the first row of the page.
+     * @param rows   The number of rows in the page.
+     * @param last   The key of the last row.
+     */
+    public synchronized void put(int offset, int rows, K last) {
+        if (rows == 0) {
+            return;
+        }
+        keys.put(offset + rows, last);
+        if (keys.size() > MAX_KEYS) {
+            // Keep the keys nearest the start, where the grid is scrolled back to most.
+            Map.Entry<Integer, K> furthest = keys.lastEntry();
+            keys.remove(furthest.getKey());
+        }
+    }
+
+    public synchronized void clear() {
+        keys.clear();
+    }
+}
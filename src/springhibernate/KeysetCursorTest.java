@@ -0,0 +1,39 @@
+package springhibernate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetCursorTest {
+
+    @Test
+    void testKeyOfTheRowBeforeEachPage() {
+        KeysetCursor<String> cursor = new KeysetCursor<>();
+        // The first page is always read by offset.
+        assertNull(cursor.getKeyBefore(0));
+
+        cursor.put(0, 50, "B");
+        cursor.put(50, 50, "D");
+        assertEquals("B", cursor.getKeyBefore(50));
+        assertEquals("D", cursor.getKeyBefore(100));
+        // A page that has been jumped to is read by offset.
+        assertNull(cursor.getKeyBefore(500));
+
+        // An empty page has no last row.
+        cursor.put(100, 0, "X");
+        assertEquals("D", cursor.getKeyBefore(100));
+
+        cursor.clear();
+        assertNull(cursor.getKeyBefore(50));
+    }
+
+    @Test
+    void testKeysAreBounded() {
+        KeysetCursor<Integer> cursor = new KeysetCursor<>();
+        for (int i = 0; i <= KeysetCursor.MAX_KEYS; i++) {
+            cursor.put(i * 10, 10, i);
+        }
+        assertEquals(0, cursor.getKeyBefore(10));
+        assertNull(cursor.getKeyBefore((KeysetCursor.MAX_KEYS + 1) * 10));
+    }
+}
@@ -0,0 +1,12 @@
+package springhibernate;
+
+/**
+ * The name and id of an AnalogSensor, read for every sensor to build the name to id index in
+ * {@link AnalogSensorService} without loading the entities.
+ */
+public interface NameAndId {
+
+    String getName();
+
+    Long getId();
+}
@@ -0,0 +1,60 @@
+package springhibernate;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.Objects;
+
+/**
+ * A page that starts at any row rather than on a multiple of the page size, so a lazy grid asking for rows part
+ * way through a page only reads the rows it asked for, see {@link AnalogSensorService#findPage}.
+ */
+class OffsetPageRequest extends PageRequest {
+
+    private final long offset;
+
+    OffsetPageRequest(long offset, int limit, Sort sort) {
+        super(0, limit, sort);
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset must not be negative but was " + offset);
+        }
+        this.offset = offset;
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public PageRequest next() {
+        return new OffsetPageRequest(offset + getPageSize(), getPageSize(), getSort());
+    }
+
+    @Override
+    public Pageable previousOrFirst() {
+        return hasPrevious() ? new OffsetPageRequest(Math.max(0, offset - getPageSize()), getPageSize(), getSort()) :
+                first();
+    }
+
+    @Override
+    public PageRequest first() {
+        return new OffsetPageRequest(0, getPageSize(), getSort());
+    }
+
+    @Override
+    public boolean hasPrevious() {
+        return offset > 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof OffsetPageRequest && super.equals(o) && offset == ((OffsetPageRequest) o).offset;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), offset);
+    }
+}
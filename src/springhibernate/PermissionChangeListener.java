@@ -0,0 +1,155 @@
+package springhibernate;
+
+import entitys.User;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.co.dhl.smas.backend.authority.Authority;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Drops cached permissions for the changes {@link UserPermissionListener} can't see. The Authority entity is not
+ * ours to annotate, so a saved or deleted authority is picked up from Hibernate and drops every cached permission,
+ * as it may be held by any number of users. Granting or revoking an authority only changes the user_authority
+ * join table, which doesn't make the user dirty, so the authorities collection of the user is watched as well.
+ * <p>
+ * Every change is passed to the other nodes through the {@link ClusterPermissionInvalidator}.
+ */
+@Component
+public class PermissionChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+    private static final String AUTHORITIES_ROLE = User.class.getName() + ".authorities";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final UserPermissionCache userPermissionCache;
+    private final ClusterPermissionInvalidator clusterPermissionInvalidator;
+
+    public PermissionChangeListener(EntityManagerFactory entityManagerFactory, UserPermissionCache userPermissionCache,
+                                    ClusterPermissionInvalidator clusterPermissionInvalidator) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.userPermissionCache = userPermissionCache;
+        this.clusterPermissionInvalidator = clusterPermissionInvalidator;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        onEntityChanged(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        onEntityChanged(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        onEntityChanged(event.getEntity());
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        onCollectionChanged(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        onCollectionChanged(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        onCollectionChanged(event);
+    }
+
+    /**
+     * Drops every cached permission when an authority has been saved or deleted.
+     *
+     * @param entity The entity that was saved or deleted.
+     */
+    void onEntityChanged(Object entity) {
+        if (entity instanceof Authority) {
+            userPermissionCache.invalidateAll();
+            clusterPermissionInvalidator.publish();
+        }
+    }
+
+    private void onCollectionChanged(AbstractCollectionEvent event) {
+        if (AUTHORITIES_ROLE.equals(event.getCollection().getRole())) {
+            onAuthoritiesChanged(event.getAffectedOwnerOrNull());
+        }
+    }
+
+    /**
+     * Drops the cached permissions of a user whose authorities have been granted or revoked. The collection events
+     * are raised during the flush, so the cache is dropped again once the transaction has committed, otherwise a
+     * request in between could cache the authorities from before the change.
+     *
+     * @param owner The user that owns the changed authorities.
+     */
+    void onAuthoritiesChanged(Object owner) {
+        if (!(owner instanceof User)) {
+            return;
+        }
+        User user = (User) owner;
+        userPermissionCache.invalidate(user);
+        clusterPermissionInvalidator.publish();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    userPermissionCache.invalidate(user);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return true;
+    }
+}
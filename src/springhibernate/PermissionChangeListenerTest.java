@@ -0,0 +1,57 @@
+package springhibernate;
+
+import entitys.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.co.dhl.smas.backend.authority.Authority;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PermissionChangeListenerTest {
+
+    @Mock
+    EntityManagerFactory entityManagerFactory;
+    @Mock
+    UserPermissionCache userPermissionCache;
+    @Mock
+    ClusterPermissionInvalidator clusterPermissionInvalidator;
+    PermissionChangeListener underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new PermissionChangeListener(entityManagerFactory, userPermissionCache,
+                clusterPermissionInvalidator);
+    }
+
+    @Test
+    void testChangedAuthorityDropsEverything() {
+        underTest.onEntityChanged(mock(Authority.class));
+
+        verify(userPermissionCache).invalidateAll();
+        verify(clusterPermissionInvalidator).publish();
+    }
+
+    @Test
+    void testOtherEntitiesAreIgnored() {
+        underTest.onEntityChanged(new Object());
+
+        verifyNoInteractions(userPermissionCache, clusterPermissionInvalidator);
+    }
+
+    @Test
+    void testGrantedAuthorityDropsTheUser() {
+        User user = new User();
+
+        underTest.onAuthoritiesChanged(user);
+
+        verify(userPermissionCache).invalidate(user);
+        verify(userPermissionCache, never()).invalidateAll();
+        verify(clusterPermissionInvalidator).publish();
+    }
+}
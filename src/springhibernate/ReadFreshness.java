@@ -0,0 +1,44 @@
+package springhibernate;
+
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.function.Supplier;
+
+/**
+ * A tighter freshness bound for reads that must see the latest sensor sweep, e.g. a view refreshed straight after
+ * the sweep has published its changes. Read only transactions started within the reads only use the replica if it
+ * is no further behind the primary than the bound, otherwise they go to the primary.
+ */
+public final class ReadFreshness {
+
+    private static final ThreadLocal<Long> maxLagMillis = new ThreadLocal<>();
+
+    private ReadFreshness() {
+    }
+
+    /**
+     * @param maxLag The furthest behind the replica can be, zero to only use the replica when it has caught up.
+     * @param reads  The reads, which must start their own read only transaction.
+     * @return The result of the reads.
+     */
+    public static <T> T atMost(Duration maxLag, Supplier<T> reads) {
+        Long previous = maxLagMillis.get();
+        long bound = maxLag.toMillis();
+        // A nested bound can only be tighter.
+        maxLagMillis.set(previous == null ? bound : Math.min(previous, bound));
+        try {
+            return reads.get();
+        } finally {
+            if (previous == null) {
+                maxLagMillis.remove();
+            } else {
+                maxLagMillis.set(previous);
+            }
+        }
+    }
+
+    static OptionalLong getMaxLagMillis() {
+        Long bound = maxLagMillis.get();
+        return bound == null ? OptionalLong.empty() : OptionalLong.of(bound);
+    }
+}
@@ -0,0 +1,50 @@
+package springhibernate;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Polls how far the replica is behind the primary, so the routing does not query the replica on every transaction.
+ * A replica that has replayed everything it has received is not behind, even if nothing has been written for a
+ * while, unless its WAL receiver has stopped streaming, as then the replica has replayed everything only because
+ * it is no longer receiving anything. If the lag can't be read, e.g. the replica is down or not streaming, it is
+ * treated as infinitely behind so every read goes to the primary until it is back.
+ */
+public class ReplicaLagMonitor {
+    private static final Logger log = Logger.getLogger(ReplicaLagMonitor.class.getName());
+
+    static final String LAG_SQL = "SELECT CASE " +
+            "WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN NULL " +
+            "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final JdbcTemplate replica;
+    private volatile long lagMillis = Long.MAX_VALUE;
+
+    public ReplicaLagMonitor(JdbcTemplate replica) {
+        this.replica = replica;
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.lag.poll.millis:1000}")
+    public void poll() {
+        try {
+            Double lag = replica.queryForObject(LAG_SQL, Double.class);
+            lagMillis = lag == null ? Long.MAX_VALUE : Math.round(lag);
+        } catch (RuntimeException e) {
+            if (lagMillis != Long.MAX_VALUE) {
+                log.log(Level.WARNING, "Unable to read the replica lag, reading from the primary", e);
+            }
+            lagMillis = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return How far the replica was behind at the last poll, Long.MAX_VALUE if unknown.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+}
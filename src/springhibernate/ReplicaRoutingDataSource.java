@@ -0,0 +1,52 @@
+package springhibernate;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends read only transactions to the replica and everything else, including statements outside a transaction, to
+ * the primary. It must be wrapped in a LazyConnectionDataSourceProxy so the connection is taken once the
+ * transaction has been marked read only, see {@link ReplicaDataSourceConfiguration}.
+ * <p>
+ * A read only transaction still goes to the primary when the replica is further behind than the freshness bound,
+ * see {@link ReadFreshness}, or the lag can't be read because the replica is down.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY,
+        REPLICA
+    }
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final long defaultMaxLagMillis;
+
+    /**
+     * @param defaultMaxLagMillis The furthest behind the replica can be for reads without their own bound.
+     */
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor lagMonitor,
+                                    long defaultMaxLagMillis) {
+        this.lagMonitor = lagMonitor;
+        this.defaultMaxLagMillis = defaultMaxLagMillis;
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return getRoute();
+    }
+
+    Route getRoute() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return Route.PRIMARY;
+        }
+        long maxLag = ReadFreshness.getMaxLagMillis().orElse(defaultMaxLagMillis);
+        return lagMonitor.getLagMillis() <= maxLag ? Route.REPLICA : Route.PRIMARY;
+    }
+}
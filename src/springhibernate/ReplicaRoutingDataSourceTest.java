@@ -0,0 +1,109 @@
+package springhibernate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static springhibernate.ReplicaRoutingDataSource.Route.PRIMARY;
+import static springhibernate.ReplicaRoutingDataSource.Route.REPLICA;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    DataSource primary;
+    @Mock
+    DataSource replica;
+    @Mock
+    JdbcTemplate replicaJdbcTemplate;
+    ReplicaLagMonitor lagMonitor;
+    ReplicaRoutingDataSource underTest;
+
+    @BeforeEach
+    void setUp() {
+        lagMonitor = new ReplicaLagMonitor(replicaJdbcTemplate);
+        underTest = new ReplicaRoutingDataSource(primary, replica, lagMonitor, 30000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void testOnlyReadOnlyTransactionsUseTheReplica() {
+        setLag(100.0);
+        // Outside a transaction, e.g. the JdbcTemplate updates of the sweep.
+        assertEquals(PRIMARY, underTest.getRoute());
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        assertEquals(PRIMARY, underTest.getRoute());
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(REPLICA, underTest.getRoute());
+    }
+
+    @Test
+    void testReadsGoToThePrimaryWhenTheReplicaIsBehind() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // Not polled yet.
+        assertEquals(PRIMARY, underTest.getRoute());
+
+        setLag(60000.0);
+        assertEquals(PRIMARY, underTest.getRoute());
+
+        setLag(500.0);
+        assertEquals(REPLICA, underTest.getRoute());
+        assertEquals(PRIMARY, ReadFreshness.atMost(Duration.ofMillis(100), underTest::getRoute));
+        // The bound only applies within the reads.
+        assertEquals(REPLICA, underTest.getRoute());
+
+        // A nested bound can't loosen the outer one.
+        assertEquals(PRIMARY, ReadFreshness.atMost(Duration.ofMillis(100),
+                () -> ReadFreshness.atMost(Duration.ofSeconds(10), underTest::getRoute)));
+    }
+
+    @Test
+    void testReadsGoToThePrimaryWhenTheReplicaIsDown() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        setLag(0.0);
+        assertEquals(REPLICA, underTest.getRoute());
+
+        when(replicaJdbcTemplate.queryForObject(ReplicaLagMonitor.LAG_SQL, Double.class))
+                .thenThrow(new IllegalStateException("Connection refused"));
+        lagMonitor.poll();
+        assertEquals(Long.MAX_VALUE, lagMonitor.getLagMillis());
+        assertEquals(PRIMARY, underTest.getRoute());
+    }
+
+    @Test
+    void testReadsGoToThePrimaryWhenTheReplicaIsNotStreaming() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertTrue(ReplicaLagMonitor.LAG_SQL.contains("pg_stat_wal_receiver"));
+
+        // LAG_SQL gives null rather than 0 once the WAL receiver has stopped.
+        setLag(null);
+        assertEquals(Long.MAX_VALUE, lagMonitor.getLagMillis());
+        assertEquals(PRIMARY, underTest.getRoute());
+    }
+
+    private void setLag(Double lagMillis) {
+        when(replicaJdbcTemplate.queryForObject(ReplicaLagMonitor.LAG_SQL, Double.class)).thenReturn(lagMillis);
+        lagMonitor.poll();
+    }
+}
@@ -0,0 +1,235 @@
+package springhibernate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Manages the monthly partitions of the sensor data entry table, which only ever grows and is always queried by
+ * time. Partitions are created ahead of time and partitions older than the retention period are either dropped or
+ * detached into the archive schema. The alert table is not partitioned, its closed alerts are moved out by the
+ * {@link AlertArchiver} instead.
+ * <p>
+ * Only runs when {@code partitions.enabled} is true. The first nightly run after it is enabled converts the table
+ * from a plain table to one partitioned by range on its time column, see {@link #convertToPartitioned(String)},
+ * after which the database routes each insert to the partition for its month.
+ */
+@Service
+@ConditionalOnProperty(prefix = "partitions", name = "enabled", havingValue = "true")
+public class SensorDataPartitionManager {
+    private static final Logger log = Logger.getLogger(SensorDataPartitionManager.class.getName());
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    static final String ARCHIVE_SCHEMA = "archive";
+    static final String LEGACY_SUFFIX = "_legacy_";
+
+    /**
+     * The partitioned tables and the time column they are partitioned on.
+     */
+    static final Map<String, String> PARTITIONED_TABLES = Map.of(
+            "analog_sensor_data_entry", "zoned_date_time");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final boolean archive;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+
+    public SensorDataPartitionManager(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      @Value("${partitions.months.ahead:3}") int monthsAhead,
+                                      @Value("${partitions.retention.months:36}") int retentionMonths,
+                                      @Value("${partitions.archive:true}") boolean archive) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archive = archive;
+    }
+
+    /**
+     * Converts a plain table into one partitioned by range on its time column. Postgres can't partition an
+     * existing table, so in a single transaction:
+     * <ul>
+     *     <li>a transaction level advisory lock is taken on the table, so when more than one node runs the
+     *     conversion the others wait and then find the table already converted,</li>
+     *     <li>the table is renamed to the legacy table and a partitioned table is created in its place, with the
+     *     same columns and defaults, and the id sequence is moved to it so the legacy table can be dropped,</li>
+     *     <li>the primary key of the new table is the id and the time column, as a unique key on a partitioned
+     *     table must include the partition key,</li>
+     *     <li>the monthly partitions are created from this month, the rows from this month onwards are moved into
+     *     them and the legacy table is attached as the partition for everything before this month.</li>
+     * </ul>
+     * The legacy table is named after the month it ends before, so the retention drops or archives it once that
+     * month is older than the retention period.
+     *
+     * @param table The table to convert, does nothing if it is already partitioned or does not exist yet.
+     */
+    void convertToPartitioned(String table) {
+        checkTable(table);
+        if (!isPlainTable(table)) {
+            return;
+        }
+        String column = PARTITIONED_TABLES.get(table);
+        YearMonth thisMonth = YearMonth.now(zoneId);
+        String legacy = getLegacyName(table, thisMonth);
+        String bound = thisMonth.atDay(1).atStartOfDay(zoneId).toOffsetDateTime().toString();
+        boolean converted = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(hashtext('" + table + "'))");
+            if (!isPlainTable(table)) {
+                return false;
+            }
+            jdbcTemplate.execute("ALTER TABLE " + table + " RENAME TO " + legacy);
+            jdbcTemplate.execute("CREATE TABLE " + table + " (LIKE " + legacy + " INCLUDING DEFAULTS) " +
+                    "PARTITION BY RANGE (" + column + ")");
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD PRIMARY KEY (id, " + column + ")");
+            String sequence = jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence(?, 'id')", String.class,
+                    legacy);
+            if (sequence != null) {
+                jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " OWNED BY " + table + ".id");
+            }
+            for (int i = 0; i <= monthsAhead; i++) {
+                createPartition(table, thisMonth.plusMonths(i));
+            }
+            jdbcTemplate.execute("INSERT INTO " + table + " SELECT * FROM " + legacy +
+                    " WHERE " + column + " >= '" + bound + "'");
+            jdbcTemplate.execute("DELETE FROM " + legacy + " WHERE " + column + " >= '" + bound + "'");
+            jdbcTemplate.execute("ALTER TABLE " + table + " ATTACH PARTITION " + legacy +
+                    " FOR VALUES FROM (MINVALUE) TO ('" + bound + "')");
+            return true;
+        }));
+        if (converted) {
+            log.info("Converted " + table + " to a table partitioned by " + column);
+        }
+    }
+
+    private boolean isPlainTable(String table) {
+        List<String> kind = jdbcTemplate.queryForList("SELECT relkind::text FROM pg_class " +
+                "WHERE relname = ? AND relnamespace = 'public'::regnamespace", String.class, table);
+        return kind.equals(List.of("r"));
+    }
+
+    /**
+     * Runs every night at 01:00, converts any table that is not partitioned yet, makes sure the partitions exist
+     * for this month and the months ahead then applies the retention period. The conversion rewrites this month's
+     * rows, so it is left to the night rather than holding up the start of the application.
+     */
+    @Scheduled(cron = "0 0 1 * * ?")
+    public void maintainPartitions() {
+        YearMonth thisMonth = YearMonth.now(zoneId);
+        PARTITIONED_TABLES.keySet().forEach(table -> {
+            convertToPartitioned(table);
+            for (int i = 0; i <= monthsAhead; i++) {
+                createPartition(table, thisMonth.plusMonths(i));
+            }
+            applyRetention(table, thisMonth);
+        });
+    }
+
+    /**
+     * Drops, or detaches into the archive schema, every partition of the table older than the retention period,
+     * including the legacy partition once everything it holds is older.
+     *
+     * @param table     The partitioned table.
+     * @param thisMonth The current month.
+     */
+    void applyRetention(String table, YearMonth thisMonth) {
+        YearMonth oldestKept = thisMonth.minusMonths(retentionMonths);
+        getExistingPartitions(table).stream()
+                .filter(partition -> isOlderThan(table, partition, oldestKept))
+                .forEach(partition -> {
+                    if (archive) {
+                        jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + ARCHIVE_SCHEMA);
+                        jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+                        jdbcTemplate.execute("ALTER TABLE " + partition + " SET SCHEMA " + ARCHIVE_SCHEMA);
+                        log.info("Archived partition " + partition);
+                    } else {
+                        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                        log.info("Dropped partition " + partition);
+                    }
+                });
+    }
+
+    void createPartition(String table, YearMonth month) {
+        checkTable(table);
+        ZonedDateTime start = month.atDay(1).atStartOfDay(zoneId);
+        ZonedDateTime end = month.plusMonths(1).atDay(1).atStartOfDay(zoneId);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + getPartitionName(table, month) +
+                " PARTITION OF " + table +
+                " FOR VALUES FROM ('" + start.toOffsetDateTime() + "') TO ('" + end.toOffsetDateTime() + "')");
+    }
+
+    List<String> getExistingPartitions(String table) {
+        checkTable(table);
+        return jdbcTemplate.queryForList("SELECT child.relname FROM pg_inherits " +
+                "JOIN pg_class parent ON pg_inherits.inhparent = parent.oid " +
+                "JOIN pg_class child ON pg_inherits.inhrelid = child.oid " +
+                "WHERE parent.relname = ?", String.class, table);
+    }
+
+    static String getPartitionName(String table, YearMonth month) {
+        return table + "_p" + month.format(SUFFIX);
+    }
+
+    static String getLegacyName(String table, YearMonth end) {
+        return table + LEGACY_SUFFIX + end.format(SUFFIX);
+    }
+
+    /**
+     * @param table      The partitioned table.
+     * @param partition  The name of a partition of the table.
+     * @param oldestKept The oldest month within the retention period.
+     * @return True if every row the partition can hold is from before the oldest month kept.
+     */
+    static boolean isOlderThan(String table, String partition, YearMonth oldestKept) {
+        Optional<YearMonth> month = getMonth(table, partition);
+        if (month.isPresent()) {
+            return month.get().isBefore(oldestKept);
+        }
+        // The legacy partition holds everything before the month it is named after.
+        return parseSuffix(partition, table + LEGACY_SUFFIX).map(end -> !end.isAfter(oldestKept)).orElse(false);
+    }
+
+    /**
+     * @param table     The partitioned table.
+     * @param partition The name of a partition of the table.
+     * @return The month the partition holds, or empty if it is not a monthly partition, e.g. the legacy partition.
+     */
+    static Optional<YearMonth> getMonth(String table, String partition) {
+        return parseSuffix(partition, table + "_p");
+    }
+
+    private static Optional<YearMonth> parseSuffix(String partition, String prefix) {
+        if (!partition.startsWith(prefix)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(YearMonth.parse(partition.substring(prefix.length()), SUFFIX));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The table names are concatenated into DDL so only the known tables are allowed.
+     */
+    private void checkTable(String table) {
+        if (!PARTITIONED_TABLES.containsKey(table)) {
+            throw new IllegalArgumentException(table + " is not a partitioned table");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package springhibernate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SensorDataPartitionManagerTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    PlatformTransactionManager transactionManager;
+    SensorDataPartitionManager underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new SensorDataPartitionManager(jdbcTemplate, transactionManager, 3, 12, false);
+    }
+
+    @Test
+    void testPartitionNames() {
+        YearMonth month = YearMonth.of(2022, 8);
+        String name = SensorDataPartitionManager.getPartitionName("analog_sensor_data_entry", month);
+        assertEquals("analog_sensor_data_entry_p2022_08", name);
+        assertEquals(Optional.of(month), SensorDataPartitionManager.getMonth("analog_sensor_data_entry", name));
+
+        // Partitions that are not monthly are left alone.
+        String table = "analog_sensor_data_entry";
+        assertEquals(Optional.empty(), SensorDataPartitionManager.getMonth(table, table + "_legacy_2023_01"));
+        assertEquals(Optional.empty(), SensorDataPartitionManager.getMonth(table, table + "_p2022"));
+        assertEquals(Optional.empty(), SensorDataPartitionManager.getMonth(table, table + "_pdefault"));
+    }
+
+    @Test
+    void testConvertToPartitioned() {
+        String table = "analog_sensor_data_entry";
+        String legacy = SensorDataPartitionManager.getLegacyName(table, YearMonth.now());
+        doReturn(List.of("r")).when(jdbcTemplate).queryForList(anyString(), eq(String.class), eq(table));
+        when(jdbcTemplate.queryForObject(anyString(), eq(String.class), eq(legacy)))
+                .thenReturn("public.analog_sensor_data_entry_id_seq");
+
+        underTest.convertToPartitioned(table);
+
+        InOrder inOrder = inOrder(jdbcTemplate);
+        // Any other node converting at the same time waits for the lock then finds the table converted.
+        inOrder.verify(jdbcTemplate).execute("SELECT pg_advisory_xact_lock(hashtext('" + table + "'))");
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE " + table + " RENAME TO " + legacy);
+        inOrder.verify(jdbcTemplate).execute("CREATE TABLE " + table + " (LIKE " + legacy +
+                " INCLUDING DEFAULTS) PARTITION BY RANGE (zoned_date_time)");
+        // The primary key has to include the partition key.
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE " + table + " ADD PRIMARY KEY (id, zoned_date_time)");
+        // The sequence is moved so it is not dropped with the legacy partition.
+        inOrder.verify(jdbcTemplate).execute(
+                "ALTER SEQUENCE public.analog_sensor_data_entry_id_seq OWNED BY " + table + ".id");
+        inOrder.verify(jdbcTemplate, times(4)).execute(startsWith("CREATE TABLE IF NOT EXISTS " + table + "_p"));
+        inOrder.verify(jdbcTemplate).execute(startsWith("INSERT INTO " + table + " SELECT * FROM " + legacy +
+                " WHERE zoned_date_time >="));
+        inOrder.verify(jdbcTemplate).execute(startsWith("DELETE FROM " + legacy + " WHERE zoned_date_time >="));
+        inOrder.verify(jdbcTemplate).execute(startsWith("ALTER TABLE " + table + " ATTACH PARTITION " + legacy +
+                " FOR VALUES FROM (MINVALUE) TO"));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void testPartitionedTableIsNotConvertedAgain() {
+        doReturn(List.of("p")).when(jdbcTemplate)
+                .queryForList(anyString(), eq(String.class), eq("analog_sensor_data_entry"));
+
+        underTest.convertToPartitioned("analog_sensor_data_entry");
+
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void testTableConvertedByAnotherNodeIsNotConvertedAgain() {
+        // Plain when first checked, partitioned once the lock is held.
+        doReturn(List.of("r"), List.of("p")).when(jdbcTemplate)
+                .queryForList(anyString(), eq(String.class), eq("analog_sensor_data_entry"));
+
+        underTest.convertToPartitioned("analog_sensor_data_entry");
+
+        verify(jdbcTemplate).execute(startsWith("SELECT pg_advisory_xact_lock"));
+        verify(jdbcTemplate, never()).execute(startsWith("ALTER TABLE"));
+    }
+
+    @Test
+    void testMaintainPartitions() {
+        doReturn(List.of()).when(jdbcTemplate).queryForList(anyString(), eq(String.class), anyString());
+        underTest.maintainPartitions();
+        // This month plus 3 ahead, the alert table is archived rather than partitioned.
+        verify(jdbcTemplate, times(4)).execute(startsWith("CREATE TABLE IF NOT EXISTS analog_sensor_data_entry_p"));
+        verify(jdbcTemplate, never()).execute(contains("alert"));
+    }
+
+    @Test
+    void testApplyRetention() {
+        String table = "analog_sensor_data_entry";
+        doReturn(List.of(table + "_legacy_2022_02", table + "_p2021_12", table + "_p2022_01", table + "_p2022_08"))
+                .when(jdbcTemplate).queryForList(anyString(), eq(String.class), eq(table));
+        underTest.applyRetention(table, YearMonth.of(2023, 1));
+        verify(jdbcTemplate).execute("DROP TABLE IF EXISTS " + table + "_p2021_12");
+        verify(jdbcTemplate, never()).execute("DROP TABLE IF EXISTS " + table + "_p2022_01");
+        verify(jdbcTemplate, never()).execute("DROP TABLE IF EXISTS " + table + "_p2022_08");
+        // The legacy partition also holds January 2022, which is still kept.
+        verify(jdbcTemplate, never()).execute("DROP TABLE IF EXISTS " + table + "_legacy_2022_02");
+
+        // Unknown tables are rejected as they are concatenated into the DDL.
+        assertThrows(IllegalArgumentException.class, () -> underTest.createPartition("alert", YearMonth.now()));
+    }
+
+    @Test
+    void testLegacyPartitionIsDroppedOnceAllItHoldsIsOld() {
+        String table = "analog_sensor_data_entry";
+        YearMonth oldestKept = YearMonth.of(2022, 1);
+        assertTrue(SensorDataPartitionManager.isOlderThan(table, table + "_legacy_2022_01", oldestKept));
+        assertFalse(SensorDataPartitionManager.isOlderThan(table, table + "_legacy_2022_02", oldestKept));
+        assertTrue(SensorDataPartitionManager.isOlderThan(table, table + "_p2021_12", oldestKept));
+        assertFalse(SensorDataPartitionManager.isOlderThan(table, table + "_p2022_01", oldestKept));
+        // A partition that is not named after a month is never dropped.
+        assertFalse(SensorDataPartitionManager.isOlderThan(table, table + "_legacy", oldestKept));
+    }
+}
@@ -0,0 +1,50 @@
+package springhibernate;
+
+import lombok.Getter;
+import uk.co.dhl.smas.backend.machine.Machine;
+
+import java.util.Objects;
+
+/**
+ * The filter of a sensor grid, see {@link AnalogSensorService#findPage}.
+ */
+@Getter
+public class SensorFilter {
+
+    public static final SensorFilter ALL = new SensorFilter(null, "");
+
+    /**
+     * Only sensors on this machine, or every sensor if null.
+     */
+    private final Machine machine;
+    /**
+     * Only sensors with names containing this text, ignoring case.
+     */
+    private final String text;
+
+    public SensorFilter(Machine machine, String text) {
+        this.machine = machine;
+        this.text = text == null ? "" : text.trim();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SensorFilter)) {
+            return false;
+        }
+        SensorFilter other = (SensorFilter) o;
+        return Objects.equals(getMachineId(), other.getMachineId()) && text.equals(other.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getMachineId(), text);
+    }
+
+    private Long getMachineId() {
+        return machine == null ? null : machine.getId();
+    }
+}
@@ -0,0 +1,21 @@
+package springhibernate;
+
+import lombok.Getter;
+
+/**
+ * The new position of a single blob on the layout svg, as dropped by the user. The offsets are applied by
+ * {@link AnalogSensorService#updateAnalogSensorPositions} so the values here are the raw svg coordinates.
+ */
+@Getter
+public class SensorPosition {
+
+    private final String name;
+    private final double x;
+    private final double y;
+
+    public SensorPosition(String name, double x, double y) {
+        this.name = name;
+        this.x = x;
+        this.y = y;
+    }
+}
@@ -0,0 +1,22 @@
+package springhibernate;
+
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+/**
+ * The colours of an AnalogSensor and where it sits in the {@link SensorStatusTree}, read for every sensor when the
+ * tree is rebuilt. Only the id and supervisor view flag of the machine are selected, so no entity is loaded.
+ */
+public interface SensorStatus {
+
+    Long getId();
+
+    Long getMachineId();
+
+    Integer getType();
+
+    Boolean getIncludeInSupervisorView();
+
+    DashboardRAGColours getBlobColour();
+
+    DashboardRAGColours getPredictiveMaintenance();
+}
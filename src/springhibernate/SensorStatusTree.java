@@ -0,0 +1,306 @@
+package springhibernate;
+
+import entitys.AnalogSensor;
+import org.springframework.stereotype.Component;
+import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * An in memory copy of the blob and predictive maintenance colours of every analog sensor, arranged as
+ * fleet -> machine -> sensor type -> sensor. Every node keeps a count of how many sensors beneath it are in each
+ * colour, so the dashboards can ask for the worst colour without loading any sensors from the database.
+ * <p>
+ * The tree is built from the database and then kept up to date by {@link AnalogSensorService} every time a
+ * blob or predictive maintenance colour is written by the sweep or the alert generator on this node. When the
+ * sensors are shared between nodes the colours of the other nodes' sensors are only seen when the tree is
+ * rebuilt, so the tree is rebuilt once it is older than a set age, see
+ * {@link AnalogSensorService#buildStatusTreeIfRequired()}.
+ */
+@Component
+public class SensorStatusTree {
+
+    private static final Logger log = Logger.getLogger(SensorStatusTree.class.getSimpleName());
+
+    /**
+     * Used as the machine key for sensors fitted to ancillary equipment, i.e. sensors without a machine.
+     */
+    static final long ANCILLARY = -1L;
+
+    private final Map<Long, SensorLeaf> sensors = new HashMap<>();
+    private final Map<Long, MachineNode> machines = new HashMap<>();
+    private final Map<Integer, SeverityCounts> fleetBlobByType = new HashMap<>();
+    private final SeverityCounts supervisorViewPm = new SeverityCounts();
+    private boolean built = false;
+    private long builtAt;
+
+    /**
+     * @return True once the tree has been populated, until then callers should fall back to the database.
+     */
+    public synchronized boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * @param maxAgeMillis The age at which the tree should be rebuilt.
+     * @param nowMillis    The time now.
+     * @return True if the tree has not been built or was built at least the passed age ago.
+     */
+    public synchronized boolean isOlderThan(long maxAgeMillis, long nowMillis) {
+        return !built || nowMillis - builtAt >= maxAgeMillis;
+    }
+
+    /**
+     * Marks the tree as out of date after a change it can't follow, e.g. a machine moved in or out of supervisor
+     * view. Callers fall back to the database until the next {@link AnalogSensorService#buildStatusTreeIfRequired}.
+     */
+    public synchronized void invalidate() {
+        built = false;
+    }
+
+    /**
+     * Clears the tree and populates it with the passed sensors.
+     *
+     * @param analogSensors Every analog sensor in the system.
+     */
+    public synchronized void rebuild(Collection<AnalogSensor> analogSensors) {
+        clear();
+        analogSensors.forEach(this::put);
+        markBuilt();
+    }
+
+    /**
+     * Clears the tree and populates it with the colours of the passed sensors.
+     *
+     * @param statuses The colours of every analog sensor in the system.
+     */
+    public synchronized void rebuildFromStatuses(Collection<SensorStatus> statuses) {
+        clear();
+        statuses.forEach(status -> put(status.getId(), new SensorLeaf(
+                status.getMachineId() == null ? ANCILLARY : status.getMachineId(),
+                status.getType() == null ? 0 : status.getType(),
+                Boolean.TRUE.equals(status.getIncludeInSupervisorView()),
+                status.getBlobColour(),
+                status.getPredictiveMaintenance())));
+        markBuilt();
+    }
+
+    private void clear() {
+        sensors.clear();
+        machines.clear();
+        fleetBlobByType.clear();
+        supervisorViewPm.clear();
+    }
+
+    private void markBuilt() {
+        built = true;
+        builtAt = System.currentTimeMillis();
+        log.fine("Sensor status tree built with " + sensors.size() + " sensors on " + machines.size() + " machines");
+    }
+
+    /**
+     * Adds the sensor to the tree or moves it if its machine or type has changed since it was last added.
+     *
+     * @param sensor The sensor to add.
+     */
+    public synchronized void put(AnalogSensor sensor) {
+        if (sensor.getId() == null) {
+            return;
+        }
+        Machine machine = sensor.getMachine();
+        put(sensor.getId(), new SensorLeaf(
+                machine == null ? ANCILLARY : machine.getId(),
+                sensor.getType() == null ? 0 : sensor.getType(),
+                machine != null && Boolean.TRUE.equals(machine.getIncludeInSupervisorView()),
+                sensor.getBlobColour(),
+                sensor.getPredictiveMaintenance()));
+    }
+
+    private void put(Long sensorId, SensorLeaf leaf) {
+        remove(sensorId);
+        sensors.put(sensorId, leaf);
+        count(leaf, 1);
+    }
+
+    /**
+     * Removes the sensor with the passed id from the tree, does nothing if it is not present.
+     *
+     * @param sensorId The id of the sensor.
+     */
+    public synchronized void remove(Long sensorId) {
+        SensorLeaf leaf = sensors.remove(sensorId);
+        if (leaf != null) {
+            count(leaf, -1);
+        }
+    }
+
+    /**
+     * Moves the sensor from its old blob colour to the new one in every node above it.
+     *
+     * @param sensorId  The id of the sensor.
+     * @param ragColour The new blob colour.
+     */
+    public synchronized void updateBlobColour(Long sensorId, DashboardRAGColours ragColour) {
+        SensorLeaf leaf = sensors.get(sensorId);
+        if (leaf != null && leaf.blobColour != ragColour) {
+            count(leaf, -1);
+            leaf.blobColour = ragColour;
+            count(leaf, 1);
+        }
+    }
+
+    /**
+     * Moves the sensor from its old predictive maintenance colour to the new one in every node above it.
+     *
+     * @param sensorId  The id of the sensor.
+     * @param ragColour The new predictive maintenance colour.
+     */
+    public synchronized void updatePredictiveMaintenance(Long sensorId, DashboardRAGColours ragColour) {
+        SensorLeaf leaf = sensors.get(sensorId);
+        if (leaf != null && leaf.predictiveMaintenance != ragColour) {
+            count(leaf, -1);
+            leaf.predictiveMaintenance = ragColour;
+            count(leaf, 1);
+        }
+    }
+
+    /**
+     * @param type The type of sensor see Sensor class
+     * @return The worst blob colour of every sensor of the passed type, or null if there are none.
+     */
+    public synchronized DashboardRAGColours getWorstBlobColourForType(int type) {
+        SeverityCounts counts = fleetBlobByType.get(type);
+        return counts == null ? null : counts.worstByRank();
+    }
+
+    /**
+     * @param machine The machine, null for ancillary equipment.
+     * @param type    The type of sensor see Sensor class
+     * @return The worst blob colour of the sensors of the passed type on the machine, or null if there are none.
+     */
+    public synchronized DashboardRAGColours getWorstBlobColourForMachineAndType(Machine machine, int type) {
+        MachineNode node = machines.get(machine == null ? ANCILLARY : machine.getId());
+        SeverityCounts counts = node == null ? null : node.blobByType.get(type);
+        return counts == null ? null : counts.worstByRank();
+    }
+
+    /**
+     * @param machine The machine, null for ancillary equipment.
+     * @return The worst blob colour of every sensor on the machine, or null if there are none.
+     */
+    public synchronized DashboardRAGColours getWorstBlobColourForMachine(Machine machine) {
+        MachineNode node = machines.get(machine == null ? ANCILLARY : machine.getId());
+        return node == null ? null : node.blob.worstByRank();
+    }
+
+    /**
+     * @return The worst predictive maintenance colour of every sensor on a machine included in supervisor view,
+     * or null if there are none.
+     */
+    public synchronized DashboardRAGColours getWorstPredictiveMaintenanceInSupervisorView() {
+        return supervisorViewPm.worstByOrdinal();
+    }
+
+    /**
+     * @param machine The machine, null for ancillary equipment.
+     * @return The worst predictive maintenance colour of every sensor on the machine, or null if there are none.
+     */
+    public synchronized DashboardRAGColours getWorstPredictiveMaintenanceForMachine(Machine machine) {
+        MachineNode node = machines.get(machine == null ? ANCILLARY : machine.getId());
+        return node == null ? null : node.pm.worstByOrdinal();
+    }
+
+    /**
+     * Adds or subtracts the leaf from the counts held by every node above it.
+     *
+     * @param leaf  The sensor leaf.
+     * @param delta 1 to add the leaf, -1 to remove it.
+     */
+    private void count(SensorLeaf leaf, int delta) {
+        MachineNode node = machines.computeIfAbsent(leaf.machineKey, key -> new MachineNode());
+        node.blob.add(leaf.blobColour, delta);
+        node.pm.add(leaf.predictiveMaintenance, delta);
+        node.blobByType.computeIfAbsent(leaf.type, key -> new SeverityCounts()).add(leaf.blobColour, delta);
+        fleetBlobByType.computeIfAbsent(leaf.type, key -> new SeverityCounts()).add(leaf.blobColour, delta);
+        if (leaf.supervisorView) {
+            supervisorViewPm.add(leaf.predictiveMaintenance, delta);
+        }
+    }
+
+    /**
+     * The colours held for a single sensor and where it sits in the tree.
+     */
+    private static final class SensorLeaf {
+        private final long machineKey;
+        private final int type;
+        private final boolean supervisorView;
+        private DashboardRAGColours blobColour;
+        private DashboardRAGColours predictiveMaintenance;
+
+        private SensorLeaf(long machineKey, int type, boolean supervisorView,
+                           DashboardRAGColours blobColour, DashboardRAGColours predictiveMaintenance) {
+            this.machineKey = machineKey;
+            this.type = type;
+            this.supervisorView = supervisorView;
+            this.blobColour = blobColour;
+            this.predictiveMaintenance = predictiveMaintenance;
+        }
+    }
+
+    /**
+     * The counts for every sensor fitted to a machine, overall and split by sensor type.
+     */
+    private static final class MachineNode {
+        private final SeverityCounts blob = new SeverityCounts();
+        private final SeverityCounts pm = new SeverityCounts();
+        private final Map<Integer, SeverityCounts> blobByType = new HashMap<>();
+    }
+
+    /**
+     * The number of sensors in each colour, indexed by the ordinal of the colour.
+     */
+    static final class SeverityCounts {
+        private static final DashboardRAGColours[] COLOURS = DashboardRAGColours.values();
+        private final int[] counts = new int[COLOURS.length];
+
+        void add(DashboardRAGColours colour, int delta) {
+            if (colour != null) {
+                counts[colour.ordinal()] += delta;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0);
+        }
+
+        /**
+         * Blob colours are ranked, the highest rank being the most severe.
+         */
+        DashboardRAGColours worstByRank() {
+            DashboardRAGColours worst = null;
+            for (DashboardRAGColours colour : COLOURS) {
+                if (counts[colour.ordinal()] > 0 && (worst == null || colour.rank > worst.rank)) {
+                    worst = colour;
+                }
+            }
+            return worst;
+        }
+
+        /**
+         * Predictive maintenance colours are declared most severe first.
+         */
+        DashboardRAGColours worstByOrdinal() {
+            for (DashboardRAGColours colour : COLOURS) {
+                if (counts[colour.ordinal()] > 0) {
+                    return colour;
+                }
+            }
+            return null;
+        }
+    }
+}
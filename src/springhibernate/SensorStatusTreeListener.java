@@ -0,0 +1,96 @@
+package springhibernate;
+
+import entitys.AnalogSensor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import uk.co.dhl.smas.backend.machine.Machine;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Keeps the {@link SensorStatusTree} in step with sensors and machines saved outside {@link AnalogSensorService},
+ * e.g. from the admin forms. A saved sensor is put back in the tree and a deleted one removed. A machine holds the
+ * supervisor view flag of every sensor on it, so a saved or deleted machine invalidates the tree instead, which is
+ * rare enough that a rebuild costs nothing.
+ */
+@Component
+public class SensorStatusTreeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final SensorStatusTree statusTree;
+
+    public SensorStatusTreeListener(EntityManagerFactory entityManagerFactory, SensorStatusTree statusTree) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.statusTree = statusTree;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        onSaved(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        onSaved(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        onDeleted(event.getEntity());
+    }
+
+    void onSaved(Object entity) {
+        if (entity instanceof AnalogSensor) {
+            if (statusTree.isBuilt()) {
+                statusTree.put((AnalogSensor) entity);
+            }
+        } else if (entity instanceof Machine) {
+            statusTree.invalidate();
+        }
+    }
+
+    void onDeleted(Object entity) {
+        if (entity instanceof AnalogSensor) {
+            statusTree.remove(((AnalogSensor) entity).getId());
+        } else if (entity instanceof Machine) {
+            statusTree.invalidate();
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return true;
+    }
+}
@@ -0,0 +1,69 @@
+package springhibernate;
+
+import entitys.AnalogSensor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class SensorStatusTreeListenerTest {
+
+    @Mock
+    EntityManagerFactory entityManagerFactory;
+    SensorStatusTree statusTree;
+    SensorStatusTreeListener underTest;
+    Machine machine = Machine.builder().id(1L).includeInSupervisorView(true).build();
+    AnalogSensor sensor;
+
+    @BeforeEach
+    void setUp() {
+        statusTree = new SensorStatusTree();
+        underTest = new SensorStatusTreeListener(entityManagerFactory, statusTree);
+        sensor = AnalogSensor.builder().machine(machine).predictiveMaintenance(DashboardRAGColours.GREEN).build();
+        sensor.setId(1L);
+        sensor.setType(0);
+        sensor.setBlobColour(DashboardRAGColours.GREEN);
+        statusTree.rebuild(List.of(sensor));
+    }
+
+    @Test
+    void testSavedSensorIsPutInTheTree() {
+        sensor.setBlobColour(DashboardRAGColours.RED);
+
+        underTest.onSaved(sensor);
+
+        assertEquals(DashboardRAGColours.RED, statusTree.getWorstBlobColourForMachine(machine));
+    }
+
+    @Test
+    void testDeletedSensorIsRemovedFromTheTree() {
+        underTest.onDeleted(sensor);
+
+        assertNull(statusTree.getWorstBlobColourForMachine(machine));
+    }
+
+    @Test
+    void testSavedMachineInvalidatesTheTree() {
+        underTest.onSaved(machine);
+
+        assertFalse(statusTree.isBuilt());
+    }
+
+    @Test
+    void testSavedSensorIsIgnoredUntilTheTreeIsBuilt() {
+        statusTree.invalidate();
+
+        underTest.onSaved(sensor);
+
+        assertFalse(statusTree.isBuilt());
+    }
+}
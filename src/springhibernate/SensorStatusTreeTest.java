@@ -0,0 +1,146 @@
+package springhibernate;
+
+import entitys.AnalogSensor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.dhl.smas.backend.machine.Machine;
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorStatusTreeTest {
+
+    SensorStatusTree underTest;
+    Machine supervisorMachine = Machine.builder().id(1L).includeInSupervisorView(true).build();
+    Machine hiddenMachine = Machine.builder().id(2L).includeInSupervisorView(false).build();
+    AnalogSensor one;
+    AnalogSensor two;
+    AnalogSensor three;
+    AnalogSensor ancillary;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new SensorStatusTree();
+        one = getSensor(1L, supervisorMachine, 0, DashboardRAGColours.GREEN, DashboardRAGColours.GREEN);
+        two = getSensor(2L, supervisorMachine, 0, DashboardRAGColours.AMBER, DashboardRAGColours.ORANGE);
+        three = getSensor(3L, hiddenMachine, 1, DashboardRAGColours.RED, DashboardRAGColours.RED);
+        ancillary = getSensor(4L, null, 0, DashboardRAGColours.GREEN, DashboardRAGColours.GREEN);
+    }
+
+    @Test
+    void testRebuild() {
+        assertFalse(underTest.isBuilt());
+        underTest.rebuild(List.of(one, two, three, ancillary));
+        assertTrue(underTest.isBuilt());
+
+        // Check the worst blob colours for each level of the tree.
+        assertEquals(DashboardRAGColours.AMBER, underTest.getWorstBlobColourForType(0));
+        assertEquals(DashboardRAGColours.RED, underTest.getWorstBlobColourForType(1));
+        assertEquals(DashboardRAGColours.AMBER, underTest.getWorstBlobColourForMachineAndType(supervisorMachine, 0));
+        assertNull(underTest.getWorstBlobColourForMachineAndType(supervisorMachine, 1));
+        assertEquals(DashboardRAGColours.GREEN, underTest.getWorstBlobColourForMachine(null));
+
+        // Check the hidden machine is not included in the supervisor view predictive maintenance.
+        assertEquals(DashboardRAGColours.ORANGE, underTest.getWorstPredictiveMaintenanceInSupervisorView());
+        assertEquals(DashboardRAGColours.RED, underTest.getWorstPredictiveMaintenanceForMachine(hiddenMachine));
+    }
+
+    @Test
+    void testIncrementalUpdates() {
+        underTest.rebuild(List.of(one, two, three, ancillary));
+
+        // A sensor turning red moves the whole branch to red.
+        underTest.updateBlobColour(1L, DashboardRAGColours.RED);
+        assertEquals(DashboardRAGColours.RED, underTest.getWorstBlobColourForType(0));
+        assertEquals(DashboardRAGColours.RED, underTest.getWorstBlobColourForMachineAndType(supervisorMachine, 0));
+
+        // Once it recovers the next worst is returned.
+        underTest.updateBlobColour(1L, DashboardRAGColours.GREEN);
+        assertEquals(DashboardRAGColours.AMBER, underTest.getWorstBlobColourForType(0));
+
+        underTest.updatePredictiveMaintenance(2L, DashboardRAGColours.GREEN);
+        assertEquals(DashboardRAGColours.GREEN, underTest.getWorstPredictiveMaintenanceInSupervisorView());
+
+        // Unknown sensors are ignored.
+        underTest.updateBlobColour(99L, DashboardRAGColours.RED);
+        assertEquals(DashboardRAGColours.AMBER, underTest.getWorstBlobColourForType(0));
+
+        // Moving a sensor to another machine removes it from the old branch.
+        two.setMachine(hiddenMachine);
+        underTest.put(two);
+        assertEquals(DashboardRAGColours.GREEN, underTest.getWorstBlobColourForMachineAndType(supervisorMachine, 0));
+        assertEquals(DashboardRAGColours.AMBER, underTest.getWorstBlobColourForMachineAndType(hiddenMachine, 0));
+
+        // Removing the last sensor of a type leaves no colour for that type.
+        underTest.remove(3L);
+        assertNull(underTest.getWorstBlobColourForType(1));
+    }
+
+    @Test
+    void testRebuildFromStatuses() {
+        underTest.rebuild(List.of(one, two, three, ancillary));
+        assertFalse(underTest.isOlderThan(60_000L, System.currentTimeMillis()));
+        assertTrue(underTest.isOlderThan(60_000L, System.currentTimeMillis() + 60_000L));
+
+        // Another node turned sensor one red and sensor three green, the rebuild picks both up.
+        underTest.rebuildFromStatuses(List.of(
+                getStatus(1L, 1L, true, 0, DashboardRAGColours.RED, DashboardRAGColours.GREEN),
+                getStatus(2L, 1L, true, 0, DashboardRAGColours.AMBER, DashboardRAGColours.ORANGE),
+                getStatus(3L, 2L, false, 1, DashboardRAGColours.GREEN, DashboardRAGColours.GREEN),
+                getStatus(4L, null, null, 0, DashboardRAGColours.GREEN, DashboardRAGColours.GREEN)));
+        assertEquals(DashboardRAGColours.RED, underTest.getWorstBlobColourForMachineAndType(supervisorMachine, 0));
+        assertEquals(DashboardRAGColours.GREEN, underTest.getWorstBlobColourForType(1));
+        assertEquals(DashboardRAGColours.GREEN, underTest.getWorstBlobColourForMachine(null));
+        assertEquals(DashboardRAGColours.ORANGE, underTest.getWorstPredictiveMaintenanceInSupervisorView());
+    }
+
+    @Test
+    void testInvalidate() {
+        underTest.rebuild(List.of(one, two, three, ancillary));
+
+        underTest.invalidate();
+
+        assertFalse(underTest.isBuilt());
+        assertTrue(underTest.isOlderThan(60_000L, System.currentTimeMillis()));
+    }
+
+    private SensorStatus getStatus(Long id, Long machineId, Boolean supervisorView, int type,
+                                   DashboardRAGColours blob, DashboardRAGColours pm) {
+        return new SensorStatus() {
+            public Long getId() {
+                return id;
+            }
+
+            public Long getMachineId() {
+                return machineId;
+            }
+
+            public Integer getType() {
+                return type;
+            }
+
+            public Boolean getIncludeInSupervisorView() {
+                return supervisorView;
+            }
+
+            public DashboardRAGColours getBlobColour() {
+                return blob;
+            }
+
+            public DashboardRAGColours getPredictiveMaintenance() {
+                return pm;
+            }
+        };
+    }
+
+    private AnalogSensor getSensor(Long id, Machine machine, int type,
+                                   DashboardRAGColours blob, DashboardRAGColours pm) {
+        AnalogSensor sensor = AnalogSensor.builder().machine(machine).predictiveMaintenance(pm).build();
+        sensor.setId(id);
+        sensor.setType(type);
+        sensor.setBlobColour(blob);
+        return sensor;
+    }
+}
@@ -0,0 +1,23 @@
+package springhibernate;
+
+import uk.co.dhl.smas.ui.view.dashboard.machineview.DashboardRAGColours;
+
+/**
+ * A read only view of an AnalogSensor with just the columns the dashboard colour lookups and the lazy sensor grid
+ * need. Spring Data selects only these columns, so the alerts, machine and user the entity loads eagerly are not
+ * fetched.
+ * <p>
+ * Only plain columns should be added here, an association would be joined or fetched for every sensor again.
+ */
+public interface SensorSummary {
+
+    Long getId();
+
+    String getName();
+
+    Integer getType();
+
+    DashboardRAGColours getBlobColour();
+
+    DashboardRAGColours getPredictiveMaintenance();
+}
@@ -0,0 +1,72 @@
+package springhibernate;
+
+import entitys.UserPermissions;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.SessionScope;
+import uk.co.dhl.smas.backend.user.User;
+import uk.co.dhl.smas.ui.view.PermissionChecker;
+
+import javax.persistence.EntityManager;
+
+/**
+ * The permissions of the user logged in to this session, for the permission checks on the hot UI paths.
+ * The user is only loaded through {@link PermissionChecker#getLoggedInUser()} the first time it is needed and again
+ * after the user or an authority has changed, otherwise every check is answered from memory.
+ */
+@Component
+@SessionScope
+public class SessionPermissions implements PermissionChecker {
+
+    private final UserPermissionCache userPermissionCache;
+    private final EntityManager entityManager;
+    private UserPermissions permissions;
+    private long generation = -1;
+
+    public SessionPermissions(UserPermissionCache userPermissionCache, EntityManager entityManager) {
+        this.userPermissionCache = userPermissionCache;
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @return The permissions of the logged in user, {@link UserPermissions#NONE} if no one is logged in.
+     */
+    public synchronized UserPermissions get() {
+        long current = userPermissionCache.getGeneration();
+        if (permissions == null || generation != current) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            String username = authentication == null ? null : authentication.getName();
+            permissions = userPermissionCache.get(username, name -> getLoggedInUser());
+            generation = current;
+        }
+        return permissions;
+    }
+
+    /**
+     * The logged in user for recording who made a change, e.g. who last reset a sensor. Only a reference is
+     * returned so the user and its authorities are not loaded to set a foreign key.
+     *
+     * @return A reference to the logged in user, null if no one is logged in.
+     */
+    public User getUserReference() {
+        Long userId = get().getUserId();
+        return userId == null ? null : entityManager.getReference(User.class, userId);
+    }
+
+    public boolean isAdmin() {
+        return get().isAdmin();
+    }
+
+    public boolean isEngineer() {
+        return get().isEngineer();
+    }
+
+    public boolean isDashboards() {
+        return get().isDashboards();
+    }
+
+    public boolean hasAuthority(String authority) {
+        return get().hasAuthority(authority);
+    }
+}
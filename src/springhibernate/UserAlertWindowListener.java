@@ -0,0 +1,34 @@
+package springhibernate;
+
+import entitys.User;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Keeps the {@link AlertRecipientIndex} up to date whenever a user is saved or deleted.
+ * Registered on the User entity with {@code @EntityListeners}, Spring injects the index into the listener.
+ */
+@Component
+public class UserAlertWindowListener {
+
+    private final AlertRecipientIndex alertRecipientIndex;
+
+    public UserAlertWindowListener(@Lazy AlertRecipientIndex alertRecipientIndex) {
+        this.alertRecipientIndex = alertRecipientIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(User user) {
+        alertRecipientIndex.onUserChanged(user);
+    }
+
+    @PostRemove
+    public void onRemove(User user) {
+        alertRecipientIndex.onUserRemoved(user.getId());
+    }
+}
@@ -0,0 +1,82 @@
+package springhibernate;
+
+import entitys.User;
+import entitys.UserPermissions;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Holds a {@link UserPermissions} snapshot per username so permission checks do not reload the user and its
+ * eagerly fetched authorities on every request. Entries are dropped when the user is saved or deleted, see
+ * {@link UserPermissionListener} and {@link PermissionChangeListener}, and everything is dropped when an authority
+ * changes or another node reports a change, see {@link ClusterPermissionInvalidator}.
+ * <p>
+ * Every invalidation moves the generation on, which lets {@link SessionPermissions} tell that its copy is stale
+ * without a map lookup.
+ */
+@Component
+public class UserPermissionCache {
+
+    private static final Logger log = Logger.getLogger(UserPermissionCache.class.getSimpleName());
+
+    private final Map<String, UserPermissions> permissions = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param username The username of the user.
+     * @param loader   Loads the user from the database if it is not cached, may return null.
+     * @return The permissions of the user, {@link UserPermissions#NONE} if the user was not found.
+     */
+    public UserPermissions get(String username, Function<String, User> loader) {
+        if (username == null) {
+            return UserPermissions.NONE;
+        }
+        UserPermissions cached = permissions.get(username);
+        if (cached != null) {
+            return cached;
+        }
+        User user = loader.apply(username);
+        if (user == null) {
+            return UserPermissions.NONE;
+        }
+        UserPermissions loaded = UserPermissions.of(user);
+        permissions.put(username, loaded);
+        return loaded;
+    }
+
+    /**
+     * @return A number that changes every time any entry is invalidated.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Drops the cached permissions of a user after it has been saved or deleted.
+     *
+     * @param user The changed user.
+     */
+    public void invalidate(User user) {
+        generation.incrementAndGet();
+        // The username may have been changed so the entry is found by id as well as by name.
+        permissions.values().removeIf(cached -> user.getId() != null && user.getId().equals(cached.getUserId()));
+        if (user.getUsername() != null) {
+            permissions.remove(user.getUsername());
+        }
+    }
+
+    /**
+     * Drops every cached permission, called when an authority is created, changed or deleted as it may be held
+     * by any number of users.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        permissions.clear();
+        log.info("Cleared the cached user permissions");
+    }
+}
@@ -0,0 +1,68 @@
+package springhibernate;
+
+import entitys.User;
+import entitys.UserPermissions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+class UserPermissionCacheTest {
+
+    UserPermissionCache underTest;
+    User admin;
+    AtomicInteger loads;
+    Function<String, User> loader;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new UserPermissionCache();
+        admin = spy(new User());
+        doReturn(1L).when(admin).getId();
+        admin.setUsername("admin");
+        admin.setAdmin(true);
+        loads = new AtomicInteger();
+        loader = username -> {
+            loads.incrementAndGet();
+            return username.equals("admin") ? admin : null;
+        };
+    }
+
+    @Test
+    void testGetLoadsOnce() {
+        assertTrue(underTest.get("admin", loader).isAdmin());
+        assertTrue(underTest.get("admin", loader).isAdmin());
+        assertEquals(1, loads.get());
+
+        assertSame(UserPermissions.NONE, underTest.get("unknown", loader));
+        assertSame(UserPermissions.NONE, underTest.get(null, loader));
+    }
+
+    @Test
+    void testInvalidate() {
+        underTest.get("admin", loader);
+        long generation = underTest.getGeneration();
+
+        admin.setAdmin(false);
+        underTest.invalidate(admin);
+        assertNotEquals(generation, underTest.getGeneration());
+        assertFalse(underTest.get("admin", loader).isAdmin());
+        assertEquals(2, loads.get());
+
+        // A renamed user is still removed by its id.
+        admin.setUsername("renamed");
+        underTest.invalidate(admin);
+        admin.setUsername("admin");
+        underTest.get("admin", loader);
+        assertEquals(3, loads.get());
+
+        underTest.invalidateAll();
+        underTest.get("admin", loader);
+        assertEquals(4, loads.get());
+    }
+}
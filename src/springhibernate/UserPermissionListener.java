@@ -0,0 +1,36 @@
+package springhibernate;
+
+import entitys.User;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Drops the cached permissions of a user whenever the user is saved or deleted, on this node and through the
+ * {@link ClusterPermissionInvalidator} on every other node. Registered on the User entity with
+ * {@code @EntityListeners}, changes to only the authorities of a user are picked up by
+ * {@link PermissionChangeListener}.
+ */
+@Component
+public class UserPermissionListener {
+
+    private final UserPermissionCache userPermissionCache;
+    private final ClusterPermissionInvalidator clusterPermissionInvalidator;
+
+    public UserPermissionListener(@Lazy UserPermissionCache userPermissionCache,
+                                  @Lazy ClusterPermissionInvalidator clusterPermissionInvalidator) {
+        this.userPermissionCache = userPermissionCache;
+        this.clusterPermissionInvalidator = clusterPermissionInvalidator;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(User user) {
+        userPermissionCache.invalidate(user);
+        clusterPermissionInvalidator.publish();
+    }
+}
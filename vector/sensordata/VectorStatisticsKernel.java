@@ -0,0 +1,133 @@
+package sensordata;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The JDK Vector API implementation, processing as many values per instruction as the CPU allows. The tail of
+ * each range that does not fill a whole vector is handled by the scalar kernel.
+ * <p>
+ * Kept in its own source root, vector/, as it is the only class that needs {@code --add-modules
+ * jdk.incubator.vector} at compile time, so src/ compiles without the incubator module and its warnings. The
+ * class is found by name at run time, {@link StatisticsKernels} falls back to {@link ScalarStatisticsKernel} if
+ * either the class or the module is not present.
+ */
+class VectorStatisticsKernel implements StatisticsKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final ScalarStatisticsKernel scalar = new ScalarStatisticsKernel();
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            sum = sum.add(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + scalar.sum(values, i, to);
+    }
+
+    @Override
+    public double sumOfSquares(double[] values, int from, int to) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(SPECIES, values, i);
+            sum = vector.fma(vector, sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + scalar.sumOfSquares(values, i, to);
+    }
+
+    @Override
+    public double sumOfSquaredDeviations(double[] values, int from, int to, double mean) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector difference = DoubleVector.fromArray(SPECIES, values, i).sub(mean);
+            sum = difference.fma(difference, sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + scalar.sumOfSquaredDeviations(values, i, to, mean);
+    }
+
+    @Override
+    public double min(double[] values, int from, int to) {
+        if (to <= from) {
+            return Double.NaN;
+        }
+        DoubleVector min = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            min = min.min(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        double result = min.reduceLanes(VectorOperators.MIN);
+        return i < to ? Math.min(result, scalar.min(values, i, to)) : result;
+    }
+
+    @Override
+    public double max(double[] values, int from, int to) {
+        if (to <= from) {
+            return Double.NaN;
+        }
+        DoubleVector max = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            max = max.max(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        double result = max.reduceLanes(VectorOperators.MAX);
+        return i < to ? Math.max(result, scalar.max(values, i, to)) : result;
+    }
+
+    @Override
+    public int countAbove(double[] values, int from, int to, double threshold) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            count += DoubleVector.fromArray(SPECIES, values, i).compare(VectorOperators.GT, threshold).trueCount();
+        }
+        return count + scalar.countAbove(values, i, to, threshold);
+    }
+
+    @Override
+    public int countBelow(double[] values, int from, int to, double threshold) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            count += DoubleVector.fromArray(SPECIES, values, i).compare(VectorOperators.LT, threshold).trueCount();
+        }
+        return count + scalar.countBelow(values, i, to, threshold);
+    }
+
+    @Override
+    public int countOutside(double[] values, int from, int to, double lower, double upper) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(SPECIES, values, i);
+            count += vector.compare(VectorOperators.LT, lower).or(vector.compare(VectorOperators.GT, upper)).trueCount();
+        }
+        return count + scalar.countOutside(values, i, to, lower, upper);
+    }
+
+    @Override
+    public int markOutside(double[] values, double[] lower, double[] upper, boolean[] out) {
+        int count = 0;
+        int i = 0;
+        for (int bound = SPECIES.loopBound(values.length); i < bound; i += SPECIES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(SPECIES, values, i);
+            VectorMask<Double> outside = vector.compare(VectorOperators.LT, DoubleVector.fromArray(SPECIES, lower, i))
+                    .or(vector.compare(VectorOperators.GT, DoubleVector.fromArray(SPECIES, upper, i)));
+            outside.intoArray(out, i);
+            count += outside.trueCount();
+        }
+        for (; i < values.length; i++) {
+            out[i] = values[i] < lower[i] || values[i] > upper[i];
+            if (out[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+}